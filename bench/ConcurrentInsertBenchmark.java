@@ -0,0 +1,80 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * DESCRIPTION: Measures put throughput when many threads insert distinct keys
+ * at once, comparing the LockFreeBinarySearchTree with ConcurrentSkipListMap
+ * and the lock-based ConcurrentBinarySearchTree.
+ *
+ * Usage: java ConcurrentInsertBenchmark [keysPerThread] [maxThreads] [rounds]
+ *
+ * Thread counts double from 1 up to maxThreads, which defaults to the number
+ * of available processors. Each thread inserts its own keys in a scrambled
+ * order, since the lock-free tree does not rebalance. The best of the rounds
+ * is reported.
+ */
+public class ConcurrentInsertBenchmark {
+   public static void main( String[] args ) throws InterruptedException {
+      int keysPerThread = args.length > 0 ? Integer.parseInt( args[0] ) : 250000;
+      int maxThreads = args.length > 1 ? Integer.parseInt( args[1] ) : Runtime.getRuntime().availableProcessors();
+      int rounds = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+      System.out.printf( "%,d distinct keys per thread, best of %d rounds%n", keysPerThread, rounds );
+      System.out.printf( "%8s %26s %26s %26s%n", "threads", "LockFreeBinarySearchTree", "ConcurrentSkipListMap", "ConcurrentBinarySearchTree" );
+      for ( int threads = 1; threads <= maxThreads; threads *= 2 ) {
+         double lockFree = best( LockFreeBinarySearchTree::new, threads, keysPerThread, rounds );
+         double skipList = best( ConcurrentSkipListMap::new, threads, keysPerThread, rounds );
+         double locked = best( ConcurrentBinarySearchTree::new, threads, keysPerThread, rounds );
+         System.out.printf( "%8d %,20.0f puts/s %,20.0f puts/s %,20.0f puts/s%n", threads, lockFree, skipList, locked );
+      }
+   }
+
+   private static double best( Supplier<Map<Integer, Integer>> factory, int threads, int keysPerThread, int rounds )
+         throws InterruptedException {
+      double best = 0;
+      for ( int round = 0; round <= rounds; round++ ) { // Round 0 warms up
+         double rate = run( factory.get(), threads, keysPerThread );
+         if ( round > 0 ) {
+            best = Math.max( best, rate );
+         }
+      }
+      return best;
+   }
+
+   // Returns the puts per second achieved by all threads together.
+   private static double run( Map<Integer, Integer> map, int threads, int keysPerThread ) throws InterruptedException {
+      CountDownLatch start = new CountDownLatch( 1 );
+      CountDownLatch done = new CountDownLatch( threads );
+      for ( int t = 0; t < threads; t++ ) {
+         int thread = t;
+         new Thread( ( ) -> {
+            try {
+               start.await();
+            } catch ( InterruptedException e ) {
+               return;
+            }
+            for ( int i = 0; i < keysPerThread; i++ ) {
+               int key = scramble( i * threads + thread ); // Distinct across threads
+               map.put( key, key );
+            }
+            done.countDown();
+         } ).start();
+      }
+      long begin = System.nanoTime();
+      start.countDown();
+      done.await();
+      long elapsed = System.nanoTime() - begin;
+      if ( map.size() != threads * keysPerThread ) {
+         throw new IllegalStateException( "Expected " + threads * keysPerThread + " entries, found " + map.size() );
+      }
+      return threads * (double) keysPerThread / ( elapsed / 1e9 );
+   }
+
+   // Multiplying by an odd constant is a bijection on ints that spreads consecutive values.
+   private static int scramble( int i ) {
+      return i * 0x9E3779B1;
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,78 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DESCRIPTION: Measures get throughput as reader threads are added, comparing
+ * a RedBlackTree wrapped in Collections.synchronizedMap with the
+ * ConcurrentBinarySearchTree. One writer thread keeps replacing values so
+ * that the optimistic reads are sometimes invalidated.
+ *
+ * Usage: java ConcurrentReadBenchmark [entries] [maxReaders] [seconds]
+ *
+ * Reader counts double from 1 up to maxReaders, which defaults to the number
+ * of available processors.
+ */
+public class ConcurrentReadBenchmark {
+   public static void main( String[] args ) throws InterruptedException {
+      int entries = args.length > 0 ? Integer.parseInt( args[0] ) : 1000000;
+      int maxReaders = args.length > 1 ? Integer.parseInt( args[1] ) : Runtime.getRuntime().availableProcessors();
+      double seconds = args.length > 2 ? Double.parseDouble( args[2] ) : 2;
+
+      RedBlackTree<Integer, Integer> plain = new RedBlackTree<>();
+      ConcurrentBinarySearchTree<Integer, Integer> concurrent = new ConcurrentBinarySearchTree<>();
+      for ( int key = 0; key < entries; key++ ) {
+         plain.put( key, key );
+         concurrent.put( key, key );
+      }
+      Map<Integer, Integer> synchronizedTree = Collections.synchronizedMap( plain );
+
+      System.out.printf( "%,d entries, one writer, %.1f s per run%n", entries, seconds );
+      System.out.printf( "%8s %22s %22s%n", "readers", "synchronizedMap gets/s", "concurrent gets/s" );
+      for ( int readers = 1; readers <= maxReaders; readers *= 2 ) {
+         double locked = run( synchronizedTree, entries, readers, seconds );
+         double optimistic = run( concurrent, entries, readers, seconds );
+         System.out.printf( "%8d %,22.0f %,22.0f%n", readers, locked, optimistic );
+      }
+   }
+
+   // Returns the gets per second achieved by all readers together.
+   private static double run( Map<Integer, Integer> map, int entries, int readers, double seconds ) throws InterruptedException {
+      AtomicBoolean stop = new AtomicBoolean(  );
+      LongAdder gets = new LongAdder(  );
+      CountDownLatch done = new CountDownLatch( readers + 1 );
+      for ( int r = 0; r < readers; r++ ) {
+         new Thread( ( ) -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long count = 0;
+            long sum = 0;
+            while ( !stop.get() ) {
+               for ( int i = 0; i < 1000; i++ ) {
+                  sum += map.get( random.nextInt( entries ) );
+               }
+               count += 1000;
+            }
+            gets.add( count + ( sum == 42 ? 1 : 0 ) ); // Consume sum so the lookups are not dropped
+            done.countDown();
+         } ).start();
+      }
+      new Thread( ( ) -> {
+         ThreadLocalRandom random = ThreadLocalRandom.current();
+         while ( !stop.get() ) {
+            int key = random.nextInt( entries );
+            map.put( key, key );
+            Thread.yield();
+         }
+         done.countDown();
+      } ).start();
+      long start = System.nanoTime();
+      Thread.sleep( (long) ( seconds * 1000 ) );
+      stop.set( true );
+      done.await();
+      return gets.sum() / ( ( System.nanoTime() - start ) / 1e9 );
+   }
+}
+// END OF FILE ==============================================================
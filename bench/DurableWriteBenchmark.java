@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * DESCRIPTION: Measures put on a RedBlackTree in memory and in durable mode
+ * with different group commits: a sync after every change, after every 1000
+ * changes, and every 10 ms from the background thread.
+ *
+ * Usage: java DurableWriteBenchmark [entries] [directory]
+ *
+ * The directory should be on the disk being measured; the default is the
+ * temporary directory, which may be in memory. The sync-every-change row
+ * puts only entries / 100 keys, since each put waits for the disk.
+ */
+public class DurableWriteBenchmark {
+   private static volatile long sink; // Consumes results so the JIT cannot drop the work
+
+   public static void main( String[] args ) throws IOException {
+      int entries = args.length > 0 ? Integer.parseInt( args[0] ) : 1000000;
+      Path directory = args.length > 1 ? Files.createTempDirectory( Paths.get( args[1] ), "DurableWriteBenchmark" )
+                                       : Files.createTempDirectory( "DurableWriteBenchmark" );
+
+      Random random = new Random( 42 );
+      long[] keys = new long[entries];
+      for ( int i = 0; i < entries; i++ ) {
+         keys[i] = random.nextLong();
+      }
+      try {
+         System.out.printf( "%,d entries in %s%n", entries, directory );
+         System.out.printf( "%-20s %12s %12s%n", "mode", "puts", "ns/op" );
+         run( "in memory", keys, entries, null, 0, 0 );
+         run( "sync every change", keys, entries / 100, directory, 1, 0 );
+         run( "sync every 1000", keys, entries, directory, 1000, 0 );
+         run( "sync every 10 ms", keys, entries, directory, Integer.MAX_VALUE, 10 );
+      } finally {
+         Files.deleteIfExists( directory.resolve( "tree.snapshot" ) );
+         Files.deleteIfExists( directory.resolve( "tree.log" ) );
+         Files.delete( directory );
+      }
+   }
+
+   private static void run( String mode, long[] keys, int puts, Path directory, int syncEveryOps, long syncEveryMillis )
+         throws IOException {
+      RedBlackTree<Long, Long> tree = new RedBlackTree<>();
+      if ( directory != null ) {
+         Files.deleteIfExists( directory.resolve( "tree.log" ) );
+         tree.openDurable( directory.resolve( "tree.snapshot" ), directory.resolve( "tree.log" ),
+                           AbstractBinarySearchTree.Codec.LONG, AbstractBinarySearchTree.Codec.LONG, syncEveryOps, syncEveryMillis );
+      }
+      long start = System.nanoTime();
+      for ( int i = 0; i < puts; i++ ) {
+         tree.put( keys[i], keys[i] );
+      }
+      tree.closeDurable(); // Counts the final sync
+      double perOp = (double) ( System.nanoTime() - start ) / puts;
+      sink += tree.size();
+      System.out.printf( "%-20s %,12d %,12.1f%n", mode, puts, perOp );
+   }
+}
+// END OF FILE ==============================================================
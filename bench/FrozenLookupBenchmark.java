@@ -0,0 +1,62 @@
+import java.util.Random;
+
+/**
+ * DESCRIPTION: Measures random get on a RedBlackTree and on the
+ * FrozenBinarySearchTree that freeze() makes of it, with keys compared by
+ * compareTo and with keys normalized to their own value as the prefix.
+ *
+ * Usage: java -Xmx4g FrozenLookupBenchmark [entries] [lookups] [rounds]
+ *
+ * Keys are random longs, looked up in a different random order than they
+ * were inserted, so at 10M entries almost every level below the first few
+ * misses the cache.
+ */
+public class FrozenLookupBenchmark {
+   private static volatile long sink; // Consumes results so the JIT cannot drop the work
+
+   public static void main( String[] args ) {
+      int entries = args.length > 0 ? Integer.parseInt( args[0] ) : 10000000;
+      int lookups = args.length > 1 ? Integer.parseInt( args[1] ) : 2000000;
+      int rounds = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+      Random random = new Random( 42 );
+      Long[] keys = new Long[entries];
+      for ( int i = 0; i < entries; i++ ) {
+         keys[i] = random.nextLong();
+      }
+      Long[] probes = new Long[lookups];
+      for ( int i = 0; i < lookups; i++ ) {
+         probes[i] = keys[random.nextInt( entries )];
+      }
+
+      System.out.printf( "%,d entries, %,d lookups, best of %d rounds%n", entries, lookups, rounds );
+      System.out.printf( "%-12s %14s %14s%n", "keys", "tree ns/get", "frozen ns/get" );
+      run( "compareTo", new RedBlackTree<>(), keys, probes, rounds );
+      run( "normalized", new RedBlackTree<>( null, key -> key ), keys, probes, rounds );
+   }
+
+   private static void run( String mode, RedBlackTree<Long, Long> tree, Long[] keys, Long[] probes, int rounds ) {
+      for ( Long key : keys ) {
+         tree.put( key, key );
+      }
+      FrozenBinarySearchTree<Long, Long> frozen = tree.freeze();
+      double bestTree = Double.MAX_VALUE;
+      double bestFrozen = Double.MAX_VALUE;
+      for ( int round = 0; round < rounds; round++ ) {
+         long sum = 0;
+         long start = System.nanoTime();
+         for ( Long probe : probes ) {
+            sum += tree.get( probe );
+         }
+         bestTree = Math.min( bestTree, (double) ( System.nanoTime() - start ) / probes.length );
+         start = System.nanoTime();
+         for ( Long probe : probes ) {
+            sum += frozen.get( probe );
+         }
+         bestFrozen = Math.min( bestFrozen, (double) ( System.nanoTime() - start ) / probes.length );
+         sink += sum;
+      }
+      System.out.printf( "%-12s %,14.1f %,14.1f%n", mode, bestTree, bestFrozen );
+   }
+}
+// END OF FILE ==============================================================
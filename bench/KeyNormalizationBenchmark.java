@@ -0,0 +1,66 @@
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * DESCRIPTION: Measures get and put on String and UUID keys in a RedBlackTree
+ * ordered by compareTo, and in one whose nodes cache a normalized prefix of
+ * their keys so most comparisons are between two longs.
+ *
+ * Usage: java KeyNormalizationBenchmark [entries] [rounds]
+ *
+ * The String keys are 20 random letters and digits. Keys that share their
+ * first four chars tie on the prefix and fall back to compareTo, so keys with
+ * a long common prefix gain nothing from STRING_PREFIX.
+ */
+public class KeyNormalizationBenchmark {
+   private static volatile long sink; // Consumes results so the JIT cannot drop the work
+
+   public static void main( String[] args ) {
+      int entries = args.length > 0 ? Integer.parseInt( args[0] ) : 1000000;
+      int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+
+      Random random = new Random( 42 );
+      String[] strings = new String[entries];
+      UUID[] uuids = new UUID[entries];
+      String letters = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+      for ( int i = 0; i < entries; i++ ) {
+         StringBuilder key = new StringBuilder(  );
+         for ( int c = 0; c < 20; c++ ) {
+            key.append( letters.charAt( random.nextInt( letters.length() ) ) );
+         }
+         strings[i] = key.toString();
+         uuids[i] = new UUID( random.nextLong(), random.nextLong() );
+      }
+
+      System.out.printf( "%,d entries, best of %d rounds%n", entries, rounds );
+      System.out.printf( "%-8s %-12s %12s %12s%n", "keys", "mode", "put ns/op", "get ns/op" );
+      run( "String", "compareTo", strings, RedBlackTree::new, rounds );
+      run( "String", "normalized", strings, ( ) -> new RedBlackTree<>( null, AbstractBinarySearchTree.KeyNormalizer.STRING_PREFIX ), rounds );
+      run( "UUID", "compareTo", uuids, RedBlackTree::new, rounds );
+      run( "UUID", "normalized", uuids, ( ) -> new RedBlackTree<>( null, AbstractBinarySearchTree.KeyNormalizer.UUID_PREFIX ), rounds );
+   }
+
+   private static <K extends Comparable<K>> void run( String keyType, String mode, K[] keys,
+                                                       Supplier<RedBlackTree<K, Integer>> factory, int rounds ) {
+      double bestPut = Double.MAX_VALUE;
+      double bestGet = Double.MAX_VALUE;
+      for ( int round = 0; round < rounds; round++ ) {
+         RedBlackTree<K, Integer> tree = factory.get();
+         long start = System.nanoTime();
+         for ( int i = 0; i < keys.length; i++ ) {
+            tree.put( keys[i], i );
+         }
+         bestPut = Math.min( bestPut, (double) ( System.nanoTime() - start ) / keys.length );
+         long sum = 0;
+         start = System.nanoTime();
+         for ( K key : keys ) {
+            sum += tree.get( key );
+         }
+         bestGet = Math.min( bestGet, (double) ( System.nanoTime() - start ) / keys.length );
+         sink += sum;
+      }
+      System.out.printf( "%-8s %-12s %,12.1f %,12.1f%n", keyType, mode, bestPut, bestGet );
+   }
+}
+// END OF FILE ==============================================================
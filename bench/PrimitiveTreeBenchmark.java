@@ -0,0 +1,181 @@
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * DESCRIPTION: Compares the primitive-key trees and the array-backed
+ * CompactBinarySearchTree with the boxed BinarySearchTree: heap bytes per
+ * entry, put throughput and get throughput.
+ *
+ * Usage: java PrimitiveTreeBenchmark [entries]
+ *
+ * Keys are uniformly random so the unbalanced trees stay shallow. Heap use is
+ * the drop in used memory when a freshly built tree is released, measured
+ * after requesting garbage collection, so run with a fixed heap
+ * (e.g. -Xms2g -Xmx2g) for stable numbers.
+ */
+public class PrimitiveTreeBenchmark {
+   private static final String VALUE = "value"; // Shared so only the tree is measured
+   private static Object retained; // Keeps the tree reachable while its heap use is measured
+
+   public static void main( String[] args ) {
+      int entries = args.length > 0 ? Integer.parseInt( args[0] ) : 1000000;
+      int[] keys = new Random( 42 ).ints( entries ).toArray();
+
+      // Heap use first, while nothing else is live
+      double intInt = bytesPerEntry( entries, () -> {
+         IntIntBinarySearchTree tree = new IntIntBinarySearchTree();
+         for ( int key : keys ) {
+            tree.put( key, key );
+         }
+         return tree;
+      } );
+      double boxedIntInt = bytesPerEntry( entries, () -> {
+         BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+         for ( int key : keys ) {
+            tree.put( key, key );
+         }
+         return tree;
+      } );
+      double compactIntInt = bytesPerEntry( entries, () -> {
+         CompactBinarySearchTree<Integer, Integer> tree = new CompactBinarySearchTree<>();
+         for ( int key : keys ) {
+            tree.put( key, key );
+         }
+         return tree;
+      } );
+      double longObj = bytesPerEntry( entries, () -> {
+         LongObjBinarySearchTree<String> tree = new LongObjBinarySearchTree<>();
+         for ( int key : keys ) {
+            tree.put( key, VALUE );
+         }
+         return tree;
+      } );
+      double boxedLongObj = bytesPerEntry( entries, () -> {
+         BinarySearchTree<Long, String> tree = new BinarySearchTree<>();
+         for ( int key : keys ) {
+            tree.put( (long) key, VALUE );
+         }
+         return tree;
+      } );
+
+      System.out.printf( "%,d uniformly random keys%n", entries );
+      System.out.printf( "%-42s %11s %14s %14s%n", "tree", "bytes/entry", "puts/s", "gets/s" );
+      for ( int round = 0; round < 3; round++ ) { // Only the last, warmed up, round is printed
+         boolean print = round == 2;
+         intInt( keys, print, intInt );
+         boxedIntInt( keys, print, boxedIntInt );
+         compactIntInt( keys, print, compactIntInt );
+         longObj( keys, print, longObj );
+         boxedLongObj( keys, print, boxedLongObj );
+      }
+   }
+
+   private static void intInt( int[] keys, boolean print, double bytes ) {
+      long start = System.nanoTime();
+      IntIntBinarySearchTree tree = new IntIntBinarySearchTree();
+      for ( int key : keys ) {
+         tree.put( key, key );
+      }
+      long putNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      long sum = 0;
+      for ( int key : keys ) {
+         sum += tree.get( key );
+      }
+      long getNanos = System.nanoTime() - start;
+      report( print, "IntIntBinarySearchTree", bytes, keys.length, putNanos, getNanos, sum );
+   }
+
+   private static void boxedIntInt( int[] keys, boolean print, double bytes ) {
+      long start = System.nanoTime();
+      BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+      for ( int key : keys ) {
+         tree.put( key, key );
+      }
+      long putNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      long sum = 0;
+      for ( int key : keys ) {
+         sum += tree.get( key );
+      }
+      long getNanos = System.nanoTime() - start;
+      report( print, "BinarySearchTree<Integer,Integer>", bytes, keys.length, putNanos, getNanos, sum );
+   }
+
+   private static void compactIntInt( int[] keys, boolean print, double bytes ) {
+      long start = System.nanoTime();
+      CompactBinarySearchTree<Integer, Integer> tree = new CompactBinarySearchTree<>();
+      for ( int key : keys ) {
+         tree.put( key, key );
+      }
+      long putNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      long sum = 0;
+      for ( int key : keys ) {
+         sum += tree.get( key );
+      }
+      long getNanos = System.nanoTime() - start;
+      report( print, "CompactBinarySearchTree<Integer,Integer>", bytes, keys.length, putNanos, getNanos, sum );
+   }
+
+   private static void longObj( int[] keys, boolean print, double bytes ) {
+      long start = System.nanoTime();
+      LongObjBinarySearchTree<String> tree = new LongObjBinarySearchTree<>();
+      for ( int key : keys ) {
+         tree.put( key, VALUE );
+      }
+      long putNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      long sum = 0;
+      for ( int key : keys ) {
+         sum += tree.get( key ).length();
+      }
+      long getNanos = System.nanoTime() - start;
+      report( print, "LongObjBinarySearchTree<String>", bytes, keys.length, putNanos, getNanos, sum );
+   }
+
+   private static void boxedLongObj( int[] keys, boolean print, double bytes ) {
+      long start = System.nanoTime();
+      BinarySearchTree<Long, String> tree = new BinarySearchTree<>();
+      for ( int key : keys ) {
+         tree.put( (long) key, VALUE );
+      }
+      long putNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      long sum = 0;
+      for ( int key : keys ) {
+         sum += tree.get( (long) key ).length();
+      }
+      long getNanos = System.nanoTime() - start;
+      report( print, "BinarySearchTree<Long,String>", bytes, keys.length, putNanos, getNanos, sum );
+   }
+
+   // The sum is printed only to keep the JIT from discarding the lookups.
+   private static void report( boolean print, String name, double bytes, int ops,
+                               long putNanos, long getNanos, long sum ) {
+      if ( print ) {
+         System.out.printf( "%-42s %11.1f %,14.0f %,14.0f   (checksum %d)%n", name, bytes,
+               ops / ( putNanos / 1e9 ), ops / ( getNanos / 1e9 ), sum );
+      }
+   }
+
+   // Builds a tree, holding it only through a static field, and returns its heap use per entry:
+   // the used heap while the tree is reachable minus the used heap once it has been released.
+   // Random keys may repeat, so this slightly overstates the cost of each distinct key.
+   private static double bytesPerEntry( int entries, Supplier<Object> builder ) {
+      retained = builder.get();
+      long with = usedMemory();
+      retained = null;
+      long without = usedMemory();
+      return (double) ( with - without ) / entries;
+   }
+
+   private static long usedMemory( ) {
+      Runtime runtime = Runtime.getRuntime();
+      for ( int i = 0; i < 3; i++ ) {
+         System.gc();
+      }
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,48 @@
+/**
+ * DESCRIPTION: Measures put throughput when keys arrive in ascending order,
+ * comparing the unbalanced BinarySearchTree with the RedBlackTree.
+ *
+ * Usage: java SequentialInsertBenchmark [entries] [rounds]
+ *
+ * Sorted input degrades BinarySearchTree into a linked list, so each put costs
+ * O(n) and the whole load O(n^2). The red-black tree keeps each put O(log n).
+ */
+public class SequentialInsertBenchmark {
+   public static void main( String[] args ) {
+      int entries = args.length > 0 ? Integer.parseInt( args[0] ) : 20000;
+      int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+
+      System.out.printf( "Sequential insert of %,d keys, best of %d rounds%n", entries, rounds );
+      report( "BinarySearchTree", entries, best( entries, rounds, false ) );
+      report( "RedBlackTree", entries, best( entries, rounds, true ) );
+   }
+
+   // Returns the fastest of several timed loads, after one untimed warm-up load.
+   private static long best( int entries, int rounds, boolean balanced ) {
+      load( entries, balanced );
+      long best = Long.MAX_VALUE;
+      for ( int round = 0; round < rounds; round++ ) {
+         long start = System.nanoTime();
+         AbstractBinarySearchTree<Integer, Integer> tree = load( entries, balanced );
+         long elapsed = System.nanoTime() - start;
+         if ( tree.size() != entries ) {
+            throw new IllegalStateException( "Expected " + entries + " entries, found " + tree.size() );
+         }
+         best = Math.min( best, elapsed );
+      }
+      return best;
+   }
+
+   private static AbstractBinarySearchTree<Integer, Integer> load( int entries, boolean balanced ) {
+      AbstractBinarySearchTree<Integer, Integer> tree = balanced ? new RedBlackTree<>() : new BinarySearchTree<>();
+      for ( int i = 0; i < entries; i++ ) {
+         tree.put( i, i );
+      }
+      return tree;
+   }
+
+   private static void report( String name, int entries, long nanos ) {
+      System.out.printf( "%-18s %10.2f ms %,14.0f puts/s%n", name, nanos / 1e6, entries / ( nanos / 1e9 ) );
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,73 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * DESCRIPTION: Measures union, intersection and difference of a large
+ * RedBlackTree with smaller and equal-sized ones, against the Map methods
+ * they replace: putAll, keySet().retainAll and keySet().removeAll.
+ *
+ * Usage: java -Xms4g -Xmx4g SetAlgebraBenchmark [entries] [rounds]
+ *
+ * Keys are random longs; half of the keys of each smaller tree are also in
+ * the large one. The large tree is rebuilt from sorted arrays before every
+ * timed operation and collected before the timing starts.
+ */
+public class SetAlgebraBenchmark {
+   private static volatile long sink; // Consumes results so the JIT cannot drop the work
+
+   public static void main( String[] args ) {
+      int entries = args.length > 0 ? Integer.parseInt( args[0] ) : 2000000;
+      int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+
+      Random random = new Random( 42 );
+      Long[] keys = new Long[entries];
+      for ( int i = 0; i < entries; i++ ) {
+         keys[i] = random.nextLong();
+      }
+      Arrays.sort( keys );
+
+      System.out.printf( "%,d entries, %d processors, best of %d rounds%n", entries, Runtime.getRuntime().availableProcessors(), rounds );
+      System.out.printf( "%-10s %12s %14s %14s %8s%n", "operation", "other", "Map ms", "set ms", "speedup" );
+      for ( int m : new int[] { 1000, 100000, entries } ) {
+         RedBlackTree<Long, Long> other = new RedBlackTree<>();
+         for ( int i = 0; i < m; i++ ) {
+            Long key = i % 2 == 0 ? keys[random.nextInt( entries )] : random.nextLong();
+            other.put( key, key );
+         }
+         for ( int operation = 0; operation < 3; operation++ ) {
+            double bestMap = Double.MAX_VALUE;
+            double bestSet = Double.MAX_VALUE;
+            for ( int round = 0; round < rounds; round++ ) {
+               RedBlackTree<Long, Long> tree = RedBlackTree.fromSorted( keys, keys );
+               System.gc(); // Collect the previous copy now rather than during the timing
+               long start = System.nanoTime();
+               if ( operation == 0 ) {
+                  tree.putAll( other );
+               } else if ( operation == 1 ) {
+                  tree.keySet().retainAll( other.keySet() );
+               } else {
+                  tree.keySet().removeAll( other.keySet() );
+               }
+               bestMap = Math.min( bestMap, ( System.nanoTime() - start ) / 1e6 );
+               sink += tree.size();
+
+               tree = RedBlackTree.fromSorted( keys, keys );
+               System.gc();
+               start = System.nanoTime();
+               if ( operation == 0 ) {
+                  tree.union( other );
+               } else if ( operation == 1 ) {
+                  tree.intersection( other );
+               } else {
+                  tree.difference( other );
+               }
+               bestSet = Math.min( bestSet, ( System.nanoTime() - start ) / 1e6 );
+               sink += tree.size();
+            }
+            String name = operation == 0 ? "union" : operation == 1 ? "intersect" : "difference";
+            System.out.printf( "%-10s %,12d %,14.1f %,14.1f %7.1fx%n", name, other.size(), bestMap, bestSet, bestMap / bestSet );
+         }
+      }
+   }
+}
+// END OF FILE ==============================================================
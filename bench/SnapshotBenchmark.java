@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * DESCRIPTION: Compares the two ways to restore a RedBlackTree at startup:
+ * putting every mapping again, and reading a snapshot written by
+ * writeSnapshot, which relinks the saved shape without comparing keys.
+ *
+ * Usage: java SnapshotBenchmark [entries] [rounds]
+ * For example: java -Xmx8g SnapshotBenchmark 15000000
+ *
+ * Keys are random longs and values ints. The put rows insert them in
+ * random order, the way a rebuild from an unordered source would.
+ */
+public class SnapshotBenchmark {
+   private static volatile long sink; // Consumes results so the JIT cannot drop the work
+
+   public static void main( String[] args ) throws IOException {
+      int entries = args.length > 0 ? Integer.parseInt( args[0] ) : 2000000;
+      int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 3;
+
+      Random random = new Random( 42 );
+      long[] keys = new long[entries];
+      for ( int i = 0; i < entries; i++ ) {
+         keys[i] = random.nextLong();
+      }
+      Path path = Files.createTempFile( "SnapshotBenchmark", ".snapshot" );
+      try {
+         System.out.printf( "%,d entries%n", entries );
+         System.out.printf( "%-8s %14s %14s %14s%n", "round", "put ms", "write ms", "read ms" );
+         for ( int round = 0; round < rounds; round++ ) {
+            long start = System.nanoTime();
+            RedBlackTree<Long, Integer> tree = new RedBlackTree<>();
+            for ( int i = 0; i < entries; i++ ) {
+               tree.put( keys[i], i );
+            }
+            double put = ( System.nanoTime() - start ) / 1e6;
+
+            start = System.nanoTime();
+            tree.writeSnapshot( path, AbstractBinarySearchTree.Codec.LONG, AbstractBinarySearchTree.Codec.INTEGER );
+            double write = ( System.nanoTime() - start ) / 1e6;
+            sink += tree.size();
+            tree = null; // Let the collector reclaim it before the reload
+
+            start = System.nanoTime();
+            RedBlackTree<Long, Integer> reloaded = new RedBlackTree<>();
+            reloaded.readSnapshot( path, AbstractBinarySearchTree.Codec.LONG, AbstractBinarySearchTree.Codec.INTEGER );
+            double read = ( System.nanoTime() - start ) / 1e6;
+            sink += reloaded.size();
+
+            System.out.printf( "%-8d %,14.0f %,14.0f %,14.0f%n", round, put, write, read );
+         }
+         System.out.printf( "snapshot file: %,d bytes%n", Files.size( path ) );
+      } finally {
+         Files.delete( path );
+      }
+   }
+}
+// END OF FILE ==============================================================
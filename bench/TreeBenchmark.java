@@ -0,0 +1,283 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * DESCRIPTION: Measures the operations of AbstractBinarySearchTree
+ * implementations over several key distributions and map sizes, so that
+ * regressions show up and tree variants can be compared on one harness.
+ *
+ * Usage: java TreeBenchmark [trees] [distributions] [sizes] [rounds]
+ *    trees          comma separated, default BinarySearchTree,RedBlackTree,SplayTree
+ *    distributions  comma separated, default SORTED,REVERSE,UNIFORM,ZIPFIAN
+ *    sizes          comma separated, default 1000,10000,100000,1000000
+ *    rounds         measured rounds per operation, default 5
+ * For example: java -Xmx8g TreeBenchmark RedBlackTree ZIPFIAN 10000000
+ *
+ * Every operation runs two untimed warm-up rounds and then the measured
+ * rounds; the median is reported in nanoseconds per key or per node.
+ *    put            load an empty tree with every key
+ *    get            look up every key in a loaded tree
+ *    remove         remove every key from a loaded tree
+ *    containsValue  search a loaded tree for a missing value (whole-tree scan)
+ *    iterator       iterate over every value
+ *    preorder, inorder, postorder, levelorder
+ *                   visit every node with the traverse methods
+ *
+ * The unbalanced BinarySearchTree degrades into a linked list on sorted and
+ * reverse-sorted keys. Loading is then O(n^2), so those runs are skipped above
+ * DEGENERATE_LIMIT entries.
+ *
+ * The get pass replays the put sequence, so under ZIPFIAN it reads the hot
+ * keys far more often than the rest. Those rows compare the SplayTree, which
+ * moves each accessed key to the root, with the trees that never restructure
+ * on a read.
+ */
+public class TreeBenchmark {
+   private static final int DEGENERATE_LIMIT = 20000;
+   private static final int WARMUP_ROUNDS = 2;
+   private static final double ZIPF_EXPONENT = 0.99;
+
+   private static volatile long sink; // Consumes results so the JIT cannot drop the work
+
+   /**
+    * The order and frequency in which keys are put, looked up and removed.
+    */
+   enum KeyDistribution {
+      SORTED {
+         @Override
+         int[] keys( int n, Random random ) {
+            int[] keys = new int[n];
+            for ( int i = 0; i < n; i++ ) {
+               keys[i] = i;
+            }
+            return keys;
+         }
+      },
+      REVERSE {
+         @Override
+         int[] keys( int n, Random random ) {
+            int[] keys = new int[n];
+            for ( int i = 0; i < n; i++ ) {
+               keys[i] = n - 1 - i;
+            }
+            return keys;
+         }
+      },
+      UNIFORM {
+         // A random permutation, so every key is distinct and the tree holds n entries.
+         @Override
+         int[] keys( int n, Random random ) {
+            int[] keys = SORTED.keys( n, random );
+            for ( int i = n - 1; i > 0; i-- ) {
+               int j = random.nextInt( i + 1 );
+               int swap = keys[i];
+               keys[i] = keys[j];
+               keys[j] = swap;
+            }
+            return keys;
+         }
+      },
+      ZIPFIAN {
+         // n draws from [0, n) where the key of rank r has probability
+         // proportional to 1 / r^s. Ranks are scattered over the key space so
+         // the hot keys are not also the smallest ones. Repeated keys mean
+         // the tree holds fewer than n entries.
+         @Override
+         int[] keys( int n, Random random ) {
+            ZipfGenerator zipf = new ZipfGenerator( n, ZIPF_EXPONENT );
+            int[] scatter = UNIFORM.keys( n, random );
+            int[] keys = new int[n];
+            for ( int i = 0; i < n; i++ ) {
+               keys[i] = scatter[zipf.next( random )];
+            }
+            return keys;
+         }
+      };
+
+      abstract int[] keys( int n, Random random );
+   }
+
+   /**
+    * Draws Zipf-distributed ranks in O(1) per draw with the approximation of
+    * Gray et al., "Quickly Generating Billion-Record Synthetic Databases".
+    */
+   static final class ZipfGenerator {
+      private final int n;
+      private final double theta, alpha, zetan, eta;
+
+      ZipfGenerator( int n, double theta ) {
+         this.n = n;
+         this.theta = theta;
+         double zeta2 = 1 + Math.pow( 0.5, theta );
+         double sum = 0;
+         for ( int i = 1; i <= n; i++ ) {
+            sum += 1 / Math.pow( i, theta );
+         }
+         zetan = sum;
+         alpha = 1 / ( 1 - theta );
+         eta = ( 1 - Math.pow( 2.0 / n, 1 - theta ) ) / ( 1 - zeta2 / zetan );
+      }
+
+      int next( Random random ) {
+         double u = random.nextDouble();
+         double uz = u * zetan;
+         if ( uz < 1 ) {
+            return 0;
+         }
+         if ( uz < 1 + Math.pow( 0.5, theta ) ) {
+            return Math.min( 1, n - 1 );
+         }
+         return Math.min( n - 1, (int) ( n * Math.pow( eta * u - eta + 1, alpha ) ) );
+      }
+   }
+
+   // A timed operation: runs once over the keys and returns the number of keys or nodes it handled.
+   private interface Operation {
+      long run( AbstractBinarySearchTree<Integer, Integer> loaded, Supplier<AbstractBinarySearchTree<Integer, Integer>> factory, int[] keys );
+   }
+
+   private static final String[] OPERATION_NAMES = {
+         "put", "get", "remove", "containsValue", "iterator", "preorder", "inorder", "postorder", "levelorder" };
+
+   private static final Operation[] OPERATIONS = {
+         // put
+         (loaded, factory, keys) -> {
+            AbstractBinarySearchTree<Integer, Integer> tree = factory.get();
+            for ( int key : keys ) {
+               tree.put( key, key );
+            }
+            sink += tree.size();
+            return keys.length;
+         },
+         // get
+         (loaded, factory, keys) -> {
+            long sum = 0;
+            for ( int key : keys ) {
+               sum += loaded.get( key );
+            }
+            sink += sum;
+            return keys.length;
+         },
+         // remove: the only operation that needs a fresh tree, built outside the timer by measure
+         null,
+         // containsValue
+         (loaded, factory, keys) -> {
+            int probes = 10;
+            for ( int i = 0; i < probes; i++ ) {
+               if ( loaded.containsValue( -1 - i ) ) {
+                  sink++;
+               }
+            }
+            return probes;
+         },
+         // iterator
+         (loaded, factory, keys) -> {
+            long sum = 0;
+            Iterator<Integer> it = loaded.iterator();
+            while ( it.hasNext() ) {
+               sum += it.next();
+            }
+            sink += sum;
+            return loaded.size();
+         },
+         (loaded, factory, keys) -> traverse( loaded, 0 ),
+         (loaded, factory, keys) -> traverse( loaded, 1 ),
+         (loaded, factory, keys) -> traverse( loaded, 2 ),
+         (loaded, factory, keys) -> traverse( loaded, 3 ),
+   };
+
+   private static long traverse( AbstractBinarySearchTree<Integer, Integer> tree, int order ) {
+      long[] sum = new long[2];
+      AbstractBinarySearchTree.Visitor visitor = (key, value) -> {
+         sum[0] += (Integer) value;
+         sum[1]++;
+      };
+      switch ( order ) {
+         case 0: tree.traversePreorder( visitor ); break;
+         case 1: tree.traverseInorder( visitor ); break;
+         case 2: tree.traversePostorder( visitor ); break;
+         default: tree.traverseLevelorder( visitor ); break;
+      }
+      sink += sum[0];
+      return sum[1];
+   }
+
+   public static void main( String[] args ) {
+      String[] trees = args.length > 0 ? args[0].split( "," ) : new String[] { "BinarySearchTree", "RedBlackTree", "SplayTree" };
+      String[] distributions = args.length > 1 ? args[1].split( "," ) : new String[] { "SORTED", "REVERSE", "UNIFORM", "ZIPFIAN" };
+      String[] sizes = args.length > 2 ? args[2].split( "," ) : new String[] { "1000", "10000", "100000", "1000000" };
+      int rounds = args.length > 3 ? Integer.parseInt( args[3] ) : 5;
+
+      System.out.printf( "%-18s %-8s %10s %10s %-14s %12s%n", "tree", "keys", "size", "entries", "operation", "ns/op" );
+      for ( String tree : trees ) {
+         Supplier<AbstractBinarySearchTree<Integer, Integer>> factory = factory( tree );
+         for ( String distributionName : distributions ) {
+            KeyDistribution distribution = KeyDistribution.valueOf( distributionName );
+            for ( String sizeText : sizes ) {
+               int size = Integer.parseInt( sizeText );
+               boolean degenerate = distribution == KeyDistribution.SORTED || distribution == KeyDistribution.REVERSE;
+               if ( degenerate && size > DEGENERATE_LIMIT && factory.get() instanceof BinarySearchTree ) {
+                  System.out.printf( "%-18s %-8s %,10d %10s skipped: O(n^2) load on a degenerate tree%n", tree, distribution, size, "" );
+                  continue;
+               }
+               int[] keys = distribution.keys( size, new Random( 42 ) );
+               AbstractBinarySearchTree<Integer, Integer> loaded = factory.get();
+               for ( int key : keys ) {
+                  loaded.put( key, key );
+               }
+               for ( int op = 0; op < OPERATIONS.length; op++ ) {
+                  double nanos = measure( op, loaded, factory, keys, rounds );
+                  System.out.printf( "%-18s %-8s %,10d %,10d %-14s %,12.1f%n", tree, distribution, size, loaded.size(), OPERATION_NAMES[op], nanos );
+               }
+            }
+         }
+      }
+   }
+
+   private static Supplier<AbstractBinarySearchTree<Integer, Integer>> factory( String name ) {
+      switch ( name ) {
+         case "BinarySearchTree": return BinarySearchTree::new;
+         case "RedBlackTree": return RedBlackTree::new;
+         case "SplayTree": return SplayTree::new;
+         default: throw new IllegalArgumentException( "Unknown tree: " + name );
+      }
+   }
+
+   // Returns the median nanoseconds per key or node over the measured rounds.
+   private static double measure( int op, AbstractBinarySearchTree<Integer, Integer> loaded,
+                                  Supplier<AbstractBinarySearchTree<Integer, Integer>> factory, int[] keys, int rounds ) {
+      List<Double> samples = new ArrayList<>(  );
+      for ( int round = 0; round < WARMUP_ROUNDS + rounds; round++ ) {
+         long count;
+         long elapsed;
+         if ( OPERATIONS[op] == null ) {
+            AbstractBinarySearchTree<Integer, Integer> tree = factory.get();
+            for ( int key : keys ) {
+               tree.put( key, key );
+            }
+            long start = System.nanoTime();
+            for ( int key : keys ) {
+               tree.remove( key );
+            }
+            elapsed = System.nanoTime() - start;
+            count = keys.length;
+            sink += tree.size();
+         } else {
+            long start = System.nanoTime();
+            count = OPERATIONS[op].run( loaded, factory, keys );
+            elapsed = System.nanoTime() - start;
+         }
+         if ( round >= WARMUP_ROUNDS ) {
+            samples.add( (double) elapsed / Math.max( 1, count ) );
+         }
+      }
+      Double[] sorted = samples.toArray( new Double[0] );
+      Arrays.sort( sorted );
+      return sorted[sorted.length / 2];
+   }
+}
+// END OF FILE ==============================================================
@@ -1,22 +1,52 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.NoSuchElementException;
-import java.util.Queue;
+import java.util.Objects;
 import java.util.Set;
-import java.util.Stack;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * DESCRIPTION: A Binary Search Tree that functions as a Map.
+ * DESCRIPTION: A Binary Search Tree that functions as a NavigableMap.
  * YOUR TASK: Implement the following three methods
  *    public abstract void traversePostorder( Visitor visitor );
  *    public abstract void traverseLevelorder( Visitor visitor );
  */
-public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> implements Map<K,V>, Iterable<V> {
+public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> implements NavigableMap<K,V>, Iterable<V> {
    // =======================================================================
    // ABSTRACT METHODS
    // =======================================================================
@@ -56,7 +86,7 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
    public abstract V remove ( Object key );
 
    /**
-    * Recursive Algorithm: Postorder Binary Tree Traversal
+    * Iterative Algorithm: Postorder Binary Tree Traversal
     *    1. Postorder traverse the left subtree.
     *    2. Postorder traverse the right subtree.
     *    3. Visit the root.
@@ -71,6 +101,9 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
     *
     *    Postorder traversal: 1, 3, 2, 5, 4
     *
+    * Implementations walk the parent links with walkPostorder instead of
+    * recursing, so they allocate nothing and are safe at any depth.
+    *
     * @param visitor Lambda expression to process the key and value of each node.
     *                For example: (key, value) -> System.out.println( key )
     */
@@ -91,7 +124,8 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
     *
     *    Level order traversal: 4, 2, 5, 1, 3
     *
-    * Hint: Every time you visit a node, add its children to a queue.
+    * Implementations use walkLevelorder, whose queue is a ring buffer that
+    * grows to the widest level reached, with no per-node allocation.
     *
     * @param visitor Lambda expression to process the key and value of each node.
     *                For example: (key, value) -> System.out.println( key )
@@ -109,6 +143,7 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
    protected class KeyValuePair implements Entry<K,V> {
       private K key;
       private V value;
+      private boolean removed = false; // Set once the mapping leaves the tree, so setValue stops writing through
 
       public KeyValuePair ( K key, V value ) {
          this.key = key;
@@ -148,6 +183,8 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
        * value (optional operation).  (Writes through to the map.)  The
        * behavior of this call is undefined if the mapping has already been
        * removed from the map (by the iterator's <tt>remove</tt> operation).
+       * Here it only changes the entry: the value index and the log no
+       * longer see an entry whose mapping was removed.
        *
        * @param value new value to be stored in this entry
        * @return old value corresponding to the entry
@@ -167,6 +204,9 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
       public V setValue ( V value ) {
          V oldValue = this.value;
          this.value = value;
+         if ( !removed ) {
+            recordPut( key, oldValue, value );
+         }
          return oldValue;
       }
 
@@ -183,9 +223,12 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
    protected class Node implements Comparable<Node> {
       private KeyValuePair entry;
       private Node parent, leftChild, rightChild;
+      private int subtreeSize = 1; // The number of nodes in the subtree rooted at this node
+      private long prefix; // The normalized prefix of the key, 0 if keys are not normalized
 
       public Node ( KeyValuePair entry ) {
          this.entry = entry;
+         this.prefix = keyPrefix( entry.getKey() );
       }
 
       /**
@@ -201,6 +244,7 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
        */
       public void setEntry ( KeyValuePair entry ) {
          this.entry = entry;
+         this.prefix = keyPrefix( entry.getKey() );
       }
 
       /**
@@ -246,6 +290,7 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
        */
       public void setLeftChild ( Node leftChild ) {
          this.leftChild = leftChild;
+         cachedHeight = -1;
          if ( leftChild != null ) {
             leftChild.parent = this;
          }
@@ -272,6 +317,7 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
        */
       public void setRightChild ( Node rightChild ) {
          this.rightChild = rightChild;
+         cachedHeight = -1;
          if ( rightChild != null ) {
             rightChild.parent = this;
          }
@@ -306,6 +352,21 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
          return root == this;
       }
 
+      /**
+       * @return the number of nodes in the subtree rooted at this node, including itself.
+       */
+      public int getSubtreeSize( ) {
+         return subtreeSize;
+      }
+
+      /**
+       * Recomputes the subtree size from the sizes of the children.
+       * Must be called whenever the children of the node change.
+       */
+      public void updateSubtreeSize( ) {
+         subtreeSize = 1 + sizeOf( leftChild ) + sizeOf( rightChild );
+      }
+
       /**
        * @return true if the node is a leaf, i.e. it has no children.
        */
@@ -356,7 +417,7 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
          if ( getEntry( ) == null || o.getEntry( ) == null ) {
             throw new NullPointerException( "Can't compare null values." );
          }
-         return getEntry( ).getKey().compareTo( o.getEntry( ).getKey() );
+         return compareKeys( getEntry( ).getKey(), o.getEntry( ).getKey() );
       }
 
       /**
@@ -375,18 +436,135 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
       public void visit( Object key, Object value );
    }
 
+   /**
+    * A typed functional interface used to visit nodes in a traversal that
+    * may stop early.
+    */
+   public interface TreeVisitor<K, V> {
+      /**
+       * @param key the key of the node
+       * @param value the value of the node
+       * @return true to continue the traversal, false to stop it
+       */
+      public boolean visit( K key, V value );
+   }
+
+   /**
+    * Maps keys to long prefixes that agree with the order of the tree: if
+    * one key sorts before another, its prefix is less than or equal to the
+    * other's. Each node caches the prefix of its key, so a search compares
+    * the prefixes as primitives and only calls compareTo on a tie.
+    */
+   public interface KeyNormalizer<K> {
+      /**
+       * The first four chars of a String, for the natural ordering. Keys
+       * that share their first four chars tie and fall back to compareTo.
+       */
+      public static final KeyNormalizer<String> STRING_PREFIX = key -> {
+         long prefix = 0;
+         for ( int i = 0; i < 4; i++ ) {
+            prefix = prefix << 16 | ( i < key.length() ? key.charAt( i ) : 0 );
+         }
+         return prefix ^ Long.MIN_VALUE; // Signed order of the result is unsigned order of the chars
+      };
+
+      /**
+       * The most significant bits of a UUID, which UUID.compareTo compares first.
+       */
+      public static final KeyNormalizer<UUID> UUID_PREFIX = UUID::getMostSignificantBits;
+
+      /**
+       * @param key a key, never null
+       * @return the prefix of key
+       */
+      public long prefix( K key );
+   }
+
+   /**
+    * Encodes keys or values for writeSnapshot and decodes them for
+    * readSnapshot. Both directions work on a ByteBuffer; a codec that runs
+    * out of room throws the BufferOverflowException or
+    * BufferUnderflowException of the buffer, and the caller retries with a
+    * larger one.
+    */
+   public interface Codec<T> {
+      public static final Codec<Integer> INTEGER = new Codec<Integer>( ) {
+         @Override
+         public void write( Integer value, ByteBuffer out ) {
+            out.putInt( value );
+         }
+
+         @Override
+         public Integer read( ByteBuffer in ) {
+            return in.getInt();
+         }
+      };
+
+      public static final Codec<Long> LONG = new Codec<Long>( ) {
+         @Override
+         public void write( Long value, ByteBuffer out ) {
+            out.putLong( value );
+         }
+
+         @Override
+         public Long read( ByteBuffer in ) {
+            return in.getLong();
+         }
+      };
+
+      /**
+       * UTF-8 bytes after their count.
+       */
+      public static final Codec<String> STRING = new Codec<String>( ) {
+         @Override
+         public void write( String value, ByteBuffer out ) {
+            byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+            out.putInt( bytes.length ).put( bytes );
+         }
+
+         @Override
+         public String read( ByteBuffer in ) {
+            int length = in.getInt();
+            if ( length < 0 || length > in.remaining() ) {
+               throw new BufferUnderflowException(  ); // Corrupt or cut short, so never allocate the length
+            }
+            byte[] bytes = new byte[length];
+            in.get( bytes );
+            return new String( bytes, StandardCharsets.UTF_8 );
+         }
+      };
+
+      /**
+       * @param value the object to encode, never null
+       * @param out the buffer to write it to at its position
+       */
+      public void write( T value, ByteBuffer out );
+
+      /**
+       * @param in the buffer to read from at its position
+       * @return the decoded object
+       */
+      public T read( ByteBuffer in );
+   }
+
+   // Adapts an untyped Visitor to a TreeVisitor that never stops.
+   private static <K, V> TreeVisitor<K, V> always( Visitor visitor ) {
+      return (key, value) -> {
+         visitor.visit( key, value );
+         return true;
+      };
+   }
+
    /**
     * An implementation of the ITerator interface.
     * Used to iterate through the values in the BST in an inorder fashion.
+    * The iterator walks from node to inorder successor using the parent links,
+    * so it holds a single node reference instead of a copy of the tree.
     */
    private class TreeIterator implements Iterator<V> {
-      private LinkedList<V> list = new LinkedList<>(  );
+      private Node next = firstNode( );
       private int setpoint = changeCounter;
 
-      public TreeIterator( ) {
-         traverseInorder( (key, value) -> list.add( (V) value ) );
-      }
-
       /**
        * Returns {@code true} if the iteration has more elements.
        * (In other words, returns {@code true} if {@link #next} would
@@ -396,7 +574,7 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
        */
       @Override
       public boolean hasNext ( ) {
-         return !list.isEmpty();
+         return next != null;
       }
 
       /**
@@ -408,443 +586,3651 @@ public abstract class AbstractBinarySearchTree<K extends Comparable<K>, V> imple
       @Override
       public V next ( ) {
          if ( setpoint != changeCounter ) {
-            throw new ConcurrentModificationException(  );
+            throw concurrentModification();
          }
-         if ( list.isEmpty() ) {
+         if ( next == null ) {
             throw new NoSuchElementException(  );
          }
-         return list.poll();
+         V value = next.getValue();
+         next = successor( next );
+         return value;
       }
    }
 
-   // =======================================================================
-   // INSTANCE VARIABLES
-   // =======================================================================
+   /**
+    * Walks a range of nodes in ascending or descending key order.
+    * Supports removal through the tree, and fails fast when the tree is
+    * modified by anything other than this iterator.
+    */
+   private abstract class RangeIterator<T> implements Iterator<T> {
+      private final SubMap range;
+      private Node next;
+      private Node lastReturned = null;
+      private int setpoint = changeCounter;
 
-   private Node root = null; // Root node of the BST
-   private int changeCounter = 0; // Incremented every time a change is made to the BST.
-   private int size = 0; // The number of nodes in the BST
+      RangeIterator( SubMap range ) {
+         this.range = range;
+         this.next = range.subLowest();
+      }
 
-   // =======================================================================
-   // INSTANCE METHODS
-   // =======================================================================
+      /**
+       * @param node the node to convert
+       * @return the element of the iteration held by node
+       */
+      abstract T element( Node node );
 
-   /**
-    * @return the root node of the BST, or null if the tree is empty.
-    */
-   protected Node getRoot( ) {
-      return root;
-   }
+      @Override
+      public boolean hasNext ( ) {
+         return next != null;
+      }
 
-   /**
-    * Set the root node of the tree.
-    * @param newRoot a node
-    */
-   protected void setRoot( Node newRoot ) {
-      root = newRoot;
-   }
+      @Override
+      public T next ( ) {
+         if ( setpoint != changeCounter ) {
+            throw concurrentModification();
+         }
+         if ( next == null ) {
+            throw new NoSuchElementException(  );
+         }
+         lastReturned = next;
+         next = range.descending ? predecessor( next ) : successor( next );
+         if ( next != null && !range.inRange( next.getKey() ) ) {
+            next = null;
+         }
+         return element( lastReturned );
+      }
 
-   /**
-    * Increments the change counter.
-    * @return the value of the change counter after incrementing.
-    */
-   protected int incrementChangeCounter( ) {
-      return ++changeCounter;
+      /**
+       * Removes the mapping of the element last returned by next from the tree.
+       * Removal relinks nodes rather than copying entries, so the next node
+       * stays valid.
+       */
+      @Override
+      public void remove ( ) {
+         if ( lastReturned == null ) {
+            throw new IllegalStateException(  );
+         }
+         if ( setpoint != changeCounter ) {
+            throw concurrentModification();
+         }
+         AbstractBinarySearchTree.this.remove( lastReturned.getKey() );
+         lastReturned = null;
+         setpoint = changeCounter;
+      }
    }
 
    /**
-    * @return the number of nodes in the BST.
+    * Splits an ascending range of nodes by position. The range is the
+    * positions index to fence - 1 in key order, bound from the SubMap on
+    * first use; trySplit hands off the lower half, finding its first node
+    * with selectNode, so both halves know their exact size and a split costs
+    * O(height) however unbalanced the tree is. Fails fast when the tree is
+    * modified.
     */
-   public int size( ) {
-      return size;
-   }
+   private class RankSpliterator<T> implements Spliterator<T> {
+      private final SubMap range;
+      private final Function<Node, T> element;
+      private final int characteristics;
+      private final Comparator<? super T> comparator;
+      private Node next; // The node at index, or null until it is located
+      private int index;
+      private int fence = -1; // One past the last position, or -1 until bound
+      private int setpoint;
 
-   /**
-    * Set the size variable of the BST.
-    * @param newSize represents the new number of nodes in the BST.
-    */
-   protected void setSize( int newSize ) {
-      size = newSize;
+      RankSpliterator( SubMap range, Function<Node, T> element, int characteristics, Comparator<? super T> comparator ) {
+         this.range = range;
+         this.element = element;
+         this.characteristics = characteristics;
+         this.comparator = comparator;
+      }
+
+      private int getFence( ) {
+         if ( fence < 0 ) {
+            setpoint = changeCounter;
+            index = range.fromStart ? 0 : countBelow( range.lo, !range.loInclusive );
+            fence = range.toEnd ? size() : countBelow( range.hi, range.hiInclusive );
+         }
+         return fence;
+      }
+
+      @Override
+      public Spliterator<T> trySplit( ) {
+         int hi = getFence();
+         int mid = ( index + hi ) >>> 1;
+         if ( mid <= index ) {
+            return null;
+         }
+         RankSpliterator<T> prefix = new RankSpliterator<>( range, element, characteristics, comparator );
+         prefix.next = next;
+         prefix.index = index;
+         prefix.fence = mid;
+         prefix.setpoint = setpoint;
+         index = mid;
+         next = null;
+         return prefix;
+      }
+
+      @Override
+      public boolean tryAdvance( Consumer<? super T> action ) {
+         if ( action == null ) {
+            throw new NullPointerException(  );
+         }
+         if ( index >= getFence() ) {
+            return false;
+         }
+         if ( setpoint != changeCounter ) {
+            throw concurrentModification();
+         }
+         if ( next == null ) {
+            next = selectNode( index );
+         }
+         Node node = next;
+         next = successor( node );
+         index++;
+         action.accept( element.apply( node ) );
+         return true;
+      }
+
+      @Override
+      public void forEachRemaining( Consumer<? super T> action ) {
+         if ( action == null ) {
+            throw new NullPointerException(  );
+         }
+         int hi = getFence();
+         if ( index >= hi ) {
+            return;
+         }
+         if ( setpoint != changeCounter ) {
+            throw concurrentModification();
+         }
+         Node node = next != null ? next : selectNode( index );
+         for ( ; index < hi; index++ ) {
+            action.accept( element.apply( node ) );
+            node = successor( node );
+         }
+         next = node;
+         if ( setpoint != changeCounter ) {
+            throw concurrentModification();
+         }
+      }
+
+      @Override
+      public long estimateSize( ) {
+         return getFence() - index;
+      }
+
+      @Override
+      public int characteristics( ) {
+         return characteristics;
+      }
+
+      @Override
+      public Comparator<? super T> getComparator( ) {
+         if ( ( characteristics & SORTED ) == 0 ) {
+            throw new IllegalStateException(  );
+         }
+         return comparator;
+      }
    }
 
-   /**
-    * Increments the size variable.
-    * @return the size after incrementing
-    */
-   protected int incrementSize( ) {
-      return ++size;
+   private static final int SPLITERATOR_BASE = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL;
+
+   // Spliterators over an ascending range of keys, values or entries.
+   private Spliterator<K> keySpliterator( SubMap range ) {
+      return new RankSpliterator<>( range, Node::getKey, SPLITERATOR_BASE | Spliterator.DISTINCT | Spliterator.SORTED, comparator );
    }
 
-   /**
-    * Decrements the size variable of the BST.
-    * @return the size after decrementing.
-    */
-   protected int decrementSize( ) {
-      return --size;
+   private Spliterator<V> valueSpliterator( SubMap range ) {
+      return new RankSpliterator<>( range, Node::getValue, SPLITERATOR_BASE, null );
    }
 
-   /**
-    * @return true if there are no nodes in the BST.
-    */
-   public boolean isEmpty( ) {
-      return size() == 0;
+   private Spliterator<Entry<K,V>> entrySpliterator( SubMap range ) {
+      return new RankSpliterator<>( range, Node::getEntry, SPLITERATOR_BASE | Spliterator.DISTINCT | Spliterator.SORTED,
+            comparator == null ? Entry.<K,V>comparingByKey() : Entry.<K,V>comparingByKey( comparator ) );
    }
 
    /**
-    * Returns the value to which the specified key is mapped,
-    * or {@code null} if this map contains no mapping for the key.
-    *
-    * <p>More formally, if this map contains a mapping from a key
-    * {@code k} to a value {@code v} such that {@code (key==null ? k==null :
-    * key.equals(k))}, then this method returns {@code v}; otherwise
-    * it returns {@code null}.  (There can be at most one such mapping.)
-    *
-    * <p>If this map permits null values, then a return value of
-    * {@code null} does not <i>necessarily</i> indicate that the map
-    * contains no mapping for the key; it's also possible that the map
-    * explicitly maps the key to {@code null}.  The {@link #containsKey
-    * containsKey} operation may be used to distinguish these two cases.
-    *
-    * @param key the key whose associated value is to be returned
-    * @return the value to which the specified key is mapped, or
-    *      {@code null} if this map contains no mapping for the key
-    * @throws ClassCastException   if the key is of an inappropriate type for
-    *                              this map
-    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
-    * @throws NullPointerException if the specified key is null and this map
-    *                              does not permit null keys
-    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    * A live view of the mappings whose keys lie between two optional bounds,
+    * in ascending or descending order. Every operation goes to the backing
+    * tree, descending from the root, so a range of k mappings is reached in
+    * O(height) and walked in O(height + k).
     */
-   @Override
-   public V get ( Object key ) {
-      if ( key == null ) {
-         throw new NullPointerException( "Specified key is null." );
+   private class SubMap extends AbstractMap<K,V> implements NavigableMap<K,V> {
+      private final boolean fromStart, toEnd; // true if the range is unbounded below / above
+      private final K lo, hi;
+      private final boolean loInclusive, hiInclusive;
+      private final boolean descending;
+
+      SubMap( boolean fromStart, K lo, boolean loInclusive,
+              boolean toEnd, K hi, boolean hiInclusive, boolean descending ) {
+         if ( ( !fromStart && lo == null ) || ( !toEnd && hi == null ) ) {
+            throw new NullPointerException( "Specified key is null." );
+         }
+         if ( !fromStart && !toEnd && compareKeys( lo, hi ) > 0 ) {
+            throw new IllegalArgumentException( "fromKey > toKey" );
+         }
+         this.fromStart = fromStart;
+         this.lo = lo;
+         this.loInclusive = loInclusive;
+         this.toEnd = toEnd;
+         this.hi = hi;
+         this.hiInclusive = hiInclusive;
+         this.descending = descending;
       }
-      Node currentNode = getRoot();
-      while( currentNode != null ) {
-         if ( ((K) key).compareTo( currentNode.getKey() ) == 0 ) {
-            return currentNode.getValue();
-         } else if ( ((K) key).compareTo( currentNode.getKey() ) < 0 ) {
-            currentNode = currentNode.getLeftChild();
-         } else {
-            currentNode = currentNode.getRightChild();
+
+      // ---- Range checks, in ascending key order ----
+
+      private boolean tooLow( K key ) {
+         if ( !fromStart ) {
+            int cmp = compareKeys( key, lo );
+            return cmp < 0 || ( cmp == 0 && !loInclusive );
          }
+         return false;
       }
-      return null;
-   }
 
-   /**
-    * Associates the specified value with the specified key in this map
-    * (optional operation).  If the map previously contained a mapping for
-    * the key, the old value is replaced by the specified value.  (A map
-    * <tt>m</tt> is said to contain a mapping for a key <tt>k</tt> if and only
-    * if {@link #containsKey(Object) m.containsKey(k)} would return
-    * <tt>true</tt>.)
-    *
-    * @param key   key with which the specified value is to be associated
-    * @param value value to be associated with the specified key
-    * @return the previous value associated with <tt>key</tt>, or
-    *      <tt>null</tt> if there was no mapping for <tt>key</tt>.
-    *      (A <tt>null</tt> return can also indicate that the map
-    *      previously associated <tt>null</tt> with <tt>key</tt>,
-    *      if the implementation supports <tt>null</tt> values.)
-    * @throws UnsupportedOperationException if the <tt>put</tt> operation
-    *                                       is not supported by this map
-    * @throws ClassCastException            if the class of the specified key or value
-    *                                       prevents it from being stored in this map
-    * @throws NullPointerException          if the specified key or value is null
-    *                                       and this map does not permit null keys or values
-    * @throws IllegalArgumentException      if some property of the specified key
-    *                                       or value prevents it from being stored in this map
-    */
-   @Override
-   public V put ( K key, V value ) {
-      if ( key == null ) {
-         throw new NullPointerException( "Specified key is null." );
+      private boolean tooHigh( K key ) {
+         if ( !toEnd ) {
+            int cmp = compareKeys( key, hi );
+            return cmp > 0 || ( cmp == 0 && !hiInclusive );
+         }
+         return false;
       }
-      if ( value == null ) {
-         throw new NullPointerException( "Specified value is null." );
+
+      private boolean inRange( K key ) {
+         return !tooLow( key ) && !tooHigh( key );
       }
-      Node newNode = new Node( new KeyValuePair( key, value ) );
-      Node currentNode = getRoot();
-      Node prevNode = null;
-      while( currentNode != null ) {
-         prevNode = currentNode;
-         if ( key.compareTo( currentNode.getKey() ) == 0 ) {
-            V oldValue = currentNode.getValue();
-            currentNode.setValue( value );
-            incrementChangeCounter();
-            return oldValue;
-         } else if ( key.compareTo( currentNode.getKey() ) < 0 ) {
-            currentNode = currentNode.getLeftChild();
-         } else {
-            currentNode = currentNode.getRightChild();
+
+      // A bound of a nested range may equal an exclusive bound of this range
+      private boolean inRange( K key, boolean inclusive ) {
+         if ( inclusive ) {
+            return inRange( key );
          }
+         return ( fromStart || compareKeys( key, lo ) >= 0 ) && ( toEnd || compareKeys( key, hi ) <= 0 );
       }
+
+      // ---- Nodes of the range, in ascending key order ----
+
+      private Node absLowest( ) {
+         Node node = fromStart ? firstNode() : loInclusive ? ceilingNode( lo ) : higherNode( lo );
+         return node == null || tooHigh( node.getKey() ) ? null : node;
+      }
+
+      private Node absHighest( ) {
+         Node node = toEnd ? lastNode() : hiInclusive ? floorNode( hi ) : lowerNode( hi );
+         return node == null || tooLow( node.getKey() ) ? null : node;
+      }
+
+      private Node absCeiling( K key ) {
+         if ( tooLow( key ) ) {
+            return absLowest();
+         }
+         Node node = ceilingNode( key );
+         return node == null || tooHigh( node.getKey() ) ? null : node;
+      }
+
+      private Node absHigher( K key ) {
+         if ( tooLow( key ) ) {
+            return absLowest();
+         }
+         Node node = higherNode( key );
+         return node == null || tooHigh( node.getKey() ) ? null : node;
+      }
+
+      private Node absFloor( K key ) {
+         if ( tooHigh( key ) ) {
+            return absHighest();
+         }
+         Node node = floorNode( key );
+         return node == null || tooLow( node.getKey() ) ? null : node;
+      }
+
+      private Node absLower( K key ) {
+         if ( tooHigh( key ) ) {
+            return absHighest();
+         }
+         Node node = lowerNode( key );
+         return node == null || tooLow( node.getKey() ) ? null : node;
+      }
+
+      // ---- Nodes of the range, in the order of this view ----
+
+      Node subLowest( ) {
+         return descending ? absHighest() : absLowest();
+      }
+
+      Node subHighest( ) {
+         return descending ? absLowest() : absHighest();
+      }
+
+      // ---- Map methods ----
+
+      @Override
+      public int size ( ) {
+         int high = toEnd ? AbstractBinarySearchTree.this.size() : countBelow( hi, hiInclusive );
+         int low = fromStart ? 0 : countBelow( lo, !loInclusive );
+         return high - low;
+      }
+
+      @Override
+      public boolean isEmpty ( ) {
+         return absLowest() == null;
+      }
+
+      @Override
+      public boolean containsKey ( Object key ) {
+         return inRange( (K) key ) && AbstractBinarySearchTree.this.containsKey( key );
+      }
+
+      @Override
+      public V get ( Object key ) {
+         return inRange( (K) key ) ? AbstractBinarySearchTree.this.get( key ) : null;
+      }
+
+      @Override
+      public V put ( K key, V value ) {
+         if ( !inRange( key ) ) {
+            throw new IllegalArgumentException( "key out of range" );
+         }
+         return AbstractBinarySearchTree.this.put( key, value );
+      }
+
+      @Override
+      public V remove ( Object key ) {
+         return inRange( (K) key ) ? AbstractBinarySearchTree.this.remove( key ) : null;
+      }
+
+      @Override
+      public Set<Entry<K,V>> entrySet ( ) {
+         return new AbstractSet<Entry<K,V>>( ) {
+            @Override
+            public Iterator<Entry<K,V>> iterator ( ) {
+               return new RangeIterator<Entry<K,V>>( SubMap.this ) {
+                  @Override
+                  Entry<K,V> element( Node node ) {
+                     return node.getEntry();
+                  }
+               };
+            }
+
+            @Override
+            public Spliterator<Entry<K,V>> spliterator ( ) {
+               return descending ? super.spliterator() : entrySpliterator( SubMap.this );
+            }
+
+            @Override
+            public int size ( ) {
+               return SubMap.this.size();
+            }
+
+            @Override
+            public boolean isEmpty ( ) {
+               return SubMap.this.isEmpty();
+            }
+
+            @Override
+            public boolean contains ( Object o ) {
+               if ( !( o instanceof Entry ) ) {
+                  return false;
+               }
+               Entry<?,?> entry = (Entry<?,?>) o;
+               V value = get( entry.getKey() );
+               return value != null && value.equals( entry.getValue() );
+            }
+
+            @Override
+            public boolean remove ( Object o ) {
+               if ( !contains( o ) ) {
+                  return false;
+               }
+               SubMap.this.remove( ((Entry<?,?>) o).getKey() );
+               return true;
+            }
+         };
+      }
+
+      // ---- SortedMap and NavigableMap methods ----
+
+      @Override
+      public Comparator<? super K> comparator ( ) {
+         Comparator<? super K> order = AbstractBinarySearchTree.this.comparator();
+         return descending ? Collections.reverseOrder( order ) : order;
+      }
+
+      @Override
+      public K firstKey ( ) {
+         return key( subLowest() );
+      }
+
+      @Override
+      public K lastKey ( ) {
+         return key( subHighest() );
+      }
+
+      @Override
+      public Entry<K,V> firstEntry ( ) {
+         return exportEntry( subLowest() );
+      }
+
+      @Override
+      public Entry<K,V> lastEntry ( ) {
+         return exportEntry( subHighest() );
+      }
+
+      @Override
+      public Entry<K,V> pollFirstEntry ( ) {
+         return pollNode( subLowest() );
+      }
+
+      @Override
+      public Entry<K,V> pollLastEntry ( ) {
+         return pollNode( subHighest() );
+      }
+
+      @Override
+      public Entry<K,V> lowerEntry ( K key ) {
+         return exportEntry( descending ? absHigher( key ) : absLower( key ) );
+      }
+
+      @Override
+      public K lowerKey ( K key ) {
+         return keyOrNull( descending ? absHigher( key ) : absLower( key ) );
+      }
+
+      @Override
+      public Entry<K,V> floorEntry ( K key ) {
+         return exportEntry( descending ? absCeiling( key ) : absFloor( key ) );
+      }
+
+      @Override
+      public K floorKey ( K key ) {
+         return keyOrNull( descending ? absCeiling( key ) : absFloor( key ) );
+      }
+
+      @Override
+      public Entry<K,V> ceilingEntry ( K key ) {
+         return exportEntry( descending ? absFloor( key ) : absCeiling( key ) );
+      }
+
+      @Override
+      public K ceilingKey ( K key ) {
+         return keyOrNull( descending ? absFloor( key ) : absCeiling( key ) );
+      }
+
+      @Override
+      public Entry<K,V> higherEntry ( K key ) {
+         return exportEntry( descending ? absLower( key ) : absHigher( key ) );
+      }
+
+      @Override
+      public K higherKey ( K key ) {
+         return keyOrNull( descending ? absLower( key ) : absHigher( key ) );
+      }
+
+      @Override
+      public NavigableMap<K,V> descendingMap ( ) {
+         return new SubMap( fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending );
+      }
+
+      @Override
+      public NavigableSet<K> navigableKeySet ( ) {
+         return new KeyView( this );
+      }
+
+      @Override
+      public Set<K> keySet ( ) {
+         return navigableKeySet();
+      }
+
+      @Override
+      public NavigableSet<K> descendingKeySet ( ) {
+         return new KeyView( descendingMap() );
+      }
+
+      @Override
+      public NavigableMap<K,V> subMap ( K fromKey, boolean fromInclusive, K toKey, boolean toInclusive ) {
+         if ( !inRange( fromKey, fromInclusive ) ) {
+            throw new IllegalArgumentException( "fromKey out of range" );
+         }
+         if ( !inRange( toKey, toInclusive ) ) {
+            throw new IllegalArgumentException( "toKey out of range" );
+         }
+         if ( descending ) {
+            return new SubMap( false, toKey, toInclusive, false, fromKey, fromInclusive, true );
+         }
+         return new SubMap( false, fromKey, fromInclusive, false, toKey, toInclusive, false );
+      }
+
+      @Override
+      public NavigableMap<K,V> headMap ( K toKey, boolean inclusive ) {
+         if ( !inRange( toKey, inclusive ) ) {
+            throw new IllegalArgumentException( "toKey out of range" );
+         }
+         if ( descending ) {
+            return new SubMap( false, toKey, inclusive, toEnd, hi, hiInclusive, true );
+         }
+         return new SubMap( fromStart, lo, loInclusive, false, toKey, inclusive, false );
+      }
+
+      @Override
+      public NavigableMap<K,V> tailMap ( K fromKey, boolean inclusive ) {
+         if ( !inRange( fromKey, inclusive ) ) {
+            throw new IllegalArgumentException( "fromKey out of range" );
+         }
+         if ( descending ) {
+            return new SubMap( fromStart, lo, loInclusive, false, fromKey, inclusive, true );
+         }
+         return new SubMap( false, fromKey, inclusive, toEnd, hi, hiInclusive, false );
+      }
+
+      @Override
+      public SortedMap<K,V> subMap ( K fromKey, K toKey ) {
+         return subMap( fromKey, true, toKey, false );
+      }
+
+      @Override
+      public SortedMap<K,V> headMap ( K toKey ) {
+         return headMap( toKey, false );
+      }
+
+      @Override
+      public SortedMap<K,V> tailMap ( K fromKey ) {
+         return tailMap( fromKey, true );
+      }
+   }
+
+   /**
+    * A live NavigableSet view of the keys of a NavigableMap.
+    * Removing a key removes its mapping from the map.
+    */
+   private class KeyView extends AbstractSet<K> implements NavigableSet<K> {
+      private final NavigableMap<K,V> map;
+
+      KeyView( NavigableMap<K,V> map ) {
+         this.map = map;
+      }
+
+      @Override
+      public Iterator<K> iterator ( ) {
+         Iterator<Entry<K,V>> entries = map.entrySet().iterator();
+         return new Iterator<K>( ) {
+            @Override
+            public boolean hasNext ( ) {
+               return entries.hasNext();
+            }
+
+            @Override
+            public K next ( ) {
+               return entries.next().getKey();
+            }
+
+            @Override
+            public void remove ( ) {
+               entries.remove();
+            }
+         };
+      }
+
+      @Override
+      public Iterator<K> descendingIterator ( ) {
+         return descendingSet().iterator();
+      }
+
+      @Override
+      public Spliterator<K> spliterator ( ) {
+         if ( map instanceof AbstractBinarySearchTree.SubMap && !((SubMap) map).descending ) {
+            return keySpliterator( (SubMap) map );
+         }
+         return NavigableSet.super.spliterator();
+      }
+
+      @Override
+      public int size ( ) {
+         return map.size();
+      }
+
+      @Override
+      public boolean isEmpty ( ) {
+         return map.isEmpty();
+      }
+
+      @Override
+      public boolean contains ( Object o ) {
+         return map.containsKey( o );
+      }
+
+      @Override
+      public boolean remove ( Object o ) {
+         if ( !map.containsKey( o ) ) {
+            return false;
+         }
+         map.remove( o );
+         return true;
+      }
+
+      @Override
+      public void clear ( ) {
+         map.clear();
+      }
+
+      @Override
+      public Comparator<? super K> comparator ( ) {
+         return map.comparator();
+      }
+
+      @Override
+      public K first ( ) {
+         return map.firstKey();
+      }
+
+      @Override
+      public K last ( ) {
+         return map.lastKey();
+      }
+
+      @Override
+      public K lower ( K key ) {
+         return map.lowerKey( key );
+      }
+
+      @Override
+      public K floor ( K key ) {
+         return map.floorKey( key );
+      }
+
+      @Override
+      public K ceiling ( K key ) {
+         return map.ceilingKey( key );
+      }
+
+      @Override
+      public K higher ( K key ) {
+         return map.higherKey( key );
+      }
+
+      @Override
+      public K pollFirst ( ) {
+         Entry<K,V> entry = map.pollFirstEntry();
+         return entry == null ? null : entry.getKey();
+      }
+
+      @Override
+      public K pollLast ( ) {
+         Entry<K,V> entry = map.pollLastEntry();
+         return entry == null ? null : entry.getKey();
+      }
+
+      @Override
+      public NavigableSet<K> descendingSet ( ) {
+         return new KeyView( map.descendingMap() );
+      }
+
+      @Override
+      public NavigableSet<K> subSet ( K fromElement, boolean fromInclusive, K toElement, boolean toInclusive ) {
+         return new KeyView( map.subMap( fromElement, fromInclusive, toElement, toInclusive ) );
+      }
+
+      @Override
+      public NavigableSet<K> headSet ( K toElement, boolean inclusive ) {
+         return new KeyView( map.headMap( toElement, inclusive ) );
+      }
+
+      @Override
+      public NavigableSet<K> tailSet ( K fromElement, boolean inclusive ) {
+         return new KeyView( map.tailMap( fromElement, inclusive ) );
+      }
+
+      @Override
+      public SortedSet<K> subSet ( K fromElement, K toElement ) {
+         return subSet( fromElement, true, toElement, false );
+      }
+
+      @Override
+      public SortedSet<K> headSet ( K toElement ) {
+         return headSet( toElement, false );
+      }
+
+      @Override
+      public SortedSet<K> tailSet ( K fromElement ) {
+         return tailSet( fromElement, true );
+      }
+   }
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private Node root = null; // Root node of the BST
+   private int changeCounter = 0; // Incremented every time a change is made to the BST.
+   private int clearCounter = 0; // Incremented by clear, which detaches nodes without recordRemoval
+   private int size = 0; // The number of nodes in the BST
+   private int cachedHeight = -1; // The height height() computed, -1 once a link changed since
+   private Map<Object, Object> valueIndex = null; // Value -> key, or a TreeSet of keys sharing it; null unless enabled
+   private WriteAheadLog<K, V> log = null; // Receives every change while the tree is durable
+   private TreeMetrics metrics = null; // Operation counters, null unless enabled
+   private ImbalanceAlarm imbalanceAlarm = null; // Called when an insert lands too deep, null if not set
+   private double imbalanceThreshold; // Multiple of log2( size + 1 ) an insert depth may reach
+   private int nextAlarmDepth; // The alarm stays quiet until an insert is at least this deep
+   private Path snapshotPath = null; // Where checkpoint writes the snapshot the log continues from
+   private final Comparator<? super K> comparator; // The order of the keys, null for their natural ordering
+   private final KeyNormalizer<? super K> normalizer; // Caches key prefixes in the nodes, null if not normalized
+
+   // =======================================================================
+   // CONSTRUCTORS
+   // =======================================================================
+
+   /**
+    * Creates an empty tree ordered by the natural ordering of its keys.
+    */
+   protected AbstractBinarySearchTree( ) {
+      this( null, null );
+   }
+
+   /**
+    * Creates an empty tree ordered by a comparator.
+    * @param comparator the order of the keys, or null for their natural ordering
+    */
+   protected AbstractBinarySearchTree( Comparator<? super K> comparator ) {
+      this( comparator, null );
+   }
+
+   /**
+    * Creates an empty tree ordered by a comparator whose nodes cache a
+    * normalized prefix of their keys.
+    * @param comparator the order of the keys, or null for their natural ordering
+    * @param normalizer maps keys to prefixes that agree with that order, or
+    *                   null to always compare the keys themselves
+    */
+   protected AbstractBinarySearchTree( Comparator<? super K> comparator, KeyNormalizer<? super K> normalizer ) {
+      this.comparator = comparator;
+      this.normalizer = normalizer;
+   }
+
+   // =======================================================================
+   // INSTANCE METHODS
+   // =======================================================================
+
+   /**
+    * @return the root node of the BST, or null if the tree is empty.
+    */
+   protected Node getRoot( ) {
+      return root;
+   }
+
+   /**
+    * Set the root node of the tree.
+    * @param newRoot a node
+    */
+   protected void setRoot( Node newRoot ) {
+      root = newRoot;
+      cachedHeight = -1;
+      if ( newRoot != null ) {
+         newRoot.setParent( null );
+      }
+   }
+
+   /**
+    * Creates the node that will hold a new mapping.
+    * Subclasses that keep extra per-node state (e.g. a color) override this
+    * to return their own Node subclass.
+    * @param key the key of the new mapping
+    * @param value the value of the new mapping
+    * @return a detached node holding the mapping
+    */
+   protected Node createNode( K key, V value ) {
+      return new Node( new KeyValuePair( key, value ) );
+   }
+
+   /**
+    * Called by put after a new node has been linked into the tree, before
+    * the size and change counter are updated. Self-balancing subclasses
+    * override this to restore their invariants. The default does nothing.
+    * @param node the node that was just inserted
+    */
+   protected void afterInsert( Node node ) {
+   }
+
+   /**
+    * Replaces the subtree rooted at oldChild with the subtree rooted at newChild.
+    * @param parent the parent of oldChild, or null if oldChild is the root
+    * @param oldChild the node being replaced
+    * @param newChild the replacement, may be null
+    */
+   protected void replaceChild( Node parent, Node oldChild, Node newChild ) {
+      if ( parent == null ) {
+         setRoot( newChild );
+      } else if ( parent.getLeftChild() == oldChild ) {
+         parent.setLeftChild( newChild );
+      } else {
+         parent.setRightChild( newChild );
+      }
+   }
+
+   /**
+    * Left rotation around node. Its right child takes its place and node
+    * becomes the left child of that right child.
+    *
+    *        node                pivot
+    *        /  \                /  \
+    *       a   pivot    =>    node   c
+    *           /  \           /  \
+    *          b    c         a    b
+    *
+    * @param node a node with a right child
+    */
+   protected void rotateLeft( Node node ) {
+      Node pivot = node.getRightChild();
+      node.setRightChild( pivot.getLeftChild() );
+      replaceChild( node.getParent(), node, pivot );
+      pivot.setLeftChild( node );
+      node.updateSubtreeSize();
+      pivot.updateSubtreeSize();
+   }
+
+   /**
+    * Right rotation around node. Its left child takes its place and node
+    * becomes the right child of that left child.
+    *
+    *          node            pivot
+    *          /  \            /  \
+    *       pivot  c    =>     a   node
+    *       /  \                   /  \
+    *      a    b                 b    c
+    *
+    * @param node a node with a left child
+    */
+   protected void rotateRight( Node node ) {
+      Node pivot = node.getLeftChild();
+      node.setLeftChild( pivot.getRightChild() );
+      replaceChild( node.getParent(), node, pivot );
+      pivot.setRightChild( node );
+      node.updateSubtreeSize();
+      pivot.updateSubtreeSize();
+   }
+
+   /**
+    * @param node a node, may be null
+    * @return the number of nodes in the subtree rooted at node, 0 for null.
+    */
+   protected int sizeOf( Node node ) {
+      return node == null ? 0 : node.getSubtreeSize();
+   }
+
+   /**
+    * Recomputes the subtree sizes of node and all of its ancestors.
+    * Subclasses call this from remove, starting at the lowest node whose
+    * children changed.
+    * @param node the lowest node whose subtree changed, may be null
+    */
+   protected void updateSubtreeSizes( Node node ) {
+      while ( node != null ) {
+         node.updateSubtreeSize();
+         node = node.getParent();
+      }
+   }
+
+   /**
+    * Drops the mapping of node from the value index and marks the node as
+    * unlinked, so fingers resting on it start over from the root, and its
+    * entry as removed, so a later setValue on it does not write through.
+    * Subclasses call this from remove for the node whose mapping was removed.
+    * @param node the node whose mapping was removed
+    */
+   protected void recordRemoval( Node node ) {
+      node.getEntry().removed = true;
+      if ( valueIndex != null ) {
+         unindexValue( node.getKey(), node.getValue() );
+      }
+      if ( log != null ) {
+         log.remove( node.getKey() );
+      }
+      meterRemove( true );
+      node.subtreeSize = 0; // No linked node has an empty subtree
+   }
+
+   // Updates the value index and the log for a mapping of key to value that
+   // replaced oldValue, or is new if oldValue is null.
+   private void recordPut( K key, V oldValue, V value ) {
+      if ( valueIndex != null ) {
+         if ( oldValue != null ) {
+            unindexValue( key, oldValue );
+         }
+         indexValue( key, value );
+      }
+      if ( log != null ) {
+         log.put( key, value );
+      }
+   }
+
+   /**
+    * Increments the change counter.
+    * @return the value of the change counter after incrementing.
+    */
+   protected int incrementChangeCounter( ) {
+      return ++changeCounter;
+   }
+
+   /**
+    * @return the number of nodes in the BST.
+    */
+   public int size( ) {
+      return size;
+   }
+
+   /**
+    * Set the size variable of the BST.
+    * @param newSize represents the new number of nodes in the BST.
+    */
+   protected void setSize( int newSize ) {
+      size = newSize;
+   }
+
+   /**
+    * Increments the size variable.
+    * @return the size after incrementing
+    */
+   protected int incrementSize( ) {
+      return ++size;
+   }
+
+   /**
+    * Decrements the size variable of the BST.
+    * @return the size after decrementing.
+    */
+   protected int decrementSize( ) {
+      return --size;
+   }
+
+   /**
+    * @return true if there are no nodes in the BST.
+    */
+   public boolean isEmpty( ) {
+      return size() == 0;
+   }
+
+   /**
+    * Returns the value to which the specified key is mapped,
+    * or {@code null} if this map contains no mapping for the key.
+    *
+    * <p>More formally, if this map contains a mapping from a key
+    * {@code k} to a value {@code v} such that {@code (key==null ? k==null :
+    * key.equals(k))}, then this method returns {@code v}; otherwise
+    * it returns {@code null}.  (There can be at most one such mapping.)
+    *
+    * <p>If this map permits null values, then a return value of
+    * {@code null} does not <i>necessarily</i> indicate that the map
+    * contains no mapping for the key; it's also possible that the map
+    * explicitly maps the key to {@code null}.  The {@link #containsKey
+    * containsKey} operation may be used to distinguish these two cases.
+    *
+    * @param key the key whose associated value is to be returned
+    * @return the value to which the specified key is mapped, or
+    *      {@code null} if this map contains no mapping for the key
+    * @throws ClassCastException   if the key is of an inappropriate type for
+    *                              this map
+    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    * @throws NullPointerException if the specified key is null and this map
+    *                              does not permit null keys
+    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    */
+   @Override
+   public V get ( Object key ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+      Node node = getNode( key );
+      meterGet( node != null );
+      return node == null ? null : node.getValue();
+   }
+
+   /**
+    * Compares two keys in the order of this tree.
+    * @param a a key
+    * @param b a key
+    * @return a negative integer, zero, or a positive integer as a is less
+    *         than, equal to, or greater than b
+    */
+   protected int compareKeys( K a, K b ) {
+      return comparator == null ? a.compareTo( b ) : comparator.compare( a, b );
+   }
+
+   /**
+    * @param key a key
+    * @return the normalized prefix of key, or 0 if keys are not normalized
+    */
+   protected long keyPrefix( K key ) {
+      return normalizer == null ? 0 : normalizer.prefix( key );
+   }
+
+   /**
+    * Compares a key with the key of a node, deciding on the cached prefixes
+    * when they differ and calling compareKeys only when they tie.
+    * @param key a key
+    * @param prefix keyPrefix( key ), computed once per search
+    * @param node the node to compare with
+    * @return a negative integer, zero, or a positive integer as key is less
+    *         than, equal to, or greater than the key of node
+    */
+   protected int compareToNode( K key, long prefix, Node node ) {
+      if ( prefix != node.prefix ) {
+         return prefix < node.prefix ? -1 : 1;
+      }
+      return compareKeys( key, node.getKey() );
+   }
+
+   /**
+    * Finds the node holding the specified key.
+    * @param key the key to search for, must not be null
+    * @return the node whose key equals key, or null if there is none.
+    */
+   protected Node getNode( Object key ) {
+      K k = (K) key;
+      long prefix = keyPrefix( k );
+      Node currentNode = getRoot();
+      int comparisons = 0;
+      while( currentNode != null ) {
+         comparisons++;
+         int cmp = compareToNode( k, prefix, currentNode );
+         if ( cmp == 0 ) {
+            meterSearch( comparisons );
+            return currentNode;
+         } else if ( cmp < 0 ) {
+            currentNode = currentNode.getLeftChild();
+         } else {
+            currentNode = currentNode.getRightChild();
+         }
+      }
+      meterSearch( comparisons );
+      return null;
+   }
+
+   /**
+    * @return the node with the smallest key, or null if the tree is empty.
+    */
+   protected Node firstNode( ) {
+      Node node = getRoot();
+      if ( node != null ) {
+         while ( node.hasLeftChild() ) {
+            node = node.getLeftChild();
+         }
+      }
+      return node;
+   }
+
+   /**
+    * @return the node with the largest key, or null if the tree is empty.
+    */
+   protected Node lastNode( ) {
+      Node node = getRoot();
+      if ( node != null ) {
+         while ( node.hasRightChild() ) {
+            node = node.getRightChild();
+         }
+      }
+      return node;
+   }
+
+   /**
+    * Finds the inorder successor of a node by following child and parent links.
+    * @param node a node in the tree
+    * @return the node with the next larger key, or null if node is the last node.
+    */
+   protected Node successor( Node node ) {
+      if ( node.hasRightChild() ) {
+         node = node.getRightChild();
+         while ( node.hasLeftChild() ) {
+            node = node.getLeftChild();
+         }
+         return node;
+      }
+      Node parent = node.getParent();
+      while ( parent != null && node == parent.getRightChild() ) {
+         node = parent;
+         parent = parent.getParent();
+      }
+      return parent;
+   }
+
+   /**
+    * Finds the inorder predecessor of a node by following child and parent links.
+    * @param node a node in the tree
+    * @return the node with the next smaller key, or null if node is the first node.
+    */
+   protected Node predecessor( Node node ) {
+      if ( node.hasLeftChild() ) {
+         node = node.getLeftChild();
+         while ( node.hasRightChild() ) {
+            node = node.getRightChild();
+         }
+         return node;
+      }
+      Node parent = node.getParent();
+      while ( parent != null && node == parent.getLeftChild() ) {
+         node = parent;
+         parent = parent.getParent();
+      }
+      return parent;
+   }
+
+   /**
+    * Associates the specified value with the specified key in this map
+    * (optional operation).  If the map previously contained a mapping for
+    * the key, the old value is replaced by the specified value.  (A map
+    * <tt>m</tt> is said to contain a mapping for a key <tt>k</tt> if and only
+    * if {@link #containsKey(Object) m.containsKey(k)} would return
+    * <tt>true</tt>.)
+    *
+    * @param key   key with which the specified value is to be associated
+    * @param value value to be associated with the specified key
+    * @return the previous value associated with <tt>key</tt>, or
+    *      <tt>null</tt> if there was no mapping for <tt>key</tt>.
+    *      (A <tt>null</tt> return can also indicate that the map
+    *      previously associated <tt>null</tt> with <tt>key</tt>,
+    *      if the implementation supports <tt>null</tt> values.)
+    * @throws UnsupportedOperationException if the <tt>put</tt> operation
+    *                                       is not supported by this map
+    * @throws ClassCastException            if the class of the specified key or value
+    *                                       prevents it from being stored in this map
+    * @throws NullPointerException          if the specified key or value is null
+    *                                       and this map does not permit null keys or values
+    * @throws IllegalArgumentException      if some property of the specified key
+    *                                       or value prevents it from being stored in this map
+    */
+   @Override
+   public V put ( K key, V value ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+      if ( value == null ) {
+         throw new NullPointerException( "Specified value is null." );
+      }
+      long prefix = keyPrefix( key );
+      Node currentNode = getRoot();
+      Node prevNode = null;
+      int cmp = 0;
+      int comparisons = 0;
+      while( currentNode != null ) {
+         prevNode = currentNode;
+         comparisons++;
+         cmp = compareToNode( key, prefix, currentNode );
+         if ( cmp == 0 ) {
+            meterSearch( comparisons );
+            meterPut( true );
+            V oldValue = currentNode.getValue();
+            currentNode.setValue( value );
+            incrementChangeCounter();
+            return oldValue;
+         } else if ( cmp < 0 ) {
+            currentNode = currentNode.getLeftChild();
+         } else {
+            currentNode = currentNode.getRightChild();
+         }
+      }
+      Node newNode = createNode( key, value );
       if ( prevNode == null ) {
          setRoot( newNode );
-      } else if ( key.compareTo( prevNode.getKey() ) < 0 ) {
+      } else if ( cmp < 0 ) {
          prevNode.setLeftChild( newNode );
       } else {
-         prevNode.setRightChild( newNode );
+         prevNode.setRightChild( newNode );
+      }
+      for ( Node ancestor = prevNode; ancestor != null; ancestor = ancestor.getParent() ) {
+         ancestor.subtreeSize++;
+      }
+      afterInsert( newNode );
+      recordPut( key, null, value );
+      meterSearch( comparisons );
+      meterPut( false );
+      incrementSize();
+      incrementChangeCounter();
+      if ( imbalanceAlarm != null ) {
+         checkInsertDepth( comparisons ); // The new node was one edge below each node compared
+      }
+      return null;
+   }
+
+   /**
+    * Copies all of the mappings from the specified map to this map
+    * (optional operation).  The effect of this call is equivalent to that
+    * of calling {@link #put(Object, Object) put(k, v)} on this map once
+    * for each mapping from key <tt>k</tt> to value <tt>v</tt> in the
+    * specified map.  The behavior of this operation is undefined if the
+    * specified map is modified while the operation is in progress.
+    *
+    * @param m mappings to be stored in this map
+    * @throws UnsupportedOperationException if the <tt>putAll</tt> operation
+    *                                       is not supported by this map
+    * @throws ClassCastException            if the class of a key or value in the
+    *                                       specified map prevents it from being stored in this map
+    * @throws NullPointerException          if the specified map is null, or if
+    *                                       this map does not permit null keys or values, and the
+    *                                       specified map contains null keys or values
+    * @throws IllegalArgumentException      if some property of a key or value in
+    *                                       the specified map prevents it from being stored in this map
+    */
+   @Override
+   public void putAll ( Map< ? extends K, ? extends V > m ) {
+      if ( isEmpty() && !m.isEmpty() && m instanceof SortedMap && Objects.equals( ((SortedMap<?,?>) m).comparator(), comparator ) ) {
+         // Already in our order, so link a balanced tree directly
+         buildFromSorted( m.size(), m.entrySet().iterator() );
+         return;
+      }
+      for( Entry< ? extends K, ? extends V > entry : m.entrySet() ) {
+         put( entry.getKey(), entry.getValue() );
+      }
+   }
+
+   /**
+    * Replaces the contents of this empty tree with a perfectly balanced tree
+    * of the given entries in O(n), with no key comparisons beyond checking
+    * the order. Subtree sizes are set directly and afterBuild is called on
+    * every node so subclasses can establish their own invariants.
+    *
+    * @param size the number of entries the iterator returns
+    * @param entries entries in strictly ascending key order
+    * @throws IllegalStateException if the tree is not empty
+    * @throws IllegalArgumentException if the keys are not strictly ascending;
+    *                                  the tree is left empty
+    * @throws NullPointerException if a key or value is null; the tree is left empty
+    */
+   protected void buildFromSorted( int size, Iterator< ? extends Entry< ? extends K, ? extends V > > entries ) {
+      if ( !isEmpty() ) {
+         throw new IllegalStateException( "The tree is not empty." );
+      }
+      // Levels 0 .. bottomLevel - 1 are full; only the bottom level may be partial
+      int bottomLevel = 0;
+      for ( int m = size; m > 1; m >>>= 1 ) {
+         bottomLevel++;
+      }
+      boolean partial = size != ( 1 << ( bottomLevel + 1 ) ) - 1;
+      SortedBuilder builder = new SortedBuilder( entries, partial ? bottomLevel : -1 );
+      try {
+         setRoot( builder.build( 0, 0, size - 1 ) );
+      } catch ( RuntimeException e ) {
+         clear();
+         throw e;
+      }
+      setSize( size );
+      incrementChangeCounter();
+   }
+
+   /**
+    * Replaces the contents of this empty tree with a perfectly balanced tree
+    * of parallel key and value arrays in O(n).
+    *
+    * @param keys keys in strictly ascending order
+    * @param values values, values[i] is mapped to keys[i]
+    * @throws IllegalArgumentException if the arrays differ in length or the
+    *                                  keys are not strictly ascending
+    * @see #buildFromSorted(int, Iterator)
+    */
+   protected void buildFromSorted( K[] keys, V[] values ) {
+      if ( keys.length != values.length ) {
+         throw new IllegalArgumentException( "There are " + keys.length + " keys but " + values.length + " values." );
+      }
+      buildFromSorted( keys.length, arrayEntries( keys, values ) );
+   }
+
+   // Iterates over parallel key and value arrays as entries.
+   private Iterator<Entry<K,V>> arrayEntries( Object[] keys, Object[] values ) {
+      return new Iterator<Entry<K,V>>( ) {
+         private int next = 0;
+
+         @Override
+         public boolean hasNext( ) {
+            return next < keys.length;
+         }
+
+         @Override
+         public Entry<K,V> next( ) {
+            Entry<K,V> entry = new AbstractMap.SimpleImmutableEntry<>( (K) keys[next], (V) values[next] );
+            next++;
+            return entry;
+         }
+      };
+   }
+
+   /**
+    * Called by buildFromSorted on each node after its children are linked.
+    * The default does nothing.
+    * @param node the node that was just linked
+    * @param onPartialLevel true if the node is on the bottom level and that
+    *                       level is not full, so the node's path is one
+    *                       longer than the paths through full levels
+    */
+   protected void afterBuild( Node node, boolean onPartialLevel ) {
+   }
+
+   // Links entries from an ascending iterator into a balanced subtree, middle entry at the root.
+   private class SortedBuilder {
+      private final Iterator< ? extends Entry< ? extends K, ? extends V > > entries;
+      private final int partialLevel;
+      private K previous = null;
+
+      SortedBuilder( Iterator< ? extends Entry< ? extends K, ? extends V > > entries, int partialLevel ) {
+         this.entries = entries;
+         this.partialLevel = partialLevel;
+      }
+
+      Node build( int level, int lo, int hi ) {
+         if ( hi < lo ) {
+            return null;
+         }
+         int mid = ( lo + hi ) >>> 1;
+         Node left = build( level + 1, lo, mid - 1 );
+         Entry< ? extends K, ? extends V > entry = entries.next();
+         K key = entry.getKey();
+         V value = entry.getValue();
+         if ( key == null ) {
+            throw new NullPointerException( "Specified key is null." );
+         }
+         if ( value == null ) {
+            throw new NullPointerException( "Specified value is null." );
+         }
+         if ( previous != null && compareKeys( previous, key ) >= 0 ) {
+            throw new IllegalArgumentException( "Keys are not in strictly ascending order at " + key );
+         }
+         previous = key;
+         Node node = createNode( key, value );
+         recordPut( key, null, value );
+         node.setLeftChild( left );
+         node.setRightChild( build( level + 1, mid + 1, hi ) );
+         node.subtreeSize = hi - lo + 1;
+         afterBuild( node, level == partialLevel );
+         return node;
+      }
+   }
+
+   /**
+    * Removes the root node of the BST.
+    * @return the value of the node removed, or null if no node was removed.
+    */
+   public V removeRoot( ) {
+      return remove( getRoot().getKey() );
+   }
+
+   /**
+    * Removes all of the mappings from this map (optional operation).
+    * The map will be empty after this call returns.
+    *
+    * @throws UnsupportedOperationException if the <tt>clear</tt> operation
+    *                                       is not supported by this map
+    */
+   @Override
+   public void clear ( ) {
+      if ( valueIndex != null || log != null ) { // Entries handed out must not write through to them any more
+         for ( Node node = getRoot(); node != null; node = nextPreorder( node ) ) {
+            node.getEntry().removed = true;
+         }
+      }
+      setRoot( null );
+      clearCounter++;
+      if ( valueIndex != null ) {
+         valueIndex.clear();
+      }
+      if ( log != null ) {
+         log.clear();
+      }
+      nextAlarmDepth = 0;
+      setSize( 0 );
+      incrementChangeCounter();
+   }
+
+   /**
+    * Returns a {@link Set} view of the keys contained in this map.
+    * The set is backed by the map, so changes to the map are
+    * reflected in the set, and vice-versa.  If the map is modified
+    * while an iteration over the set is in progress (except through
+    * the iterator's own <tt>remove</tt> operation), the results of
+    * the iteration are undefined.  The set supports element removal,
+    * which removes the corresponding mapping from the map, via the
+    * <tt>Iterator.remove</tt>, <tt>Set.remove</tt>,
+    * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt>
+    * operations.  It does not support the <tt>add</tt> or <tt>addAll</tt>
+    * operations.
+    *
+    * <p>The keys are iterated in ascending order.
+    *
+    * @return a set view of the keys contained in this map
+    */
+   @Override
+   public Set< K > keySet ( ) {
+      return navigableKeySet();
+   }
+
+   /**
+    * Returns a {@link Collection} view of the values contained in this map.
+    * The collection is backed by the map, so changes to the map are
+    * reflected in the collection, and vice-versa.  If the map is
+    * modified while an iteration over the collection is in progress
+    * (except through the iterator's own <tt>remove</tt> operation),
+    * the results of the iteration are undefined.  The collection
+    * supports element removal, which removes the corresponding
+    * mapping from the map, via the <tt>Iterator.remove</tt>,
+    * <tt>Collection.remove</tt>, <tt>removeAll</tt>,
+    * <tt>retainAll</tt> and <tt>clear</tt> operations.  It does not
+    * support the <tt>add</tt> or <tt>addAll</tt> operations.
+    *
+    * <p>The values are iterated in ascending order of their keys.
+    *
+    * @return a collection view of the values contained in this map
+    */
+   @Override
+   public Collection< V > values ( ) {
+      return new AbstractCollection<V>( ) {
+         @Override
+         public Iterator<V> iterator ( ) {
+            return new RangeIterator<V>( new SubMap( true, null, false, true, null, false, false ) ) {
+               @Override
+               V element( Node node ) {
+                  return node.getValue();
+               }
+            };
+         }
+
+         @Override
+         public Spliterator<V> spliterator ( ) {
+            return valueSpliterator( new SubMap( true, null, false, true, null, false, false ) );
+         }
+
+         @Override
+         public int size ( ) {
+            return AbstractBinarySearchTree.this.size();
+         }
+
+         @Override
+         public boolean contains ( Object o ) {
+            return containsValue( o );
+         }
+
+         @Override
+         public void clear ( ) {
+            AbstractBinarySearchTree.this.clear();
+         }
+      };
+   }
+
+   /**
+    * Returns a {@link Set} view of the mappings contained in this map.
+    * The set is backed by the map, so changes to the map are
+    * reflected in the set, and vice-versa.  If the map is modified
+    * while an iteration over the set is in progress (except through
+    * the iterator's own <tt>remove</tt> operation, or through the
+    * <tt>setValue</tt> operation on a map entry returned by the
+    * iterator) the results of the iteration are undefined.  The set
+    * supports element removal, which removes the corresponding
+    * mapping from the map, via the <tt>Iterator.remove</tt>,
+    * <tt>Set.remove</tt>, <tt>removeAll</tt>, <tt>retainAll</tt> and
+    * <tt>clear</tt> operations.  It does not support the
+    * <tt>add</tt> or <tt>addAll</tt> operations.
+    *
+    * <p>The mappings are iterated in ascending key order.
+    *
+    * @return a set view of the mappings contained in this map
+    */
+   @Override
+   public Set< Entry< K, V > > entrySet ( ) {
+      return new AbstractSet<Entry<K,V>>( ) {
+         @Override
+         public Iterator<Entry<K,V>> iterator ( ) {
+            return new RangeIterator<Entry<K,V>>( new SubMap( true, null, false, true, null, false, false ) ) {
+               @Override
+               Entry<K,V> element( Node node ) {
+                  return node.getEntry();
+               }
+            };
+         }
+
+         @Override
+         public Spliterator<Entry<K,V>> spliterator ( ) {
+            return entrySpliterator( new SubMap( true, null, false, true, null, false, false ) );
+         }
+
+         @Override
+         public int size ( ) {
+            return AbstractBinarySearchTree.this.size();
+         }
+
+         @Override
+         public boolean contains ( Object o ) {
+            if ( !( o instanceof Entry ) ) {
+               return false;
+            }
+            Entry<?,?> entry = (Entry<?,?>) o;
+            V value = get( entry.getKey() );
+            return value != null && value.equals( entry.getValue() );
+         }
+
+         @Override
+         public boolean remove ( Object o ) {
+            if ( !contains( o ) ) {
+               return false;
+            }
+            AbstractBinarySearchTree.this.remove( ((Entry<?,?>) o).getKey() );
+            return true;
+         }
+
+         @Override
+         public void clear ( ) {
+            AbstractBinarySearchTree.this.clear();
+         }
+      };
+   }
+
+   /**
+    * Returns <tt>true</tt> if this map contains a mapping for the specified
+    * key.  More formally, returns <tt>true</tt> if and only if
+    * this map contains a mapping for a key <tt>k</tt> such that
+    * <tt>(key==null ? k==null : key.equals(k))</tt>.  (There can be
+    * at most one such mapping.)
+    *
+    * @param key key whose presence in this map is to be tested
+    * @return <tt>true</tt> if this map contains a mapping for the specified
+    *      key
+    * @throws ClassCastException   if the key is of an inappropriate type for
+    *                              this map
+    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    * @throws NullPointerException if the specified key is null and this map
+    *                              does not permit null keys
+    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    */
+   @Override
+   public boolean containsKey ( Object key ) {
+      return get( key ) != null;
+   }
+
+   /**
+    * Returns <tt>true</tt> if this map maps one or more keys to the
+    * specified value.  More formally, returns <tt>true</tt> if and only if
+    * this map contains at least one mapping to a value <tt>v</tt> such that
+    * <tt>(value==null ? v==null : value.equals(v))</tt>.  This operation
+    * will probably require time linear in the map size for most
+    * implementations of the <tt>Map</tt> interface.
+    *
+    * @param value value whose presence in this map is to be tested
+    * @return <tt>true</tt> if this map maps one or more keys to the
+    *      specified value
+    * @throws ClassCastException   if the value is of an inappropriate type for
+    *                              this map
+    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    * @throws NullPointerException if the specified value is null and this
+    *                              map does not permit null values
+    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    */
+   @Override
+   public boolean containsValue ( Object value ) {
+      if ( valueIndex != null ) {
+         return valueIndex.containsKey( value );
+      }
+      // Stops at the first match, so the cost is proportional to its position
+      return !inorder( (key, v) -> !v.equals( value ) );
+   }
+
+   /**
+    * Returns an iterator over elements of type {@code T}.
+    *
+    * @return an Iterator.
+    */
+   @Override
+   public Iterator<V> iterator ( ) {
+      return new TreeIterator();
+   }
+
+   /**
+    * Returns a spliterator over the values in ascending key order. It
+    * reports its exact size and splits in O(height) at the middle position,
+    * so parallel streams divide the tree evenly.
+    *
+    * @return a Spliterator over the values
+    */
+   @Override
+   public Spliterator<V> spliterator ( ) {
+      return valueSpliterator( new SubMap( true, null, false, true, null, false, false ) );
+   }
+
+   /**
+    * @return a sequential Stream of the values in ascending key order
+    */
+   public Stream<V> stream ( ) {
+      return StreamSupport.stream( spliterator(), false );
+   }
+
+   /**
+    * @return a parallel Stream of the values in ascending key order
+    */
+   public Stream<V> parallelStream ( ) {
+      return StreamSupport.stream( spliterator(), true );
+   }
+
+   /**
+    * Iterative Algorithm: Preorder Binary Tree Traversal
+    *    1. Visit the root.
+    *    2. Preorder traverse the left subtree.
+    *    3. Preorder traverse the right subtree.
+    *
+    * Example:
+    *    Tree
+    *              4
+    *             / \
+    *            2   5
+    *           / \
+    *          1   3
+    *
+    *    Preorder traversal: 4, 2, 1, 3, 5
+    *
+    * Follows the parent links instead of recursing or keeping a stack, so it
+    * allocates nothing and is safe at any depth.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePreorder( Visitor visitor ) {
+      visitPreorder( always( visitor ) );
+   }
+
+   /**
+    * Preorder traversal with a typed visitor that may stop it early.
+    * Allocates nothing and is safe at any depth.
+    *
+    * @param visitor returns false to stop the traversal
+    * @return true if every node was visited, false if the visitor stopped the traversal
+    */
+   public boolean visitPreorder( TreeVisitor<? super K, ? super V> visitor ) {
+      visitor = metered( visitor );
+      for ( Node node = getRoot(); node != null; node = nextPreorder( node ) ) {
+         if ( !visitor.visit( node.getKey(), node.getValue() ) ) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   // Returns the node after node in preorder, or null at the end.
+   private Node nextPreorder( Node node ) {
+      if ( node.hasLeftChild() ) {
+         return node.getLeftChild();
+      }
+      if ( node.hasRightChild() ) {
+         return node.getRightChild();
+      }
+      // Climb until we arrive from a left child that has a right sibling
+      Node parent = node.getParent();
+      while ( parent != null && ( node == parent.getRightChild() || !parent.hasRightChild() ) ) {
+         node = parent;
+         parent = parent.getParent();
+      }
+      return parent == null ? null : parent.getRightChild();
+   }
+
+   /**
+    * Iterative Algorithm: Inorder Binary Tree Traversal
+    *    1. Inorder traverse the left subtree.
+    *    2. Visit the root.
+    *    3. Inorder traverse the right subtree.
+    *
+    * Example:
+    *    Tree
+    *              4
+    *             / \
+    *            2   5
+    *           / \
+    *          1   3
+    *
+    *    Inorder traversal: 1, 2, 3, 4, 5
+    *
+    * Steps from each node to its successor along the parent links, so it
+    * allocates nothing and is safe at any depth.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseInorder( Visitor visitor ) {
+      visitInorder( always( visitor ) );
+   }
+
+   /**
+    * Inorder traversal with a typed visitor that may stop it early, so a
+    * search that matches the k-th key in ascending order costs O(k + height).
+    *
+    * @param visitor returns false to stop the traversal
+    * @return true if every node was visited, false if the visitor stopped the traversal
+    */
+   public boolean visitInorder( TreeVisitor<? super K, ? super V> visitor ) {
+      return inorder( metered( visitor ) );
+   }
+
+   // The unlocked, unmetered inorder walk. freeze, containsValue, keysFor and
+   // setValueIndexed call it instead of visitInorder, so ConcurrentBinarySearchTree,
+   // which already holds its lock around them, does not take its read lock twice.
+   private boolean inorder( TreeVisitor<? super K, ? super V> visitor ) {
+      for ( Node node = firstNode(); node != null; node = successor( node ) ) {
+         if ( !visitor.visit( node.getKey(), node.getValue() ) ) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Postorder traversal with a typed visitor that may stop it early.
+    * Allocates nothing and is safe at any depth.
+    *
+    * @param visitor returns false to stop the traversal
+    * @return true if every node was visited, false if the visitor stopped the traversal
+    */
+   public boolean visitPostorder( TreeVisitor<? super K, ? super V> visitor ) {
+      visitor = metered( visitor );
+      for ( Node node = firstPostorder( getRoot() ); node != null; node = nextPostorder( node ) ) {
+         if ( !visitor.visit( node.getKey(), node.getValue() ) ) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   // Returns the node after node in postorder, or null after the root.
+   private Node nextPostorder( Node node ) {
+      Node parent = node.getParent();
+      if ( parent != null && node == parent.getLeftChild() && parent.hasRightChild() ) {
+         return firstPostorder( parent.getRightChild() );
+      }
+      return parent;
+   }
+
+   /**
+    * Postorder traversal along the parent links, with no recursion and no
+    * allocation. Subclasses implement traversePostorder with it.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    */
+   protected void walkPostorder( Visitor visitor ) {
+      visitPostorder( always( visitor ) );
+   }
+
+   // Returns the first node of the subtree in postorder: the deepest node
+   // reached by preferring left children.
+   private Node firstPostorder( Node node ) {
+      while ( node != null && ( node.hasLeftChild() || node.hasRightChild() ) ) {
+         node = node.hasLeftChild() ? node.getLeftChild() : node.getRightChild();
+      }
+      return node;
+   }
+
+   private static final int LEVELORDER_QUEUE = 16; // Initial capacity of the level order queue; a power of two, so positions wrap with a mask
+
+   /**
+    * Level order traversal with a typed visitor that may stop it early. A
+    * ring buffer serves as the queue. It starts small and doubles only when
+    * it fills, so it grows to about the widest level reached, and a visitor
+    * that stops early pays only for the nodes enqueued so far.
+    *
+    * @param visitor returns false to stop the traversal
+    * @return true if every node was visited, false if the visitor stopped the traversal
+    */
+   public boolean visitLevelorder( TreeVisitor<? super K, ? super V> visitor ) {
+      if ( getRoot() == null ) {
+         return true;
+      }
+      visitor = metered( visitor );
+      Object[] queue = new Object[LEVELORDER_QUEUE];
+      int head = 0, count = 0;
+      queue[count++] = getRoot();
+      while ( count > 0 ) {
+         Node current = (Node) queue[head];
+         queue[head] = null;
+         head = ( head + 1 ) & ( queue.length - 1 );
+         count--;
+         if ( !visitor.visit( current.getKey(), current.getValue() ) ) {
+            return false;
+         }
+         if ( count + 2 > queue.length ) {
+            queue = unwrap( queue, head );
+            head = 0;
+         }
+         if ( current.hasLeftChild() ) {
+            queue[( head + count++ ) & ( queue.length - 1 )] = current.getLeftChild();
+         }
+         if ( current.hasRightChild() ) {
+            queue[( head + count++ ) & ( queue.length - 1 )] = current.getRightChild();
+         }
+      }
+      return true;
+   }
+
+   // Copies a full ring buffer into one twice as large, starting at index 0.
+   private static Object[] unwrap( Object[] queue, int head ) {
+      Object[] larger = new Object[queue.length * 2];
+      System.arraycopy( queue, head, larger, 0, queue.length - head );
+      System.arraycopy( queue, 0, larger, queue.length - head, head );
+      return larger;
+   }
+
+   /**
+    * Level order traversal with a ring buffer as the queue, sized to the
+    * widest level rather than to the tree, and no per-node allocation.
+    * Subclasses implement traverseLevelorder with it.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    */
+   protected void walkLevelorder( Visitor visitor ) {
+      visitLevelorder( always( visitor ) );
+   }
+
+   /**
+    * Performs the action for each value in ascending key order, walking the
+    * tree directly rather than through an iterator.
+    *
+    * @param action the action to be performed for each value
+    */
+   @Override
+   public void forEach ( Consumer<? super V> action ) {
+      if ( action == null ) {
+         throw new NullPointerException(  );
+      }
+      visitInorder( (key, value) -> {
+         action.accept( value );
+         return true;
+      } );
+   }
+
+   /**
+    * Performs the action for each mapping in ascending key order, walking
+    * the tree directly rather than through entrySet.
+    *
+    * @param action the action to be performed for each mapping
+    */
+   @Override
+   public void forEach ( BiConsumer<? super K, ? super V> action ) {
+      if ( action == null ) {
+         throw new NullPointerException(  );
+      }
+      visitInorder( (key, value) -> {
+         action.accept( key, value );
+         return true;
+      } );
+   }
+
+   // =======================================================================
+   // NAVIGATION
+   // =======================================================================
+
+   /**
+    * @param key the key to search for
+    * @return the node with the least key greater than or equal to key, or null.
+    */
+   protected Node ceilingNode( K key ) {
+      long prefix = keyPrefix( key );
+      Node currentNode = getRoot();
+      Node best = null;
+      while ( currentNode != null ) {
+         int cmp = compareToNode( key, prefix, currentNode );
+         if ( cmp == 0 ) {
+            return currentNode;
+         } else if ( cmp < 0 ) {
+            best = currentNode;
+            currentNode = currentNode.getLeftChild();
+         } else {
+            currentNode = currentNode.getRightChild();
+         }
+      }
+      return best;
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the node with the least key strictly greater than key, or null.
+    */
+   protected Node higherNode( K key ) {
+      long prefix = keyPrefix( key );
+      Node currentNode = getRoot();
+      Node best = null;
+      while ( currentNode != null ) {
+         if ( compareToNode( key, prefix, currentNode ) < 0 ) {
+            best = currentNode;
+            currentNode = currentNode.getLeftChild();
+         } else {
+            currentNode = currentNode.getRightChild();
+         }
+      }
+      return best;
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the node with the greatest key less than or equal to key, or null.
+    */
+   protected Node floorNode( K key ) {
+      long prefix = keyPrefix( key );
+      Node currentNode = getRoot();
+      Node best = null;
+      while ( currentNode != null ) {
+         int cmp = compareToNode( key, prefix, currentNode );
+         if ( cmp == 0 ) {
+            return currentNode;
+         } else if ( cmp > 0 ) {
+            best = currentNode;
+            currentNode = currentNode.getRightChild();
+         } else {
+            currentNode = currentNode.getLeftChild();
+         }
+      }
+      return best;
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the node with the greatest key strictly less than key, or null.
+    */
+   protected Node lowerNode( K key ) {
+      long prefix = keyPrefix( key );
+      Node currentNode = getRoot();
+      Node best = null;
+      while ( currentNode != null ) {
+         if ( compareToNode( key, prefix, currentNode ) > 0 ) {
+            best = currentNode;
+            currentNode = currentNode.getRightChild();
+         } else {
+            currentNode = currentNode.getLeftChild();
+         }
+      }
+      return best;
+   }
+
+   // =======================================================================
+   // FINGER SEARCH
+   // =======================================================================
+
+   /**
+    * Returns a new finger on this tree. A finger remembers the node where
+    * its last search ended and starts the next search there, so a run of
+    * lookups on nearby keys costs little more than iterating over them.
+    *
+    * @return a finger resting on the root
+    */
+   public Finger finger( ) {
+      return new Finger();
+   }
+
+   /**
+    * Runs a search of a finger. ConcurrentBinarySearchTree overrides this
+    * to hold its read lock while the finger moves.
+    * @param search the search, which reads the tree and moves the finger
+    * @return the result of the search
+    */
+   protected <T> T fingerSearch( Supplier<T> search ) {
+      return search.get();
+   }
+
+   /**
+    * A cursor for searches on keys close to the previous one, such as
+    * sliding windows and merges. A search climbs the parent links from the
+    * last node only until it reaches an ancestor on the far side of the key,
+    * then descends from there. A search for a key d positions away usually
+    * stays within the lowest O(log d) levels. It can climb to the root
+    * when it crosses the key of a node high in the tree, so the worst case
+    * is twice the cost of a search from the root.
+    *
+    * A finger stays valid across puts and removes. If its node is removed
+    * or the tree is cleared, the next search starts from the root. A
+    * finger is not thread-safe: share the tree between threads, not the
+    * finger. On a ConcurrentBinarySearchTree each search holds the read lock.
+    */
+   public class Finger {
+      private Node node = null;
+      private int side = 0; // key of the last search compared with node
+      private int clears = clearCounter;
+
+      private Finger( ) {
+      }
+
+      /**
+       * @param key the key whose associated value is to be returned
+       * @return the value to which key is mapped, or null
+       * @throws NullPointerException if key is null
+       */
+      public V get( K key ) {
+         return fingerSearch( ( ) -> seek( key ) != null && side == 0 ? node.getValue() : null );
+      }
+
+      /**
+       * @param key the key to look for
+       * @return true if the tree contains a mapping for key
+       * @throws NullPointerException if key is null
+       */
+      public boolean containsKey( K key ) {
+         return fingerSearch( ( ) -> seek( key ) != null && side == 0 );
+      }
+
+      /**
+       * @param key the key to search for
+       * @return a snapshot of the mapping with the least key greater than
+       *         or equal to key, or null if there is none
+       * @throws NullPointerException if key is null
+       */
+      public Entry<K,V> ceilingEntry( K key ) {
+         return fingerSearch( ( ) -> {
+            Node found = seek( key );
+            return exportEntry( found != null && side > 0 ? successor( found ) : found ); // A search ends next to a missing key
+         } );
+      }
+
+      /**
+       * @param key the key to search for
+       * @return a snapshot of the mapping with the greatest key less than
+       *         or equal to key, or null if there is none
+       * @throws NullPointerException if key is null
+       */
+      public Entry<K,V> floorEntry( K key ) {
+         return fingerSearch( ( ) -> {
+            Node found = seek( key );
+            return exportEntry( found != null && side < 0 ? predecessor( found ) : found );
+         } );
+      }
+
+      // Moves the finger to the node holding key, or to the last node on
+      // the search path if key is missing, and sets side to the comparison
+      // of key with it. Returns that node, null if the tree is empty.
+      private Node seek( K key ) {
+         checkKey( key );
+         long prefix = keyPrefix( key );
+         Node currentNode = node;
+         int cmp;
+         if ( currentNode == null || currentNode.subtreeSize == 0 || clears != clearCounter ) {
+            currentNode = getRoot();
+            clears = clearCounter;
+            if ( currentNode == null ) {
+               node = null;
+               return null;
+            }
+            cmp = compareToNode( key, prefix, currentNode );
+         } else {
+            // Climb until an ancestor is on the far side of key; key then
+            // lies in the subtree we came up from, or is that ancestor.
+            cmp = compareToNode( key, prefix, currentNode );
+            while ( cmp != 0 && currentNode.getParent() != null ) {
+               Node parent = currentNode.getParent();
+               int parentCmp = compareToNode( key, prefix, parent );
+               if ( parentCmp != 0 && ( parentCmp < 0 ) != ( cmp < 0 ) ) {
+                  break;
+               }
+               currentNode = parent;
+               cmp = parentCmp;
+            }
+         }
+         while ( cmp != 0 ) {
+            Node child = cmp < 0 ? currentNode.getLeftChild() : currentNode.getRightChild();
+            if ( child == null ) {
+               break;
+            }
+            currentNode = child;
+            cmp = compareToNode( key, prefix, currentNode );
+         }
+         node = currentNode;
+         side = cmp;
+         return node;
+      }
+   }
+
+   // Returns an immutable snapshot of the node's mapping, or null for no node.
+   private Entry<K,V> exportEntry( Node node ) {
+      return node == null ? null : new AbstractMap.SimpleImmutableEntry<>( node.getKey(), node.getValue() );
+   }
+
+   // Returns the key of the node, or throws if there is no node.
+   private K key( Node node ) {
+      if ( node == null ) {
+         throw new NoSuchElementException(  );
+      }
+      return node.getKey();
+   }
+
+   private K keyOrNull( Node node ) {
+      return node == null ? null : node.getKey();
+   }
+
+   // Removes the node's mapping and returns a snapshot of it.
+   private Entry<K,V> pollNode( Node node ) {
+      Entry<K,V> entry = exportEntry( node );
+      if ( node != null ) {
+         remove( node.getKey() );
+      }
+      return entry;
+   }
+
+   private void checkKey( K key ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+   }
+
+   /**
+    * Returns the comparator used to order the keys in this map, or null if
+    * this map uses the natural ordering of its keys.
+    *
+    * @return the comparator, or null for the natural ordering
+    */
+   @Override
+   public Comparator<? super K> comparator ( ) {
+      return comparator;
+   }
+
+   /**
+    * @return the smallest key in the map
+    * @throws NoSuchElementException if the map is empty
+    */
+   @Override
+   public K firstKey ( ) {
+      return key( firstNode() );
+   }
+
+   /**
+    * @return the largest key in the map
+    * @throws NoSuchElementException if the map is empty
+    */
+   @Override
+   public K lastKey ( ) {
+      return key( lastNode() );
+   }
+
+   /**
+    * @return a snapshot of the mapping with the smallest key, or null if the map is empty.
+    */
+   @Override
+   public Entry<K,V> firstEntry ( ) {
+      return exportEntry( firstNode() );
+   }
+
+   /**
+    * @return a snapshot of the mapping with the largest key, or null if the map is empty.
+    */
+   @Override
+   public Entry<K,V> lastEntry ( ) {
+      return exportEntry( lastNode() );
+   }
+
+   /**
+    * Removes the mapping with the smallest key.
+    * @return a snapshot of the removed mapping, or null if the map is empty.
+    */
+   @Override
+   public Entry<K,V> pollFirstEntry ( ) {
+      return pollNode( firstNode() );
+   }
+
+   /**
+    * Removes the mapping with the largest key.
+    * @return a snapshot of the removed mapping, or null if the map is empty.
+    */
+   @Override
+   public Entry<K,V> pollLastEntry ( ) {
+      return pollNode( lastNode() );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return a snapshot of the mapping with the greatest key strictly less than key, or null.
+    */
+   @Override
+   public Entry<K,V> lowerEntry ( K key ) {
+      checkKey( key );
+      return exportEntry( lowerNode( key ) );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the greatest key strictly less than key, or null.
+    */
+   @Override
+   public K lowerKey ( K key ) {
+      checkKey( key );
+      return keyOrNull( lowerNode( key ) );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return a snapshot of the mapping with the greatest key less than or equal to key, or null.
+    */
+   @Override
+   public Entry<K,V> floorEntry ( K key ) {
+      checkKey( key );
+      return exportEntry( floorNode( key ) );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the greatest key less than or equal to key, or null.
+    */
+   @Override
+   public K floorKey ( K key ) {
+      checkKey( key );
+      return keyOrNull( floorNode( key ) );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return a snapshot of the mapping with the least key greater than or equal to key, or null.
+    */
+   @Override
+   public Entry<K,V> ceilingEntry ( K key ) {
+      checkKey( key );
+      return exportEntry( ceilingNode( key ) );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the least key greater than or equal to key, or null.
+    */
+   @Override
+   public K ceilingKey ( K key ) {
+      checkKey( key );
+      return keyOrNull( ceilingNode( key ) );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return a snapshot of the mapping with the least key strictly greater than key, or null.
+    */
+   @Override
+   public Entry<K,V> higherEntry ( K key ) {
+      checkKey( key );
+      return exportEntry( higherNode( key ) );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the least key strictly greater than key, or null.
+    */
+   @Override
+   public K higherKey ( K key ) {
+      checkKey( key );
+      return keyOrNull( higherNode( key ) );
+   }
+
+   /**
+    * @return a live view of this map in descending key order.
+    */
+   @Override
+   public NavigableMap<K,V> descendingMap ( ) {
+      return new SubMap( true, null, false, true, null, false, true );
+   }
+
+   /**
+    * @return a live view of the keys in ascending order.
+    */
+   @Override
+   public NavigableSet<K> navigableKeySet ( ) {
+      return new KeyView( this );
+   }
+
+   /**
+    * @return a live view of the keys in descending order.
+    */
+   @Override
+   public NavigableSet<K> descendingKeySet ( ) {
+      return new KeyView( descendingMap() );
+   }
+
+   /**
+    * Returns a live view of the mappings whose keys range from fromKey to toKey.
+    * Changes to the view write through to this map, and vice versa.
+    *
+    * @param fromKey low endpoint of the keys in the view
+    * @param fromInclusive true if the low endpoint is included in the view
+    * @param toKey high endpoint of the keys in the view
+    * @param toInclusive true if the high endpoint is included in the view
+    * @return a view of the portion of this map between fromKey and toKey
+    * @throws NullPointerException if fromKey or toKey is null
+    * @throws IllegalArgumentException if fromKey is greater than toKey
+    */
+   @Override
+   public NavigableMap<K,V> subMap ( K fromKey, boolean fromInclusive, K toKey, boolean toInclusive ) {
+      return new SubMap( false, fromKey, fromInclusive, false, toKey, toInclusive, false );
+   }
+
+   /**
+    * Returns a live view of the mappings whose keys are less than (or equal
+    * to, if inclusive is true) toKey.
+    *
+    * @param toKey high endpoint of the keys in the view
+    * @param inclusive true if the high endpoint is included in the view
+    * @return a view of the portion of this map below toKey
+    * @throws NullPointerException if toKey is null
+    */
+   @Override
+   public NavigableMap<K,V> headMap ( K toKey, boolean inclusive ) {
+      return new SubMap( true, null, false, false, toKey, inclusive, false );
+   }
+
+   /**
+    * Returns a live view of the mappings whose keys are greater than (or
+    * equal to, if inclusive is true) fromKey.
+    *
+    * @param fromKey low endpoint of the keys in the view
+    * @param inclusive true if the low endpoint is included in the view
+    * @return a view of the portion of this map above fromKey
+    * @throws NullPointerException if fromKey is null
+    */
+   @Override
+   public NavigableMap<K,V> tailMap ( K fromKey, boolean inclusive ) {
+      return new SubMap( false, fromKey, inclusive, true, null, false, false );
+   }
+
+   /**
+    * Equivalent to subMap( fromKey, true, toKey, false ).
+    */
+   @Override
+   public SortedMap<K,V> subMap ( K fromKey, K toKey ) {
+      return subMap( fromKey, true, toKey, false );
+   }
+
+   /**
+    * Equivalent to headMap( toKey, false ).
+    */
+   @Override
+   public SortedMap<K,V> headMap ( K toKey ) {
+      return headMap( toKey, false );
+   }
+
+   /**
+    * Equivalent to tailMap( fromKey, true ).
+    */
+   @Override
+   public SortedMap<K,V> tailMap ( K fromKey ) {
+      return tailMap( fromKey, true );
+   }
+
+   // =======================================================================
+   // VALUE INDEX
+   // =======================================================================
+
+   /**
+    * Turns the reverse index from values to keys on or off. While it is on,
+    * containsValue and keysFor are expected O(1) hash lookups instead of
+    * scans, at the cost of a hash entry per distinct value. put, setValue
+    * on a node or entry, remove and clear keep it current. Turning it on
+    * builds it in O(n); turning it off frees it.
+    *
+    * @param enabled true to maintain the index, false to drop it
+    */
+   public void setValueIndexed( boolean enabled ) {
+      if ( !enabled ) {
+         valueIndex = null;
+      } else if ( valueIndex == null ) {
+         valueIndex = new HashMap<>(  );
+         inorder( (key, value) -> {
+            indexValue( key, value );
+            return true;
+         } );
+      }
+   }
+
+   /**
+    * @return true if the reverse index from values to keys is maintained
+    */
+   public boolean isValueIndexed( ) {
+      return valueIndex != null;
+   }
+
+   /**
+    * Returns the keys mapped to a value, in ascending order. Takes expected
+    * O(1) plus the number of keys returned while the value index is on, and
+    * scans the whole tree otherwise.
+    *
+    * @param value the value to look for
+    * @return a new set of the keys mapped to value, empty if there are none
+    */
+   public SortedSet<K> keysFor( V value ) {
+      SortedSet<K> keys = new TreeSet<>( comparator );
+      if ( valueIndex == null ) {
+         inorder( (key, v) -> {
+            if ( v.equals( value ) ) {
+               keys.add( key );
+            }
+            return true;
+         } );
+      } else {
+         Object indexed = valueIndex.get( value );
+         if ( indexed instanceof KeySet ) {
+            keys.addAll( (KeySet<K>) indexed );
+         } else if ( indexed != null ) {
+            keys.add( (K) indexed );
+         }
+      }
+      return keys;
+   }
+
+   // The keys of a value mapped from several keys. A distinct class so a
+   // single key that is itself a TreeSet is never mistaken for one.
+   private static class KeySet<K> extends TreeSet<K> {
+      private static final long serialVersionUID = 1L;
+
+      KeySet( Comparator<? super K> comparator ) {
+         super( comparator );
+      }
+   }
+
+   // Most values belong to one key, so the index holds that key directly and
+   // only allocates a set for the second one.
+   private void indexValue( K key, V value ) {
+      Object indexed = valueIndex.putIfAbsent( value, key );
+      if ( indexed instanceof KeySet ) {
+         ((KeySet<K>) indexed).add( key );
+      } else if ( indexed != null && !indexed.equals( key ) ) {
+         KeySet<K> keys = new KeySet<>( comparator );
+         keys.add( (K) indexed );
+         keys.add( key );
+         valueIndex.put( value, keys );
+      }
+   }
+
+   private void unindexValue( K key, V value ) {
+      Object indexed = valueIndex.get( value );
+      if ( indexed instanceof KeySet ) {
+         KeySet<K> keys = (KeySet<K>) indexed;
+         keys.remove( key );
+         if ( keys.size() == 1 ) {
+            valueIndex.put( value, keys.first() );
+         }
+      } else if ( key.equals( indexed ) ) {
+         valueIndex.remove( value );
+      }
+   }
+
+   // =======================================================================
+   // SNAPSHOTS
+   // =======================================================================
+
+   private static final int SNAPSHOT_MAGIC = 0x42535453; // "BSTS"
+   private static final int SNAPSHOT_VERSION = 1;
+   private static final int SNAPSHOT_HEADER = 16; // Magic, version, flags and size
+   private static final int SNAPSHOT_BITS = 1; // Header flag: the writer stored a snapshot bit per node
+   private static final int HAS_LEFT = 1, HAS_RIGHT = 2, SNAPSHOT_BIT = 4; // Per-node flags
+   private static final int SNAPSHOT_CHUNK = 64 << 20; // Bytes mapped at a time when reading
+
+   /**
+    * Writes every mapping to a file in preorder. Each node is a flags byte
+    * saying which children it has, then its key and value, so readSnapshot
+    * rebuilds exactly this shape without comparing keys.
+    *
+    * @param path the file to create or replace
+    * @param keyCodec encodes the keys
+    * @param valueCodec encodes the values
+    * @throws IOException if the file cannot be written
+    */
+   public void writeSnapshot( Path path, Codec<? super K> keyCodec, Codec<? super V> valueCodec ) throws IOException {
+      try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING ) ) {
+         ByteBuffer buffer = ByteBuffer.allocateDirect( 1 << 20 );
+         buffer.putInt( SNAPSHOT_MAGIC ).putInt( SNAPSHOT_VERSION );
+         buffer.putInt( hasSnapshotBits() ? SNAPSHOT_BITS : 0 ).putInt( size() );
+         Node node = getRoot();
+         while ( node != null ) {
+            int start = buffer.position();
+            try {
+               buffer.put( (byte) ( ( node.hasLeftChild() ? HAS_LEFT : 0 ) | ( node.hasRightChild() ? HAS_RIGHT : 0 )
+                                    | ( snapshotBit( node ) ? SNAPSHOT_BIT : 0 ) ) );
+               keyCodec.write( node.getKey(), buffer );
+               valueCodec.write( node.getValue(), buffer );
+               node = nextPreorder( node );
+            } catch ( BufferOverflowException e ) {
+               // Flush the records before this one and encode it again, in a larger buffer if it was alone
+               buffer.position( start );
+               buffer.flip();
+               if ( buffer.hasRemaining() ) {
+                  writeFully( channel, buffer );
+                  buffer.clear();
+               } else {
+                  buffer = ByteBuffer.allocateDirect( buffer.capacity() * 2 );
+               }
+            }
+         }
+         buffer.flip();
+         writeFully( channel, buffer );
+         channel.force( false ); // So a checkpoint never renames a snapshot that is not yet on disk
+      }
+   }
+
+   private static void writeFully( FileChannel channel, ByteBuffer buffer ) throws IOException {
+      while ( buffer.hasRemaining() ) {
+         channel.write( buffer );
+      }
+   }
+
+   /**
+    * Replaces the contents of this empty tree with the mappings of a file
+    * written by writeSnapshot. The file is mapped into memory in large
+    * sequential chunks and the nodes are linked in the order they are read,
+    * so the tree has the shape it had when written, in O(n) and with no key
+    * comparisons. The one exception is a snapshot of a tree without
+    * snapshot bits read into one that needs them, e.g. from a
+    * BinarySearchTree into a RedBlackTree. Its mappings are then relinked
+    * into a balanced tree with buildFromSorted, still in O(n).
+    *
+    * @param path the file to read
+    * @param keyCodec decodes the keys
+    * @param valueCodec decodes the values
+    * @throws IllegalStateException if the tree is not empty
+    * @throws IOException if the file cannot be read or is not a snapshot;
+    *                     the tree is left empty
+    */
+   public void readSnapshot( Path path, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec ) throws IOException {
+      if ( !isEmpty() ) {
+         throw new IllegalStateException( "The tree is not empty." );
+      }
+      try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+         SnapshotReader reader = new SnapshotReader( channel, keyCodec, valueCodec );
+         try {
+            reader.read();
+         } catch ( RuntimeException | IOException e ) {
+            clear();
+            throw e instanceof IOException ? (IOException) e : new IOException( "Corrupt snapshot " + path, e );
+         }
+      }
+   }
+
+   // Links the nodes of a snapshot as they come, keeping the nodes that
+   // still wait for a right child on a stack.
+   private class SnapshotReader {
+      private final FileChannel channel;
+      private final Codec<? extends K> keyCodec;
+      private final Codec<? extends V> valueCodec;
+      private MappedByteBuffer window;
+      private long windowStart = 0;
+
+      SnapshotReader( FileChannel channel, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec ) {
+         this.channel = channel;
+         this.keyCodec = keyCodec;
+         this.valueCodec = valueCodec;
+      }
+
+      void read( ) throws IOException {
+         map( 0, SNAPSHOT_CHUNK );
+         if ( window.remaining() < SNAPSHOT_HEADER || window.getInt() != SNAPSHOT_MAGIC ) {
+            throw new IOException( "Not a tree snapshot." );
+         }
+         int version = window.getInt();
+         if ( version != SNAPSHOT_VERSION ) {
+            throw new IOException( "Unsupported snapshot version " + version );
+         }
+         boolean bits = ( window.getInt() & SNAPSHOT_BITS ) != 0;
+         int size = window.getInt();
+         Object[] waiting = new Object[16]; // Nodes whose right child comes after their left subtree
+         int waitingCount = 0;
+         Node parent = null;        // Where the next node goes, null for the root
+         boolean leftOfParent = false;
+         Node root = null;
+         for ( int i = 0; i < size; i++ ) {
+            if ( i > 0 && parent == null ) {
+               throw new IOException( "The snapshot has more nodes than its tree." );
+            }
+            int flags = 0;
+            K key = null;
+            V value = null;
+            for ( int position = window.position(); ; ) {
+               try {
+                  flags = window.get();
+                  key = keyCodec.read( window );
+                  value = valueCodec.read( window );
+                  break;
+               } catch ( BufferUnderflowException e ) {
+                  // The node straddles the end of the window: map again from its start, larger if it was the whole window
+                  if ( windowStart + window.limit() >= channel.size() ) {
+                     throw new IOException( "The snapshot is truncated." );
+                  }
+                  map( windowStart + position, position == 0 ? window.capacity() * 2L : SNAPSHOT_CHUNK );
+                  position = 0;
+               }
+            }
+            if ( key == null || value == null ) {
+               throw new IOException( "The snapshot holds a null key or value." );
+            }
+            Node node = createNode( key, value );
+            if ( bits ) {
+               restoreSnapshotBit( node, ( flags & SNAPSHOT_BIT ) != 0 );
+            }
+            recordPut( key, null, value );
+            if ( parent == null ) {
+               root = node;
+            } else if ( leftOfParent ) {
+               parent.setLeftChild( node );
+            } else {
+               parent.setRightChild( node );
+            }
+            boolean hasLeft = ( flags & HAS_LEFT ) != 0;
+            boolean hasRight = ( flags & HAS_RIGHT ) != 0;
+            if ( hasLeft && hasRight ) {
+               if ( waitingCount == waiting.length ) {
+                  waiting = Arrays.copyOf( waiting, waitingCount * 2 );
+               }
+               waiting[waitingCount++] = node;
+            }
+            if ( hasLeft || hasRight ) {
+               parent = node;
+               leftOfParent = hasLeft;
+            } else if ( waitingCount > 0 ) {
+               parent = (Node) waiting[--waitingCount];
+               waiting[waitingCount] = null;
+               leftOfParent = false;
+            } else {
+               parent = null;
+            }
+         }
+         if ( parent != null ) {
+            throw new IOException( "The snapshot has fewer nodes than its tree." );
+         }
+         setRoot( root );
+         for ( Node node = firstPostorder( root ); node != null; node = nextPostorder( node ) ) {
+            node.updateSubtreeSize();
+         }
+         setSize( size );
+         incrementChangeCounter();
+         if ( !bits && hasSnapshotBits() ) {
+            rebalance();
+         }
+      }
+
+      private void map( long start, long length ) throws IOException {
+         windowStart = start;
+         window = channel.map( FileChannel.MapMode.READ_ONLY, start, Math.min( length, channel.size() - start ) );
+      }
+   }
+
+   // Relinks the mappings, which are already in order, into a balanced tree.
+   private void rebalance( ) {
+      K[] keys = (K[]) new Comparable<?>[size()];
+      V[] values = (V[]) new Object[size()];
+      int i = 0;
+      for ( Node node = firstNode(); node != null; node = successor( node ), i++ ) {
+         keys[i] = node.getKey();
+         values[i] = node.getValue();
+      }
+      Map<Object, Object> index = valueIndex;
+      WriteAheadLog<K, V> relinking = log;
+      valueIndex = null; // The mappings do not change
+      log = null;
+      clear();
+      buildFromSorted( keys, values );
+      valueIndex = index;
+      log = relinking;
+   }
+
+   /**
+    * @return true if the shape of this tree depends on a bit per node that
+    *         a snapshot must keep, as the color of a RedBlackTree does.
+    *         The default is false.
+    */
+   protected boolean hasSnapshotBits( ) {
+      return false;
+   }
+
+   /**
+    * @param node a node being written to a snapshot
+    * @return the bit to store with it. The default is false.
+    */
+   protected boolean snapshotBit( Node node ) {
+      return false;
+   }
+
+   /**
+    * Called by readSnapshot on each node read from a snapshot whose writer
+    * had snapshot bits, before the node is linked. The default does nothing.
+    * @param node the node just read
+    * @param bit the bit stored with it
+    */
+   protected void restoreSnapshotBit( Node node, boolean bit ) {
+   }
+   // =======================================================================
+   // METRICS
+   // =======================================================================
+
+   /**
+    * Turns the operation counters on or off. While they are on, get, put
+    * and remove count their hits, misses and key comparisons, the visit and
+    * traverse methods count the nodes they visit, and iterators count the
+    * ConcurrentModificationExceptions they throw. Turning them on starts
+    * from zero; turning them off drops the counters, and a registered
+    * TreeMetrics stays registered but stops counting.
+    *
+    * While they are off, each operation pays one null check.
+    *
+    * @param enabled true to count operations, false to stop
+    */
+   public void setMetricsEnabled( boolean enabled ) {
+      if ( !enabled ) {
+         metrics = null;
+      } else if ( metrics == null ) {
+         metrics = new TreeMetrics( this );
+      }
+   }
+
+   /**
+    * @return the operation counters, or null if metrics are disabled
+    */
+   public TreeMetrics getMetrics( ) {
+      return metrics;
+   }
+
+   /**
+    * Returns the number of nodes on the longest path from the root to a
+    * leaf, 0 for an empty tree. The height is cached until a child or root
+    * link changes. Computing it walks the whole tree in preorder along the
+    * parent links, counting the depth, in O(n) time and O(1) space, so
+    * repeated reads of an unchanged tree cost O(1).
+    *
+    * @return the height of the tree
+    */
+   public int height( ) {
+      if ( cachedHeight < 0 ) {
+         cachedHeight = computeHeight();
+      }
+      return cachedHeight;
+   }
+
+   // Walks the whole tree for height.
+   private int computeHeight( ) {
+      int height = 0;
+      int depth = 1;
+      Node node = getRoot();
+      while ( node != null ) {
+         height = Math.max( height, depth );
+         if ( node.hasLeftChild() ) {
+            node = node.getLeftChild();
+            depth++;
+         } else if ( node.hasRightChild() ) {
+            node = node.getRightChild();
+            depth++;
+         } else {
+            // Climb until we arrive from a left child that has a right sibling
+            Node parent = node.getParent();
+            depth--;
+            while ( parent != null && ( node == parent.getRightChild() || !parent.hasRightChild() ) ) {
+               node = parent;
+               parent = parent.getParent();
+               depth--;
+            }
+            node = parent == null ? null : parent.getRightChild();
+            depth++;
+         }
+      }
+      return height;
+   }
+
+   /**
+    * Counts a search from the root that compared the key comparisons times.
+    * @param comparisons the number of nodes compared with the key
+    */
+   protected void meterSearch( int comparisons ) {
+      if ( metrics != null ) {
+         metrics.recordSearch( comparisons );
+      }
+   }
+
+   /**
+    * @param hit true if the key was present
+    */
+   protected void meterGet( boolean hit ) {
+      if ( metrics != null ) {
+         metrics.recordGet( hit );
+      }
+   }
+
+   /**
+    * @param hit true if the put replaced a value, false if it inserted a key
+    */
+   protected void meterPut( boolean hit ) {
+      if ( metrics != null ) {
+         metrics.recordPut( hit );
+      }
+   }
+
+   /**
+    * Counts a remove. Removals that succeed are counted by recordRemoval,
+    * so subclasses call this only when the key was missing.
+    * @param hit true if the key was present
+    */
+   protected void meterRemove( boolean hit ) {
+      if ( metrics != null ) {
+         metrics.recordRemove( hit );
+      }
+   }
+
+   // Wraps a visitor to count the nodes it visits while metrics are enabled.
+   private TreeVisitor<? super K, ? super V> metered( TreeVisitor<? super K, ? super V> visitor ) {
+      return metrics == null ? visitor : metrics.<K, V>counting( visitor );
+   }
+
+   // Counts and returns the exception an iterator throws when the tree changed under it.
+   private ConcurrentModificationException concurrentModification( ) {
+      if ( metrics != null ) {
+         metrics.recordConcurrentModification();
+      }
+      return new ConcurrentModificationException(  );
+   }
+
+   // =======================================================================
+   // SHAPE
+   // =======================================================================
+
+   /**
+    * A callback for inserts that land much deeper than a balanced tree
+    * would put them, the first sign of a tree degenerating under sorted or
+    * skewed input.
+    */
+   public interface ImbalanceAlarm {
+      /**
+       * Called by put, after the insert, on the thread that inserted. It may
+       * read the tree, for example to call shape(), but must not modify it.
+       *
+       * @param depth the depth of the inserted node, in edges from the root
+       * @param size the number of nodes after the insert
+       */
+      public void imbalanced( int depth, int size );
+   }
+
+   /**
+    * Sets an alarm for inserts deeper than threshold * log2( size + 1 ).
+    * Each put already knows the depth of the node it inserts, so checking
+    * costs O(1) per insert and nothing per get. To report a degenerating
+    * tree without flooding, the alarm fires once and then stays quiet until
+    * an insert is twice as deep, and re-arms when the tree is cleared.
+    *
+    * A red-black tree never puts a node deeper than 2 * log2( n + 1 ), so
+    * thresholds above 2 only fire for trees that do not rebalance.
+    *
+    * @param threshold how many times deeper than log2( size + 1 ) an insert may land
+    * @param alarm the callback, or null to remove the alarm
+    * @throws IllegalArgumentException if threshold is not positive
+    */
+   public void setImbalanceAlarm( double threshold, ImbalanceAlarm alarm ) {
+      if ( !( threshold > 0 ) ) {
+         throw new IllegalArgumentException( "Illegal imbalance threshold: " + threshold );
+      }
+      imbalanceThreshold = threshold;
+      imbalanceAlarm = alarm;
+      nextAlarmDepth = 0;
+   }
+
+   private void checkInsertDepth( int depth ) {
+      if ( depth >= nextAlarmDepth && depth > imbalanceThreshold * Math.log( size() + 1 ) / Math.log( 2 ) ) {
+         nextAlarmDepth = 2 * depth;
+         imbalanceAlarm.imbalanced( depth, size() );
+      }
+   }
+
+   /**
+    * Measures the shape of the tree in one level order pass: the height,
+    * the average depth, the number of nodes per level and the worst
+    * difference between the heights of sibling subtrees. Takes O(n) time
+    * and three arrays of n entries.
+    *
+    * @return the shape of the tree
+    */
+   public TreeShape shape( ) {
+      int size = size();
+      if ( getRoot() == null ) {
+         return new TreeShape( 0, 0, 0, new int[0], 0 );
+      }
+      Object[] queue = new Object[size];
+      int[] firstChild = new int[size]; // Queue position of the first child of each node
+      int[] levelCounts = new int[16];
+      int head = 0, tail = 0, height = 0;
+      long totalDepth = 0;
+      queue[tail++] = getRoot();
+      while ( head < tail ) {
+         int levelEnd = tail; // The queue holds exactly one level here
+         if ( height == levelCounts.length ) {
+            levelCounts = Arrays.copyOf( levelCounts, 2 * height );
+         }
+         levelCounts[height] = levelEnd - head;
+         totalDepth += (long) height * ( levelEnd - head );
+         for ( ; head < levelEnd; head++ ) {
+            Node current = (Node) queue[head];
+            firstChild[head] = tail;
+            if ( current.hasLeftChild() ) {
+               queue[tail++] = current.getLeftChild();
+            }
+            if ( current.hasRightChild() ) {
+               queue[tail++] = current.getRightChild();
+            }
+         }
+         height++;
+      }
+      // Children sit behind their parents in the queue, so a backward pass
+      // sees every subtree height before it is needed.
+      int[] heights = new int[size];
+      int worstImbalance = 0;
+      for ( int i = size - 1; i >= 0; i-- ) {
+         Node current = (Node) queue[i];
+         int child = firstChild[i];
+         int left = current.hasLeftChild() ? heights[child++] : 0;
+         int right = current.hasRightChild() ? heights[child] : 0;
+         heights[i] = 1 + Math.max( left, right );
+         worstImbalance = Math.max( worstImbalance, Math.abs( left - right ) );
+      }
+      return new TreeShape( size, height, totalDepth, Arrays.copyOf( levelCounts, height ), worstImbalance );
+   }
+
+   // =======================================================================
+   // FREEZING
+   // =======================================================================
+
+   /**
+    * Copies the mappings into an immutable FrozenBinarySearchTree, which
+    * stores them in breadth-first order in arrays for faster lookups. The
+    * frozen tree keeps the comparator and key normalizer of this tree and
+    * does not change when this tree does.
+    *
+    * @return an immutable copy of this tree
+    * @throws IllegalStateException if the tree holds more than 2^30 - 1 mappings
+    */
+   public FrozenBinarySearchTree<K, V> freeze( ) {
+      if ( size() > FrozenBinarySearchTree.MAX_SIZE ) {
+         throw new IllegalStateException( "Too many mappings to freeze: " + size() );
+      }
+      Object[] keys = new Object[size()];
+      Object[] values = new Object[size()];
+      int[] next = new int[1];
+      inorder( ( key, value ) -> { // Not visitInorder, which a subclass may lock again
+         keys[next[0]] = key;
+         values[next[0]++] = value;
+         return true;
+      } );
+      return new FrozenBinarySearchTree<>( keys, values, comparator, normalizer );
+   }
+
+   // =======================================================================
+   // DURABILITY
+   // =======================================================================
+
+   /**
+    * Makes this empty tree durable. It loads the snapshot, if there is one,
+    * replays the log on top of it, and from then on appends every put,
+    * remove and clear to the log with group commit. See WriteAheadLog.
+    *
+    * @param snapshot the snapshot written by the last checkpoint
+    * @param logPath the log of the changes since that checkpoint, created if missing
+    * @param keyCodec encodes the keys
+    * @param valueCodec encodes the values
+    * @param syncEveryOps the number of changes in a group commit, 1 to sync every change
+    * @param syncEveryMillis the longest time a change waits to be synced, or 0 for no limit
+    * @throws IllegalStateException if the tree is not empty or already durable
+    * @throws IOException if the snapshot or log cannot be read; the tree is left empty
+    */
+   public void openDurable( Path snapshot, Path logPath, Codec<K> keyCodec, Codec<V> valueCodec,
+                            int syncEveryOps, long syncEveryMillis ) throws IOException {
+      if ( log != null ) {
+         throw new IllegalStateException( "The tree is already durable." );
+      }
+      if ( !isEmpty() ) {
+         throw new IllegalStateException( "The tree is not empty." );
+      }
+      try {
+         if ( Files.exists( snapshot ) ) {
+            readSnapshot( snapshot, keyCodec, valueCodec );
+         }
+         log = new WriteAheadLog<>( logPath, this, keyCodec, valueCodec, syncEveryOps, syncEveryMillis );
+      } catch ( IOException | RuntimeException e ) {
+         clear();
+         throw e;
+      }
+      snapshotPath = snapshot;
+   }
+
+   /**
+    * @return true if changes to this tree are logged
+    */
+   public boolean isDurable( ) {
+      return log != null;
+   }
+
+   /**
+    * Writes a snapshot of the tree and empties the log, so the next
+    * openDurable replays nothing older. The snapshot is written to a
+    * temporary file and then renamed over the old one, so a crash leaves
+    * either the old snapshot with the full log or the new one.
+    *
+    * @throws IllegalStateException if the tree is not durable
+    * @throws IOException if the snapshot cannot be written
+    */
+   public void checkpoint( ) throws IOException {
+      if ( log == null ) {
+         throw new IllegalStateException( "The tree is not durable." );
+      }
+      Path temporary = snapshotPath.resolveSibling( snapshotPath.getFileName() + ".tmp" );
+      writeSnapshot( temporary, log.keyCodec(), log.valueCodec() );
+      Files.move( temporary, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+      // The order matters: until the directory entry of the rename is on
+      // disk, a crash may bring back the old snapshot, which still needs
+      // the whole log. Truncating first could lose every change since the
+      // previous checkpoint.
+      try ( FileChannel directory = FileChannel.open( snapshotPath.toAbsolutePath().getParent(), StandardOpenOption.READ ) ) {
+         directory.force( true );
+      }
+      log.truncate();
+   }
+
+   /**
+    * Syncs the log and stops logging. The tree keeps its mappings.
+    *
+    * @throws IOException if the log cannot be written
+    */
+   public void closeDurable( ) throws IOException {
+      if ( log != null ) {
+         WriteAheadLog<K, V> closing = log;
+         log = null;
+         snapshotPath = null;
+         closing.close();
+      }
+   }
+
+   // =======================================================================
+   // SET ALGEBRA
+   // =======================================================================
+
+   /**
+    * The set operations mergeSorted performs, named after the public
+    * methods that request them.
+    */
+   protected enum SetOperation {
+      /** Adds the mappings, replacing the values of keys already present. */
+      UNION,
+      /** Keeps only the keys given. */
+      INTERSECTION,
+      /** Removes the keys given. */
+      DIFFERENCE,
+      /** Adds mappings whose keys are all greater than those of the tree. */
+      JOIN
+   }
+
+   private static final int PARALLEL_THRESHOLD = 8192; // Mappings of other below which a merge stays on one thread
+
+   /**
+    * Adds the mappings of other to this tree, replacing the values of keys
+    * both trees hold, as putAll( other ) would. Where putAll searches from
+    * the root for every mapping, union splits this tree at the keys of other
+    * and joins the pieces back together, in O(m log( n / m + 1 )) for m
+    * mappings in the smaller tree and n in the larger, after copying the
+    * mappings of other out in O(size of other). Other does not change.
+    *
+    * @param other a tree ordered by an equal comparator
+    * @throws IllegalArgumentException if other orders its keys differently
+    * @see #mergeSorted(SetOperation, Object[], Object[])
+    */
+   public void union( AbstractBinarySearchTree<K, V> other ) {
+      if ( other != this ) {
+         Object[][] entries = copyEntries( other );
+         mergeSorted( SetOperation.UNION, entries[0], entries[1] );
       }
-      incrementSize();
-      incrementChangeCounter();
-      return null;
    }
 
    /**
-    * Copies all of the mappings from the specified map to this map
-    * (optional operation).  The effect of this call is equivalent to that
-    * of calling {@link #put(Object, Object) put(k, v)} on this map once
-    * for each mapping from key <tt>k</tt> to value <tt>v</tt> in the
-    * specified map.  The behavior of this operation is undefined if the
-    * specified map is modified while the operation is in progress.
+    * Removes the mappings whose keys other does not hold, as
+    * keySet().retainAll( other.keySet() ) would, in O(m log( n / m + 1 ))
+    * as for union. When this tree is the smaller, the keys to remove are
+    * found by searching other for each key of this tree instead, so other
+    * is not copied. The values of this tree are kept. Other does not change.
     *
-    * @param m mappings to be stored in this map
-    * @throws UnsupportedOperationException if the <tt>putAll</tt> operation
-    *                                       is not supported by this map
-    * @throws ClassCastException            if the class of a key or value in the
-    *                                       specified map prevents it from being stored in this map
-    * @throws NullPointerException          if the specified map is null, or if
-    *                                       this map does not permit null keys or values, and the
-    *                                       specified map contains null keys or values
-    * @throws IllegalArgumentException      if some property of a key or value in
-    *                                       the specified map prevents it from being stored in this map
+    * @param other a tree ordered by an equal comparator
+    * @throws IllegalArgumentException if other orders its keys differently
+    * @see #probeOther(AbstractBinarySearchTree)
     */
-   @Override
-   public void putAll ( Map< ? extends K, ? extends V > m ) {
-      for( K key : m.keySet() ) {
-         put( key, m.get( key ) );
+   public void intersection( AbstractBinarySearchTree<K, V> other ) {
+      if ( other != this ) {
+         if ( probeOther( other ) ) {
+            mergeSorted( SetOperation.DIFFERENCE, probeKeys( other, false ), null );
+         } else {
+            Object[][] entries = copyEntries( other );
+            mergeSorted( SetOperation.INTERSECTION, entries[0], entries[1] );
+         }
       }
    }
 
    /**
-    * Removes the root node of the BST.
-    * @return the value of the node removed, or null if no node was removed.
+    * Removes the mappings whose keys other holds, as
+    * keySet().removeAll( other.keySet() ) would, in O(m log( n / m + 1 ))
+    * as for union, and like intersection searches other for the keys of
+    * this tree when this tree is the smaller. Other does not change.
+    *
+    * @param other a tree ordered by an equal comparator
+    * @throws IllegalArgumentException if other orders its keys differently
+    * @see #probeOther(AbstractBinarySearchTree)
     */
-   public V removeRoot( ) {
-      return remove( getRoot().getKey() );
+   public void difference( AbstractBinarySearchTree<K, V> other ) {
+      if ( other == this ) {
+         clear();
+      } else if ( probeOther( other ) ) {
+         mergeSorted( SetOperation.DIFFERENCE, probeKeys( other, true ), null );
+      } else {
+         Object[][] entries = copyEntries( other );
+         mergeSorted( SetOperation.DIFFERENCE, entries[0], entries[1] );
+      }
    }
 
    /**
-    * Removes all of the mappings from this map (optional operation).
-    * The map will be empty after this call returns.
-    *
-    * @throws UnsupportedOperationException if the <tt>clear</tt> operation
-    *                                       is not supported by this map
+    * Decides whether intersection and difference search other for each key
+    * of this tree, in O(n log m), rather than copy the m mappings of other.
+    * The default probes when this tree is the smaller. The keys of this
+    * tree are then read before mergeSorted runs, so subclasses that lock
+    * in mergeSorted return false to keep the operation atomic.
+    * @param other the other tree of the operation
+    * @return true to probe other
     */
-   @Override
-   public void clear ( ) {
-      setRoot( null );
-      setSize( 0 );
-      incrementChangeCounter();
+   protected boolean probeOther( AbstractBinarySearchTree<K, V> other ) {
+      return size() < other.size();
    }
 
    /**
-    * Returns a {@link Set} view of the keys contained in this map.
-    * The set is backed by the map, so changes to the map are
-    * reflected in the set, and vice-versa.  If the map is modified
-    * while an iteration over the set is in progress (except through
-    * the iterator's own <tt>remove</tt> operation), the results of
-    * the iteration are undefined.  The set supports element removal,
-    * which removes the corresponding mapping from the map, via the
-    * <tt>Iterator.remove</tt>, <tt>Set.remove</tt>,
-    * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt>
-    * operations.  It does not support the <tt>add</tt> or <tt>addAll</tt>
-    * operations.
+    * Adds the mappings of right, whose keys are all greater than the keys
+    * of this tree. The mappings are copied into a balanced subtree in O(m)
+    * and joined to this tree in O(log n). Right does not change.
     *
-    * @return a set view of the keys contained in this map
+    * @param right a tree ordered by an equal comparator whose smallest key
+    *              is greater than the largest key of this tree
+    * @throws IllegalArgumentException if right orders its keys differently
+    *                                  or holds a key that is not greater
+    *                                  than every key of this tree
     */
-   @Override
-   public Set< K > keySet ( ) {
-      Set<K> keySet = new HashSet<>( );
-      traverseInorder( (key, value) -> keySet.add( (K) key ) );
-      return keySet;
+   public void join( AbstractBinarySearchTree<K, V> right ) {
+      if ( right == this && !isEmpty() ) {
+         throw new IllegalArgumentException( "A tree cannot be joined to itself." );
+      }
+      Object[][] entries = copyEntries( right );
+      mergeSorted( SetOperation.JOIN, entries[0], entries[1] );
    }
 
    /**
-    * Returns a {@link Collection} view of the values contained in this map.
-    * The collection is backed by the map, so changes to the map are
-    * reflected in the collection, and vice-versa.  If the map is
-    * modified while an iteration over the collection is in progress
-    * (except through the iterator's own <tt>remove</tt> operation),
-    * the results of the iteration are undefined.  The collection
-    * supports element removal, which removes the corresponding
-    * mapping from the map, via the <tt>Iterator.remove</tt>,
-    * <tt>Collection.remove</tt>, <tt>removeAll</tt>,
-    * <tt>retainAll</tt> and <tt>clear</tt> operations.  It does not
-    * support the <tt>add</tt> or <tt>addAll</tt> operations.
+    * Moves the mappings whose keys are greater than or equal to key into
+    * upper, which must be empty. This tree keeps the smaller keys. Cutting
+    * the tree takes O(log n); upper is then built from the m moved mappings
+    * in O(m), since a node belongs to the tree that created it.
     *
-    * @return a collection view of the values contained in this map
+    * @param key where to split
+    * @param upper an empty tree ordered by an equal comparator
+    * @throws NullPointerException if key is null
+    * @throws IllegalArgumentException if upper is this tree, is not empty
+    *                                  or orders its keys differently
     */
-   @Override
-   public Collection< V > values ( ) {
-      ArrayList<V> values = new ArrayList<>( );
-      traverseInorder( (key, value) -> values.add( (V) value ) );
-      return values;
+   public void split( K key, AbstractBinarySearchTree<K, V> upper ) {
+      checkKey( key );
+      if ( upper == this || !upper.isEmpty() ) {
+         throw new IllegalArgumentException( "The upper tree must be another, empty tree." );
+      }
+      checkOrder( upper );
+      Object[][] moved = splitOff( key );
+      upper.buildFromSorted( moved[0].length, arrayEntries( moved[0], moved[1] ) );
    }
 
    /**
-    * Returns a {@link Set} view of the mappings contained in this map.
-    * The set is backed by the map, so changes to the map are
-    * reflected in the set, and vice-versa.  If the map is modified
-    * while an iteration over the set is in progress (except through
-    * the iterator's own <tt>remove</tt> operation, or through the
-    * <tt>setValue</tt> operation on a map entry returned by the
-    * iterator) the results of the iteration are undefined.  The set
-    * supports element removal, which removes the corresponding
-    * mapping from the map, via the <tt>Iterator.remove</tt>,
-    * <tt>Set.remove</tt>, <tt>removeAll</tt>, <tt>retainAll</tt> and
-    * <tt>clear</tt> operations.  It does not support the
-    * <tt>add</tt> or <tt>addAll</tt> operations.
-    *
-    * @return a set view of the mappings contained in this map
+    * Cuts the mappings with keys greater than or equal to key out of this
+    * tree. Subclasses that lock override this rather than split, so the
+    * upper tree is built outside the lock.
+    * @param key where to split
+    * @return the keys and values that were cut out, in ascending order
     */
-   @Override
-   public Set< Entry< K, V > > entrySet ( ) {
-      Set<Entry< K, V >> entrySet = new HashSet<>( );
-      buildEntrySet( getRoot(), entrySet );
-      return entrySet;
+   protected Object[][] splitOff( K key ) {
+      Pieces pieces = splitNodes( getRoot(), subtreeRank( getRoot() ), key );
+      Node upper = pieces.match == null ? pieces.right : joinNodes( null, 0, pieces.match, pieces.right, pieces.rightRank );
+      finishMerge( pieces.left );
+      Object[] keys = new Object[sizeOf( upper )];
+      Object[] values = new Object[keys.length];
+      if ( upper != null ) {
+         upper.setParent( null );
+         Node node = upper;
+         while ( node.hasLeftChild() ) {
+            node = node.getLeftChild();
+         }
+         for ( int i = 0; node != null; i++, node = successor( node ) ) {
+            keys[i] = node.getKey();
+            values[i] = node.getValue();
+         }
+         discard( upper );
+      }
+      return new Object[][] { keys, values };
    }
 
-   // Helper method use by the entrySet method.
-   private void buildEntrySet( Node node, Set<Entry< K, V >> entrySet ) {
-      if ( node != null) {
-         buildEntrySet( node.getLeftChild(), entrySet );
-         entrySet.add( node.getEntry() );
-         buildEntrySet( node.getRightChild(), entrySet );
+   /**
+    * Merges the sorted mappings of another tree into this one by the set
+    * operation the public method names. Each step splits this tree at the
+    * middle key of a range of the mappings and merges the halves on either
+    * side independently, in parallel through fork-join when there are
+    * enough of them and no value index or log has to see the changes in
+    * order. Subclasses that lock override this rather than the public
+    * methods, so the other tree is read outside the lock.
+    * @param operation the set operation to perform
+    * @param keys the keys of the other tree, in ascending order
+    * @param values the values of the other tree, values[i] mapped to keys[i];
+    *               only union and join read them
+    */
+   protected void mergeSorted( SetOperation operation, Object[] keys, Object[] values ) {
+      if ( keys.length == 0 ) {
+         if ( operation == SetOperation.INTERSECTION ) {
+            clear();
+         }
+         return;
+      }
+      if ( operation == SetOperation.JOIN ) {
+         Node last = lastNode();
+         if ( last != null && compareKeys( last.getKey(), (K) keys[0] ) >= 0 ) {
+            throw new IllegalArgumentException( "The keys to join are not all greater than " + last.getKey() );
+         }
+         Node right = buildRange( keys, values, 0, keys.length );
+         finishMerge( last == null ? right : join2( getRoot(), subtreeRank( getRoot() ), right, subtreeRank( right ) ) );
+         return;
       }
+      boolean parallel = valueIndex == null && log == null && keys.length >= PARALLEL_THRESHOLD;
+      MergeTask task = new MergeTask( operation, keys, values, parallel, getRoot(), subtreeRank( getRoot() ), 0, keys.length );
+      finishMerge( parallel ? ForkJoinPool.commonPool().invoke( task ) : task.compute() );
    }
 
    /**
-    * Returns <tt>true</tt> if this map contains a mapping for the specified
-    * key.  More formally, returns <tt>true</tt> if and only if
-    * this map contains a mapping for a key <tt>k</tt> such that
-    * <tt>(key==null ? k==null : key.equals(k))</tt>.  (There can be
-    * at most one such mapping.)
-    *
-    * @param key key whose presence in this map is to be tested
-    * @return <tt>true</tt> if this map contains a mapping for the specified
-    *      key
-    * @throws ClassCastException   if the key is of an inappropriate type for
-    *                              this map
-    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
-    * @throws NullPointerException if the specified key is null and this map
-    *                              does not permit null keys
-    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    * Joins two detached subtrees and a node between them into one subtree,
+    * for split and the set operations. Every key in left is less than the
+    * key of middle and every key in right greater. The default makes left
+    * and right the children of middle; balanced subclasses override this to
+    * rebalance in O(the difference of the ranks of left and right).
+    * @param left a subtree, may be null
+    * @param leftRank the rank of left
+    * @param middle a node whose old children are replaced
+    * @param right a subtree, may be null
+    * @param rightRank the rank of right
+    * @return the root of the joined subtree, without a parent
+    * @see #subtreeRank(Node)
     */
-   @Override
-   public boolean containsKey ( Object key ) {
-      return get( key ) != null;
+   protected Node joinNodes( Node left, int leftRank, Node middle, Node right, int rightRank ) {
+      return link( left, middle, right );
    }
 
    /**
-    * Returns <tt>true</tt> if this map maps one or more keys to the
-    * specified value.  More formally, returns <tt>true</tt> if and only if
-    * this map contains at least one mapping to a value <tt>v</tt> such that
-    * <tt>(value==null ? v==null : value.equals(v))</tt>.  This operation
-    * will probably require time linear in the map size for most
-    * implementations of the <tt>Map</tt> interface.
-    *
-    * @param value value whose presence in this map is to be tested
-    * @return <tt>true</tt> if this map maps one or more keys to the
-    *      specified value
-    * @throws ClassCastException   if the value is of an inappropriate type for
-    *                              this map
-    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
-    * @throws NullPointerException if the specified value is null and this
-    *                              map does not permit null values
-    *                              (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
+    * Computes the rank of a subtree in O(height), the measure of height
+    * joinNodes balances by, e.g. the black height in a red-black tree.
+    * Split and the set operations derive the ranks of the subtrees they cut
+    * off from it with childRank and joinedRank instead of computing them
+    * again. The default is 0, for trees that do not balance.
+    * @param subtree a subtree, may be null
+    * @return its rank, 0 if it is empty
     */
-   @Override
-   public boolean containsValue ( Object value ) {
-      return values().contains( value );
+   protected int subtreeRank( Node subtree ) {
+      return 0;
    }
 
    /**
-    * Returns an iterator over elements of type {@code T}.
-    *
-    * @return an Iterator.
+    * @param parent a node
+    * @param rank the rank of the subtree rooted at parent
+    * @return the rank of either child subtree of parent, in O(1)
     */
-   @Override
-   public Iterator<V> iterator ( ) {
-      return new TreeIterator();
+   protected int childRank( Node parent, int rank ) {
+      return 0;
    }
 
    /**
-    * Recursive Algorithm: Preorder Binary Tree Traversal
-    *    1. Visit the root.
-    *    2. Preorder traverse the left subtree.
-    *    3. Preorder traverse the right subtree.
-    *
-    * Example:
-    *    Tree
-    *              4
-    *             / \
-    *            2   5
-    *           / \
-    *          1   3
-    *
-    *    Postorder traversal: 4, 2, 1, 3, 5
-    *
-    * @param visitor Lambda expression to process the key and value of each node.
-    *                For example: (key, value) -> System.out.println( key )
+    * @param joined a subtree joinNodes just returned
+    * @return its rank, in O(1)
     */
-   public void traversePreorder( Visitor visitor ) {
-      traversePreorder( getRoot(), visitor );
-   }
-
-   // Helper method for traversePreorder method
-   // Iterative Solution uses a stack
-   private void traversePreorder( Node node, Visitor visitor ) {
-      if ( node != null) {
-         Stack<Node> stack = new Stack<>(  );
-         stack.push( node );
-         while( !stack.isEmpty() ) {
-            Node currentNode = stack.pop();
-            if ( currentNode.hasRightChild() ) {
-               stack.push( currentNode.getRightChild() );
+   protected int joinedRank( Node joined ) {
+      return 0;
+   }
+
+   /**
+    * Makes left and right the children of middle.
+    * @param left a subtree, may be null
+    * @param middle a node whose old children are replaced
+    * @param right a subtree, may be null
+    * @return middle, without a parent
+    */
+   protected Node link( Node left, Node middle, Node right ) {
+      middle.setLeftChild( left );
+      middle.setRightChild( right );
+      middle.updateSubtreeSize();
+      middle.setParent( null );
+      return middle;
+   }
+
+   /**
+    * Called when split or a set operation has made newRoot the root. The
+    * default does nothing.
+    * @param newRoot the root, may be null
+    */
+   protected void afterJoin( Node newRoot ) {
+   }
+
+   // Merges the subtree tree with the mappings lo to hi - 1 of the other tree.
+   private class MergeTask extends RecursiveTask<Node> {
+      private static final long serialVersionUID = 1L;
+      private final SetOperation operation;
+      private final Object[] keys, values;
+      private final boolean parallel;
+      private final Node tree;
+      private final int treeRank, lo, hi;
+      private int rank; // The rank of the subtree mergeRange returned last
+
+      MergeTask( SetOperation operation, Object[] keys, Object[] values, boolean parallel, Node tree, int treeRank, int lo, int hi ) {
+         this.operation = operation;
+         this.keys = keys;
+         this.values = values;
+         this.parallel = parallel;
+         this.tree = tree;
+         this.treeRank = treeRank;
+         this.lo = lo;
+         this.hi = hi;
+      }
+
+      @Override
+      protected Node compute( ) {
+         return mergeRange( tree, treeRank, lo, hi );
+      }
+
+      private Node mergeRange( Node tree, int treeRank, int lo, int hi ) {
+         if ( tree == null ) {
+            Node built = operation == SetOperation.UNION && lo < hi ? buildRange( keys, values, lo, hi ) : null;
+            rank = subtreeRank( built );
+            return built;
+         }
+         if ( lo >= hi ) {
+            if ( operation == SetOperation.INTERSECTION ) {
+               discard( tree );
+               rank = 0;
+               return null;
             }
-            if ( currentNode.hasLeftChild() ) {
-               stack.push( currentNode.getLeftChild() );
+            rank = treeRank;
+            return tree;
+         }
+         int mid = ( lo + hi ) >>> 1;
+         Pieces pieces = splitNodes( tree, treeRank, (K) keys[mid] );
+         Node left, right;
+         int leftRank, rightRank;
+         if ( parallel && hi - lo >= PARALLEL_THRESHOLD ) {
+            MergeTask leftTask = new MergeTask( operation, keys, values, true, pieces.left, pieces.leftRank, lo, mid );
+            leftTask.fork();
+            right = mergeRange( pieces.right, pieces.rightRank, mid + 1, hi );
+            rightRank = rank;
+            left = leftTask.join();
+            leftRank = leftTask.rank;
+         } else {
+            left = mergeRange( pieces.left, pieces.leftRank, lo, mid );
+            leftRank = rank;
+            right = mergeRange( pieces.right, pieces.rightRank, mid + 1, hi );
+            rightRank = rank;
+         }
+         Node match = pieces.match;
+         if ( operation == SetOperation.UNION ) {
+            if ( match == null ) {
+               match = createNode( (K) keys[mid], (V) values[mid] );
+               recordPut( match.getKey(), null, match.getValue() );
+            } else {
+               match.setValue( (V) values[mid] );
             }
-            visitor.visit( currentNode.getKey(), currentNode.getValue() );
+         } else if ( operation == SetOperation.DIFFERENCE && match != null ) {
+            discard( match );
+            match = null;
+         }
+         if ( match != null ) {
+            Node joined = joinNodes( left, leftRank, match, right, rightRank );
+            rank = joinedRank( joined );
+            return joined;
+         }
+         if ( left == null || right == null ) {
+            rank = left == null ? rightRank : leftRank;
+            return left == null ? right : left;
+         }
+         Node joined = join2( left, leftRank, right, rightRank );
+         rank = joinedRank( joined );
+         return joined;
+      }
+   }
+
+   // The pieces splitNodes cuts a subtree into.
+   private class Pieces {
+      final Node left, match, right; // Smaller keys, the node holding the key or null, larger keys
+      final int leftRank, rightRank;
+
+      Pieces( Node left, int leftRank, Node match, Node right, int rightRank ) {
+         this.left = left;
+         this.leftRank = leftRank;
+         this.match = match;
+         this.right = right;
+         this.rightRank = rightRank;
+      }
+   }
+
+   // Cuts the subtree tree at key. The pieces hanging off the search path
+   // are joined back together from the bottom up, their ranks derived on the
+   // way down so that no join has to compute one from scratch.
+   private Pieces splitNodes( Node tree, int rank, K key ) {
+      long prefix = keyPrefix( key );
+      ArrayList<Node> path = new ArrayList<>( 64 ); // Deep enough for any red-black tree
+      int[] ranks = new int[64]; // ranks[i] is the rank of the subtree of path.get( i )
+      Node match = null;
+      int cmp = 0;
+      for ( Node node = tree; node != null; node = cmp < 0 ? node.getLeftChild() : node.getRightChild() ) {
+         cmp = compareToNode( key, prefix, node );
+         if ( cmp == 0 ) {
+            match = node;
+            break;
+         }
+         if ( path.size() == ranks.length ) { // Only unbalanced trees get this deep
+            ranks = Arrays.copyOf( ranks, ranks.length * 2 );
+         }
+         ranks[path.size()] = rank;
+         path.add( node );
+         rank = childRank( node, rank );
+      }
+      Node left = null, right = null;
+      int leftRank = 0, rightRank = 0;
+      if ( match != null ) {
+         left = match.getLeftChild();
+         right = match.getRightChild();
+         leftRank = rightRank = childRank( match, rank );
+         link( null, match, null );
+      }
+      Node below = match; // The path node under the current one, whose children changed already
+      for ( int i = path.size() - 1; i >= 0; i-- ) {
+         Node node = path.get( i );
+         int hangingRank = childRank( node, ranks[i] );
+         boolean wentLeft = below == null ? cmp < 0 : node.getLeftChild() == below;
+         below = node;
+         if ( wentLeft ) {
+            right = joinNodes( right, rightRank, node, node.getRightChild(), hangingRank );
+            rightRank = joinedRank( right );
+         } else {
+            left = joinNodes( node.getLeftChild(), hangingRank, node, left, leftRank );
+            leftRank = joinedRank( left );
+         }
+      }
+      return new Pieces( left, leftRank, match, right, rightRank );
+   }
+
+   // Joins two detached, nonempty subtrees, every key of left less than
+   // every key of right, around the last node of left.
+   private Node join2( Node left, int leftRank, Node right, int rightRank ) {
+      ArrayList<Node> spine = new ArrayList<>( 64 );
+      int[] ranks = new int[64]; // ranks[i] is the rank of the subtree of spine.get( i )
+      for ( Node node = left; node != null; node = node.getRightChild() ) {
+         if ( spine.size() == ranks.length ) {
+            ranks = Arrays.copyOf( ranks, ranks.length * 2 );
+         }
+         ranks[spine.size()] = leftRank;
+         spine.add( node );
+         leftRank = childRank( node, leftRank );
+      }
+      int i = spine.size() - 1;
+      Node last = spine.get( i );
+      Node rest = last.getLeftChild();
+      int restRank = childRank( last, ranks[i] );
+      while ( --i >= 0 ) {
+         Node node = spine.get( i );
+         rest = joinNodes( node.getLeftChild(), childRank( node, ranks[i] ), node, rest, restRank );
+         restRank = joinedRank( rest );
+      }
+      return joinNodes( rest, restRank, last, right, rightRank );
+   }
+
+   // Creates a balanced subtree of the mappings lo to hi - 1, colored like
+   // the trees of buildFromSorted.
+   private Node buildRange( Object[] keys, Object[] values, int lo, int hi ) {
+      int bottomLevel = 31 - Integer.numberOfLeadingZeros( hi - lo + 1 ); // Levels above it are full
+      return buildRange( keys, values, lo, hi, 0, bottomLevel );
+   }
+
+   private Node buildRange( Object[] keys, Object[] values, int lo, int hi, int level, int bottomLevel ) {
+      if ( lo >= hi ) {
+         return null;
+      }
+      int mid = ( lo + hi ) >>> 1;
+      Node node = createNode( (K) keys[mid], (V) values[mid] );
+      recordPut( node.getKey(), null, node.getValue() );
+      link( buildRange( keys, values, lo, mid, level + 1, bottomLevel ), node,
+            buildRange( keys, values, mid + 1, hi, level + 1, bottomLevel ) );
+      afterBuild( node, level == bottomLevel );
+      return node;
+   }
+
+   // Drops the mappings of a subtree cut out of the tree from the value index
+   // and the log, and marks their entries removed. Without either there is
+   // nothing to do: the nodes are unreachable, an entry handed out can
+   // write through to neither, and finishMerge sends fingers back to the root.
+   private void discard( Node subtree ) {
+      if ( valueIndex == null && log == null ) {
+         return;
+      }
+      subtree.setParent( null );
+      for ( Node node = subtree; node != null; node = nextPreorder( node ) ) {
+         node.getEntry().removed = true;
+         if ( valueIndex != null ) {
+            unindexValue( node.getKey(), node.getValue() );
+         }
+         if ( log != null ) {
+            log.remove( node.getKey() );
+         }
+      }
+   }
+
+   // Makes newRoot the root after split or a set operation.
+   private void finishMerge( Node newRoot ) {
+      setRoot( newRoot );
+      afterJoin( newRoot );
+      setSize( sizeOf( newRoot ) );
+      clearCounter++; // Nodes moved or were dropped without recordRemoval
+      incrementChangeCounter();
+   }
+
+   // Collects in order the keys of this tree that other holds if held, or
+   // that it does not hold otherwise, after checking it orders its keys like this tree.
+   private Object[] probeKeys( AbstractBinarySearchTree<K, V> other, boolean held ) {
+      checkOrder( other );
+      ArrayList<Object> keys = new ArrayList<>(  );
+      visitInorder( ( key, value ) -> {
+         if ( other.containsKey( key ) == held ) {
+            keys.add( key );
+         }
+         return true;
+      } );
+      return keys.toArray();
+   }
+
+   // Copies the mappings of other in order, after checking it orders its keys like this tree.
+   private Object[][] copyEntries( AbstractBinarySearchTree<K, V> other ) {
+      checkOrder( other );
+      ArrayList<Object> keys = new ArrayList<>( other.size() );
+      ArrayList<Object> values = new ArrayList<>( other.size() );
+      other.visitInorder( ( key, value ) -> {
+         keys.add( key );
+         values.add( value );
+         return true;
+      } );
+      return new Object[][] { keys.toArray(), values.toArray() };
+   }
+
+   // Throws unless other orders its keys like this tree.
+   private void checkOrder( AbstractBinarySearchTree<K, V> other ) {
+      if ( !Objects.equals( comparator, other.comparator ) ) {
+         throw new IllegalArgumentException( "The trees order their keys differently." );
+      }
+   }
+
+   // =======================================================================
+   // ORDER STATISTICS
+   // =======================================================================
+
+   // Counts the keys less than key, or less than or equal to key if inclusive.
+   private int countBelow( K key, boolean inclusive ) {
+      long prefix = keyPrefix( key );
+      int count = 0;
+      Node currentNode = getRoot();
+      while ( currentNode != null ) {
+         int cmp = compareToNode( key, prefix, currentNode );
+         if ( cmp > 0 || ( cmp == 0 && inclusive ) ) {
+            count += sizeOf( currentNode.getLeftChild() ) + 1;
+            currentNode = currentNode.getRightChild();
+         } else {
+            currentNode = currentNode.getLeftChild();
          }
       }
+      return count;
    }
 
    /**
-    * Recursive Algorithm: Inorder Binary Tree Traversal
-    *    1. Inorder traverse the left subtree.
-    *    2. Visit the root.
-    *    3. Inorder traverse the right subtree.
-    *
-    * Example:
-    *    Tree
-    *              4
-    *             / \
-    *            2   5
-    *           / \
-    *          1   3
+    * Returns the number of keys strictly less than key, which is the
+    * position key has, or would have, in ascending order. Runs in O(height).
     *
-    *    Postorder traversal: 1, 2, 3, 4, 5
+    * @param key the key to rank
+    * @return the number of keys in the map less than key
+    * @throws NullPointerException if key is null
+    */
+   public int rank( K key ) {
+      checkKey( key );
+      return countBelow( key, false );
+   }
+
+   /**
+    * Returns the key at the given position in ascending order, so that
+    * select( 0 ) is the smallest key and select( rank( k ) ) == k for every
+    * key k in the map. Runs in O(height).
     *
-    * @param visitor Lambda expression to process the key and value of each node.
-    *                For example: (key, value) -> System.out.println( key )
+    * @param index the position of the key, from 0 to size() - 1
+    * @return the key at position index
+    * @throws IndexOutOfBoundsException if index is negative or not less than size()
     */
-   public void traverseInorder( Visitor visitor ) {
-      traverseInorder( getRoot(), visitor );
+   public K select( int index ) {
+      return selectNode( index ).getKey();
+   }
+
+   /**
+    * @param index the position of the node in ascending key order
+    * @return the node at position index
+    * @throws IndexOutOfBoundsException if index is negative or not less than size()
+    */
+   protected Node selectNode( int index ) {
+      if ( index < 0 || index >= size() ) {
+         throw new IndexOutOfBoundsException( String.format( "Index: %d, Size: %d", index, size() ) );
+      }
+      Node currentNode = getRoot();
+      while ( true ) {
+         int leftSize = sizeOf( currentNode.getLeftChild() );
+         if ( index < leftSize ) {
+            currentNode = currentNode.getLeftChild();
+         } else if ( index == leftSize ) {
+            return currentNode;
+         } else {
+            index -= leftSize + 1;
+            currentNode = currentNode.getRightChild();
+         }
+      }
    }
 
-   // Helper method used by the traverseInorder method
-   // Recursive Solution
-   private void traverseInorder( Node node, Visitor visitor ) {
-      if ( node != null) {
-         traverseInorder( node.getLeftChild(), visitor );
-         visitor.visit( node.getKey( ), node.getValue( ) );
-         traverseInorder( node.getRightChild(), visitor );
+   /**
+    * Returns the number of keys k with lo &lt;= k &lt;= hi. Runs in O(height).
+    *
+    * @param lo the smallest key to count
+    * @param hi the largest key to count
+    * @return the number of keys between lo and hi inclusive, or 0 if lo is greater than hi
+    * @throws NullPointerException if lo or hi is null
+    */
+   public int countBetween( K lo, K hi ) {
+      checkKey( lo );
+      checkKey( hi );
+      if ( compareKeys( lo, hi ) > 0 ) {
+         return 0;
       }
+      return countBelow( hi, true ) - countBelow( lo, false );
    }
 }
 // END OF FILE ==============================================================
\ No newline at end of file
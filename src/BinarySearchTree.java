@@ -1,7 +1,60 @@
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Comparator;
+import java.util.SortedMap;
 
 public class BinarySearchTree<K extends Comparable<K>, V> extends AbstractBinarySearchTree<K, V> {
+    /**
+     * Creates an empty tree ordered by the natural ordering of its keys.
+     */
+    public BinarySearchTree() {
+    }
+
+    /**
+     * Creates an empty tree ordered by a comparator.
+     *
+     * @param comparator the order of the keys, or null for their natural ordering
+     */
+    public BinarySearchTree(Comparator<? super K> comparator) {
+        super(comparator);
+    }
+
+    /**
+     * Creates an empty tree whose nodes cache a normalized prefix of their keys.
+     *
+     * @param comparator the order of the keys, or null for their natural ordering
+     * @param normalizer maps keys to prefixes that agree with that order
+     */
+    public BinarySearchTree(Comparator<? super K> comparator, KeyNormalizer<? super K> normalizer) {
+        super(comparator, normalizer);
+    }
+
+    /**
+     * Builds a perfectly balanced tree from a sorted map in O(n).
+     * A map with a custom comparator is loaded with put instead.
+     *
+     * @param map the mappings to copy
+     * @return a new tree holding the mappings of map
+     */
+    public static <K extends Comparable<K>, V> BinarySearchTree<K, V> fromSorted(SortedMap<K, ? extends V> map) {
+        BinarySearchTree<K, V> tree = new BinarySearchTree<>();
+        tree.putAll(map);
+        return tree;
+    }
+
+    /**
+     * Builds a perfectly balanced tree from parallel arrays in O(n).
+     *
+     * @param keys   keys in strictly ascending order
+     * @param values values, values[i] is mapped to keys[i]
+     * @return a new tree holding the mappings
+     * @throws IllegalArgumentException if the arrays differ in length or the
+     *                                  keys are not strictly ascending
+     */
+    public static <K extends Comparable<K>, V> BinarySearchTree<K, V> fromSorted(K[] keys, V[] values) {
+        BinarySearchTree<K, V> tree = new BinarySearchTree<>();
+        tree.buildFromSorted(keys, values);
+        return tree;
+    }
+
     /**
      * Removes the mapping for a key from this map if it is present
      * (optional operation).   More formally, if this map contains a mapping
@@ -37,50 +90,22 @@ public class BinarySearchTree<K extends Comparable<K>, V> extends AbstractBinary
         if (key == null) {
             return null;
         }
-        Node currentValue = getRoot(); // Start with the root
-        Node remover = null;
-        V valueRemoved = null;
-
-        while (currentValue != null) { // Traverse throughout the tree until it becomes null.
-            if (((K) key).compareTo(currentValue.getKey()) == 0) {
-                remover = currentValue; // Mark for removal if there is a match.
-                break;
-            } else if (((K) key).compareTo(currentValue.getKey()) < 0) {
-                currentValue = currentValue.getLeftChild();
-            } else {
-                currentValue = currentValue.getRightChild();
-            }
+        Node remover = getNode(key); // Search from the root
+        if (remover == null) {
+            this.meterRemove(false);
+            return null; // No mapping for the key
         }
-        valueRemoved = remover.getValue();
+        V valueRemoved = remover.getValue();
+
+        Node lowestChanged = remover.getParent(); // Lowest node whose subtree size changes
 
         //Node has only child on the left
         if ((remover.hasLeftChild() && !remover.hasRightChild())) {
-            Node childReplace = remover.getLeftChild();
-            if (remover.isRoot()) {
-                this.setRoot(childReplace);
-            } else {
-                childReplace.setParent(remover.getParent());
-                if (remover.getParent().getLeftChild() == remover) {
-                    remover.getParent().setLeftChild(childReplace);
-                } else if (remover.getParent().getRightChild() == remover) {
-                    remover.getParent().setRightChild(childReplace);
-                }
-            }
+            replaceChild(remover.getParent(), remover, remover.getLeftChild());
         }
-
-
         //Node has only child on the right
         else if (remover.hasRightChild() && !remover.hasLeftChild()) {
-            Node childReplace = remover.getRightChild();
-            if (remover.isRoot()) {
-                this.setRoot(childReplace);
-            } else if (remover.getParent().getLeftChild() == remover) {
-                remover.getParent().setLeftChild(childReplace);
-            } else if (remover.getParent().getRightChild() == remover) {
-                remover.getParent().setRightChild(childReplace);
-            }
-
-
+            replaceChild(remover.getParent(), remover, remover.getRightChild());
         }
         //Node has both left and right children
         else if (remover.hasLeftChild() && remover.hasRightChild()) {
@@ -88,42 +113,30 @@ public class BinarySearchTree<K extends Comparable<K>, V> extends AbstractBinary
             while (childReplace.hasLeftChild()) {
                 childReplace = childReplace.getLeftChild();
             }
-            if (remover.isRoot()) {
-                this.setRoot(childReplace);
-                if (remover.hasLeftChild()) {
-                    this.getRoot().setLeftChild(remover.getLeftChild());
-                }
-            } else {
-                childReplace.setParent(remover.getParent());
-
-
+            lowestChanged = childReplace;
+            if (childReplace.getParent() != remover) {
+                // Detach the successor, its right subtree takes its place
+                lowestChanged = childReplace.getParent();
+                childReplace.getParent().setLeftChild(childReplace.getRightChild());
                 childReplace.setRightChild(remover.getRightChild());
-                childReplace.setLeftChild(remover.getLeftChild());
-
-                if (remover.getParent().getLeftChild() == remover) {
-                    remover.getParent().setLeftChild(childReplace);
-                } else if (remover.getParent().getRightChild() == remover) {
-                    remover.getParent().setRightChild(childReplace);
-                }
             }
+            childReplace.setLeftChild(remover.getLeftChild());
+            replaceChild(remover.getParent(), remover, childReplace);
         }
-        //Node to remove is root and leaf
-        else if (remover.isRoot() && remover.isLeaf()) {
-            this.setRoot(null); //
-        }
-        //Node to remove is leaf
-        else if (remover.isLeaf() && (remover.getParent().getLeftChild() == remover)) {
-            remover.getParent().setLeftChild(null);
-        } else if (remover.isLeaf() && (remover.getParent().getRightChild() == remover)) {
-            remover.getParent().setRightChild(null);
+        //Node to remove is a leaf, possibly the root
+        else {
+            replaceChild(remover.getParent(), remover, null);
         }
+        this.updateSubtreeSizes(lowestChanged);
+        this.recordRemoval(remover);
         this.decrementSize(); // decreased tree size
+        this.incrementChangeCounter();
         return valueRemoved; // value of new node
     }
 
 
     /**
-     * Recursive Algorithm: Postorder Binary Tree Traversal
+     * Iterative Algorithm: Postorder Binary Tree Traversal
      * 1. Postorder traverse the left subtree.
      * 2. Postorder traverse the right subtree.
      * 3. Visit the root.
@@ -137,21 +150,16 @@ public class BinarySearchTree<K extends Comparable<K>, V> extends AbstractBinary
      * 1   3
      * <p>
      * Postorder traversal: 1, 3, 2, 5, 4
+     * <p>
+     * Follows the parent links instead of recursing or keeping a stack, so it
+     * allocates nothing and is safe at any depth.
      *
      * @param visitor Lambda expression to process the key and value of each node.
      *                For example: (key, value) -> System.out.println( key )
      */
     @Override
     public void traversePostorder(Visitor visitor) {
-        traversePostorder(getRoot(), visitor);
-    }
-
-    private void traversePostorder(Node node, Visitor visitor) {
-        if (node != null) {
-            traversePostorder(node.getLeftChild(), visitor);   // Visit left subtree
-            traversePostorder(node.getRightChild(), visitor);  // Visit right subtree
-            visitor.visit(node.getKey(), node.getValue());      // Visit the node
-        }
+        walkPostorder(visitor); // Iterative along the parent links, safe at any depth
     }
 
     /**
@@ -169,31 +177,14 @@ public class BinarySearchTree<K extends Comparable<K>, V> extends AbstractBinary
      * <p>
      * Level order traversal: 4, 2, 5, 1, 3
      * <p>
-     * Hint: Every time you visit a node, add its children to a queue.
+     * Keeps the nodes of the next levels in a ring buffer that grows to the
+     * widest level reached, with no per-node allocation.
      *
      * @param visitor Lambda expression to process the key and value of each node.
      *                For example: (key, value) -> System.out.println( key )
      */
     @Override
     public void traverseLevelorder(Visitor visitor) {
-        if (getRoot() == null) {
-            return; // do nothing if tree is empty
-        }
-
-        Queue<Node> queue = new LinkedList<>();
-        queue.add(getRoot());
-
-        while (!queue.isEmpty()) {
-            Node current = queue.remove();
-
-            visitor.visit(current.getKey(), current.getValue());
-
-            if (current.getLeftChild() != null) {
-                queue.add(current.getLeftChild());
-            }
-            if (current.getRightChild() != null) {
-                queue.add(current.getRightChild());
-            }
-        }
+        walkLevelorder(visitor); // A ring buffer as the queue instead of a LinkedList node per tree node
     }
 }
@@ -1,6 +1,21 @@
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -883,4 +898,625 @@ public class BinarySearchTreeTest {
          fail( String.format( "After adding and removing 6 entries, tree.get( \"Curly Joe\" ) = %s.", tree.get( "Curly Joe" ) ) );
       }
    }
+
+   @Test
+   public void testIterator ( ) {
+      BinarySearchTree<String, String> tree = buildStooges( );
+      ArrayList<String> list = new ArrayList<>(  );
+      for ( String value : tree ) {
+         list.add( value );
+      }
+      String expected = "[curly@mtu.edu, curlyjoe@mtu.edu, joe@mtu.edu, larry@mtu.edu, moe@mtu.edu, shemp@mtu.edu]";
+      if ( !list.toString().equals( expected ) ) {
+         fail( String.format( "After building the stooges tree, iterating over the tree returns %s.", list ) );
+      }
+      Iterator<String> iterator = tree.iterator();
+      iterator.next();
+      tree.put( "Ted Healy", "ted@mtu.edu" );
+      try {
+         iterator.next();
+         fail( "After modifying the tree during iteration, iterator.next() did not throw ConcurrentModificationException." );
+      } catch ( ConcurrentModificationException e ) {
+         // expected
+      }
+      if ( new BinarySearchTree<String, String>( ).iterator().hasNext() ) {
+         fail( "The iterator of an empty tree has a next element." );
+      }
+   }
+
+   @Test
+   public void testNavigation ( ) {
+      BinarySearchTree<String, String> tree = buildStooges( );
+      if ( !tree.firstKey().equals( "Curly" ) || !tree.lastKey().equals( "Shemp" ) ) {
+         fail( String.format( "After building the stooges tree, firstKey() = %s and lastKey() = %s.", tree.firstKey(), tree.lastKey() ) );
+      }
+      if ( !tree.floorKey( "Kate" ).equals( "Joe" ) ) {
+         fail( String.format( "After building the stooges tree, tree.floorKey( \"Kate\" ) = %s.", tree.floorKey( "Kate" ) ) );
+      }
+      if ( !tree.ceilingKey( "Kate" ).equals( "Larry" ) ) {
+         fail( String.format( "After building the stooges tree, tree.ceilingKey( \"Kate\" ) = %s.", tree.ceilingKey( "Kate" ) ) );
+      }
+      if ( !tree.higherKey( "Larry" ).equals( "Moe" ) || !tree.lowerKey( "Larry" ).equals( "Joe" ) ) {
+         fail( String.format( "After building the stooges tree, tree.higherKey( \"Larry\" ) = %s and tree.lowerKey( \"Larry\" ) = %s.", tree.higherKey( "Larry" ), tree.lowerKey( "Larry" ) ) );
+      }
+      if ( tree.higherKey( "Shemp" ) != null || tree.lowerKey( "Curly" ) != null ) {
+         fail( "After building the stooges tree, the keys beyond the ends are not null." );
+      }
+      NavigableMap<String, String> window = tree.subMap( "Curly Joe", true, "Moe", false );
+      if ( !window.keySet().toString().equals( "[Curly Joe, Joe, Larry]" ) ) {
+         fail( String.format( "After building the stooges tree, tree.subMap( \"Curly Joe\", true, \"Moe\", false ) = %s.", window ) );
+      }
+      if ( !window.descendingMap().keySet().toString().equals( "[Larry, Joe, Curly Joe]" ) ) {
+         fail( String.format( "After building the stooges tree, the descending sub map = %s.", window.descendingMap() ) );
+      }
+      tree.put( "Kate", "kate@mtu.edu" );
+      if ( window.size() != 4 || !window.containsKey( "Kate" ) ) {
+         fail( String.format( "After adding \"Kate\" to the tree, the sub map is %s.", window ) );
+      }
+      window.remove( "Joe" );
+      if ( tree.containsKey( "Joe" ) || tree.size() != 6 ) {
+         fail( String.format( "After removing \"Joe\" through the sub map, tree.containsKey( \"Joe\" ) = %b.", tree.containsKey( "Joe" ) ) );
+      }
+      try {
+         window.put( "Shemp", "shemp@mtu.edu" );
+         fail( "Putting a key outside of the sub map range did not throw IllegalArgumentException." );
+      } catch ( IllegalArgumentException e ) {
+         // expected
+      }
+      if ( !tree.headMap( "Larry" ).keySet().toString().equals( "[Curly, Curly Joe, Kate]" ) ) {
+         fail( String.format( "After building the stooges tree, tree.headMap( \"Larry\" ) = %s.", tree.headMap( "Larry" ) ) );
+      }
+      if ( !tree.tailMap( "Larry", false ).keySet().toString().equals( "[Moe, Shemp]" ) ) {
+         fail( String.format( "After building the stooges tree, tree.tailMap( \"Larry\", false ) = %s.", tree.tailMap( "Larry", false ) ) );
+      }
+      Map.Entry<String, String> first = tree.pollFirstEntry();
+      if ( !first.getKey().equals( "Curly" ) || tree.containsKey( "Curly" ) ) {
+         fail( String.format( "After building the stooges tree, tree.pollFirstEntry() = %s.", first ) );
+      }
+   }
+
+   @Test
+   public void testRemoveMatchesTreeMap ( ) {
+      BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      Random random = new Random( 7 );
+      for ( int i = 0; i < 20000; i++ ) {
+         int key = random.nextInt( 300 );
+         if ( random.nextInt( 3 ) > 0 ) {
+            tree.put( key, i );
+            expected.put( key, i );
+         } else if ( !Objects.equals( tree.remove( key ), expected.remove( key ) ) ) {
+            fail( String.format( "tree.remove( %d ) did not return the value mapped to %d.", key, key ) );
+         }
+      }
+      if ( tree.size() != expected.size() ) {
+         fail( String.format( "After random operations, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+      ArrayList<Object> keys = new ArrayList<>(  );
+      tree.traverseInorder( (key, value) -> keys.add( key ) );
+      if ( !keys.equals( new ArrayList<>( expected.keySet() ) ) ) {
+         fail( "After random operations, the inorder traversal does not match the expected keys." );
+      }
+      for ( int i = 0; i < keys.size(); i++ ) {
+         if ( !tree.select( i ).equals( keys.get( i ) ) ) {
+            fail( String.format( "After random operations, tree.select( %d ) = %d, expected %s.", i, tree.select( i ), keys.get( i ) ) );
+         }
+      }
+      if ( !tree.floorKey( 150 ).equals( expected.floorKey( 150 ) ) || !tree.higherKey( 150 ).equals( expected.higherKey( 150 ) ) ) {
+         fail( "After random operations, floorKey or higherKey does not match TreeMap." );
+      }
+   }
+
+   @Test
+   public void testViews ( ) {
+      BinarySearchTree<String, String> tree = buildStooges( );
+      if ( !tree.keySet().toString().equals( "[Curly, Curly Joe, Joe, Larry, Moe, Shemp]" ) ) {
+         fail( String.format( "After building the stooges tree, tree.keySet() = %s.", tree.keySet() ) );
+      }
+      Collection<String> values = tree.values();
+      Set<Map.Entry<String, String>> entries = tree.entrySet();
+      tree.put( "Ted Healy", "ted@mtu.edu" );
+      if ( values.size() != 7 || !values.contains( "ted@mtu.edu" ) || entries.size() != 7 ) {
+         fail( String.format( "After adding \"Ted Healy\", the values view is %s.", values ) );
+      }
+      Iterator<String> keys = tree.keySet().iterator();
+      while ( keys.hasNext() ) {
+         if ( keys.next().startsWith( "Curly" ) ) {
+            keys.remove();
+         }
+      }
+      if ( tree.size() != 5 || tree.containsKey( "Curly" ) || tree.containsKey( "Curly Joe" ) ) {
+         fail( String.format( "After removing the Curlys through the key set iterator, tree.keySet() = %s.", tree.keySet() ) );
+      }
+      values.remove( "moe@mtu.edu" );
+      if ( tree.containsKey( "Moe" ) ) {
+         fail( "After removing \"moe@mtu.edu\" from the values view, tree.containsKey( \"Moe\" ) = true." );
+      }
+      for ( Map.Entry<String, String> entry : entries ) {
+         entry.setValue( entry.getValue().toUpperCase() );
+      }
+      if ( !tree.get( "Larry" ).equals( "LARRY@MTU.EDU" ) ) {
+         fail( String.format( "After setting values through the entry set, tree.get( \"Larry\" ) = %s.", tree.get( "Larry" ) ) );
+      }
+      tree.keySet().clear();
+      if ( !tree.isEmpty() ) {
+         fail( String.format( "After clearing the key set, tree.size() = %d.", tree.size() ) );
+      }
+   }
+
+   @Test
+   public void testOrderStatistics ( ) {
+      BinarySearchTree<String, String> tree = buildStooges( );
+      String[] sorted = { "Curly", "Curly Joe", "Joe", "Larry", "Moe", "Shemp" };
+      for ( int i = 0; i < sorted.length; i++ ) {
+         if ( !tree.select( i ).equals( sorted[i] ) ) {
+            fail( String.format( "After building the stooges tree, tree.select( %d ) = %s.", i, tree.select( i ) ) );
+         }
+         if ( tree.rank( sorted[i] ) != i ) {
+            fail( String.format( "After building the stooges tree, tree.rank( \"%s\" ) = %d.", sorted[i], tree.rank( sorted[i] ) ) );
+         }
+      }
+      if ( tree.rank( "Kate" ) != 3 ) {
+         fail( String.format( "After building the stooges tree, tree.rank( \"Kate\" ) = %d.", tree.rank( "Kate" ) ) );
+      }
+      if ( tree.countBetween( "Curly Joe", "Moe" ) != 4 || tree.countBetween( "Moe", "Curly" ) != 0 ) {
+         fail( String.format( "After building the stooges tree, tree.countBetween( \"Curly Joe\", \"Moe\" ) = %d.", tree.countBetween( "Curly Joe", "Moe" ) ) );
+      }
+      tree.remove( "Larry" );
+      if ( !tree.select( 3 ).equals( "Moe" ) || tree.getRoot().getSubtreeSize() != 5 ) {
+         fail( String.format( "After removing \"Larry\", tree.select( 3 ) = %s.", tree.select( 3 ) ) );
+      }
+      if ( tree.headMap( "Moe", true ).size() != 4 ) {
+         fail( String.format( "After removing \"Larry\", tree.headMap( \"Moe\", true ).size() = %d.", tree.headMap( "Moe", true ).size() ) );
+      }
+      try {
+         tree.select( 5 );
+         fail( "tree.select( size() ) did not throw IndexOutOfBoundsException." );
+      } catch ( IndexOutOfBoundsException e ) {
+         // expected
+      }
+   }
+
+   @Test
+   public void testSpliterator ( ) {
+      BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      Random random = new Random( 13 );
+      for ( int i = 0; i < 10000; i++ ) {
+         int key = random.nextInt( 100000 );
+         tree.put( key, key * 2 );
+         expected.put( key, key * 2 );
+      }
+      long sum = tree.parallelStream().mapToLong( Integer::longValue ).sum();
+      long expectedSum = expected.values().stream().mapToLong( Integer::longValue ).sum();
+      if ( sum != expectedSum ) {
+         fail( String.format( "tree.parallelStream() summed to %d, expected %d.", sum, expectedSum ) );
+      }
+      if ( !tree.keySet().parallelStream().collect( Collectors.toList() ).equals( new ArrayList<>( expected.keySet() ) ) ) {
+         fail( "tree.keySet().parallelStream() did not keep the keys in ascending order." );
+      }
+
+      Spliterator<Map.Entry<Integer, Integer>> all = tree.entrySet().spliterator();
+      int required = Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.ORDERED;
+      if ( ( all.characteristics() & required ) != required ) {
+         fail( String.format( "tree.entrySet().spliterator() has characteristics %x.", all.characteristics() ) );
+      }
+      Spliterator<Map.Entry<Integer, Integer>> prefix = all.trySplit();
+      if ( prefix == null || prefix.estimateSize() + all.estimateSize() != tree.size() || Math.abs( prefix.estimateSize() - all.estimateSize() ) > 1 ) {
+         fail( "tree.entrySet().spliterator().trySplit() did not halve the tree." );
+      }
+      Integer[] boundary = new Integer[2];
+      prefix.forEachRemaining( entry -> boundary[0] = entry.getKey() );
+      all.tryAdvance( entry -> boundary[1] = entry.getKey() );
+      if ( !boundary[1].equals( expected.higherKey( boundary[0] ) ) ) {
+         fail( String.format( "The split prefix ended at %d but the suffix began at %d.", boundary[0], boundary[1] ) );
+      }
+
+      NavigableMap<Integer, Integer> range = tree.subMap( 20000, true, 60000, false );
+      long count = range.entrySet().stream().filter( entry -> entry.getKey() >= 20000 && entry.getKey() < 60000 ).count();
+      if ( count != expected.subMap( 20000, 60000 ).size() || range.keySet().spliterator().estimateSize() != count ) {
+         fail( String.format( "The subMap stream returned %d entries, expected %d.", count, expected.subMap( 20000, 60000 ).size() ) );
+      }
+      if ( !tree.descendingKeySet().stream().collect( Collectors.toList() ).equals( new ArrayList<>( expected.descendingKeySet() ) ) ) {
+         fail( "tree.descendingKeySet().stream() was not in descending order." );
+      }
+
+      Spliterator<Integer> values = tree.spliterator();
+      values.tryAdvance( value -> { } );
+      tree.put( -1, -1 );
+      try {
+         values.tryAdvance( value -> { } );
+         fail( "The spliterator did not fail after the tree was modified." );
+      } catch ( ConcurrentModificationException e ) {
+         // expected
+      }
+   }
+
+   @Test
+   public void testDegenerateTraversals ( ) {
+      // Sorted keys make a chain 25,000 nodes deep, beyond what recursion survives on a default stack
+      int n = 25000;
+      BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+      for ( int key = 0; key < n; key++ ) {
+         tree.put( key, key );
+      }
+      int[] count = new int[1];
+      tree.traversePreorder( (key, value) -> {
+         if ( !key.equals( count[0]++ ) ) {
+            fail( String.format( "The preorder traversal visited %s at position %d.", key, count[0] - 1 ) );
+         }
+      } );
+      count[0] = 0;
+      tree.traverseInorder( (key, value) -> {
+         if ( !key.equals( count[0]++ ) ) {
+            fail( String.format( "The inorder traversal visited %s at position %d.", key, count[0] - 1 ) );
+         }
+      } );
+      count[0] = 0;
+      tree.traversePostorder( (key, value) -> {
+         if ( !key.equals( n - 1 - count[0]++ ) ) {
+            fail( String.format( "The postorder traversal visited %s at position %d.", key, count[0] - 1 ) );
+         }
+      } );
+      count[0] = 0;
+      tree.traverseLevelorder( (key, value) -> {
+         if ( !key.equals( count[0]++ ) ) {
+            fail( String.format( "The level order traversal visited %s at position %d.", key, count[0] - 1 ) );
+         }
+      } );
+      if ( count[0] != n ) {
+         fail( String.format( "The level order traversal visited %d nodes, expected %d.", count[0], n ) );
+      }
+
+      // A perfect tree inserted level by level: its 2048 leaves make the level order queue grow and wrap
+      BinarySearchTree<Integer, Integer> perfect = new BinarySearchTree<>();
+      List<Object> expected = new ArrayList<>(  );
+      int levels = 12;
+      for ( int level = 0; level < levels; level++ ) {
+         int step = 1 << ( levels - level );
+         for ( int key = step / 2 - 1; key < ( 1 << levels ) - 1; key += step ) {
+            perfect.put( key, key );
+            expected.add( key );
+         }
+      }
+      List<Object> keys = new ArrayList<>(  );
+      perfect.traverseLevelorder( (key, value) -> keys.add( key ) );
+      if ( !keys.equals( expected ) ) {
+         fail( String.format( "The level order traversal of a perfect tree visited %d nodes, starting %s.", keys.size(), keys.subList( 0, Math.min( 8, keys.size() ) ) ) );
+      }
+   }
+
+   @Test
+   public void testTreeVisitor ( ) {
+      BinarySearchTree<String, String> tree = buildStooges();
+      List<String> keys = new ArrayList<>(  );
+      boolean completed = tree.visitInorder( (key, value) -> {
+         keys.add( key ); // Typed: no casts
+         return !key.equals( "Joe" );
+      } );
+      if ( completed || !keys.toString().equals( "[Curly, Curly Joe, Joe]" ) ) {
+         fail( String.format( "The inorder visit stopped at \"Joe\" visited %s and returned %b.", keys, completed ) );
+      }
+      keys.clear();
+      if ( !tree.visitLevelorder( (key, value) -> keys.add( value.substring( 0, 1 ) ) ) || keys.size() != 6 ) {
+         fail( String.format( "The level order visit returned %s.", keys ) );
+      }
+      keys.clear();
+      if ( tree.visitPreorder( (key, value) -> keys.add( key ) && keys.size() < 2 ) || keys.size() != 2 ) {
+         fail( String.format( "The preorder visit stopped after two nodes visited %s.", keys ) );
+      }
+      keys.clear();
+      if ( tree.visitPostorder( (key, value) -> keys.add( key ) && keys.size() < 4 ) || keys.size() != 4 ) {
+         fail( String.format( "The postorder visit stopped after four nodes visited %s.", keys ) );
+      }
+      if ( !tree.containsValue( "curly@mtu.edu" ) || tree.containsValue( "nobody@mtu.edu" ) ) {
+         fail( "After building the stooges tree, containsValue gave the wrong answer." );
+      }
+      StringBuilder joined = new StringBuilder(  );
+      tree.forEach( (key, value) -> joined.append( key.charAt( 0 ) ) );
+      if ( !joined.toString().equals( "CCJLMS" ) ) {
+         fail( String.format( "tree.forEach visited the keys %s.", joined ) );
+      }
+   }
+
+   @Test
+   public void testValueIndex ( ) {
+      List<AbstractBinarySearchTree<Integer, Integer>> trees = new ArrayList<>(  );
+      trees.add( new BinarySearchTree<>() );
+      trees.add( new RedBlackTree<>() );
+      for ( AbstractBinarySearchTree<Integer, Integer> tree : trees ) {
+         TreeMap<Integer, Integer> expected = new TreeMap<>();
+         Random random = new Random( 16 );
+         for ( int i = 0; i < 300; i++ ) { // Some values before the index exists
+            int key = random.nextInt( 500 );
+            tree.put( key, key % 7 );
+            expected.put( key, key % 7 );
+         }
+         tree.setValueIndexed( true );
+         for ( int i = 0; i < 5000; i++ ) {
+            int key = random.nextInt( 500 );
+            int value = random.nextInt( 20 );
+            switch ( random.nextInt( 4 ) ) {
+               case 0: tree.put( key, value ); expected.put( key, value ); break;
+               case 1: tree.remove( key ); expected.remove( key ); break;
+               case 2:
+                  Iterator<Map.Entry<Integer, Integer>> entries = tree.tailMap( key, true ).entrySet().iterator();
+                  if ( entries.hasNext() ) {
+                     Map.Entry<Integer, Integer> entry = entries.next();
+                     entry.setValue( value ); // Writes through to the node
+                     expected.put( entry.getKey(), value );
+                  }
+                  break;
+               default:
+                  Iterator<Integer> it = tree.keySet().iterator();
+                  if ( it.hasNext() && it.next() != null ) {
+                     it.remove();
+                     expected.pollFirstEntry();
+                  }
+            }
+            int probe = random.nextInt( 21 );
+            Set<Integer> keys = expected.entrySet().stream().filter( e -> e.getValue() == probe )
+                  .map( Map.Entry::getKey ).collect( Collectors.toCollection( TreeSet::new ) );
+            if ( tree.containsValue( probe ) != !keys.isEmpty() || !tree.keysFor( probe ).equals( keys ) ) {
+               fail( String.format( "At step %d of %s, keysFor( %d ) = %s, expected %s.",
+                     i, tree.getClass().getSimpleName(), probe, tree.keysFor( probe ), keys ) );
+            }
+         }
+         Set<Integer> indexed = tree.keysFor( 3 );
+         tree.setValueIndexed( false );
+         if ( tree.isValueIndexed() || !tree.keysFor( 3 ).equals( indexed ) || tree.containsValue( 20 ) ) {
+            fail( "After turning the value index off, lookups by value changed." );
+         }
+         tree.setValueIndexed( true );
+         tree.clear();
+         if ( tree.containsValue( 3 ) || !tree.keysFor( 3 ).isEmpty() ) {
+            fail( "After tree.clear(), the value index still held values." );
+         }
+
+         // An entry whose mapping was removed must not write through to the index
+         tree.put( 1, 100 );
+         tree.put( 2, 200 );
+         Map.Entry<Integer, Integer> removed = tree.entrySet().iterator().next();
+         tree.remove( 1 );
+         removed.setValue( 101 );
+         Map.Entry<Integer, Integer> cleared = tree.entrySet().iterator().next();
+         tree.clear();
+         cleared.setValue( 201 );
+         if ( tree.containsValue( 101 ) || !tree.keysFor( 101 ).isEmpty() || tree.containsValue( 201 ) || tree.containsKey( 1 ) ) {
+            fail( String.format( "After setValue on removed entries, keysFor( 101 ) = %s and keysFor( 201 ) = %s.",
+                  tree.keysFor( 101 ), tree.keysFor( 201 ) ) );
+         }
+      }
+   }
+
+   @Test
+   public void testComparatorAndNormalizedKeys ( ) {
+      Comparator<String> reverse = Comparator.reverseOrder();
+      AbstractBinarySearchTree.KeyNormalizer<String> stringPrefix = AbstractBinarySearchTree.KeyNormalizer.STRING_PREFIX;
+      List<AbstractBinarySearchTree<String, Integer>> trees = new ArrayList<>(  );
+      trees.add( new BinarySearchTree<>( reverse ) );
+      trees.add( new RedBlackTree<>( reverse ) );
+      trees.add( new BinarySearchTree<>( null, stringPrefix ) );
+      trees.add( new RedBlackTree<>( null, stringPrefix ) );
+      trees.add( new RedBlackTree<>( reverse, key -> ~stringPrefix.prefix( key ) ) );
+      String alphabet = "ab\u00e9\uffff"; // Chars above 0x7fff must still sort after the others
+      for ( AbstractBinarySearchTree<String, Integer> tree : trees ) {
+         TreeMap<String, Integer> expected = new TreeMap<>( tree.comparator() );
+         Random random = new Random( 17 );
+         for ( int i = 0; i < 5000; i++ ) {
+            StringBuilder key = new StringBuilder(  );
+            for ( int length = random.nextInt( 7 ); length > 0; length-- ) { // Many keys tie on their first four chars
+               key.append( alphabet.charAt( random.nextInt( alphabet.length() ) ) );
+            }
+            String k = key.toString();
+            boolean insert = random.nextInt( 3 ) > 0;
+            Integer actual = insert ? tree.put( k, i ) : tree.remove( k );
+            Integer wanted = insert ? expected.put( k, i ) : expected.remove( k );
+            if ( !Objects.equals( actual, wanted ) || !Objects.equals( tree.ceilingKey( k + "a" ), expected.ceilingKey( k + "a" ) ) ) {
+               fail( String.format( "At step %d with key \"%s\", the tree returned %s, expected %s.", i, k, actual, wanted ) );
+            }
+         }
+         List<String> keys = new ArrayList<>( tree.keySet() );
+         if ( !keys.equals( new ArrayList<>( expected.keySet() ) ) || !tree.entrySet().equals( expected.entrySet() ) ) {
+            fail( String.format( "After random operations, the keys of the tree are out of order: %s.", keys ) );
+         }
+         String middle = keys.get( keys.size() / 2 );
+         if ( tree.headMap( middle ).size() != keys.size() / 2 || tree.rank( middle ) != keys.size() / 2
+               || tree.descendingMap().firstKey() != expected.lastKey() ) {
+            fail( String.format( "After random operations, tree.rank( \"%s\" ) = %d.", middle, tree.rank( middle ) ) );
+         }
+         if ( tree.keySet().spliterator().getComparator() != tree.comparator() ) {
+            fail( "The key spliterator does not report the comparator of the tree." );
+         }
+      }
+      RedBlackTree<UUID, Integer> uuids = new RedBlackTree<>( null, AbstractBinarySearchTree.KeyNormalizer.UUID_PREFIX );
+      TreeMap<UUID, Integer> expected = new TreeMap<>();
+      Random random = new Random( 18 );
+      for ( int i = 0; i < 2000; i++ ) {
+         UUID key = new UUID( random.nextInt( 8 ) - 4, random.nextLong() ); // Signed and tied high bits
+         uuids.put( key, i );
+         expected.put( key, i );
+      }
+      if ( !new ArrayList<>( uuids.keySet() ).equals( new ArrayList<>( expected.keySet() ) ) ) {
+         fail( "After putting random UUIDs, the keys of the tree are out of order." );
+      }
+   }
+
+   @Test
+   public void testFinger ( ) {
+      long[] comparisons = new long[1];
+      Comparator<Integer> counting = (a, b) -> {
+         comparisons[0]++;
+         return Integer.compare( a, b );
+      };
+      List<AbstractBinarySearchTree<Integer, Integer>> trees = new ArrayList<>(  );
+      trees.add( new BinarySearchTree<>( counting ) );
+      trees.add( new RedBlackTree<>( counting ) );
+      trees.add( new SplayTree<>( counting ) );
+      for ( AbstractBinarySearchTree<Integer, Integer> tree : trees ) {
+         String name = tree.getClass().getSimpleName();
+         TreeMap<Integer, Integer> expected = new TreeMap<>();
+         Random random = new Random( 19 );
+         int n = 20000;
+         for ( int i = 0; i < n; i++ ) {
+            int key = random.nextInt( 4 * n );
+            tree.put( key, i );
+            expected.put( key, i );
+         }
+         AbstractBinarySearchTree<Integer, Integer>.Finger finger = tree.finger();
+         comparisons[0] = 0;
+         for ( int key = 0; key < 4 * n; key++ ) { // A sweep over every key, present or not
+            Map.Entry<Integer, Integer> ceiling = finger.ceilingEntry( key );
+            Map.Entry<Integer, Integer> floor = finger.floorEntry( key );
+            if ( !Objects.equals( finger.get( key ), expected.get( key ) )
+                  || !Objects.equals( ceiling, expected.ceilingEntry( key ) ) || !Objects.equals( floor, expected.floorEntry( key ) ) ) {
+               fail( String.format( "In %s, the finger at key %d found %s and %s.", name, key, floor, ceiling ) );
+            }
+         }
+         if ( comparisons[0] > 3 * 4L * 4 * n ) { // Four comparisons per search; a search from the root takes 14 to 18
+            fail( String.format( "In %s, a sweep of %d finger searches made %d comparisons.", name, 3 * 4 * n, comparisons[0] ) );
+         }
+         // Sliding window: remove behind the finger and insert ahead of it
+         for ( int i = 0; i < 5000; i++ ) {
+            int key = random.nextInt( 4 * n );
+            Integer low = expected.lowerKey( key );
+            if ( low != null ) {
+               tree.remove( low );
+               expected.remove( low );
+            }
+            tree.put( key + 1, i );
+            expected.put( key + 1, i );
+            if ( !Objects.equals( finger.get( key ), expected.get( key ) ) || finger.containsKey( key + 1 ) != true
+                  || !Objects.equals( finger.floorEntry( key ), expected.floorEntry( key ) ) ) {
+               fail( String.format( "In %s, after removing %s and putting %d, the finger found %s.", name, low, key + 1, finger.floorEntry( key ) ) );
+            }
+         }
+         tree.clear();
+         if ( finger.get( 3 ) != null || finger.ceilingEntry( 0 ) != null ) {
+            fail( String.format( "In %s, after tree.clear(), the finger still found keys.", name ) );
+         }
+         tree.put( 3, 3 );
+         if ( finger.get( 3 ) != 3 ) {
+            fail( String.format( "In %s, after clearing and putting 3, finger.get( 3 ) = %s.", name, finger.get( 3 ) ) );
+         }
+      }
+   }
+
+   @Test
+   public void testShape ( ) {
+      BinarySearchTree<Integer, Integer> chain = new BinarySearchTree<>();
+      List<Integer> alarms = new ArrayList<>(  );
+      chain.setImbalanceAlarm( 3, (depth, size) -> alarms.add( depth ) );
+      int n = 1000;
+      for ( int key = 0; key < n; key++ ) {
+         chain.put( key, key ); // Sorted input degenerates into a right chain
+      }
+      TreeShape shape = chain.shape();
+      if ( shape.height() != n || shape.averageDepth() != ( n - 1 ) / 2.0 || shape.worstImbalance() != n - 1
+            || shape.levelCounts().length != n || shape.levelCounts()[n - 1] != 1 || chain.height() != n ) {
+         fail( String.format( "The shape of a chain of %d nodes is %s.", n, shape ) );
+      }
+      // The first alarm comes once the depth exceeds 3 * log2( size + 1 ), then at every doubling
+      if ( alarms.isEmpty() || alarms.get( 0 ) > 30 || alarms.size() > 10 ) {
+         fail( String.format( "Sorted puts into a BinarySearchTree raised alarms at depths %s.", alarms ) );
+      }
+      for ( int i = 1; i < alarms.size(); i++ ) {
+         if ( alarms.get( i ) < 2 * alarms.get( i - 1 ) ) {
+            fail( String.format( "The alarms at depths %s did not wait for the depth to double.", alarms ) );
+         }
+      }
+      // The cached height follows inserts, removes and rotations
+      chain.put( n, n );
+      int grown = chain.height();
+      chain.remove( n );
+      SplayTree<Integer, Integer> splay = new SplayTree<>();
+      for ( int key = 0; key < n; key++ ) {
+         splay.put( key, key );
+      }
+      int before = splay.height();
+      splay.get( 0 ); // Splays the deepest key to the root
+      if ( grown != n + 1 || chain.height() != n || before != n || splay.height() != splay.shape().height() || splay.height() == n ) {
+         fail( String.format( "The cached heights were %d and %d for the chain, and %d then %d for the splay tree.",
+                              grown, chain.height(), before, splay.height() ) );
+      }
+      int firstAlarm = alarms.get( 0 );
+      chain.clear(); // Re-arms the alarm
+      alarms.clear();
+      for ( int key = 0; key <= firstAlarm; key++ ) {
+         chain.put( key, key );
+      }
+      if ( alarms.size() != 1 || alarms.get( 0 ) != firstAlarm ) {
+         fail( String.format( "After clear, sorted puts raised alarms at depths %s, expected [%d].", alarms, firstAlarm ) );
+      }
+
+      RedBlackTree<Integer, Integer> balanced = new RedBlackTree<>();
+      balanced.setImbalanceAlarm( 2, (depth, size) -> fail( String.format( "A red-black tree of %d nodes put a node at depth %d.", size, depth ) ) );
+      for ( int key = 0; key < n; key++ ) {
+         balanced.put( key, key );
+      }
+      shape = balanced.shape();
+      int total = 0;
+      for ( int count : shape.levelCounts() ) {
+         total += count;
+      }
+      if ( total != n || shape.height() > 2 * 10 || shape.height() != balanced.height() || shape.averageDepth() > 10 || shape.worstImbalance() > shape.height() / 2 ) {
+         fail( String.format( "The shape of a red-black tree of %d nodes is %s.", n, shape ) );
+      }
+      if ( new BinarySearchTree<Integer, Integer>().shape().height() != 0 ) {
+         fail( "An empty tree has a nonzero height." );
+      }
+   }
+
+   @Test
+   public void testSetAlgebra ( ) {
+      // A chain far deeper than a recursive split could go, with the value index seeing every change
+      BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+      tree.setValueIndexed( true );
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      for ( int key = 0; key < 20000; key++ ) {
+         tree.put( key, key % 7 );
+         expected.put( key, key % 7 );
+      }
+      SplayTree<Integer, Integer> evens = new SplayTree<>();
+      for ( int key = 10000; key < 30000; key += 2 ) {
+         evens.put( key, key % 7 + 7 );
+      }
+      SplayTree<Integer, Integer> thirds = new SplayTree<>();
+      for ( int key = 0; key < 30000; key += 3 ) {
+         thirds.put( key, 0 );
+      }
+
+      for ( int operation = 0; operation < 3; operation++ ) {
+         if ( operation == 0 ) {
+            tree.union( evens );
+            expected.putAll( evens );
+         } else if ( operation == 1 ) {
+            tree.difference( thirds );
+            expected.keySet().removeAll( thirds.keySet() );
+         } else {
+            tree.intersection( evens );
+            expected.keySet().retainAll( evens.keySet() );
+         }
+         if ( !expected.equals( tree ) || tree.getRoot().getSubtreeSize() != expected.size() ) {
+            fail( String.format( "After operation %d the tree has %d keys, expected %d.", operation, tree.size(), expected.size() ) );
+         }
+         for ( int value = 0; value < 14; value++ ) {
+            final int v = value;
+            Set<Integer> keys = expected.entrySet().stream().filter( e -> e.getValue() == v ).map( Map.Entry::getKey ).collect( Collectors.toSet() );
+            if ( !keys.equals( tree.keysFor( value ) ) ) {
+               fail( String.format( "After operation %d the value index has %d keys for %d, expected %d.",
+                                    operation, tree.keysFor( value ).size(), value, keys.size() ) );
+            }
+         }
+      }
+      if ( evens.size() != 10000 || thirds.size() != 10000 ) {
+         fail( "A set operation changed the other tree." );
+      }
+
+      BinarySearchTree<Integer, Integer> upper = new BinarySearchTree<>();
+      tree.split( 20000, upper );
+      if ( !expected.headMap( 20000 ).equals( tree ) || !expected.tailMap( 20000 ).equals( upper ) || !tree.keysFor( 8 ).tailSet( 20000 ).isEmpty() ) {
+         fail( String.format( "Splitting at 20000 left %d keys below and %d above.", tree.size(), upper.size() ) );
+      }
+   }
 }
\ No newline at end of file
@@ -0,0 +1,509 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * DESCRIPTION: A Binary Search Tree that functions as a Map and stores its
+ * nodes in parallel arrays instead of Node objects.
+ *
+ * Node i is described by keys[i], values[i], leftChild[i], rightChild[i] and
+ * parent[i], where links are array indices and NIL marks a missing link.
+ * A mapping therefore costs no objects of its own, only five array slots,
+ * which removes the Node and KeyValuePair headers and references of
+ * AbstractBinarySearchTree and gives the garbage collector five large
+ * arrays to mark instead of two objects per mapping.
+ *
+ * Slots of removed nodes are chained into a free-list through leftChild and
+ * reused by later puts. When no slot is free the arrays grow by half.
+ *
+ * Like BinarySearchTree, the tree does no rebalancing.
+ */
+public class CompactBinarySearchTree<K extends Comparable<K>, V> extends AbstractMap<K,V> implements Iterable<V> {
+   private static final int NIL = -1; // Marks a missing child, parent or free slot
+   private static final int DEFAULT_CAPACITY = 16;
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private Object[] keys;
+   private Object[] values;
+   private int[] leftChild, rightChild, parent;
+   private int[] generation; // Bumped each time a slot is freed, so entries of a removed mapping can tell
+
+   private int root = NIL; // Index of the root node
+   private int freeList = NIL; // First free slot below highWater, chained through leftChild
+   private int highWater = 0; // Slots at or above this index have never been used
+   private int size = 0; // The number of nodes in the BST
+   private int changeCounter = 0; // Incremented every time a change is made to the BST.
+
+   public CompactBinarySearchTree( ) {
+      this( DEFAULT_CAPACITY );
+   }
+
+   /**
+    * @param initialCapacity the number of mappings to allocate room for up front
+    */
+   public CompactBinarySearchTree( int initialCapacity ) {
+      if ( initialCapacity < 0 ) {
+         throw new IllegalArgumentException( "Illegal capacity: " + initialCapacity );
+      }
+      keys = new Object[initialCapacity];
+      values = new Object[initialCapacity];
+      leftChild = new int[initialCapacity];
+      rightChild = new int[initialCapacity];
+      parent = new int[initialCapacity];
+      generation = new int[initialCapacity];
+   }
+
+   // =======================================================================
+   // SLOT MANAGEMENT
+   // =======================================================================
+
+   // Takes a slot from the free-list, or from the unused tail, growing the arrays if needed.
+   private int allocate( K key, V value, int parentIndex ) {
+      int index;
+      if ( freeList != NIL ) {
+         index = freeList;
+         freeList = leftChild[index];
+      } else {
+         if ( highWater == keys.length ) {
+            grow();
+         }
+         index = highWater++;
+      }
+      keys[index] = key;
+      values[index] = value;
+      leftChild[index] = NIL;
+      rightChild[index] = NIL;
+      parent[index] = parentIndex;
+      return index;
+   }
+
+   // Returns a slot to the free-list and drops its references for the garbage collector.
+   private void release( int index ) {
+      generation[index]++;
+      keys[index] = null;
+      values[index] = null;
+      parent[index] = NIL;
+      rightChild[index] = NIL;
+      leftChild[index] = freeList;
+      freeList = index;
+   }
+
+   private void grow( ) {
+      int capacity = Math.max( DEFAULT_CAPACITY, keys.length + ( keys.length >> 1 ) );
+      keys = Arrays.copyOf( keys, capacity );
+      values = Arrays.copyOf( values, capacity );
+      leftChild = Arrays.copyOf( leftChild, capacity );
+      rightChild = Arrays.copyOf( rightChild, capacity );
+      parent = Arrays.copyOf( parent, capacity );
+      generation = Arrays.copyOf( generation, capacity );
+   }
+
+   private K key( int index ) {
+      return (K) keys[index];
+   }
+
+   private V value( int index ) {
+      return (V) values[index];
+   }
+
+   // =======================================================================
+   // MAP METHODS
+   // =======================================================================
+
+   /**
+    * @return the number of nodes in the BST.
+    */
+   @Override
+   public int size( ) {
+      return size;
+   }
+
+   // Returns the index of the node holding key, or NIL.
+   private int getIndex( Object key ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+      K k = (K) key;
+      int current = root;
+      while ( current != NIL ) {
+         int cmp = k.compareTo( key( current ) );
+         if ( cmp == 0 ) {
+            return current;
+         }
+         current = cmp < 0 ? leftChild[current] : rightChild[current];
+      }
+      return NIL;
+   }
+
+   @Override
+   public V get( Object key ) {
+      int index = getIndex( key );
+      return index == NIL ? null : value( index );
+   }
+
+   @Override
+   public boolean containsKey( Object key ) {
+      return getIndex( key ) != NIL;
+   }
+
+   @Override
+   public boolean containsValue( Object value ) {
+      for ( int index = first( root ); index != NIL; index = successor( index ) ) {
+         if ( values[index].equals( value ) ) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @Override
+   public V put( K key, V value ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+      if ( value == null ) {
+         throw new NullPointerException( "Specified value is null." );
+      }
+      int current = root;
+      int prev = NIL;
+      int cmp = 0;
+      while ( current != NIL ) {
+         prev = current;
+         cmp = key.compareTo( key( current ) );
+         if ( cmp == 0 ) {
+            V oldValue = value( current );
+            values[current] = value;
+            changeCounter++;
+            return oldValue;
+         }
+         current = cmp < 0 ? leftChild[current] : rightChild[current];
+      }
+      int index = allocate( key, value, prev );
+      if ( prev == NIL ) {
+         root = index;
+      } else if ( cmp < 0 ) {
+         leftChild[prev] = index;
+      } else {
+         rightChild[prev] = index;
+      }
+      size++;
+      changeCounter++;
+      return null;
+   }
+
+   @Override
+   public V remove( Object key ) {
+      if ( key == null ) {
+         return null;
+      }
+      int remover = getIndex( key );
+      if ( remover == NIL ) {
+         return null;
+      }
+      V valueRemoved = value( remover );
+      removeIndex( remover );
+      return valueRemoved;
+   }
+
+   // Unlinks the node and frees its slot. Other nodes keep their slots.
+   private void removeIndex( int remover ) {
+      if ( leftChild[remover] != NIL && rightChild[remover] != NIL ) {
+         // Two children: splice in the inorder successor
+         int successor = first( rightChild[remover] );
+         if ( parent[successor] != remover ) {
+            replaceChild( successor, rightChild[successor] );
+            rightChild[successor] = rightChild[remover];
+            parent[rightChild[successor]] = successor;
+         }
+         leftChild[successor] = leftChild[remover];
+         parent[leftChild[successor]] = successor;
+         replaceChild( remover, successor );
+      } else {
+         replaceChild( remover, leftChild[remover] != NIL ? leftChild[remover] : rightChild[remover] );
+      }
+      release( remover );
+      size--;
+      changeCounter++;
+   }
+
+   // Puts newChild, which may be NIL, in the place of oldChild.
+   private void replaceChild( int oldChild, int newChild ) {
+      int parentIndex = parent[oldChild];
+      if ( parentIndex == NIL ) {
+         root = newChild;
+      } else if ( leftChild[parentIndex] == oldChild ) {
+         leftChild[parentIndex] = newChild;
+      } else {
+         rightChild[parentIndex] = newChild;
+      }
+      if ( newChild != NIL ) {
+         parent[newChild] = parentIndex;
+      }
+   }
+
+   /**
+    * Removes all of the mappings from this map. The arrays keep their
+    * capacity.
+    */
+   @Override
+   public void clear( ) {
+      Arrays.fill( keys, 0, highWater, null );
+      Arrays.fill( values, 0, highWater, null );
+      for ( int index = 0; index < highWater; index++ ) {
+         generation[index]++; // Every slot is freed at once
+      }
+      root = NIL;
+      freeList = NIL;
+      highWater = 0;
+      size = 0;
+      changeCounter++;
+   }
+
+   // =======================================================================
+   // ITERATION
+   // =======================================================================
+
+   private int first( int index ) {
+      if ( index != NIL ) {
+         while ( leftChild[index] != NIL ) {
+            index = leftChild[index];
+         }
+      }
+      return index;
+   }
+
+   private int successor( int index ) {
+      if ( rightChild[index] != NIL ) {
+         return first( rightChild[index] );
+      }
+      int parentIndex = parent[index];
+      while ( parentIndex != NIL && index == rightChild[parentIndex] ) {
+         index = parentIndex;
+         parentIndex = parent[parentIndex];
+      }
+      return parentIndex;
+   }
+
+   // Walks the slots in ascending key order. Fails fast on outside changes.
+   private abstract class IndexIterator<T> implements Iterator<T> {
+      private int next = first( root );
+      private int lastReturned = NIL;
+      private int setpoint = changeCounter;
+
+      abstract T element( int index );
+
+      @Override
+      public boolean hasNext( ) {
+         return next != NIL;
+      }
+
+      @Override
+      public T next( ) {
+         if ( setpoint != changeCounter ) {
+            throw new ConcurrentModificationException(  );
+         }
+         if ( next == NIL ) {
+            throw new NoSuchElementException(  );
+         }
+         lastReturned = next;
+         next = successor( next );
+         return element( lastReturned );
+      }
+
+      @Override
+      public void remove( ) {
+         if ( lastReturned == NIL ) {
+            throw new IllegalStateException(  );
+         }
+         if ( setpoint != changeCounter ) {
+            throw new ConcurrentModificationException(  );
+         }
+         removeIndex( lastReturned ); // Slots do not move, so next stays valid
+         lastReturned = NIL;
+         setpoint = changeCounter;
+      }
+   }
+
+   /**
+    * Returns an iterator over the values in ascending key order.
+    *
+    * @return an Iterator.
+    */
+   @Override
+   public Iterator<V> iterator( ) {
+      return new IndexIterator<V>( ) {
+         @Override
+         V element( int index ) {
+            return value( index );
+         }
+      };
+   }
+
+   /**
+    * Returns a live view of the mappings in ascending key order. Entries
+    * write through to the tree while their mapping is present.
+    *
+    * @return a set view of the mappings contained in this map
+    */
+   @Override
+   public Set<Entry<K,V>> entrySet( ) {
+      return new AbstractSet<Entry<K,V>>( ) {
+         @Override
+         public Iterator<Entry<K,V>> iterator( ) {
+            return new IndexIterator<Entry<K,V>>( ) {
+               @Override
+               Entry<K,V> element( int index ) {
+                  return new SlotEntry( index );
+               }
+            };
+         }
+
+         @Override
+         public int size( ) {
+            return size;
+         }
+
+         @Override
+         public void clear( ) {
+            CompactBinarySearchTree.this.clear();
+         }
+      };
+   }
+
+   // A map entry that reads and writes the slot of its node. Once the mapping
+   // is removed the slot may hold another mapping, even one for an equal or
+   // the same key, so writes stop reaching the tree when the generation moves.
+   private class SlotEntry extends SimpleEntry<K,V> {
+      private static final long serialVersionUID = 1L;
+      private final int index;
+      private final int slotGeneration;
+
+      SlotEntry( int index ) {
+         super( key( index ), value( index ) );
+         this.index = index;
+         this.slotGeneration = generation[index];
+      }
+
+      @Override
+      public V setValue( V value ) {
+         if ( value == null ) {
+            throw new NullPointerException( "Specified value is null." );
+         }
+         V oldValue = super.setValue( value );
+         if ( generation[index] != slotGeneration ) {
+            return oldValue; // Removed, and the slot is free or reused
+         }
+         oldValue = value( index );
+         values[index] = value;
+         return oldValue;
+      }
+   }
+
+   // =======================================================================
+   // TRAVERSALS
+   // =======================================================================
+
+   /**
+    * Preorder Binary Tree Traversal: visit the root, then the left subtree,
+    * then the right subtree.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePreorder( AbstractBinarySearchTree.Visitor visitor ) {
+      int index = root;
+      while ( index != NIL ) {
+         visitor.visit( keys[index], values[index] );
+         if ( leftChild[index] != NIL ) {
+            index = leftChild[index];
+         } else if ( rightChild[index] != NIL ) {
+            index = rightChild[index];
+         } else {
+            // Climb until we arrive from a left child that has a right sibling
+            int parentIndex = parent[index];
+            while ( parentIndex != NIL && ( index == rightChild[parentIndex] || rightChild[parentIndex] == NIL ) ) {
+               index = parentIndex;
+               parentIndex = parent[parentIndex];
+            }
+            index = parentIndex == NIL ? NIL : rightChild[parentIndex];
+         }
+      }
+   }
+
+   /**
+    * Inorder Binary Tree Traversal: visit the left subtree, then the root,
+    * then the right subtree. Keys are visited in ascending order.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseInorder( AbstractBinarySearchTree.Visitor visitor ) {
+      for ( int index = first( root ); index != NIL; index = successor( index ) ) {
+         visitor.visit( keys[index], values[index] );
+      }
+   }
+
+   /**
+    * Postorder Binary Tree Traversal: visit the left subtree, then the right
+    * subtree, then the root.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePostorder( AbstractBinarySearchTree.Visitor visitor ) {
+      int index = firstPostorder( root );
+      while ( index != NIL ) {
+         visitor.visit( keys[index], values[index] );
+         int parentIndex = parent[index];
+         if ( parentIndex != NIL && index == leftChild[parentIndex] && rightChild[parentIndex] != NIL ) {
+            index = firstPostorder( rightChild[parentIndex] );
+         } else {
+            index = parentIndex;
+         }
+      }
+   }
+
+   // Returns the first slot of the subtree in postorder: the deepest node
+   // reached by preferring left children.
+   private int firstPostorder( int index ) {
+      while ( index != NIL && ( leftChild[index] != NIL || rightChild[index] != NIL ) ) {
+         index = leftChild[index] != NIL ? leftChild[index] : rightChild[index];
+      }
+      return index;
+   }
+
+   /**
+    * Level order Binary Tree Traversal: beginning at the root, visit each
+    * node in a level, from left to right, then proceed to the next level.
+    * The queue is a single int array sized to the tree.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseLevelorder( AbstractBinarySearchTree.Visitor visitor ) {
+      if ( root == NIL ) {
+         return;
+      }
+      int[] queue = new int[size];
+      int head = 0, tail = 0;
+      queue[tail++] = root;
+      while ( head < tail ) {
+         int index = queue[head++];
+         visitor.visit( keys[index], values[index] );
+         if ( leftChild[index] != NIL ) {
+            queue[tail++] = leftChild[index];
+         }
+         if ( rightChild[index] != NIL ) {
+            queue[tail++] = rightChild[index];
+         }
+      }
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,124 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class CompactBinarySearchTreeTest {
+   //              4
+   //             / \
+   //            2   5
+   //           / \
+   //          1   3
+   public CompactBinarySearchTree<Integer, Integer> buildSmallTree( ) {
+      CompactBinarySearchTree<Integer, Integer> tree = new CompactBinarySearchTree<>( 2 );
+      for ( int key : new int[] { 4, 2, 5, 1, 3 } ) {
+         tree.put( key, key * 10 );
+      }
+      return tree;
+   }
+
+   @Test
+   public void testTraversals( ) {
+      CompactBinarySearchTree<Integer, Integer> tree = buildSmallTree();
+      ArrayList<Object> list = new ArrayList<>(  );
+      tree.traversePreorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[4, 2, 1, 3, 5]" ) ) {
+         fail( String.format( "The preorder traversal is %s.", list ) );
+      }
+      list.clear();
+      tree.traverseInorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[1, 2, 3, 4, 5]" ) ) {
+         fail( String.format( "The inorder traversal is %s.", list ) );
+      }
+      list.clear();
+      tree.traversePostorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[1, 3, 2, 5, 4]" ) ) {
+         fail( String.format( "The postorder traversal is %s.", list ) );
+      }
+      list.clear();
+      tree.traverseLevelorder( (key, value) -> list.add( value ) );
+      if ( !list.toString().equals( "[40, 20, 50, 10, 30]" ) ) {
+         fail( String.format( "The level order traversal is %s.", list ) );
+      }
+   }
+
+   @Test
+   public void testMatchesTreeMap( ) {
+      CompactBinarySearchTree<Integer, Integer> tree = new CompactBinarySearchTree<>( 0 );
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      Random random = new Random( 7 );
+      for ( int i = 0; i < 20000; i++ ) {
+         Integer key = random.nextInt( 400 ) - 200;
+         Integer actual, wanted;
+         if ( random.nextInt( 3 ) > 0 ) {
+            actual = tree.put( key, i );
+            wanted = expected.put( key, i );
+         } else {
+            actual = tree.remove( key );
+            wanted = expected.remove( key );
+         }
+         if ( actual == null ? wanted != null : !actual.equals( wanted ) ) {
+            fail( String.format( "At step %d with key %d, the tree returned %s, expected %s.", i, key, actual, wanted ) );
+         }
+      }
+      if ( tree.size() != expected.size() ) {
+         fail( String.format( "After random operations, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+      if ( !tree.equals( expected ) || !new ArrayList<>( tree.keySet() ).equals( new ArrayList<>( expected.keySet() ) ) ) {
+         fail( "After random operations, the tree does not match the expected mappings." );
+      }
+      tree.clear();
+      if ( tree.size() != 0 || tree.containsKey( 0 ) || tree.iterator().hasNext() ) {
+         fail( "After clear, the tree is not empty." );
+      }
+   }
+
+   @Test
+   public void testIteratorRemove( ) {
+      CompactBinarySearchTree<Integer, Integer> tree = buildSmallTree();
+      Iterator<Integer> it = tree.iterator();
+      while ( it.hasNext() ) {
+         if ( it.next() % 20 == 0 ) {
+            it.remove();
+         }
+      }
+      if ( !tree.keySet().toString().equals( "[1, 3, 5]" ) ) {
+         fail( String.format( "After removing even values, tree.keySet() = %s.", tree.keySet() ) );
+      }
+      for ( Map.Entry<Integer, Integer> entry : tree.entrySet() ) {
+         entry.setValue( -entry.getKey() );
+      }
+      if ( tree.get( 3 ) != -3 || !tree.containsValue( -5 ) ) {
+         fail( String.format( "After setValue through entrySet, tree = %s.", tree ) );
+      }
+      tree.put( 6, 60 ); // Reuses a freed slot
+      if ( tree.size() != 4 || tree.get( 6 ) != 60 ) {
+         fail( String.format( "After put( 6, 60 ), tree = %s.", tree ) );
+      }
+
+      // An entry of a removed mapping must not write into its reused slot
+      Map.Entry<Integer, Integer> stale = tree.entrySet().iterator().next();
+      tree.remove( stale.getKey() );
+      tree.put( 7, 70 );
+      stale.setValue( -1 );
+      if ( tree.get( 7 ) != 70 || tree.containsValue( -1 ) ) {
+         fail( String.format( "After setValue on a removed entry, tree = %s.", tree ) );
+      }
+
+      // Nor into a new mapping for the same key instance in the same slot
+      stale = tree.entrySet().iterator().next();
+      Integer key = stale.getKey();
+      tree.remove( key );
+      tree.put( key, 50 );
+      stale.setValue( -1 );
+      if ( tree.get( key ) != 50 || tree.containsValue( -1 ) ) {
+         fail( String.format( "After setValue on an entry removed and put again, tree = %s.", tree ) );
+      }
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,511 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * DESCRIPTION: A thread-safe RedBlackTree.
+ *
+ * Mutations take the write lock of a StampedLock. get and containsKey first
+ * walk the tree without any lock and then validate the optimistic stamp; only
+ * if a writer ran in the meantime do they retry under the read lock. Readers
+ * therefore never write to shared memory on the fast path and scale with the
+ * number of reader threads. The walk gives up after MAX_OPTIMISTIC_STEPS, which
+ * is above the red-black height bound, so a torn view of a tree that is being
+ * rotated cannot make it loop.
+ *
+ * Navigation, order statistics, containsValue, keysFor, height, shape, forEach,
+ * the traversals, finger searches, freeze and writeSnapshot run under the
+ * read lock. While
+ * metrics are enabled, get skips the optimistic walk and takes the read
+ * lock, so that every search is counted once. A visitor must not
+ * modify the tree. Iterators and views are not locked: like those of the
+ * other trees they fail fast on a best-effort basis, so iterate only while no
+ * other thread writes.
+ *
+ * The write lock is reentrant for the thread holding it. Every compound write
+ * (putAll, pollFirstEntry, putIfAbsent, compute, merge, replace, ...) is
+ * overridden to hold it for the whole operation, so like the methods of
+ * Collections.synchronizedMap each is atomic; the Map defaults they replace
+ * would take the lock once for the get and again for the put. A function
+ * passed to compute or merge runs under the write lock. union,
+ * intersection, difference, join and split hold the write lock while they
+ * rearrange the tree, even when the merge forks onto other threads. In durable
+ * mode each change is appended to the log while the write lock is held, so
+ * the log records changes in the order the tree applied them; checkpoint
+ * holds the write lock for the whole snapshot.
+ */
+public class ConcurrentBinarySearchTree<K extends Comparable<K>, V> extends RedBlackTree<K, V> {
+   private static final int MAX_OPTIMISTIC_STEPS = 64; // A red-black tree of 2^31 nodes is at most 62 deep
+   private static final Object RETRY = new Object( ); // Marks an optimistic read that must be retried
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private final StampedLock lock = new StampedLock( );
+   private Thread writer = null; // The thread holding the write lock. Every thread reads it, but only the holder finds itself
+
+   // =======================================================================
+   // CONSTRUCTORS
+   // =======================================================================
+
+   /**
+    * Creates an empty tree ordered by the natural ordering of its keys.
+    */
+   public ConcurrentBinarySearchTree( ) {
+   }
+
+   /**
+    * Creates an empty tree ordered by a comparator.
+    * @param comparator the order of the keys, or null for their natural ordering
+    */
+   public ConcurrentBinarySearchTree( Comparator<? super K> comparator ) {
+      super( comparator );
+   }
+
+   /**
+    * Creates an empty tree whose nodes cache a normalized prefix of their keys.
+    * @param comparator the order of the keys, or null for their natural ordering
+    * @param normalizer maps keys to prefixes that agree with that order
+    */
+   public ConcurrentBinarySearchTree( Comparator<? super K> comparator, KeyNormalizer<? super K> normalizer ) {
+      super( comparator, normalizer );
+   }
+
+   // =======================================================================
+   // LOCKING
+   // =======================================================================
+
+   // Acquires the write lock, returning 0 if this thread already holds it.
+   private long writeLock( ) {
+      Thread current = Thread.currentThread();
+      if ( writer == current ) {
+         return 0;
+      }
+      long stamp = lock.writeLock();
+      writer = current;
+      return stamp;
+   }
+
+   private void unlockWrite( long stamp ) {
+      if ( stamp != 0 ) {
+         writer = null;
+         lock.unlockWrite( stamp );
+      }
+   }
+
+   // Runs a read-only action under the read lock, or directly inside a write.
+   private <T> T readLocked( Supplier<T> action ) {
+      if ( writer == Thread.currentThread() ) {
+         return action.get();
+      }
+      long stamp = lock.readLock();
+      try {
+         return action.get();
+      } finally {
+         lock.unlockRead( stamp );
+      }
+   }
+
+   private <T> T writeLocked( Supplier<T> action ) {
+      long stamp = writeLock();
+      try {
+         return action.get();
+      } finally {
+         unlockWrite( stamp );
+      }
+   }
+
+   // =======================================================================
+   // OPTIMISTIC READS
+   // =======================================================================
+
+   // Walks the tree without locking. Returns the value, null if the key is
+   // absent, or RETRY if the walk was too long to be consistent.
+   private Object findUnlocked( Object key ) {
+      K k = (K) key;
+      long prefix = keyPrefix( k );
+      Node currentNode = getRoot();
+      for ( int steps = 0; currentNode != null; steps++ ) {
+         if ( steps == MAX_OPTIMISTIC_STEPS ) {
+            return RETRY;
+         }
+         int cmp = compareToNode( k, prefix, currentNode );
+         if ( cmp == 0 ) {
+            return currentNode.getValue();
+         }
+         currentNode = cmp < 0 ? currentNode.getLeftChild() : currentNode.getRightChild();
+      }
+      return null;
+   }
+
+   /**
+    * Returns the value to which the specified key is mapped, or null. Runs
+    * without locking unless a write overlaps the lookup.
+    *
+    * @param key the key whose associated value is to be returned
+    * @return the value to which the specified key is mapped, or null
+    * @throws NullPointerException if the specified key is null
+    */
+   @Override
+   public V get ( Object key ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+      long stamp = getMetrics() == null ? lock.tryOptimisticRead() : 0; // Metered gets count under the read lock
+      if ( stamp != 0 ) {
+         try {
+            Object result = findUnlocked( key );
+            if ( result != RETRY && lock.validate( stamp ) ) {
+               return (V) result;
+            }
+         } catch ( RuntimeException e ) {
+            // A torn read while a writer relinked nodes; retry under the lock
+            if ( lock.validate( stamp ) ) {
+               throw e;
+            }
+         }
+      }
+      return readLocked( ( ) -> super.get( key ) );
+   }
+
+   @Override
+   public boolean containsKey ( Object key ) {
+      return get( key ) != null;
+   }
+
+   // =======================================================================
+   // LOCKED READS
+   // =======================================================================
+
+   @Override
+   public K firstKey ( ) {
+      return readLocked( super::firstKey );
+   }
+
+   @Override
+   public K lastKey ( ) {
+      return readLocked( super::lastKey );
+   }
+
+   @Override
+   public Entry<K,V> firstEntry ( ) {
+      return readLocked( super::firstEntry );
+   }
+
+   @Override
+   public Entry<K,V> lastEntry ( ) {
+      return readLocked( super::lastEntry );
+   }
+
+   @Override
+   public Entry<K,V> lowerEntry ( K key ) {
+      return readLocked( ( ) -> super.lowerEntry( key ) );
+   }
+
+   @Override
+   public K lowerKey ( K key ) {
+      return readLocked( ( ) -> super.lowerKey( key ) );
+   }
+
+   @Override
+   public Entry<K,V> floorEntry ( K key ) {
+      return readLocked( ( ) -> super.floorEntry( key ) );
+   }
+
+   @Override
+   public K floorKey ( K key ) {
+      return readLocked( ( ) -> super.floorKey( key ) );
+   }
+
+   @Override
+   public Entry<K,V> ceilingEntry ( K key ) {
+      return readLocked( ( ) -> super.ceilingEntry( key ) );
+   }
+
+   @Override
+   public K ceilingKey ( K key ) {
+      return readLocked( ( ) -> super.ceilingKey( key ) );
+   }
+
+   @Override
+   public Entry<K,V> higherEntry ( K key ) {
+      return readLocked( ( ) -> super.higherEntry( key ) );
+   }
+
+   @Override
+   public K higherKey ( K key ) {
+      return readLocked( ( ) -> super.higherKey( key ) );
+   }
+
+   @Override
+   public int rank( K key ) {
+      return readLocked( ( ) -> super.rank( key ) );
+   }
+
+   @Override
+   public K select( int index ) {
+      return readLocked( ( ) -> super.select( index ) );
+   }
+
+   @Override
+   public int countBetween( K lo, K hi ) {
+      return readLocked( ( ) -> super.countBetween( lo, hi ) );
+   }
+
+   @Override
+   public boolean containsValue ( Object value ) {
+      return readLocked( ( ) -> super.containsValue( value ) );
+   }
+
+   @Override
+   public SortedSet<K> keysFor( V value ) {
+      return readLocked( ( ) -> super.keysFor( value ) );
+   }
+
+   @Override
+   public boolean isValueIndexed( ) {
+      return readLocked( super::isValueIndexed );
+   }
+
+   /**
+    * Runs each search of a finger under the read lock. The finger itself
+    * must still be used by one thread at a time.
+    */
+   @Override
+   protected <T> T fingerSearch( Supplier<T> search ) {
+      return readLocked( search );
+   }
+
+   @Override
+   public int height( ) {
+      return readLocked( super::height );
+   }
+
+   @Override
+   public TreeShape shape( ) {
+      return readLocked( super::shape );
+   }
+
+   @Override
+   public boolean isDurable( ) {
+      return readLocked( super::isDurable );
+   }
+
+   @Override
+   public FrozenBinarySearchTree<K, V> freeze( ) {
+      return readLocked( super::freeze );
+   }
+
+   @Override
+   public void writeSnapshot( Path path, Codec<? super K> keyCodec, Codec<? super V> valueCodec ) throws IOException {
+      if ( writer == Thread.currentThread() ) {
+         super.writeSnapshot( path, keyCodec, valueCodec );
+         return;
+      }
+      long stamp = lock.readLock();
+      try {
+         super.writeSnapshot( path, keyCodec, valueCodec );
+      } finally {
+         lock.unlockRead( stamp );
+      }
+   }
+
+   // The traversals and forEach all go through these four methods, so each
+   // takes the read lock exactly once.
+
+   @Override
+   public boolean visitPreorder( TreeVisitor<? super K, ? super V> visitor ) {
+      return readLocked( ( ) -> super.visitPreorder( visitor ) );
+   }
+
+   @Override
+   public boolean visitInorder( TreeVisitor<? super K, ? super V> visitor ) {
+      return readLocked( ( ) -> super.visitInorder( visitor ) );
+   }
+
+   @Override
+   public boolean visitPostorder( TreeVisitor<? super K, ? super V> visitor ) {
+      return readLocked( ( ) -> super.visitPostorder( visitor ) );
+   }
+
+   @Override
+   public boolean visitLevelorder( TreeVisitor<? super K, ? super V> visitor ) {
+      return readLocked( ( ) -> super.visitLevelorder( visitor ) );
+   }
+
+   // =======================================================================
+   // WRITES
+   // =======================================================================
+
+   @Override
+   public V put ( K key, V value ) {
+      return writeLocked( ( ) -> super.put( key, value ) );
+   }
+
+   @Override
+   public V remove ( Object key ) {
+      return writeLocked( ( ) -> super.remove( key ) );
+   }
+
+   @Override
+   public void putAll ( Map< ? extends K, ? extends V > m ) {
+      writeLocked( ( ) -> { super.putAll( m ); return null; } );
+   }
+
+   @Override
+   public V putIfAbsent ( K key, V value ) {
+      return writeLocked( ( ) -> super.putIfAbsent( key, value ) );
+   }
+
+   @Override
+   public V computeIfAbsent ( K key, Function< ? super K, ? extends V > mappingFunction ) {
+      return writeLocked( ( ) -> super.computeIfAbsent( key, mappingFunction ) );
+   }
+
+   @Override
+   public V computeIfPresent ( K key, BiFunction< ? super K, ? super V, ? extends V > remappingFunction ) {
+      return writeLocked( ( ) -> super.computeIfPresent( key, remappingFunction ) );
+   }
+
+   @Override
+   public V compute ( K key, BiFunction< ? super K, ? super V, ? extends V > remappingFunction ) {
+      return writeLocked( ( ) -> super.compute( key, remappingFunction ) );
+   }
+
+   @Override
+   public V merge ( K key, V value, BiFunction< ? super V, ? super V, ? extends V > remappingFunction ) {
+      return writeLocked( ( ) -> super.merge( key, value, remappingFunction ) );
+   }
+
+   @Override
+   public V replace ( K key, V value ) {
+      return writeLocked( ( ) -> super.replace( key, value ) );
+   }
+
+   @Override
+   public boolean replace ( K key, V oldValue, V newValue ) {
+      return writeLocked( ( ) -> super.replace( key, oldValue, newValue ) );
+   }
+
+   @Override
+   public boolean remove ( Object key, Object value ) {
+      return writeLocked( ( ) -> super.remove( key, value ) );
+   }
+
+   @Override
+   public void replaceAll ( BiFunction< ? super K, ? super V, ? extends V > function ) {
+      writeLocked( ( ) -> { super.replaceAll( function ); return null; } );
+   }
+
+   @Override
+   protected void buildFromSorted( int size, Iterator< ? extends Entry< ? extends K, ? extends V > > entries ) {
+      writeLocked( ( ) -> { super.buildFromSorted( size, entries ); return null; } );
+   }
+
+   // The public set operations read the other tree under its own lock first
+   // and only then take this one, so two trees merged into each other from
+   // two threads cannot deadlock.
+   @Override
+   protected void mergeSorted( SetOperation operation, Object[] keys, Object[] values ) {
+      writeLocked( ( ) -> { super.mergeSorted( operation, keys, values ); return null; } );
+   }
+
+   // Probing would read the keys of this tree before mergeSorted takes the write
+   // lock, so a concurrent write in between could escape the operation.
+   @Override
+   protected boolean probeOther( AbstractBinarySearchTree<K, V> other ) {
+      return false;
+   }
+
+   @Override
+   protected Object[][] splitOff( K key ) {
+      return writeLocked( ( ) -> super.splitOff( key ) );
+   }
+
+   @Override
+   public void setValueIndexed( boolean enabled ) {
+      writeLocked( ( ) -> { super.setValueIndexed( enabled ); return null; } );
+   }
+
+   @Override
+   public void setMetricsEnabled( boolean enabled ) {
+      writeLocked( ( ) -> { super.setMetricsEnabled( enabled ); return null; } );
+   }
+
+   @Override
+   public void setImbalanceAlarm( double threshold, ImbalanceAlarm alarm ) {
+      writeLocked( ( ) -> { super.setImbalanceAlarm( threshold, alarm ); return null; } );
+   }
+
+   @Override
+   public void readSnapshot( Path path, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec ) throws IOException {
+      long stamp = writeLock();
+      try {
+         super.readSnapshot( path, keyCodec, valueCodec );
+      } finally {
+         unlockWrite( stamp );
+      }
+   }
+
+   @Override
+   public void openDurable( Path snapshot, Path logPath, Codec<K> keyCodec, Codec<V> valueCodec,
+                            int syncEveryOps, long syncEveryMillis ) throws IOException {
+      long stamp = writeLock();
+      try {
+         super.openDurable( snapshot, logPath, keyCodec, valueCodec, syncEveryOps, syncEveryMillis );
+      } finally {
+         unlockWrite( stamp );
+      }
+   }
+
+   // Under the write lock, so no change lands in the log between the
+   // snapshot and the truncation of the log.
+   @Override
+   public void checkpoint( ) throws IOException {
+      long stamp = writeLock();
+      try {
+         super.checkpoint();
+      } finally {
+         unlockWrite( stamp );
+      }
+   }
+
+   @Override
+   public void closeDurable( ) throws IOException {
+      long stamp = writeLock();
+      try {
+         super.closeDurable();
+      } finally {
+         unlockWrite( stamp );
+      }
+   }
+
+   @Override
+   public Entry<K,V> pollFirstEntry ( ) {
+      return writeLocked( super::pollFirstEntry );
+   }
+
+   @Override
+   public Entry<K,V> pollLastEntry ( ) {
+      return writeLocked( super::pollLastEntry );
+   }
+
+   @Override
+   public V removeRoot( ) {
+      return writeLocked( super::removeRoot );
+   }
+
+   @Override
+   public void clear ( ) {
+      writeLocked( ( ) -> { super.clear(); return null; } );
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,137 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentBinarySearchTreeTest {
+   private static final int WRITERS = 4;
+   private static final int KEYS_PER_WRITER = 20000;
+
+   @Test
+   public void testConcurrentReadersAndWriters( ) throws InterruptedException {
+      ConcurrentBinarySearchTree<Integer, Integer> tree = new ConcurrentBinarySearchTree<>();
+      for ( int key = 0; key < 1000; key++ ) {
+         tree.put( -1 - key, key ); // Stable keys that readers must always find
+      }
+      AtomicReference<String> failure = new AtomicReference<>(  );
+      List<Thread> threads = new ArrayList<>(  );
+      for ( int w = 0; w < WRITERS; w++ ) {
+         int writer = w;
+         threads.add( new Thread( ( ) -> {
+            // Each writer owns the keys congruent to its number, and removes every third one again
+            for ( int i = 0; i < KEYS_PER_WRITER; i++ ) {
+               int key = i * WRITERS + writer;
+               tree.put( key, key );
+               if ( i % 3 == 0 ) {
+                  tree.remove( key );
+               }
+            }
+         } ) );
+      }
+      Thread[] readers = new Thread[2];
+      for ( int r = 0; r < readers.length; r++ ) {
+         int reader = r;
+         readers[r] = new Thread( ( ) -> {
+            AbstractBinarySearchTree<Integer, Integer>.Finger finger = tree.finger(); // The second reader searches from its finger
+            for ( int round = 0; round < 200 && failure.get() == null; round++ ) {
+               for ( int key = 0; key < 1000; key++ ) {
+                  Integer value = reader == 0 ? tree.get( -1 - key ) : finger.get( -1 - key );
+                  if ( value == null || value != key ) {
+                     failure.compareAndSet( null, String.format( "tree.get( %d ) = %s during writes, expected %d.", -1 - key, value, key ) );
+                  }
+               }
+            }
+         } );
+         threads.add( readers[r] );
+      }
+      for ( Thread thread : threads ) {
+         thread.start();
+      }
+      for ( Thread thread : threads ) {
+         thread.join();
+      }
+      if ( failure.get() != null ) {
+         fail( failure.get() );
+      }
+
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      for ( int key = 0; key < 1000; key++ ) {
+         expected.put( -1 - key, key );
+      }
+      for ( int i = 0; i < KEYS_PER_WRITER; i++ ) {
+         for ( int writer = 0; writer < WRITERS; writer++ ) {
+            if ( i % 3 != 0 ) {
+               expected.put( i * WRITERS + writer, i * WRITERS + writer );
+            }
+         }
+      }
+      if ( tree.size() != expected.size() || !tree.entrySet().equals( expected.entrySet() ) ) {
+         fail( String.format( "After concurrent writes, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+      if ( !tree.select( 1000 ).equals( expected.ceilingKey( 0 ) ) || tree.rank( 0 ) != 1000 ) {
+         fail( String.format( "After concurrent writes, tree.select( 1000 ) = %d, expected %d.", tree.select( 1000 ), expected.ceilingKey( 0 ) ) );
+      }
+   }
+
+   @Test
+   public void testAtomicCompoundWrites( ) throws InterruptedException {
+      ConcurrentBinarySearchTree<Integer, Integer> tree = new ConcurrentBinarySearchTree<>();
+      AtomicInteger[] winners = new AtomicInteger[1000];
+      for ( int key = 0; key < winners.length; key++ ) {
+         winners[key] = new AtomicInteger(  );
+      }
+      List<Thread> threads = new ArrayList<>(  );
+      for ( int w = 0; w < WRITERS; w++ ) {
+         int writer = w;
+         threads.add( new Thread( ( ) -> {
+            // Every writer races for every key, and counts each one in the same mapping
+            for ( int key = 0; key < winners.length; key++ ) {
+               if ( tree.putIfAbsent( key, writer ) == null ) {
+                  winners[key].incrementAndGet();
+               }
+               tree.merge( -1 - key, 1, Integer::sum );
+            }
+         } ) );
+      }
+      for ( Thread thread : threads ) {
+         thread.start();
+      }
+      for ( Thread thread : threads ) {
+         thread.join();
+      }
+      for ( int key = 0; key < winners.length; key++ ) {
+         if ( winners[key].get() != 1 || tree.get( -1 - key ) != WRITERS ) {
+            fail( String.format( "For key %d, %d writers won putIfAbsent and merge counted %d of %d writers.",
+                                 key, winners[key].get(), tree.get( -1 - key ), WRITERS ) );
+         }
+      }
+      if ( tree.replace( 0, -1, 5 ) || !tree.replace( 0, tree.get( 0 ), 5 ) || !tree.remove( 0, 5 ) || tree.containsKey( 0 ) ) {
+         fail( String.format( "replace and remove with an expected value left key 0 mapped to %s.", tree.get( 0 ) ) );
+      }
+   }
+
+   @Test
+   public void testReentrantWrites( ) {
+      ConcurrentBinarySearchTree<Integer, Integer> tree = new ConcurrentBinarySearchTree<>();
+      TreeMap<Integer, Integer> source = new TreeMap<>();
+      for ( int key = 0; key < 100; key++ ) {
+         source.put( key, key );
+      }
+      tree.putAll( source ); // Bulk load through the overridden buildFromSorted
+      tree.putAll( source ); // put for every entry, inside the outer write lock
+      if ( tree.pollFirstEntry().getKey() != 0 || tree.pollLastEntry().getKey() != 99 || tree.size() != 98 ) {
+         fail( String.format( "After polling both ends, tree.size() = %d.", tree.size() ) );
+      }
+      List<Object> keys = new ArrayList<>(  );
+      tree.traverseInorder( (key, value) -> keys.add( tree.get( key ) ) );
+      if ( keys.size() != 98 || !keys.get( 0 ).equals( 1 ) ) {
+         fail( String.format( "The inorder traversal with lookups returned %s.", keys ) );
+      }
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,412 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * DESCRIPTION: An immutable Binary Search Tree that functions as a Map,
+ * created by AbstractBinarySearchTree.freeze() for data that is loaded once
+ * and then only read.
+ *
+ * The mappings are stored in breadth-first (Eytzinger) order in arrays:
+ * slot 1 is the root and slot i has its children in slots 2i and 2i + 1, so
+ * the tree is complete, no links are stored, and the first levels of every
+ * search share a few cache lines. A search descends with
+ * i = 2i + ( key at i < key ) until it runs off the bottom, without an early
+ * exit on equality, so the only branch is the loop itself; the ceiling of the
+ * key is then recovered from the bits of i. When the tree was normalized, the
+ * prefixes are kept in a long array beside the keys, so most levels compare
+ * two longs from contiguous memory and never load the key object.
+ *
+ * Every method that would change the map throws an
+ * UnsupportedOperationException. A frozen tree may be read by any number of
+ * threads without locks.
+ */
+public class FrozenBinarySearchTree<K extends Comparable<K>, V> extends AbstractMap<K,V> implements Iterable<V> {
+   static final int MAX_SIZE = ( 1 << 30 ) - 1; // Keeps 2i + 1 within an int for every slot
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private final Object[] keys; // Slots 1 to size in breadth-first order; slot 0 is unused
+   private final Object[] values;
+   private final long[] prefixes; // The normalized prefixes of the keys, null if not normalized
+   private final Comparator<? super K> comparator;
+   private final AbstractBinarySearchTree.KeyNormalizer<? super K> normalizer;
+   private final int size;
+
+   /**
+    * Lays out mappings given in ascending key order.
+    *
+    * @param sortedKeys the keys in ascending order
+    * @param sortedValues the values of those keys
+    * @param comparator the order of the keys, or null for their natural ordering
+    * @param normalizer maps keys to prefixes that agree with that order, or null
+    */
+   FrozenBinarySearchTree( Object[] sortedKeys, Object[] sortedValues, Comparator<? super K> comparator,
+                           AbstractBinarySearchTree.KeyNormalizer<? super K> normalizer ) {
+      if ( sortedKeys.length > MAX_SIZE ) {
+         throw new IllegalArgumentException( "Too many mappings to freeze: " + sortedKeys.length );
+      }
+      this.size = sortedKeys.length;
+      this.comparator = comparator;
+      this.normalizer = normalizer;
+      keys = new Object[size + 1];
+      values = new Object[size + 1];
+      layOut( sortedKeys, sortedValues, 0, 1 );
+      if ( normalizer != null ) {
+         prefixes = new long[size + 1];
+         for ( int slot = 1; slot <= size; slot++ ) {
+            prefixes[slot] = normalizer.prefix( key( slot ) );
+         }
+      } else {
+         prefixes = null;
+      }
+   }
+
+   // Fills the subtree at slot inorder from the sorted arrays, starting at
+   // next, and returns the index after the last mapping used. The tree is
+   // complete, so the recursion is at most 30 deep.
+   private int layOut( Object[] sortedKeys, Object[] sortedValues, int next, int slot ) {
+      if ( slot <= size ) {
+         next = layOut( sortedKeys, sortedValues, next, 2 * slot );
+         keys[slot] = sortedKeys[next];
+         values[slot] = sortedValues[next];
+         next = layOut( sortedKeys, sortedValues, next + 1, 2 * slot + 1 );
+      }
+      return next;
+   }
+
+   private K key( int slot ) {
+      return (K) keys[slot];
+   }
+
+   private V value( int slot ) {
+      return (V) values[slot];
+   }
+
+   private int compareKeys( K a, K b ) {
+      return comparator == null ? a.compareTo( b ) : comparator.compare( a, b );
+   }
+
+   // =======================================================================
+   // SEARCH
+   // =======================================================================
+
+   // Returns the slot of the least key greater than or equal to key, or 0 if
+   // there is none. The descent ends below a leaf at slot j, whose bits spell
+   // the path: 1 for a right turn, 0 for a left turn. The ceiling is the last
+   // node where the search turned left, so shifting off the trailing right
+   // turns and that left turn leaves its slot.
+   private int ceilingSlot( K key ) {
+      int slot = 1;
+      if ( prefixes != null ) {
+         long prefix = normalizer.prefix( key );
+         while ( slot <= size ) {
+            long slotPrefix = prefixes[slot];
+            boolean less = slotPrefix < prefix || slotPrefix == prefix && compareKeys( key( slot ), key ) < 0;
+            slot = 2 * slot + ( less ? 1 : 0 );
+         }
+      } else {
+         while ( slot <= size ) {
+            slot = 2 * slot + ( compareKeys( key( slot ), key ) < 0 ? 1 : 0 );
+         }
+      }
+      return slot >>> ( Integer.numberOfTrailingZeros( ~slot ) + 1 );
+   }
+
+   // Returns the slot holding key, or 0.
+   private int getSlot( Object key ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+      K k = (K) key;
+      int slot = ceilingSlot( k );
+      return slot != 0 && compareKeys( k, key( slot ) ) == 0 ? slot : 0;
+   }
+
+   // The slot of the least key in the subtree at slot.
+   private int first( int slot ) {
+      while ( 2 * slot <= size ) {
+         slot = 2 * slot;
+      }
+      return slot;
+   }
+
+   // The slot of the greatest key in the subtree at slot.
+   private int last( int slot ) {
+      while ( 2 * slot + 1 <= size ) {
+         slot = 2 * slot + 1;
+      }
+      return slot;
+   }
+
+   // The slot of the next key, or 0. Without a right child, the successor is
+   // the ancestor reached by climbing out of a left subtree.
+   private int successor( int slot ) {
+      if ( 2 * slot + 1 <= size ) {
+         return first( 2 * slot + 1 );
+      }
+      return slot >>> ( Integer.numberOfTrailingZeros( ~slot ) + 1 );
+   }
+
+   // The slot of the previous key, or 0.
+   private int predecessor( int slot ) {
+      if ( 2 * slot <= size ) {
+         return last( 2 * slot );
+      }
+      return slot >>> ( Integer.numberOfTrailingZeros( slot ) + 1 );
+   }
+
+   // =======================================================================
+   // MAP METHODS
+   // =======================================================================
+
+   /**
+    * @return the number of mappings in the tree.
+    */
+   @Override
+   public int size( ) {
+      return size;
+   }
+
+   @Override
+   public V get( Object key ) {
+      int slot = getSlot( key );
+      return slot == 0 ? null : value( slot );
+   }
+
+   @Override
+   public boolean containsKey( Object key ) {
+      return getSlot( key ) != 0;
+   }
+
+   @Override
+   public boolean containsValue( Object value ) {
+      for ( int slot = 1; slot <= size; slot++ ) {
+         if ( values[slot].equals( value ) ) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @Override
+   public V put( K key, V value ) {
+      throw new UnsupportedOperationException( "A frozen tree cannot be changed." );
+   }
+
+   @Override
+   public void putAll( Map<? extends K, ? extends V> m ) {
+      throw new UnsupportedOperationException( "A frozen tree cannot be changed." );
+   }
+
+   @Override
+   public V remove( Object key ) {
+      throw new UnsupportedOperationException( "A frozen tree cannot be changed." );
+   }
+
+   @Override
+   public void clear( ) {
+      throw new UnsupportedOperationException( "A frozen tree cannot be changed." );
+   }
+
+   // =======================================================================
+   // NAVIGATION
+   // =======================================================================
+
+   /**
+    * @return the comparator that orders the keys, or null for their natural ordering
+    */
+   public Comparator<? super K> comparator( ) {
+      return comparator;
+   }
+
+   /**
+    * @return the least key
+    * @throws NoSuchElementException if the tree is empty
+    */
+   public K firstKey( ) {
+      if ( size == 0 ) {
+         throw new NoSuchElementException(  );
+      }
+      return key( first( 1 ) );
+   }
+
+   /**
+    * @return the greatest key
+    * @throws NoSuchElementException if the tree is empty
+    */
+   public K lastKey( ) {
+      if ( size == 0 ) {
+         throw new NoSuchElementException(  );
+      }
+      return key( last( 1 ) );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the least key greater than or equal to key, or null if there is none
+    */
+   public K ceilingKey( K key ) {
+      int slot = ceilingSlot( key );
+      return slot == 0 ? null : key( slot );
+   }
+
+   /**
+    * @param key the key to search for
+    * @return the greatest key less than or equal to key, or null if there is none
+    */
+   public K floorKey( K key ) {
+      if ( size == 0 ) {
+         return null;
+      }
+      int slot = ceilingSlot( key );
+      if ( slot == 0 ) {
+         slot = last( 1 );
+      } else if ( compareKeys( key, key( slot ) ) != 0 ) {
+         slot = predecessor( slot );
+      }
+      return slot == 0 ? null : key( slot );
+   }
+
+   // =======================================================================
+   // ITERATION
+   // =======================================================================
+
+   // Walks the slots in ascending key order.
+   private abstract class SlotIterator<T> implements Iterator<T> {
+      private int next = size == 0 ? 0 : first( 1 );
+
+      abstract T element( int slot );
+
+      @Override
+      public boolean hasNext( ) {
+         return next != 0;
+      }
+
+      @Override
+      public T next( ) {
+         if ( next == 0 ) {
+            throw new NoSuchElementException(  );
+         }
+         int slot = next;
+         next = successor( slot );
+         return element( slot );
+      }
+   }
+
+   /**
+    * Returns an iterator over the values in ascending key order.
+    *
+    * @return an Iterator.
+    */
+   @Override
+   public Iterator<V> iterator( ) {
+      return new SlotIterator<V>( ) {
+         @Override
+         V element( int slot ) {
+            return value( slot );
+         }
+      };
+   }
+
+   /**
+    * Returns an unmodifiable view of the mappings in ascending key order.
+    *
+    * @return a set view of the mappings contained in this map
+    */
+   @Override
+   public Set<Entry<K,V>> entrySet( ) {
+      return new AbstractSet<Entry<K,V>>( ) {
+         @Override
+         public Iterator<Entry<K,V>> iterator( ) {
+            return new SlotIterator<Entry<K,V>>( ) {
+               @Override
+               Entry<K,V> element( int slot ) {
+                  return new SimpleImmutableEntry<>( key( slot ), value( slot ) );
+               }
+            };
+         }
+
+         @Override
+         public int size( ) {
+            return size;
+         }
+      };
+   }
+
+   // =======================================================================
+   // TRAVERSALS
+   // =======================================================================
+
+   /**
+    * Preorder Binary Tree Traversal: visit the root, then the left subtree,
+    * then the right subtree.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePreorder( AbstractBinarySearchTree.Visitor visitor ) {
+      preorder( 1, visitor );
+   }
+
+   private void preorder( int slot, AbstractBinarySearchTree.Visitor visitor ) {
+      if ( slot <= size ) {
+         visitor.visit( keys[slot], values[slot] );
+         preorder( 2 * slot, visitor );
+         preorder( 2 * slot + 1, visitor );
+      }
+   }
+
+   /**
+    * Inorder Binary Tree Traversal: visit the left subtree, then the root,
+    * then the right subtree. Keys are visited in ascending order.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseInorder( AbstractBinarySearchTree.Visitor visitor ) {
+      for ( int slot = size == 0 ? 0 : first( 1 ); slot != 0; slot = successor( slot ) ) {
+         visitor.visit( keys[slot], values[slot] );
+      }
+   }
+
+   /**
+    * Postorder Binary Tree Traversal: visit the left subtree, then the right
+    * subtree, then the root.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePostorder( AbstractBinarySearchTree.Visitor visitor ) {
+      postorder( 1, visitor );
+   }
+
+   private void postorder( int slot, AbstractBinarySearchTree.Visitor visitor ) {
+      if ( slot <= size ) {
+         postorder( 2 * slot, visitor );
+         postorder( 2 * slot + 1, visitor );
+         visitor.visit( keys[slot], values[slot] );
+      }
+   }
+
+   /**
+    * Level order Binary Tree Traversal: beginning at the root, visit each
+    * node in a level, from left to right, then proceed to the next level.
+    * That is the order of the slots, so no queue is needed.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseLevelorder( AbstractBinarySearchTree.Visitor visitor ) {
+      for ( int slot = 1; slot <= size; slot++ ) {
+         visitor.visit( keys[slot], values[slot] );
+      }
+   }
+}
+// END OF FILE ==============================================================
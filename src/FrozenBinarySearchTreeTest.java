@@ -0,0 +1,116 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class FrozenBinarySearchTreeTest {
+
+   @Test
+   public void testLookups( ) {
+      Random random = new Random( 22 );
+      for ( int size : new int[] { 0, 1, 2, 3, 7, 8, 100, 1000 } ) {
+         RedBlackTree<Integer, Integer> tree = new RedBlackTree<>();
+         TreeMap<Integer, Integer> expected = new TreeMap<>();
+         while ( expected.size() < size ) {
+            int key = random.nextInt( 4 * size ) * 2; // Even keys, so odd ones fall between
+            tree.put( key, key * 10 );
+            expected.put( key, key * 10 );
+         }
+         FrozenBinarySearchTree<Integer, Integer> frozen = tree.freeze();
+         tree.clear(); // The frozen tree is a copy
+         if ( frozen.size() != size || !frozen.entrySet().equals( expected.entrySet() ) ) {
+            fail( String.format( "A frozen tree of %d mappings has %d, expected %d.", size, frozen.size(), expected.size() ) );
+         }
+         for ( int key = -1; key <= 8 * size + 1; key++ ) {
+            Integer a = frozen.get( key ), b = expected.get( key );
+            if ( a == null ? b != null : !a.equals( b ) ) {
+               fail( String.format( "With %d mappings, frozen.get( %d ) = %s, expected %s.", size, key, a, b ) );
+            }
+            if ( frozen.ceilingKey( key ) != expected.ceilingKey( key ) && !frozen.ceilingKey( key ).equals( expected.ceilingKey( key ) ) ) {
+               fail( String.format( "With %d mappings, frozen.ceilingKey( %d ) = %s, expected %s.", size, key, frozen.ceilingKey( key ), expected.ceilingKey( key ) ) );
+            }
+            if ( frozen.floorKey( key ) != expected.floorKey( key ) && !frozen.floorKey( key ).equals( expected.floorKey( key ) ) ) {
+               fail( String.format( "With %d mappings, frozen.floorKey( %d ) = %s, expected %s.", size, key, frozen.floorKey( key ), expected.floorKey( key ) ) );
+            }
+         }
+         if ( size > 0 && ( !frozen.firstKey().equals( expected.firstKey() ) || !frozen.lastKey().equals( expected.lastKey() ) ) ) {
+            fail( String.format( "With %d mappings, the first and last keys are %d and %d.", size, frozen.firstKey(), frozen.lastKey() ) );
+         }
+         List<Integer> values = new ArrayList<>(  );
+         for ( int value : frozen ) {
+            values.add( value );
+         }
+         if ( !values.equals( new ArrayList<>( expected.values() ) ) ) {
+            fail( String.format( "With %d mappings, the iterator returned %s.", size, values ) );
+         }
+      }
+   }
+
+   @Test
+   public void testNormalizedKeys( ) {
+      RedBlackTree<String, Integer> tree = new RedBlackTree<>( Collections.reverseOrder(), null );
+      RedBlackTree<String, Integer> normalized = new RedBlackTree<>( null, AbstractBinarySearchTree.KeyNormalizer.STRING_PREFIX );
+      // Keys sharing their first four chars tie on the prefix and fall back to compareTo
+      String[] keys = { "", "a", "ab", "abcd", "abcde", "abcdz", "abce", "b", "\uffff", "\uffff\uffff\uffff\uffffx" };
+      for ( int i = 0; i < keys.length; i++ ) {
+         tree.put( keys[i], i );
+         normalized.put( keys[i], i );
+      }
+      FrozenBinarySearchTree<String, Integer> reversed = tree.freeze();
+      FrozenBinarySearchTree<String, Integer> frozen = normalized.freeze();
+      for ( int i = 0; i < keys.length; i++ ) {
+         if ( frozen.get( keys[i] ) != i || reversed.get( keys[i] ) != i ) {
+            fail( String.format( "frozen.get( \"%s\" ) = %s and reversed.get = %s, expected %d.", keys[i], frozen.get( keys[i] ), reversed.get( keys[i] ), i ) );
+         }
+      }
+      if ( frozen.containsKey( "abcdf" ) || !"abcdz".equals( frozen.ceilingKey( "abcdf" ) ) || !"abcdz".equals( reversed.ceilingKey( "abcdzz" ) ) ) {
+         fail( String.format( "frozen.ceilingKey( \"abcdf\" ) = %s, reversed.ceilingKey( \"abcdzz\" ) = %s.", frozen.ceilingKey( "abcdf" ), reversed.ceilingKey( "abcdzz" ) ) );
+      }
+      if ( !"\uffff\uffff\uffff\uffffx".equals( reversed.firstKey() ) || reversed.comparator() == null ) {
+         fail( String.format( "The reversed frozen tree starts at \"%s\".", reversed.firstKey() ) );
+      }
+   }
+
+   @Test
+   public void testTraversals( ) {
+      BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+      for ( int key = 1; key <= 6; key++ ) {
+         tree.put( key, key * 10 ); // A chain in the source tree
+      }
+      FrozenBinarySearchTree<Integer, Integer> frozen = tree.freeze();
+      // The frozen tree is complete: 4 at the root, then 2 and 6, then 1, 3 and 5
+      String[] orders = { "[4, 2, 1, 3, 6, 5]", "[1, 2, 3, 4, 5, 6]", "[1, 3, 2, 5, 6, 4]", "[4, 2, 6, 1, 3, 5]" };
+      List<Object> list = new ArrayList<>(  );
+      frozen.traversePreorder( (key, value) -> list.add( key ) );
+      frozen.traverseInorder( (key, value) -> list.add( key ) );
+      frozen.traversePostorder( (key, value) -> list.add( key ) );
+      frozen.traverseLevelorder( (key, value) -> list.add( key ) );
+      for ( int i = 0; i < orders.length; i++ ) {
+         String order = list.subList( 6 * i, 6 * i + 6 ).toString();
+         if ( !order.equals( orders[i] ) ) {
+            fail( String.format( "Traversal %d of the frozen tree is %s, expected %s.", i, order, orders[i] ) );
+         }
+      }
+      try {
+         frozen.put( 7, 70 );
+         fail( "frozen.put did not throw an UnsupportedOperationException." );
+      } catch ( UnsupportedOperationException e ) {
+         // Expected
+      }
+      try {
+         frozen.entrySet().iterator().remove();
+         fail( "Removing through the entry set did not throw an UnsupportedOperationException." );
+      } catch ( UnsupportedOperationException e ) {
+         // Expected
+      }
+      if ( !frozen.containsValue( 60 ) || frozen.containsValue( 70 ) || !frozen.equals( tree ) ) {
+         fail( "The frozen tree does not equal its source." );
+      }
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,320 @@
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+
+/**
+ * DESCRIPTION: A Binary Search Tree that maps int keys to int values.
+ * It mirrors BinarySearchTree, but nodes hold the raw key and value, so a
+ * mapping costs one node object instead of a Node, a KeyValuePair and two
+ * Integers, and get, put and remove compare primitives without boxing.
+ *
+ * Like BinarySearchTree, the tree does no rebalancing.
+ */
+public class IntIntBinarySearchTree {
+
+   /**
+    * A functional interface used to visit node in a traversal.
+    */
+   public interface Visitor {
+      public void visit( int key, int value );
+   }
+
+   // A Binary Search Tree node holding a primitive key and value.
+   private static final class Node {
+      private final int key;
+      private int value;
+      private Node parent, leftChild, rightChild;
+
+      Node( int key, int value, Node parent ) {
+         this.key = key;
+         this.value = value;
+         this.parent = parent;
+      }
+   }
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private Node root = null; // Root node of the BST
+   private int size = 0; // The number of nodes in the BST
+
+   // =======================================================================
+   // INSTANCE METHODS
+   // =======================================================================
+
+   /**
+    * @return the number of nodes in the BST.
+    */
+   public int size( ) {
+      return size;
+   }
+
+   /**
+    * @return true if there are no nodes in the BST.
+    */
+   public boolean isEmpty( ) {
+      return size == 0;
+   }
+
+   // Returns the node holding key, or null if there is none.
+   private Node getNode( int key ) {
+      Node currentNode = root;
+      while ( currentNode != null ) {
+         if ( key < currentNode.key ) {
+            currentNode = currentNode.leftChild;
+         } else if ( key > currentNode.key ) {
+            currentNode = currentNode.rightChild;
+         } else {
+            return currentNode;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @param key the key to search for
+    * @return true if the map contains a mapping for key
+    */
+   public boolean containsKey( int key ) {
+      return getNode( key ) != null;
+   }
+
+   /**
+    * @param key the key whose associated value is to be returned
+    * @return the value to which key is mapped
+    * @throws NoSuchElementException if the map contains no mapping for key
+    */
+   public int get( int key ) {
+      Node node = getNode( key );
+      if ( node == null ) {
+         throw new NoSuchElementException( "No mapping for key " + key );
+      }
+      return node.value;
+   }
+
+   /**
+    * @param key the key whose associated value is to be returned
+    * @param defaultValue the value to return if key is not mapped
+    * @return the value to which key is mapped, or defaultValue
+    */
+   public int getOrDefault( int key, int defaultValue ) {
+      Node node = getNode( key );
+      return node == null ? defaultValue : node.value;
+   }
+
+   /**
+    * Associates value with key, replacing any previous value.
+    * @param key key with which the value is to be associated
+    * @param value value to be associated with the key
+    * @return true if key was not mapped before the call
+    */
+   public boolean put( int key, int value ) {
+      Node currentNode = root;
+      Node prevNode = null;
+      while ( currentNode != null ) {
+         prevNode = currentNode;
+         if ( key < currentNode.key ) {
+            currentNode = currentNode.leftChild;
+         } else if ( key > currentNode.key ) {
+            currentNode = currentNode.rightChild;
+         } else {
+            currentNode.value = value;
+            return false;
+         }
+      }
+      Node newNode = new Node( key, value, prevNode );
+      if ( prevNode == null ) {
+         root = newNode;
+      } else if ( key < prevNode.key ) {
+         prevNode.leftChild = newNode;
+      } else {
+         prevNode.rightChild = newNode;
+      }
+      size++;
+      return true;
+   }
+
+   /**
+    * Removes the mapping for key if it is present.
+    * @param key key whose mapping is to be removed from the map
+    * @return true if a mapping was removed
+    */
+   public boolean remove( int key ) {
+      Node remover = getNode( key );
+      if ( remover == null ) {
+         return false;
+      }
+      if ( remover.leftChild != null && remover.rightChild != null ) {
+         // Two children: splice in the inorder successor
+         Node successor = remover.rightChild;
+         while ( successor.leftChild != null ) {
+            successor = successor.leftChild;
+         }
+         if ( successor.parent != remover ) {
+            replaceChild( successor, successor.rightChild );
+            successor.rightChild = remover.rightChild;
+            successor.rightChild.parent = successor;
+         }
+         successor.leftChild = remover.leftChild;
+         successor.leftChild.parent = successor;
+         replaceChild( remover, successor );
+      } else {
+         replaceChild( remover, remover.leftChild != null ? remover.leftChild : remover.rightChild );
+      }
+      size--;
+      return true;
+   }
+
+   // Puts newChild, which may be null, in the place of oldChild.
+   private void replaceChild( Node oldChild, Node newChild ) {
+      Node parent = oldChild.parent;
+      if ( parent == null ) {
+         root = newChild;
+      } else if ( parent.leftChild == oldChild ) {
+         parent.leftChild = newChild;
+      } else {
+         parent.rightChild = newChild;
+      }
+      if ( newChild != null ) {
+         newChild.parent = parent;
+      }
+   }
+
+   /**
+    * Removes all of the mappings from this map.
+    */
+   public void clear( ) {
+      root = null;
+      size = 0;
+   }
+
+   /**
+    * @param value value whose presence in this map is to be tested
+    * @return true if one or more keys map to value
+    */
+   public boolean containsValue( int value ) {
+      for ( Node node = first( root ); node != null; node = successor( node ) ) {
+         if ( node.value == value ) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   // Returns the leftmost node of the subtree, or null for an empty subtree.
+   private static Node first( Node node ) {
+      if ( node != null ) {
+         while ( node.leftChild != null ) {
+            node = node.leftChild;
+         }
+      }
+      return node;
+   }
+
+   private static Node successor( Node node ) {
+      if ( node.rightChild != null ) {
+         return first( node.rightChild );
+      }
+      Node parent = node.parent;
+      while ( parent != null && node == parent.rightChild ) {
+         node = parent;
+         parent = parent.parent;
+      }
+      return parent;
+   }
+
+   /**
+    * Preorder Binary Tree Traversal: visit the root, then the left subtree,
+    * then the right subtree.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePreorder( Visitor visitor ) {
+      Node node = root;
+      while ( node != null ) {
+         visitor.visit( node.key, node.value );
+         if ( node.leftChild != null ) {
+            node = node.leftChild;
+         } else if ( node.rightChild != null ) {
+            node = node.rightChild;
+         } else {
+            // Climb until we arrive from a left child that has a right sibling
+            Node parent = node.parent;
+            while ( parent != null && ( node == parent.rightChild || parent.rightChild == null ) ) {
+               node = parent;
+               parent = parent.parent;
+            }
+            node = parent == null ? null : parent.rightChild;
+         }
+      }
+   }
+
+   /**
+    * Inorder Binary Tree Traversal: visit the left subtree, then the root,
+    * then the right subtree. Keys are visited in ascending order.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseInorder( Visitor visitor ) {
+      for ( Node node = first( root ); node != null; node = successor( node ) ) {
+         visitor.visit( node.key, node.value );
+      }
+   }
+
+   /**
+    * Postorder Binary Tree Traversal: visit the left subtree, then the right
+    * subtree, then the root.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePostorder( Visitor visitor ) {
+      Node node = firstPostorder( root );
+      while ( node != null ) {
+         visitor.visit( node.key, node.value );
+         Node parent = node.parent;
+         if ( parent != null && node == parent.leftChild && parent.rightChild != null ) {
+            node = firstPostorder( parent.rightChild );
+         } else {
+            node = parent;
+         }
+      }
+   }
+
+   // Returns the first node of the subtree in postorder: the deepest node
+   // reached by preferring left children.
+   private static Node firstPostorder( Node node ) {
+      while ( node != null && ( node.leftChild != null || node.rightChild != null ) ) {
+         node = node.leftChild != null ? node.leftChild : node.rightChild;
+      }
+      return node;
+   }
+
+   /**
+    * Level order Binary Tree Traversal: beginning at the root, visit each
+    * node in a level, from left to right, then proceed to the next level.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseLevelorder( Visitor visitor ) {
+      if ( root == null ) {
+         return;
+      }
+      ArrayDeque<Node> queue = new ArrayDeque<>( );
+      queue.add( root );
+      while ( !queue.isEmpty() ) {
+         Node current = queue.remove();
+         visitor.visit( current.key, current.value );
+         if ( current.leftChild != null ) {
+            queue.add( current.leftChild );
+         }
+         if ( current.rightChild != null ) {
+            queue.add( current.rightChild );
+         }
+      }
+   }
+}
+// END OF FILE ==============================================================
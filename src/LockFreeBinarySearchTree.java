@@ -0,0 +1,478 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DESCRIPTION: A lock-free Binary Search Tree that functions as a Map and may
+ * be used by many threads at once.
+ *
+ * This is the non-blocking external tree of Ellen, Fatourou, Ruppert and van
+ * Breugel, "Non-blocking Binary Search Trees" (PODC 2010). Mappings live in
+ * immutable leaves; internal nodes only route searches. Every internal node
+ * carries an update word that put and remove flag with a compare-and-set
+ * before changing a child link, and that other threads help complete, so no
+ * thread ever waits for another:
+ *    put of a new key     flags the parent and swaps the leaf for an internal
+ *                         node holding the new leaf and a copy of the old one
+ *    put of a present key flags the parent and swaps the leaf for a new leaf
+ *    remove               flags the grandparent, marks the parent and links the
+ *                         leaf's sibling in place of the parent
+ * get never writes and never retries.
+ *
+ * Iterators, entrySet, size and traverseInorder are weakly consistent: they
+ * never throw ConcurrentModificationException and see each key at most once,
+ * in ascending order, but may or may not reflect changes made while they run.
+ * Like BinarySearchTree, the tree does no rebalancing, so keys should not
+ * arrive in sorted order.
+ */
+public class LockFreeBinarySearchTree<K extends Comparable<K>, V> extends AbstractMap<K,V> implements Iterable<V> {
+
+   // A routing key, or one of the two sentinel keys that sort above every real key.
+   private static class Node<K> {
+      final K key;
+      final int infinity; // 0 for real keys, 1 or 2 for the sentinels
+
+      Node( K key, int infinity ) {
+         this.key = key;
+         this.infinity = infinity;
+      }
+   }
+
+   private static final class Leaf<K, V> extends Node<K> {
+      final V value;
+
+      Leaf( K key, int infinity, V value ) {
+         super( key, infinity );
+         this.value = value;
+      }
+   }
+
+   private static final class Internal<K> extends Node<K> {
+      volatile Node<K> left, right;
+      volatile Update update = CLEAN;
+
+      Internal( K key, int infinity, Node<K> left, Node<K> right ) {
+         super( key, infinity );
+         this.left = left;
+         this.right = right;
+      }
+   }
+
+   // The state of an internal node and the operation that owns it.
+   private static final class Update {
+      static final int CLEAN_STATE = 0, IFLAG = 1, DFLAG = 2, MARK = 3;
+      final int state;
+      final Info info;
+
+      Update( int state, Info info ) {
+         this.state = state;
+         this.info = info;
+      }
+   }
+
+   private static class Info {
+   }
+
+   // Replace leaf l, a child of p, with newNode.
+   private static final class InsertInfo extends Info {
+      final Internal<?> p;
+      final Leaf<?, ?> l;
+      final Node<?> newNode;
+
+      InsertInfo( Internal<?> p, Leaf<?, ?> l, Node<?> newNode ) {
+         this.p = p;
+         this.l = l;
+         this.newNode = newNode;
+      }
+   }
+
+   // Remove leaf l and its parent p from grandparent gp.
+   private static final class DeleteInfo extends Info {
+      final Internal<?> gp, p;
+      final Leaf<?, ?> l;
+      final Update pupdate; // The update word of p that was read during the search
+
+      DeleteInfo( Internal<?> gp, Internal<?> p, Leaf<?, ?> l, Update pupdate ) {
+         this.gp = gp;
+         this.p = p;
+         this.l = l;
+         this.pupdate = pupdate;
+      }
+   }
+
+   private static final Update CLEAN = new Update( Update.CLEAN_STATE, null );
+
+   // The class literals are raw, so the updaters are too
+   @SuppressWarnings( "rawtypes" )
+   private static final AtomicReferenceFieldUpdater<Internal, Node> LEFT =
+         AtomicReferenceFieldUpdater.newUpdater( Internal.class, Node.class, "left" );
+   @SuppressWarnings( "rawtypes" )
+   private static final AtomicReferenceFieldUpdater<Internal, Node> RIGHT =
+         AtomicReferenceFieldUpdater.newUpdater( Internal.class, Node.class, "right" );
+   @SuppressWarnings( "rawtypes" )
+   private static final AtomicReferenceFieldUpdater<Internal, Update> UPDATE =
+         AtomicReferenceFieldUpdater.newUpdater( Internal.class, Update.class, "update" );
+
+   // The result of a search: the leaf reached, its parent and grandparent,
+   // and the update words read from them on the way down.
+   private static final class Search<K> {
+      Internal<K> gp, p;
+      Leaf<K, ?> l;
+      Update gpupdate, pupdate;
+   }
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   // Routes every real key to its left subtree; the sentinel leaves are never removed.
+   private final Internal<K> root = new Internal<>( null, 2, new Leaf<>( null, 1, null ), new Leaf<>( null, 2, null ) );
+   private final LongAdder size = new LongAdder( ); // The number of mappings, weakly consistent
+
+   // =======================================================================
+   // KEY ORDER
+   // =======================================================================
+
+   // Compares a real key with the key of a node.
+   private static <K extends Comparable<K>> int compare( K key, Node<K> node ) {
+      return node.infinity == 0 ? key.compareTo( node.key ) : -1;
+   }
+
+   // Compares the keys of two nodes, either of which may be a sentinel.
+   private static <K extends Comparable<K>> int compare( Node<K> a, Node<K> b ) {
+      if ( a.infinity != 0 || b.infinity != 0 ) {
+         return Integer.compare( a.infinity, b.infinity );
+      }
+      return a.key.compareTo( b.key );
+   }
+
+   private static boolean matches( Object key, Leaf<?, ?> leaf ) {
+      return leaf.infinity == 0 && ((Comparable<Object>) key).compareTo( leaf.key ) == 0;
+   }
+
+   private static void checkKey( Object key ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+   }
+
+   // =======================================================================
+   // MAP METHODS
+   // =======================================================================
+
+   private Search<K> search( K key ) {
+      Search<K> s = new Search<>( );
+      Node<K> l = root;
+      while ( l instanceof Internal ) {
+         s.gp = s.p;
+         s.gpupdate = s.pupdate;
+         s.p = (Internal<K>) l;
+         s.pupdate = s.p.update;
+         l = compare( key, l ) < 0 ? s.p.left : s.p.right;
+      }
+      s.l = (Leaf<K, ?>) l;
+      return s;
+   }
+
+   /**
+    * @param key the key whose associated value is to be returned
+    * @return the value to which key is mapped, or null if the map contains no mapping for key
+    * @throws NullPointerException if key is null
+    */
+   @Override
+   public V get( Object key ) {
+      checkKey( key );
+      K k = (K) key;
+      Node<K> l = root;
+      while ( l instanceof Internal ) {
+         Internal<K> p = (Internal<K>) l;
+         l = compare( k, l ) < 0 ? p.left : p.right;
+      }
+      Leaf<K, V> leaf = (Leaf<K, V>) l;
+      return matches( key, leaf ) ? leaf.value : null;
+   }
+
+   @Override
+   public boolean containsKey( Object key ) {
+      return get( key ) != null;
+   }
+
+   /**
+    * Associates value with key, replacing any previous value.
+    * @param key key with which the value is to be associated
+    * @param value value to be associated with the key
+    * @return the previous value associated with key, or null if there was none
+    * @throws NullPointerException if key or value is null
+    */
+   @Override
+   public V put( K key, V value ) {
+      checkKey( key );
+      if ( value == null ) {
+         throw new NullPointerException( "Specified value is null." );
+      }
+      Leaf<K, V> newLeaf = new Leaf<>( key, 0, value );
+      while ( true ) {
+         Search<K> s = search( key );
+         Leaf<K, V> l = (Leaf<K, V>) s.l;
+         boolean present = matches( key, l );
+         Node<K> newNode;
+         if ( present ) {
+            newNode = newLeaf;
+         } else {
+            // A copy of l rather than l itself, so a child link never returns to an old value
+            Leaf<K, V> sibling = new Leaf<>( l.key, l.infinity, l.value );
+            newNode = compare( newLeaf, sibling ) < 0
+                  ? new Internal<>( sibling.key, sibling.infinity, newLeaf, sibling )
+                  : new Internal<>( key, 0, sibling, newLeaf );
+         }
+         if ( s.pupdate.state != Update.CLEAN_STATE ) {
+            help( s.pupdate );
+            continue;
+         }
+         Update flag = new Update( Update.IFLAG, new InsertInfo( s.p, l, newNode ) );
+         if ( UPDATE.compareAndSet( s.p, s.pupdate, flag ) ) {
+            helpInsert( flag );
+            if ( present ) {
+               return l.value;
+            }
+            size.increment();
+            return null;
+         }
+         help( s.p.update );
+      }
+   }
+
+   /**
+    * Removes the mapping for key if it is present.
+    * @param key key whose mapping is to be removed from the map
+    * @return the value that was mapped to key, or null if there was none
+    */
+   @Override
+   public V remove( Object key ) {
+      if ( key == null ) {
+         return null;
+      }
+      K k = (K) key;
+      while ( true ) {
+         Search<K> s = search( k );
+         if ( !matches( key, s.l ) ) {
+            return null;
+         }
+         if ( s.gpupdate.state != Update.CLEAN_STATE ) {
+            help( s.gpupdate );
+            continue;
+         }
+         if ( s.pupdate.state != Update.CLEAN_STATE ) {
+            help( s.pupdate );
+            continue;
+         }
+         Update flag = new Update( Update.DFLAG, new DeleteInfo( s.gp, s.p, s.l, s.pupdate ) );
+         if ( UPDATE.compareAndSet( s.gp, s.gpupdate, flag ) ) {
+            if ( helpDelete( flag ) ) {
+               size.decrement();
+               return (V) s.l.value;
+            }
+         } else {
+            help( s.gp.update );
+         }
+      }
+   }
+
+   // Finishes whatever operation owns the update word.
+   private void help( Update u ) {
+      switch ( u.state ) {
+         case Update.IFLAG: helpInsert( u ); break;
+         case Update.MARK: helpMarked( (DeleteInfo) u.info ); break;
+         case Update.DFLAG: helpDelete( u ); break;
+         default: break;
+      }
+   }
+
+   private void helpInsert( Update flag ) {
+      InsertInfo op = (InsertInfo) flag.info;
+      casChild( op.p, op.l, op.newNode );
+      UPDATE.compareAndSet( op.p, flag, new Update( Update.CLEAN_STATE, op ) );
+   }
+
+   // Marks the parent so it can no longer change, or backs out if another
+   // operation got there first. Returns true if the removal will complete.
+   private boolean helpDelete( Update flag ) {
+      DeleteInfo op = (DeleteInfo) flag.info;
+      Update mark = new Update( Update.MARK, op );
+      Update current = UPDATE.compareAndSet( op.p, op.pupdate, mark ) ? mark : op.p.update;
+      if ( current.state == Update.MARK && current.info == op ) {
+         helpMarked( op );
+         return true;
+      }
+      help( current );
+      UPDATE.compareAndSet( op.gp, flag, new Update( Update.CLEAN_STATE, op ) ); // Backtrack
+      return false;
+   }
+
+   private void helpMarked( DeleteInfo op ) {
+      Node<?> other = op.p.right == op.l ? op.p.left : op.p.right;
+      casChild( op.gp, op.p, other );
+      Update flag = op.gp.update;
+      if ( flag.state == Update.DFLAG && flag.info == op ) {
+         UPDATE.compareAndSet( op.gp, flag, new Update( Update.CLEAN_STATE, op ) );
+      }
+   }
+
+   // Swaps oldChild for newChild on the side of parent where newChild's key belongs.
+   private static <K extends Comparable<K>> void casChild( Internal<?> parent, Node<?> oldChild, Node<?> newChild ) {
+      if ( compare( (Node<K>) newChild, (Node<K>) parent ) < 0 ) {
+         LEFT.compareAndSet( parent, oldChild, newChild );
+      } else {
+         RIGHT.compareAndSet( parent, oldChild, newChild );
+      }
+   }
+
+   /**
+    * @return the number of mappings. Weakly consistent while other threads write.
+    */
+   @Override
+   public int size( ) {
+      return (int) Math.max( 0, Math.min( Integer.MAX_VALUE, size.sum() ) );
+   }
+
+   /**
+    * Removes every mapping present when the call starts. Not atomic: mappings
+    * put by other threads during the call may survive it.
+    */
+   @Override
+   public void clear( ) {
+      for ( Iterator<Entry<K,V>> it = entrySet().iterator(); it.hasNext(); ) {
+         it.next();
+         it.remove();
+      }
+   }
+
+   // =======================================================================
+   // ITERATION
+   // =======================================================================
+
+   // Walks the leaves left to right, skipping sentinels and any key not above
+   // the last one returned, so the keys come out strictly ascending.
+   private abstract class LeafIterator<T> implements Iterator<T> {
+      private final ArrayDeque<Node<K>> stack = new ArrayDeque<>( );
+      private Leaf<K, V> next;
+      private K lastReturned = null;
+      private boolean canRemove = false; // lastReturned stays set to resume the walk, so remove needs its own flag
+
+      LeafIterator( ) {
+         stack.push( root );
+         advance();
+      }
+
+      abstract T element( Leaf<K, V> leaf );
+
+      private void advance( ) {
+         next = null;
+         while ( next == null && !stack.isEmpty() ) {
+            Node<K> node = stack.pop();
+            if ( node instanceof Internal ) {
+               Internal<K> internal = (Internal<K>) node;
+               Node<K> left = internal.left;
+               stack.push( internal.right );
+               stack.push( left );
+            } else if ( node.infinity == 0 && ( lastReturned == null || node.key.compareTo( lastReturned ) > 0 ) ) {
+               next = (Leaf<K, V>) node;
+            }
+         }
+      }
+
+      @Override
+      public boolean hasNext( ) {
+         return next != null;
+      }
+
+      @Override
+      public T next( ) {
+         if ( next == null ) {
+            throw new NoSuchElementException(  );
+         }
+         Leaf<K, V> leaf = next;
+         lastReturned = leaf.key;
+         canRemove = true;
+         advance();
+         return element( leaf );
+      }
+
+      @Override
+      public void remove( ) {
+         if ( !canRemove ) {
+            throw new IllegalStateException(  );
+         }
+         canRemove = false;
+         LockFreeBinarySearchTree.this.remove( lastReturned );
+      }
+   }
+
+   /**
+    * Returns a weakly consistent iterator over the values in ascending key order.
+    *
+    * @return an Iterator.
+    */
+   @Override
+   public Iterator<V> iterator( ) {
+      return new LeafIterator<V>( ) {
+         @Override
+         V element( Leaf<K, V> leaf ) {
+            return leaf.value;
+         }
+      };
+   }
+
+   /**
+    * Returns a weakly consistent view of the mappings in ascending key order.
+    * The entries are snapshots and do not support setValue.
+    *
+    * @return a set view of the mappings contained in this map
+    */
+   @Override
+   public Set<Entry<K,V>> entrySet( ) {
+      return new AbstractSet<Entry<K,V>>( ) {
+         @Override
+         public Iterator<Entry<K,V>> iterator( ) {
+            return new LeafIterator<Entry<K,V>>( ) {
+               @Override
+               Entry<K,V> element( Leaf<K, V> leaf ) {
+                  return new SimpleImmutableEntry<>( leaf.key, leaf.value );
+               }
+            };
+         }
+
+         @Override
+         public int size( ) {
+            return LockFreeBinarySearchTree.this.size();
+         }
+
+         @Override
+         public void clear( ) {
+            LockFreeBinarySearchTree.this.clear();
+         }
+      };
+   }
+
+   /**
+    * Inorder Binary Tree Traversal of the mappings: keys are visited in
+    * ascending order. Only leaves hold mappings, so this is the one traversal
+    * order that is meaningful for an external tree. The traversal is weakly
+    * consistent and may run while other threads write.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseInorder( AbstractBinarySearchTree.Visitor visitor ) {
+      for ( Iterator<Entry<K,V>> it = entrySet().iterator(); it.hasNext(); ) {
+         Entry<K,V> entry = it.next();
+         visitor.visit( entry.getKey(), entry.getValue() );
+      }
+   }
+}
+// END OF FILE ==============================================================
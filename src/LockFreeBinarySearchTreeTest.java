@@ -0,0 +1,117 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LockFreeBinarySearchTreeTest {
+   private static final int THREADS = 4;
+   private static final int KEYS_PER_THREAD = 20000;
+
+   @Test
+   public void testMatchesTreeMap( ) {
+      LockFreeBinarySearchTree<Integer, Integer> tree = new LockFreeBinarySearchTree<>();
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      Random random = new Random( 11 );
+      for ( int i = 0; i < 20000; i++ ) {
+         Integer key = random.nextInt( 400 ) - 200;
+         Integer actual, wanted;
+         if ( random.nextInt( 3 ) > 0 ) {
+            actual = tree.put( key, i );
+            wanted = expected.put( key, i );
+         } else {
+            actual = tree.remove( key );
+            wanted = expected.remove( key );
+         }
+         if ( actual == null ? wanted != null : !actual.equals( wanted ) ) {
+            fail( String.format( "At step %d with key %d, the tree returned %s, expected %s.", i, key, actual, wanted ) );
+         }
+      }
+      if ( tree.size() != expected.size() || !tree.equals( expected ) ) {
+         fail( String.format( "After random operations, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+      List<Object> keys = new ArrayList<>(  );
+      tree.traverseInorder( (key, value) -> keys.add( key ) );
+      if ( !keys.equals( new ArrayList<>( expected.keySet() ) ) ) {
+         fail( String.format( "The inorder traversal is %s.", keys ) );
+      }
+      Iterator<Integer> iterator = tree.iterator();
+      iterator.next();
+      iterator.remove();
+      try {
+         iterator.remove();
+         fail( "A second remove without next did not throw an IllegalStateException." );
+      } catch ( IllegalStateException e ) {
+         // Expected
+      }
+      if ( tree.size() != expected.size() - 1 ) {
+         fail( String.format( "After iterator.remove(), tree.size() = %d, expected %d.", tree.size(), expected.size() - 1 ) );
+      }
+      tree.clear();
+      if ( tree.size() != 0 || tree.iterator().hasNext() ) {
+         fail( "After clear, the tree is not empty." );
+      }
+   }
+
+   @Test
+   public void testConcurrentPutAndRemove( ) throws InterruptedException {
+      LockFreeBinarySearchTree<Integer, Integer> tree = new LockFreeBinarySearchTree<>();
+      AtomicReference<String> failure = new AtomicReference<>(  );
+      List<Thread> threads = new ArrayList<>(  );
+      for ( int t = 0; t < THREADS; t++ ) {
+         int thread = t;
+         threads.add( new Thread( ( ) -> {
+            // Each thread owns the keys congruent to its number, in a scrambled order
+            Random random = new Random( thread );
+            for ( int i = 0; i < KEYS_PER_THREAD; i++ ) {
+               int key = ( random.nextInt( KEYS_PER_THREAD ) ) * THREADS + thread;
+               tree.put( key, key );
+               if ( i % 2 == 0 && tree.remove( key ) == null ) {
+                  failure.compareAndSet( null, String.format( "tree.remove( %d ) missed a key this thread just put.", key ) );
+               }
+            }
+         } ) );
+      }
+      threads.add( new Thread( ( ) -> {
+         for ( int round = 0; round < 20; round++ ) {
+            Integer previous = null;
+            for ( Integer value : tree ) {
+               if ( previous != null && value <= previous ) {
+                  failure.compareAndSet( null, String.format( "Iteration returned %d after %d.", value, previous ) );
+               }
+               previous = value;
+            }
+         }
+      } ) );
+      for ( Thread thread : threads ) {
+         thread.start();
+      }
+      for ( Thread thread : threads ) {
+         thread.join();
+      }
+      if ( failure.get() != null ) {
+         fail( failure.get() );
+      }
+
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      for ( int thread = 0; thread < THREADS; thread++ ) {
+         Random random = new Random( thread );
+         for ( int i = 0; i < KEYS_PER_THREAD; i++ ) {
+            int key = ( random.nextInt( KEYS_PER_THREAD ) ) * THREADS + thread;
+            expected.put( key, key );
+            if ( i % 2 == 0 ) {
+               expected.remove( key );
+            }
+         }
+      }
+      if ( tree.size() != expected.size() || !tree.equals( expected ) ) {
+         fail( String.format( "After concurrent writes, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+   }
+}
+// END OF FILE ==============================================================
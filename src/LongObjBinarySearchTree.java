@@ -0,0 +1,310 @@
+import java.util.ArrayDeque;
+
+/**
+ * DESCRIPTION: A Binary Search Tree that maps long keys to object values.
+ * It mirrors BinarySearchTree, but nodes hold the raw key and the value
+ * directly, so a mapping costs one node object instead of a Node, a
+ * KeyValuePair and a Long, and lookups compare primitives without boxing.
+ *
+ * Like BinarySearchTree, the tree does no rebalancing.
+ */
+public class LongObjBinarySearchTree<V> {
+
+   /**
+    * A functional interface used to visit node in a traversal.
+    */
+   public interface Visitor<V> {
+      public void visit( long key, V value );
+   }
+
+   // A Binary Search Tree node holding a primitive key and its value.
+   private static final class Node<V> {
+      private final long key;
+      private V value;
+      private Node<V> parent, leftChild, rightChild;
+
+      Node( long key, V value, Node<V> parent ) {
+         this.key = key;
+         this.value = value;
+         this.parent = parent;
+      }
+   }
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private Node<V> root = null; // Root node of the BST
+   private int size = 0; // The number of nodes in the BST
+
+   // =======================================================================
+   // INSTANCE METHODS
+   // =======================================================================
+
+   /**
+    * @return the number of nodes in the BST.
+    */
+   public int size( ) {
+      return size;
+   }
+
+   /**
+    * @return true if there are no nodes in the BST.
+    */
+   public boolean isEmpty( ) {
+      return size == 0;
+   }
+
+   // Returns the node holding key, or null if there is none.
+   private Node<V> getNode( long key ) {
+      Node<V> currentNode = root;
+      while ( currentNode != null ) {
+         if ( key < currentNode.key ) {
+            currentNode = currentNode.leftChild;
+         } else if ( key > currentNode.key ) {
+            currentNode = currentNode.rightChild;
+         } else {
+            return currentNode;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @param key the key to search for
+    * @return true if the map contains a mapping for key
+    */
+   public boolean containsKey( long key ) {
+      return getNode( key ) != null;
+   }
+
+   /**
+    * @param key the key whose associated value is to be returned
+    * @return the value to which key is mapped, or null if the map contains no mapping for key
+    */
+   public V get( long key ) {
+      Node<V> node = getNode( key );
+      return node == null ? null : node.value;
+   }
+
+   /**
+    * Associates value with key, replacing any previous value.
+    * @param key key with which the value is to be associated
+    * @param value value to be associated with the key
+    * @return the previous value associated with key, or null if there was none
+    * @throws NullPointerException if value is null
+    */
+   public V put( long key, V value ) {
+      if ( value == null ) {
+         throw new NullPointerException( "Specified value is null." );
+      }
+      Node<V> currentNode = root;
+      Node<V> prevNode = null;
+      while ( currentNode != null ) {
+         prevNode = currentNode;
+         if ( key < currentNode.key ) {
+            currentNode = currentNode.leftChild;
+         } else if ( key > currentNode.key ) {
+            currentNode = currentNode.rightChild;
+         } else {
+            V oldValue = currentNode.value;
+            currentNode.value = value;
+            return oldValue;
+         }
+      }
+      Node<V> newNode = new Node<>( key, value, prevNode );
+      if ( prevNode == null ) {
+         root = newNode;
+      } else if ( key < prevNode.key ) {
+         prevNode.leftChild = newNode;
+      } else {
+         prevNode.rightChild = newNode;
+      }
+      size++;
+      return null;
+   }
+
+   /**
+    * Removes the mapping for key if it is present.
+    * @param key key whose mapping is to be removed from the map
+    * @return the value that was mapped to key, or null if there was none
+    */
+   public V remove( long key ) {
+      Node<V> remover = getNode( key );
+      if ( remover == null ) {
+         return null;
+      }
+      if ( remover.leftChild != null && remover.rightChild != null ) {
+         // Two children: splice in the inorder successor
+         Node<V> successor = remover.rightChild;
+         while ( successor.leftChild != null ) {
+            successor = successor.leftChild;
+         }
+         if ( successor.parent != remover ) {
+            replaceChild( successor, successor.rightChild );
+            successor.rightChild = remover.rightChild;
+            successor.rightChild.parent = successor;
+         }
+         successor.leftChild = remover.leftChild;
+         successor.leftChild.parent = successor;
+         replaceChild( remover, successor );
+      } else {
+         replaceChild( remover, remover.leftChild != null ? remover.leftChild : remover.rightChild );
+      }
+      size--;
+      return remover.value;
+   }
+
+   // Puts newChild, which may be null, in the place of oldChild.
+   private void replaceChild( Node<V> oldChild, Node<V> newChild ) {
+      Node<V> parent = oldChild.parent;
+      if ( parent == null ) {
+         root = newChild;
+      } else if ( parent.leftChild == oldChild ) {
+         parent.leftChild = newChild;
+      } else {
+         parent.rightChild = newChild;
+      }
+      if ( newChild != null ) {
+         newChild.parent = parent;
+      }
+   }
+
+   /**
+    * Removes all of the mappings from this map.
+    */
+   public void clear( ) {
+      root = null;
+      size = 0;
+   }
+
+   /**
+    * @param value value whose presence in this map is to be tested
+    * @return true if one or more keys map to value
+    */
+   public boolean containsValue( Object value ) {
+      for ( Node<V> node = first( root ); node != null; node = successor( node ) ) {
+         if ( node.value.equals( value ) ) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   // Returns the leftmost node of the subtree, or null for an empty subtree.
+   private static <V> Node<V> first( Node<V> node ) {
+      if ( node != null ) {
+         while ( node.leftChild != null ) {
+            node = node.leftChild;
+         }
+      }
+      return node;
+   }
+
+   private static <V> Node<V> successor( Node<V> node ) {
+      if ( node.rightChild != null ) {
+         return first( node.rightChild );
+      }
+      Node<V> parent = node.parent;
+      while ( parent != null && node == parent.rightChild ) {
+         node = parent;
+         parent = parent.parent;
+      }
+      return parent;
+   }
+
+   /**
+    * Preorder Binary Tree Traversal: visit the root, then the left subtree,
+    * then the right subtree.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePreorder( Visitor<? super V> visitor ) {
+      Node<V> node = root;
+      while ( node != null ) {
+         visitor.visit( node.key, node.value );
+         if ( node.leftChild != null ) {
+            node = node.leftChild;
+         } else if ( node.rightChild != null ) {
+            node = node.rightChild;
+         } else {
+            // Climb until we arrive from a left child that has a right sibling
+            Node<V> parent = node.parent;
+            while ( parent != null && ( node == parent.rightChild || parent.rightChild == null ) ) {
+               node = parent;
+               parent = parent.parent;
+            }
+            node = parent == null ? null : parent.rightChild;
+         }
+      }
+   }
+
+   /**
+    * Inorder Binary Tree Traversal: visit the left subtree, then the root,
+    * then the right subtree. Keys are visited in ascending order.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseInorder( Visitor<? super V> visitor ) {
+      for ( Node<V> node = first( root ); node != null; node = successor( node ) ) {
+         visitor.visit( node.key, node.value );
+      }
+   }
+
+   /**
+    * Postorder Binary Tree Traversal: visit the left subtree, then the right
+    * subtree, then the root.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePostorder( Visitor<? super V> visitor ) {
+      Node<V> node = firstPostorder( root );
+      while ( node != null ) {
+         visitor.visit( node.key, node.value );
+         Node<V> parent = node.parent;
+         if ( parent != null && node == parent.leftChild && parent.rightChild != null ) {
+            node = firstPostorder( parent.rightChild );
+         } else {
+            node = parent;
+         }
+      }
+   }
+
+   // Returns the first node of the subtree in postorder: the deepest node
+   // reached by preferring left children.
+   private static <V> Node<V> firstPostorder( Node<V> node ) {
+      while ( node != null && ( node.leftChild != null || node.rightChild != null ) ) {
+         node = node.leftChild != null ? node.leftChild : node.rightChild;
+      }
+      return node;
+   }
+
+   /**
+    * Level order Binary Tree Traversal: beginning at the root, visit each
+    * node in a level, from left to right, then proceed to the next level.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseLevelorder( Visitor<? super V> visitor ) {
+      if ( root == null ) {
+         return;
+      }
+      ArrayDeque<Node<V>> queue = new ArrayDeque<>( );
+      queue.add( root );
+      while ( !queue.isEmpty() ) {
+         Node<V> current = queue.remove();
+         visitor.visit( current.key, current.value );
+         if ( current.leftChild != null ) {
+            queue.add( current.leftChild );
+         }
+         if ( current.rightChild != null ) {
+            queue.add( current.rightChild );
+         }
+      }
+   }
+}
+// END OF FILE ==============================================================
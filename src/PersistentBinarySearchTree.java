@@ -0,0 +1,448 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * DESCRIPTION: A persistent, self-balancing Binary Search Tree that functions
+ * as a Map and hands out immutable snapshots in O(1).
+ *
+ * Nodes are immutable and have no parent links. put and remove copy only the
+ * path from the root to the changed node, O(log n) new nodes, and share every
+ * other subtree with the previous version. Each version is an AVL tree, so
+ * the height stays below 1.45 * log2( n + 2 ).
+ *
+ * snapshot() captures the current root: the snapshot never changes, needs no
+ * copying, and may be read by any thread without locks while writers go on.
+ * Iterators and traversals of the live tree work on the version current when
+ * they start, so they never throw ConcurrentModificationException.
+ * Writes are serialized on the tree; reads never lock.
+ */
+public class PersistentBinarySearchTree<K extends Comparable<K>, V> extends AbstractMap<K,V> implements Iterable<V> {
+
+   // An immutable AVL node. height and size describe the subtree rooted here.
+   private static final class Node<K, V> {
+      final K key;
+      final V value;
+      final Node<K, V> leftChild, rightChild;
+      final int height, size;
+
+      Node( K key, V value, Node<K, V> leftChild, Node<K, V> rightChild ) {
+         this.key = key;
+         this.value = value;
+         this.leftChild = leftChild;
+         this.rightChild = rightChild;
+         this.height = 1 + Math.max( height( leftChild ), height( rightChild ) );
+         this.size = 1 + size( leftChild ) + size( rightChild );
+      }
+   }
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private volatile Node<K, V> root; // The current version; published to readers by the volatile write
+   private final boolean readOnly; // True for snapshots
+
+   public PersistentBinarySearchTree( ) {
+      this( null, false );
+   }
+
+   private PersistentBinarySearchTree( Node<K, V> root, boolean readOnly ) {
+      this.root = root;
+      this.readOnly = readOnly;
+   }
+
+   /**
+    * Returns an immutable view of the current contents in O(1). Later
+    * changes to this tree are not visible in the snapshot.
+    *
+    * @return a read-only tree sharing all nodes with this one
+    */
+   public PersistentBinarySearchTree<K, V> snapshot( ) {
+      return readOnly ? this : new PersistentBinarySearchTree<>( root, true );
+   }
+
+   /**
+    * @return true if this tree is a snapshot and cannot be modified
+    */
+   public boolean isReadOnly( ) {
+      return readOnly;
+   }
+
+   private void checkWritable( ) {
+      if ( readOnly ) {
+         throw new UnsupportedOperationException( "A snapshot cannot be modified." );
+      }
+   }
+
+   // =======================================================================
+   // AVL HELPERS
+   // =======================================================================
+
+   private static int height( Node<?, ?> node ) {
+      return node == null ? 0 : node.height;
+   }
+
+   private static int size( Node<?, ?> node ) {
+      return node == null ? 0 : node.size;
+   }
+
+   // Builds a node from the parts, rotating once or twice if the heights of
+   // left and right differ by two.
+   private static <K, V> Node<K, V> balance( K key, V value, Node<K, V> left, Node<K, V> right ) {
+      int hl = height( left );
+      int hr = height( right );
+      if ( hl > hr + 1 ) {
+         if ( height( left.leftChild ) >= height( left.rightChild ) ) {
+            return new Node<>( left.key, left.value, left.leftChild, new Node<>( key, value, left.rightChild, right ) );
+         }
+         Node<K, V> pivot = left.rightChild;
+         return new Node<>( pivot.key, pivot.value,
+               new Node<>( left.key, left.value, left.leftChild, pivot.leftChild ),
+               new Node<>( key, value, pivot.rightChild, right ) );
+      }
+      if ( hr > hl + 1 ) {
+         if ( height( right.rightChild ) >= height( right.leftChild ) ) {
+            return new Node<>( right.key, right.value, new Node<>( key, value, left, right.leftChild ), right.rightChild );
+         }
+         Node<K, V> pivot = right.leftChild;
+         return new Node<>( pivot.key, pivot.value,
+               new Node<>( key, value, left, pivot.leftChild ),
+               new Node<>( right.key, right.value, pivot.rightChild, right.rightChild ) );
+      }
+      return new Node<>( key, value, left, right );
+   }
+
+   // =======================================================================
+   // MAP METHODS
+   // =======================================================================
+
+   /**
+    * @return the number of nodes in the BST.
+    */
+   @Override
+   public int size( ) {
+      return size( root );
+   }
+
+   private Node<K, V> getNode( Object key ) {
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+      K k = (K) key;
+      Node<K, V> currentNode = root;
+      while ( currentNode != null ) {
+         int cmp = k.compareTo( currentNode.key );
+         if ( cmp == 0 ) {
+            return currentNode;
+         }
+         currentNode = cmp < 0 ? currentNode.leftChild : currentNode.rightChild;
+      }
+      return null;
+   }
+
+   @Override
+   public V get( Object key ) {
+      Node<K, V> node = getNode( key );
+      return node == null ? null : node.value;
+   }
+
+   @Override
+   public boolean containsKey( Object key ) {
+      return getNode( key ) != null;
+   }
+
+   /**
+    * Associates value with key, copying the path to the key.
+    * @param key key with which the value is to be associated
+    * @param value value to be associated with the key
+    * @return the previous value associated with key, or null if there was none
+    * @throws NullPointerException if key or value is null
+    * @throws UnsupportedOperationException if this tree is a snapshot
+    */
+   @Override
+   public synchronized V put( K key, V value ) {
+      checkWritable();
+      if ( key == null ) {
+         throw new NullPointerException( "Specified key is null." );
+      }
+      if ( value == null ) {
+         throw new NullPointerException( "Specified value is null." );
+      }
+      Node<K, V> old = getNode( key );
+      root = put( root, key, value );
+      return old == null ? null : old.value;
+   }
+
+   private static <K extends Comparable<K>, V> Node<K, V> put( Node<K, V> node, K key, V value ) {
+      if ( node == null ) {
+         return new Node<>( key, value, null, null );
+      }
+      int cmp = key.compareTo( node.key );
+      if ( cmp == 0 ) {
+         return new Node<>( key, value, node.leftChild, node.rightChild );
+      } else if ( cmp < 0 ) {
+         return balance( node.key, node.value, put( node.leftChild, key, value ), node.rightChild );
+      } else {
+         return balance( node.key, node.value, node.leftChild, put( node.rightChild, key, value ) );
+      }
+   }
+
+   /**
+    * Removes the mapping for key if it is present, copying the path to the key.
+    * @param key key whose mapping is to be removed from the map
+    * @return the value that was mapped to key, or null if there was none
+    * @throws UnsupportedOperationException if this tree is a snapshot
+    */
+   @Override
+   public synchronized V remove( Object key ) {
+      checkWritable();
+      if ( key == null ) {
+         return null;
+      }
+      Node<K, V> old = getNode( key );
+      if ( old == null ) {
+         return null;
+      }
+      root = remove( root, (K) key );
+      return old.value;
+   }
+
+   // Removes a key that is known to be present.
+   private static <K extends Comparable<K>, V> Node<K, V> remove( Node<K, V> node, K key ) {
+      int cmp = key.compareTo( node.key );
+      if ( cmp < 0 ) {
+         return balance( node.key, node.value, remove( node.leftChild, key ), node.rightChild );
+      } else if ( cmp > 0 ) {
+         return balance( node.key, node.value, node.leftChild, remove( node.rightChild, key ) );
+      }
+      if ( node.leftChild == null ) {
+         return node.rightChild;
+      }
+      if ( node.rightChild == null ) {
+         return node.leftChild;
+      }
+      // Two children: the inorder successor takes the node's place
+      Node<K, V> successor = node.rightChild;
+      while ( successor.leftChild != null ) {
+         successor = successor.leftChild;
+      }
+      return balance( successor.key, successor.value, node.leftChild, removeFirst( node.rightChild ) );
+   }
+
+   private static <K, V> Node<K, V> removeFirst( Node<K, V> node ) {
+      if ( node.leftChild == null ) {
+         return node.rightChild;
+      }
+      return balance( node.key, node.value, removeFirst( node.leftChild ), node.rightChild );
+   }
+
+   /**
+    * Removes all of the mappings from this map. Snapshots are unaffected.
+    * @throws UnsupportedOperationException if this tree is a snapshot
+    */
+   @Override
+   public synchronized void clear( ) {
+      checkWritable();
+      root = null;
+   }
+
+   // =======================================================================
+   // ITERATION
+   // =======================================================================
+
+   // Walks one version in ascending key order with a stack of pending ancestors.
+   private abstract class VersionIterator<T> implements Iterator<T> {
+      private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>( );
+      private Node<K, V> lastReturned = null;
+
+      VersionIterator( ) {
+         pushLeft( root );
+      }
+
+      abstract T element( Node<K, V> node );
+
+      private void pushLeft( Node<K, V> node ) {
+         for ( ; node != null; node = node.leftChild ) {
+            stack.push( node );
+         }
+      }
+
+      @Override
+      public boolean hasNext( ) {
+         return !stack.isEmpty();
+      }
+
+      @Override
+      public T next( ) {
+         if ( stack.isEmpty() ) {
+            throw new NoSuchElementException(  );
+         }
+         Node<K, V> node = stack.pop();
+         pushLeft( node.rightChild );
+         lastReturned = node;
+         return element( node );
+      }
+
+      /**
+       * Removes the last key returned from the live tree. The iteration
+       * continues over the version it started with.
+       */
+      @Override
+      public void remove( ) {
+         if ( lastReturned == null ) {
+            throw new IllegalStateException(  );
+         }
+         PersistentBinarySearchTree.this.remove( lastReturned.key );
+         lastReturned = null;
+      }
+   }
+
+   /**
+    * Returns an iterator over the values, in ascending key order, of the
+    * version current when the iterator is created.
+    *
+    * @return an Iterator.
+    */
+   @Override
+   public Iterator<V> iterator( ) {
+      return new VersionIterator<V>( ) {
+         @Override
+         V element( Node<K, V> node ) {
+            return node.value;
+         }
+      };
+   }
+
+   /**
+    * Returns a view of the mappings in ascending key order. Each iterator
+    * over the view sees the version current when it is created. The entries
+    * are immutable.
+    *
+    * @return a set view of the mappings contained in this map
+    */
+   @Override
+   public Set<Entry<K,V>> entrySet( ) {
+      return new AbstractSet<Entry<K,V>>( ) {
+         @Override
+         public Iterator<Entry<K,V>> iterator( ) {
+            return new VersionIterator<Entry<K,V>>( ) {
+               @Override
+               Entry<K,V> element( Node<K, V> node ) {
+                  return new SimpleImmutableEntry<>( node.key, node.value );
+               }
+            };
+         }
+
+         @Override
+         public int size( ) {
+            return PersistentBinarySearchTree.this.size();
+         }
+
+         @Override
+         public void clear( ) {
+            PersistentBinarySearchTree.this.clear();
+         }
+      };
+   }
+
+   // =======================================================================
+   // TRAVERSALS
+   // =======================================================================
+   // Each traversal reads root once and then walks that version. The AVL
+   // height bound keeps the recursion shallow.
+
+   /**
+    * Preorder Binary Tree Traversal: visit the root, then the left subtree,
+    * then the right subtree.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePreorder( AbstractBinarySearchTree.Visitor visitor ) {
+      traversePreorder( root, visitor );
+   }
+
+   private static void traversePreorder( Node<?, ?> node, AbstractBinarySearchTree.Visitor visitor ) {
+      if ( node != null ) {
+         visitor.visit( node.key, node.value );
+         traversePreorder( node.leftChild, visitor );
+         traversePreorder( node.rightChild, visitor );
+      }
+   }
+
+   /**
+    * Inorder Binary Tree Traversal: visit the left subtree, then the root,
+    * then the right subtree. Keys are visited in ascending order.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseInorder( AbstractBinarySearchTree.Visitor visitor ) {
+      traverseInorder( root, visitor );
+   }
+
+   private static void traverseInorder( Node<?, ?> node, AbstractBinarySearchTree.Visitor visitor ) {
+      if ( node != null ) {
+         traverseInorder( node.leftChild, visitor );
+         visitor.visit( node.key, node.value );
+         traverseInorder( node.rightChild, visitor );
+      }
+   }
+
+   /**
+    * Postorder Binary Tree Traversal: visit the left subtree, then the right
+    * subtree, then the root.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traversePostorder( AbstractBinarySearchTree.Visitor visitor ) {
+      traversePostorder( root, visitor );
+   }
+
+   private static void traversePostorder( Node<?, ?> node, AbstractBinarySearchTree.Visitor visitor ) {
+      if ( node != null ) {
+         traversePostorder( node.leftChild, visitor );
+         traversePostorder( node.rightChild, visitor );
+         visitor.visit( node.key, node.value );
+      }
+   }
+
+   /**
+    * Level order Binary Tree Traversal: beginning at the root, visit each
+    * node in a level, from left to right, then proceed to the next level.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   public void traverseLevelorder( AbstractBinarySearchTree.Visitor visitor ) {
+      Node<K, V> version = root;
+      if ( version == null ) {
+         return;
+      }
+      ArrayDeque<Node<K, V>> queue = new ArrayDeque<>( );
+      queue.add( version );
+      while ( !queue.isEmpty() ) {
+         Node<K, V> current = queue.remove();
+         visitor.visit( current.key, current.value );
+         if ( current.leftChild != null ) {
+            queue.add( current.leftChild );
+         }
+         if ( current.rightChild != null ) {
+            queue.add( current.rightChild );
+         }
+      }
+   }
+
+   /**
+    * @return the height of the tree, 0 for an empty tree.
+    */
+   public int height( ) {
+      return height( root );
+   }
+}
+// END OF FILE ==============================================================
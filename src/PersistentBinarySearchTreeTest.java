@@ -0,0 +1,95 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class PersistentBinarySearchTreeTest {
+   @Test
+   public void testTraversals( ) {
+      PersistentBinarySearchTree<Integer, Integer> tree = new PersistentBinarySearchTree<>();
+      for ( int key = 1; key <= 7; key++ ) {
+         tree.put( key, key * 10 ); // Sorted input still yields a perfect tree
+      }
+      List<Object> list = new ArrayList<>(  );
+      tree.traversePreorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[4, 2, 1, 3, 6, 5, 7]" ) ) {
+         fail( String.format( "The preorder traversal is %s.", list ) );
+      }
+      list.clear();
+      tree.traversePostorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[1, 3, 2, 5, 7, 6, 4]" ) ) {
+         fail( String.format( "The postorder traversal is %s.", list ) );
+      }
+      list.clear();
+      tree.traverseLevelorder( (key, value) -> list.add( value ) );
+      if ( !list.toString().equals( "[40, 20, 60, 10, 30, 50, 70]" ) ) {
+         fail( String.format( "The level order traversal is %s.", list ) );
+      }
+   }
+
+   @Test
+   public void testMatchesTreeMap( ) {
+      PersistentBinarySearchTree<Integer, Integer> tree = new PersistentBinarySearchTree<>();
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      Random random = new Random( 5 );
+      for ( int i = 0; i < 20000; i++ ) {
+         Integer key = random.nextInt( 1000 );
+         Integer actual, wanted;
+         if ( random.nextInt( 3 ) > 0 ) {
+            actual = tree.put( key, i );
+            wanted = expected.put( key, i );
+         } else {
+            actual = tree.remove( key );
+            wanted = expected.remove( key );
+         }
+         if ( actual == null ? wanted != null : !actual.equals( wanted ) ) {
+            fail( String.format( "At step %d with key %d, the tree returned %s, expected %s.", i, key, actual, wanted ) );
+         }
+      }
+      if ( tree.size() != expected.size() || !tree.equals( expected ) ) {
+         fail( String.format( "After random operations, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+      double bound = 1.45 * Math.log( tree.size() + 2 ) / Math.log( 2 );
+      if ( tree.height() > bound ) {
+         fail( String.format( "After random operations, tree.height() = %d, above the AVL bound %.1f.", tree.height(), bound ) );
+      }
+   }
+
+   @Test
+   public void testSnapshots( ) {
+      PersistentBinarySearchTree<Integer, Integer> tree = new PersistentBinarySearchTree<>();
+      for ( int key = 0; key < 100; key++ ) {
+         tree.put( key, key );
+      }
+      PersistentBinarySearchTree<Integer, Integer> snapshot = tree.snapshot();
+      Iterator<Integer> it = tree.iterator();
+      for ( int key = 0; key < 100; key += 2 ) {
+         tree.remove( key );
+         tree.put( key + 1, -1 );
+         tree.put( key + 1000, key );
+      }
+      int count = 0;
+      while ( it.hasNext() ) { // Iterates the version from before the writes, without failing
+         if ( it.next() != count++ ) {
+            fail( "The iterator did not return the values of the version it started with." );
+         }
+      }
+      if ( count != 100 || snapshot.size() != 100 || snapshot.get( 0 ) != 0 || snapshot.get( 1 ) != 1 || snapshot.containsKey( 1000 ) ) {
+         fail( String.format( "After writes to the tree, the snapshot has size %d.", snapshot.size() ) );
+      }
+      if ( tree.size() != 100 || tree.containsKey( 0 ) || tree.get( 1 ) != -1 ) {
+         fail( String.format( "After writes to the tree, tree.size() = %d.", tree.size() ) );
+      }
+      try {
+         snapshot.put( 5, 5 );
+         fail( "A snapshot accepted put." );
+      } catch ( UnsupportedOperationException expected ) {
+      }
+   }
+}
+// END OF FILE ==============================================================
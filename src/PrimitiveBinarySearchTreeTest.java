@@ -0,0 +1,100 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveBinarySearchTreeTest {
+   //              4
+   //             / \
+   //            2   5
+   //           / \
+   //          1   3
+   public IntIntBinarySearchTree buildSmallTree( ) {
+      IntIntBinarySearchTree tree = new IntIntBinarySearchTree();
+      for ( int key : new int[] { 4, 2, 5, 1, 3 } ) {
+         tree.put( key, key * 10 );
+      }
+      return tree;
+   }
+
+   @Test
+   public void testTraversals( ) {
+      IntIntBinarySearchTree tree = buildSmallTree();
+      ArrayList<Integer> list = new ArrayList<>(  );
+      tree.traversePreorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[4, 2, 1, 3, 5]" ) ) {
+         fail( String.format( "The preorder traversal is %s.", list ) );
+      }
+      list.clear();
+      tree.traverseInorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[1, 2, 3, 4, 5]" ) ) {
+         fail( String.format( "The inorder traversal is %s.", list ) );
+      }
+      list.clear();
+      tree.traversePostorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[1, 3, 2, 5, 4]" ) ) {
+         fail( String.format( "The postorder traversal is %s.", list ) );
+      }
+      list.clear();
+      tree.traverseLevelorder( (key, value) -> list.add( value ) );
+      if ( !list.toString().equals( "[40, 20, 50, 10, 30]" ) ) {
+         fail( String.format( "The level order traversal is %s.", list ) );
+      }
+   }
+
+   @Test
+   public void testIntIntMatchesTreeMap( ) {
+      IntIntBinarySearchTree tree = new IntIntBinarySearchTree();
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      Random random = new Random( 3 );
+      for ( int i = 0; i < 20000; i++ ) {
+         int key = random.nextInt( 400 ) - 200;
+         if ( random.nextInt( 3 ) > 0 ) {
+            if ( tree.put( key, i ) != ( expected.put( key, i ) == null ) ) {
+               fail( String.format( "tree.put( %d, %d ) misreported whether the key was new.", key, i ) );
+            }
+         } else if ( tree.remove( key ) != ( expected.remove( key ) != null ) ) {
+            fail( String.format( "tree.remove( %d ) misreported whether the key was present.", key ) );
+         }
+      }
+      if ( tree.size() != expected.size() ) {
+         fail( String.format( "After random operations, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+      ArrayList<Integer> keys = new ArrayList<>(  );
+      tree.traverseInorder( (key, value) -> keys.add( key ) );
+      if ( !keys.equals( new ArrayList<>( expected.keySet() ) ) ) {
+         fail( "After random operations, the inorder traversal does not match the expected keys." );
+      }
+      for ( int key = -200; key < 200; key++ ) {
+         if ( tree.getOrDefault( key, -1 ) != expected.getOrDefault( key, -1 ) ) {
+            fail( String.format( "tree.getOrDefault( %d, -1 ) = %d, expected %d.", key, tree.getOrDefault( key, -1 ), expected.getOrDefault( key, -1 ) ) );
+         }
+      }
+   }
+
+   @Test
+   public void testLongObj( ) {
+      LongObjBinarySearchTree<String> tree = new LongObjBinarySearchTree<>();
+      tree.put( 4L, "four" );
+      tree.put( 2L, "two" );
+      tree.put( Long.MAX_VALUE, "max" );
+      tree.put( Long.MIN_VALUE, "min" );
+      if ( !"two".equals( tree.put( 2L, "deux" ) ) || !"deux".equals( tree.get( 2L ) ) ) {
+         fail( String.format( "After replacing key 2, tree.get( 2 ) = %s.", tree.get( 2L ) ) );
+      }
+      ArrayList<Long> keys = new ArrayList<>(  );
+      tree.traverseInorder( (key, value) -> keys.add( key ) );
+      if ( !keys.toString().equals( String.format( "[%d, 2, 4, %d]", Long.MIN_VALUE, Long.MAX_VALUE ) ) ) {
+         fail( String.format( "The inorder traversal is %s.", keys ) );
+      }
+      if ( !"four".equals( tree.remove( 4L ) ) || tree.containsKey( 4L ) || tree.size() != 3 ) {
+         fail( "After tree.remove( 4 ), the tree still contains key 4." );
+      }
+      if ( tree.get( 5L ) != null || !tree.containsValue( "max" ) ) {
+         fail( "After building the tree, lookups of missing keys or present values are wrong." );
+      }
+   }
+}
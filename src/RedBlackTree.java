@@ -0,0 +1,448 @@
+import java.util.Comparator;
+import java.util.SortedMap;
+
+/**
+ * DESCRIPTION: A self-balancing Binary Search Tree that functions as a Map.
+ * Every node is colored red or black and the tree maintains the red-black
+ * invariants:
+ *    1. The root is black.
+ *    2. A red node has no red children.
+ *    3. Every path from a node down to a missing child passes through the
+ *       same number of black nodes.
+ * Together these keep the height below 2 * log2( size + 1 ), so get, put and
+ * remove are O(log n) even when the keys arrive in sorted order.
+ */
+public class RedBlackTree<K extends Comparable<K>, V> extends AbstractBinarySearchTree<K, V> {
+
+   /**
+    * A node that also records its color.
+    */
+   protected class RedBlackNode extends Node {
+      private boolean red = true; // New nodes are always inserted red
+      private int joinedHeight; // The black height, set by joinNodes on the root it returns
+
+      public RedBlackNode ( KeyValuePair entry ) {
+         super( entry );
+      }
+
+      /**
+       * @return true if the node is red, false if it is black.
+       */
+      public boolean isRed( ) {
+         return red;
+      }
+
+      /**
+       * Set the color of the node.
+       * @param red true for red, false for black
+       */
+      public void setRed( boolean red ) {
+         this.red = red;
+      }
+   }
+
+   /**
+    * Creates an empty tree ordered by the natural ordering of its keys.
+    */
+   public RedBlackTree( ) {
+   }
+
+   /**
+    * Creates an empty tree ordered by a comparator.
+    * @param comparator the order of the keys, or null for their natural ordering
+    */
+   public RedBlackTree( Comparator<? super K> comparator ) {
+      super( comparator );
+   }
+
+   /**
+    * Creates an empty tree whose nodes cache a normalized prefix of their keys.
+    * @param comparator the order of the keys, or null for their natural ordering
+    * @param normalizer maps keys to prefixes that agree with that order
+    */
+   public RedBlackTree( Comparator<? super K> comparator, KeyNormalizer<? super K> normalizer ) {
+      super( comparator, normalizer );
+   }
+
+   /**
+    * Builds a red-black tree from a sorted map in O(n).
+    * A map with a custom comparator is loaded with put instead.
+    *
+    * @param map the mappings to copy
+    * @return a new tree holding the mappings of map
+    */
+   public static <K extends Comparable<K>, V> RedBlackTree<K, V> fromSorted( SortedMap<K, ? extends V> map ) {
+      RedBlackTree<K, V> tree = new RedBlackTree<>( );
+      tree.putAll( map );
+      return tree;
+   }
+
+   /**
+    * Builds a red-black tree from parallel arrays in O(n).
+    *
+    * @param keys keys in strictly ascending order
+    * @param values values, values[i] is mapped to keys[i]
+    * @return a new tree holding the mappings
+    * @throws IllegalArgumentException if the arrays differ in length or the
+    *                                  keys are not strictly ascending
+    */
+   public static <K extends Comparable<K>, V> RedBlackTree<K, V> fromSorted( K[] keys, V[] values ) {
+      RedBlackTree<K, V> tree = new RedBlackTree<>( );
+      tree.buildFromSorted( keys, values );
+      return tree;
+   }
+
+   @Override
+   protected Node createNode( K key, V value ) {
+      return new RedBlackNode( new KeyValuePair( key, value ) );
+   }
+
+   /**
+    * A bulk-built tree is perfectly balanced, so all paths through full
+    * levels have the same length and only the partial bottom level is one
+    * deeper. Coloring exactly that level red keeps every black height equal.
+    */
+   @Override
+   protected void afterBuild( Node node, boolean onPartialLevel ) {
+      setRed( node, onPartialLevel );
+   }
+
+   /**
+    * Joins by black height, the rank of a red-black subtree. Both roots are
+    * blackened first, which keeps the subtrees valid. Middle then goes down
+    * the inner spine of the taller subtree to the first black node as
+    * black-high as the shorter one and is attached there red, with that
+    * node and the shorter subtree as its children. A red node with a red
+    * child is repaired by one rotation on the way back up, as in Blelloch,
+    * Ferizovic and Sun, "Just Join for Parallel Ordered Sets".
+    */
+   @Override
+   protected Node joinNodes( Node left, int leftRank, Node middle, Node right, int rightRank ) {
+      if ( isRed( left ) ) {
+         setRed( left, false );
+         leftRank++;
+      }
+      if ( isRed( right ) ) {
+         setRed( right, false );
+         rightRank++;
+      }
+      Node joined;
+      int height = Math.max( leftRank, rightRank );
+      if ( leftRank > rightRank ) {
+         joined = joinRight( left, leftRank, middle, right, rightRank );
+      } else if ( rightRank > leftRank ) {
+         joined = joinLeft( left, leftRank, middle, right, rightRank );
+      } else {
+         joined = link( left, middle, right );
+         setRed( joined, true );
+      }
+      if ( isRed( joined ) ) { // Middle between equals, or a rotation brought a red node to the top
+         setRed( joined, false );
+         height++;
+      }
+      ((RedBlackNode) joined).joinedHeight = height;
+      joined.setParent( null );
+      return joined;
+   }
+
+   // Counts the black nodes on the leftmost path, as on every other path.
+   @Override
+   protected int subtreeRank( Node subtree ) {
+      int height = 0;
+      for ( Node node = subtree; node != null; node = node.getLeftChild() ) {
+         if ( !isRed( node ) ) {
+            height++;
+         }
+      }
+      return height;
+   }
+
+   @Override
+   protected int childRank( Node parent, int rank ) {
+      return isRed( parent ) ? rank : rank - 1;
+   }
+
+   @Override
+   protected int joinedRank( Node joined ) {
+      return ((RedBlackNode) joined).joinedHeight;
+   }
+
+   @Override
+   protected void afterJoin( Node newRoot ) {
+      setRed( newRoot, false );
+   }
+
+   // Attaches middle and right below the right spine of tree, which is
+   // black-higher than right, and returns the root of the result.
+   private Node joinRight( Node tree, int height, Node middle, Node right, int rightHeight ) {
+      if ( !isRed( tree ) && height == rightHeight ) {
+         setRed( middle, true );
+         return link( tree, middle, right );
+      }
+      Node child = joinRight( tree.getRightChild(), isRed( tree ) ? height : height - 1, middle, right, rightHeight );
+      tree.setRightChild( child );
+      tree.updateSubtreeSize();
+      if ( !isRed( tree ) && isRed( child ) && isRed( child.getRightChild() ) ) {
+         setRed( child.getRightChild(), false );
+         return rotateDetached( tree, child, false );
+      }
+      return tree;
+   }
+
+   // The mirror image of joinRight.
+   private Node joinLeft( Node left, int leftHeight, Node middle, Node tree, int height ) {
+      if ( !isRed( tree ) && height == leftHeight ) {
+         setRed( middle, true );
+         return link( left, middle, tree );
+      }
+      Node child = joinLeft( left, leftHeight, middle, tree.getLeftChild(), isRed( tree ) ? height : height - 1 );
+      tree.setLeftChild( child );
+      tree.updateSubtreeSize();
+      if ( !isRed( tree ) && isRed( child ) && isRed( child.getLeftChild() ) ) {
+         setRed( child.getLeftChild(), false );
+         return rotateDetached( tree, child, true );
+      }
+      return tree;
+   }
+
+   // Rotates child, a child of node, into node's place in a subtree that is
+   // not linked into the tree yet, so there is no parent to update.
+   private Node rotateDetached( Node node, Node child, boolean leftChild ) {
+      if ( leftChild ) {
+         node.setLeftChild( child.getRightChild() );
+         child.setRightChild( node );
+      } else {
+         node.setRightChild( child.getLeftChild() );
+         child.setLeftChild( node );
+      }
+      node.updateSubtreeSize();
+      child.updateSubtreeSize();
+      return child;
+   }
+
+   /**
+    * A snapshot keeps the color of every node, so a reloaded tree is valid
+    * without any rebalancing.
+    */
+   @Override
+   protected boolean hasSnapshotBits( ) {
+      return true;
+   }
+
+   @Override
+   protected boolean snapshotBit( Node node ) {
+      return isRed( node );
+   }
+
+   @Override
+   protected void restoreSnapshotBit( Node node, boolean bit ) {
+      setRed( node, bit );
+   }
+
+   // Missing children count as black.
+   private boolean isRed( Node node ) {
+      return node != null && ((RedBlackNode) node).isRed();
+   }
+
+   private void setRed( Node node, boolean red ) {
+      if ( node != null ) {
+         ((RedBlackNode) node).setRed( red );
+      }
+   }
+
+   /**
+    * Restores the red-black invariants after put has attached a new red leaf.
+    * @param node the node that was just inserted
+    */
+   @Override
+   protected void afterInsert( Node node ) {
+      while ( node != getRoot() && isRed( node.getParent() ) ) {
+         Node parent = node.getParent();
+         Node grandparent = parent.getParent(); // A red parent is never the root
+         if ( parent == grandparent.getLeftChild() ) {
+            Node uncle = grandparent.getRightChild();
+            if ( isRed( uncle ) ) {
+               setRed( parent, false );
+               setRed( uncle, false );
+               setRed( grandparent, true );
+               node = grandparent;
+            } else {
+               if ( node == parent.getRightChild() ) {
+                  rotateLeft( parent );
+                  node = parent;
+                  parent = node.getParent();
+               }
+               setRed( parent, false );
+               setRed( grandparent, true );
+               rotateRight( grandparent );
+            }
+         } else {
+            Node uncle = grandparent.getLeftChild();
+            if ( isRed( uncle ) ) {
+               setRed( parent, false );
+               setRed( uncle, false );
+               setRed( grandparent, true );
+               node = grandparent;
+            } else {
+               if ( node == parent.getLeftChild() ) {
+                  rotateRight( parent );
+                  node = parent;
+                  parent = node.getParent();
+               }
+               setRed( parent, false );
+               setRed( grandparent, true );
+               rotateLeft( grandparent );
+            }
+         }
+      }
+      setRed( getRoot(), false );
+   }
+
+   /**
+    * Removes the mapping for a key from this map if it is present.
+    * Nodes are unlinked and relinked rather than having their entries
+    * copied, so references to other nodes stay valid across a removal.
+    *
+    * @param key key whose mapping is to be removed from the map
+    * @return the previous value associated with <tt>key</tt>, or
+    *      <tt>null</tt> if there was no mapping for <tt>key</tt>.
+    */
+   @Override
+   public V remove ( Object key ) {
+      if ( key == null ) {
+         return null;
+      }
+      Node remover = getNode( key );
+      if ( remover == null ) {
+         meterRemove( false );
+         return null;
+      }
+      V valueRemoved = remover.getValue();
+
+      boolean removedRed = isRed( remover );
+      Node child;        // The node that moves into the removed position, may be null
+      Node childParent;  // Its parent after the removal
+      if ( !remover.hasLeftChild() ) {
+         child = remover.getRightChild();
+         childParent = remover.getParent();
+         replaceChild( remover.getParent(), remover, child );
+      } else if ( !remover.hasRightChild() ) {
+         child = remover.getLeftChild();
+         childParent = remover.getParent();
+         replaceChild( remover.getParent(), remover, child );
+      } else {
+         // Two children: splice in the inorder successor
+         Node successor = remover.getRightChild();
+         while ( successor.hasLeftChild() ) {
+            successor = successor.getLeftChild();
+         }
+         removedRed = isRed( successor );
+         child = successor.getRightChild();
+         if ( successor.getParent() == remover ) {
+            childParent = successor;
+         } else {
+            childParent = successor.getParent();
+            replaceChild( successor.getParent(), successor, child );
+            successor.setRightChild( remover.getRightChild() );
+         }
+         replaceChild( remover.getParent(), remover, successor );
+         successor.setLeftChild( remover.getLeftChild() );
+         setRed( successor, isRed( remover ) );
+      }
+      updateSubtreeSizes( childParent );
+      if ( !removedRed ) {
+         removeFixup( child, childParent );
+      }
+      recordRemoval( remover );
+      decrementSize();
+      incrementChangeCounter();
+      return valueRemoved;
+   }
+
+   // Removing a black node leaves the path through node one black short.
+   // Push the deficit up the tree or absorb it with recolorings and rotations.
+   private void removeFixup( Node node, Node parent ) {
+      while ( node != getRoot() && !isRed( node ) ) {
+         if ( node == parent.getLeftChild() ) {
+            Node sibling = parent.getRightChild();
+            if ( isRed( sibling ) ) {
+               setRed( sibling, false );
+               setRed( parent, true );
+               rotateLeft( parent );
+               sibling = parent.getRightChild();
+            }
+            if ( !isRed( sibling.getLeftChild() ) && !isRed( sibling.getRightChild() ) ) {
+               setRed( sibling, true );
+               node = parent;
+               parent = node.getParent();
+            } else {
+               if ( !isRed( sibling.getRightChild() ) ) {
+                  setRed( sibling.getLeftChild(), false );
+                  setRed( sibling, true );
+                  rotateRight( sibling );
+                  sibling = parent.getRightChild();
+               }
+               setRed( sibling, isRed( parent ) );
+               setRed( parent, false );
+               setRed( sibling.getRightChild(), false );
+               rotateLeft( parent );
+               node = getRoot();
+            }
+         } else {
+            Node sibling = parent.getLeftChild();
+            if ( isRed( sibling ) ) {
+               setRed( sibling, false );
+               setRed( parent, true );
+               rotateRight( parent );
+               sibling = parent.getLeftChild();
+            }
+            if ( !isRed( sibling.getLeftChild() ) && !isRed( sibling.getRightChild() ) ) {
+               setRed( sibling, true );
+               node = parent;
+               parent = node.getParent();
+            } else {
+               if ( !isRed( sibling.getLeftChild() ) ) {
+                  setRed( sibling.getRightChild(), false );
+                  setRed( sibling, true );
+                  rotateLeft( sibling );
+                  sibling = parent.getLeftChild();
+               }
+               setRed( sibling, isRed( parent ) );
+               setRed( parent, false );
+               setRed( sibling.getLeftChild(), false );
+               rotateRight( parent );
+               node = getRoot();
+            }
+         }
+      }
+      setRed( node, false );
+   }
+
+   /**
+    * Iterative Algorithm: Postorder Binary Tree Traversal
+    *    1. Postorder traverse the left subtree.
+    *    2. Postorder traverse the right subtree.
+    *    3. Visit the root.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   @Override
+   public void traversePostorder( Visitor visitor ) {
+      walkPostorder( visitor );
+   }
+
+   /**
+    * Iterative Algorithm: Level order Binary Tree Traversal
+    *    Beginning at the root, visit each node in a level, from left to right
+    *    then proceeding to the next level and repeat until all nodes are visited.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   @Override
+   public void traverseLevelorder( Visitor visitor ) {
+      walkLevelorder( visitor );
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,359 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class RedBlackTreeTest {
+   public RedBlackTree<String, String> buildStooges( ) {
+      RedBlackTree<String, String> tree = new RedBlackTree<>();
+      tree.put( "Larry", "larry@mtu.edu" );
+      tree.put( "Curly", "curly@mtu.edu" );
+      tree.put( "Moe", "moe@mtu.edu" );
+      tree.put( "Shemp", "shemp@mtu.edu" );
+      tree.put( "Joe", "joe@mtu.edu" );
+      tree.put( "Curly Joe", "curlyjoe@mtu.edu" );
+      return tree;
+   }
+
+   // Returns the black height of the subtree, or fails if an invariant is broken.
+   private int blackHeight( AbstractBinarySearchTree<?, ?>.Node node ) {
+      if ( node == null ) {
+         return 1;
+      }
+      boolean red = ((RedBlackTree.RedBlackNode) node).isRed();
+      if ( red ) {
+         for ( int side = 0; side < 2; side++ ) {
+            AbstractBinarySearchTree<?, ?>.Node child = side == 0 ? node.getLeftChild() : node.getRightChild();
+            if ( child != null && ((RedBlackTree.RedBlackNode) child).isRed() ) {
+               fail( String.format( "Red node %s has a red child %s.", node, child ) );
+            }
+         }
+      }
+      if ( node.hasLeftChild() && node.getLeftChild().getParent() != node ) {
+         fail( String.format( "The left child of %s does not point back to it.", node ) );
+      }
+      if ( node.hasRightChild() && node.getRightChild().getParent() != node ) {
+         fail( String.format( "The right child of %s does not point back to it.", node ) );
+      }
+      int expectedSize = 1 + ( node.hasLeftChild() ? node.getLeftChild().getSubtreeSize() : 0 )
+            + ( node.hasRightChild() ? node.getRightChild().getSubtreeSize() : 0 );
+      if ( node.getSubtreeSize() != expectedSize ) {
+         fail( String.format( "Node %s has subtree size %d, expected %d.", node, node.getSubtreeSize(), expectedSize ) );
+      }
+      int left = blackHeight( node.getLeftChild() );
+      int right = blackHeight( node.getRightChild() );
+      if ( left != right ) {
+         fail( String.format( "Node %s has black heights %d (left) and %d (right).", node, left, right ) );
+      }
+      return left + ( red ? 0 : 1 );
+   }
+
+   private int height( AbstractBinarySearchTree<?, ?>.Node node ) {
+      if ( node == null ) {
+         return 0;
+      }
+      return 1 + Math.max( height( node.getLeftChild() ), height( node.getRightChild() ) );
+   }
+
+   private void checkInvariants( RedBlackTree<?, ?> tree ) {
+      if ( tree.getRoot() != null && ((RedBlackTree.RedBlackNode) tree.getRoot()).isRed() ) {
+         fail( "The root is red." );
+      }
+      if ( tree.getRoot() != null && tree.getRoot().hasParent() ) {
+         fail( "The root has a parent." );
+      }
+      blackHeight( tree.getRoot() );
+   }
+
+   @Test
+   public void testStooges( ) {
+      RedBlackTree<String, String> tree = buildStooges();
+      checkInvariants( tree );
+      if ( tree.size() != 6 ) {
+         fail( String.format( "After adding 6 entries, tree.size() = %d.", tree.size() ) );
+      }
+      ArrayList<String> list = new ArrayList<>(  );
+      tree.traverseInorder( (key, value) -> list.add( key.toString() ) );
+      if ( !list.toString().equals( "[Curly, Curly Joe, Joe, Larry, Moe, Shemp]" ) ) {
+         fail( String.format( "After building the stooges tree, the inorder traversal is %s.", list ) );
+      }
+      if ( !tree.get( "Curly Joe" ).equals( "curlyjoe@mtu.edu" ) ) {
+         fail( String.format( "After building the stooges tree, tree.get( \"Curly Joe\" ) = %s.", tree.get( "Curly Joe" ) ) );
+      }
+      int size = tree.size();
+      for( int i = 0; i < size; i++ ) {
+         tree.removeRoot();
+         checkInvariants( tree );
+      }
+      if ( !tree.isEmpty() ) {
+         fail( String.format( "After adding and removing 6 entries, tree.size() = %d.", tree.size() ) );
+      }
+   }
+
+   @Test
+   public void testSequentialInsertHeight( ) {
+      RedBlackTree<Integer, Integer> tree = new RedBlackTree<>();
+      int n = 100000;
+      for ( int i = 0; i < n; i++ ) {
+         tree.put( i, i );
+      }
+      checkInvariants( tree );
+      // A red-black tree is never more than 2 * log2( n + 1 ) high
+      int height = height( tree.getRoot() );
+      double bound = 2 * Math.log( n + 1 ) / Math.log( 2 );
+      if ( height > bound ) {
+         fail( String.format( "After inserting %d sorted keys, the tree height is %d.", n, height ) );
+      }
+      if ( tree.get( n - 1 ) != n - 1 ) {
+         fail( String.format( "After inserting %d sorted keys, tree.get( %d ) = %s.", n, n - 1, tree.get( n - 1 ) ) );
+      }
+   }
+
+   @Test
+   public void testRandomOperations( ) {
+      RedBlackTree<Integer, Integer> tree = new RedBlackTree<>();
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      Random random = new Random( 42 );
+      for ( int i = 0; i < 20000; i++ ) {
+         int key = random.nextInt( 500 );
+         if ( random.nextBoolean() ) {
+            Integer a = tree.put( key, i );
+            Integer b = expected.put( key, i );
+            if ( a == null ? b != null : !a.equals( b ) ) {
+               fail( String.format( "tree.put( %d, %d ) = %s, expected %s.", key, i, a, b ) );
+            }
+         } else {
+            Integer a = tree.remove( key );
+            Integer b = expected.remove( key );
+            if ( a == null ? b != null : !a.equals( b ) ) {
+               fail( String.format( "tree.remove( %d ) = %s, expected %s.", key, a, b ) );
+            }
+         }
+         if ( i % 500 == 0 ) {
+            checkInvariants( tree );
+         }
+      }
+      checkInvariants( tree );
+      if ( tree.size() != expected.size() ) {
+         fail( String.format( "After random operations, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+      List<Integer> keys = new ArrayList<>( );
+      tree.traverseInorder( (key, value) -> keys.add( (Integer) key ) );
+      if ( !keys.equals( new ArrayList<>( expected.keySet() ) ) ) {
+         fail( "After random operations, the inorder traversal does not match the expected keys." );
+      }
+      for ( int i = 0; i < keys.size(); i++ ) {
+         if ( !tree.select( i ).equals( keys.get( i ) ) || tree.rank( keys.get( i ) ) != i ) {
+            fail( String.format( "After random operations, tree.select( %d ) = %d and tree.rank( %d ) = %d.", i, tree.select( i ), keys.get( i ), tree.rank( keys.get( i ) ) ) );
+         }
+      }
+      List<Integer> sorted = new ArrayList<>( keys );
+      Collections.sort( sorted );
+      if ( !keys.equals( sorted ) ) {
+         fail( "After random operations, the inorder traversal is not sorted." );
+      }
+   }
+
+   @Test
+   public void testFromSorted( ) {
+      for ( int size = 0; size <= 70; size++ ) {
+         TreeMap<Integer, Integer> expected = new TreeMap<>();
+         Integer[] keys = new Integer[size];
+         for ( int i = 0; i < size; i++ ) {
+            expected.put( i * 2, i );
+            keys[i] = i * 2;
+         }
+         RedBlackTree<Integer, Integer> tree = RedBlackTree.fromSorted( expected );
+         checkInvariants( tree );
+         if ( !tree.entrySet().equals( expected.entrySet() ) || size > 0 && tree.select( size / 2 ) != ( size / 2 ) * 2 ) {
+            fail( String.format( "After fromSorted of %d keys, tree.entrySet() = %s.", size, tree.entrySet() ) );
+         }
+         tree = RedBlackTree.fromSorted( keys, expected.values().toArray( new Integer[0] ) );
+         checkInvariants( tree );
+         for ( int i = 0; i < size; i += 3 ) {
+            tree.remove( i * 2 );
+            tree.put( i * 2 + 1, i );
+            checkInvariants( tree );
+         }
+      }
+      try {
+         BinarySearchTree.fromSorted( new Integer[] { 1, 3, 2 }, new Integer[] { 1, 2, 3 } );
+         fail( "fromSorted accepted keys that are not ascending." );
+      } catch ( IllegalArgumentException expected ) {
+      }
+      BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+      TreeMap<Integer, Integer> descending = new TreeMap<>( Collections.reverseOrder() );
+      descending.put( 1, 1 );
+      descending.put( 2, 2 );
+      tree.putAll( descending );
+      if ( !tree.keySet().toString().equals( "[1, 2]" ) ) {
+         fail( String.format( "After putAll of a descending map, tree.keySet() = %s.", tree.keySet() ) );
+      }
+   }
+
+   @Test
+   public void testSnapshot( ) throws IOException {
+      Path path = Files.createTempFile( "tree", ".snapshot" );
+      try {
+         RedBlackTree<String, Integer> tree = new RedBlackTree<>();
+         Random random = new Random( 20 );
+         for ( int i = 0; i < 5000; i++ ) {
+            tree.put( Integer.toString( random.nextInt( 100000 ), 36 ) + "\u00e9", i );
+         }
+         StringBuilder large = new StringBuilder(  );
+         while ( large.length() < 3 << 20 ) { // Larger than the write buffer
+            large.append( "large" );
+         }
+         tree.put( large.toString(), -1 );
+         tree.writeSnapshot( path, AbstractBinarySearchTree.Codec.STRING, AbstractBinarySearchTree.Codec.INTEGER );
+         RedBlackTree<String, Integer> copy = new RedBlackTree<>();
+         copy.readSnapshot( path, AbstractBinarySearchTree.Codec.STRING, AbstractBinarySearchTree.Codec.INTEGER );
+         checkInvariants( copy );
+         List<Object> shape = new ArrayList<>(  );
+         List<Object> copyShape = new ArrayList<>(  );
+         tree.traversePreorder( (key, value) -> shape.add( key ) );
+         copy.traversePreorder( (key, value) -> copyShape.add( key ) );
+         if ( !copy.entrySet().equals( tree.entrySet() ) || !copyShape.equals( shape ) || copy.rank( large.toString() ) != tree.rank( large.toString() ) ) {
+            fail( String.format( "After reading a snapshot of %d entries, copy.size() = %d.", tree.size(), copy.size() ) );
+         }
+
+         // A degenerate BinarySearchTree keeps its shape, and relinks balanced into a RedBlackTree
+         BinarySearchTree<Integer, Integer> chain = new BinarySearchTree<>();
+         for ( int key = 0; key < 20000; key++ ) {
+            chain.put( key, key );
+         }
+         chain.writeSnapshot( path, AbstractBinarySearchTree.Codec.INTEGER, AbstractBinarySearchTree.Codec.INTEGER );
+         BinarySearchTree<Integer, Integer> chainCopy = new BinarySearchTree<>();
+         chainCopy.readSnapshot( path, AbstractBinarySearchTree.Codec.INTEGER, AbstractBinarySearchTree.Codec.INTEGER );
+         RedBlackTree<Integer, Integer> balanced = new RedBlackTree<>();
+         balanced.readSnapshot( path, AbstractBinarySearchTree.Codec.INTEGER, AbstractBinarySearchTree.Codec.INTEGER );
+         checkInvariants( balanced );
+         if ( chainCopy.getRoot().getKey() != 0 || chainCopy.getRoot().getSubtreeSize() != 20000
+               || !balanced.entrySet().equals( chain.entrySet() ) || height( balanced.getRoot() ) > 15 ) {
+            fail( String.format( "After reading a degenerate snapshot, the copy has root %s and the red-black tree height %d.",
+                  chainCopy.getRoot(), height( balanced.getRoot() ) ) );
+         }
+
+         try {
+            balanced.readSnapshot( path, AbstractBinarySearchTree.Codec.INTEGER, AbstractBinarySearchTree.Codec.INTEGER );
+            fail( "readSnapshot accepted a tree that is not empty." );
+         } catch ( IllegalStateException expected ) {
+         }
+         byte[] bytes = Files.readAllBytes( path );
+         Files.write( path, Arrays.copyOf( bytes, bytes.length - 3 ) );
+         RedBlackTree<Integer, Integer> truncated = new RedBlackTree<>();
+         try {
+            truncated.readSnapshot( path, AbstractBinarySearchTree.Codec.INTEGER, AbstractBinarySearchTree.Codec.INTEGER );
+            fail( "readSnapshot accepted a truncated file." );
+         } catch ( IOException expected ) {
+         }
+         if ( !truncated.isEmpty() || truncated.getRoot() != null ) {
+            fail( String.format( "After reading a truncated snapshot, truncated.size() = %d.", truncated.size() ) );
+         }
+
+         // A corrupt string length is reported as a truncated snapshot rather than allocated
+         RedBlackTree<String, Integer> strings = new RedBlackTree<>();
+         strings.put( "corrupt", 1 );
+         strings.writeSnapshot( path, AbstractBinarySearchTree.Codec.STRING, AbstractBinarySearchTree.Codec.INTEGER );
+         bytes = Files.readAllBytes( path );
+         int at = new String( bytes, StandardCharsets.ISO_8859_1 ).indexOf( "corrupt" ) - 4;
+         ByteBuffer.wrap( bytes, at, 4 ).putInt( Integer.MAX_VALUE );
+         Files.write( path, bytes );
+         try {
+            new RedBlackTree<String, Integer>().readSnapshot( path, AbstractBinarySearchTree.Codec.STRING, AbstractBinarySearchTree.Codec.INTEGER );
+            fail( "readSnapshot accepted a string longer than the file." );
+         } catch ( IOException expected ) {
+         }
+      } finally {
+         Files.delete( path );
+      }
+   }
+
+   // Fills a TreeMap with up to count random keys below bound, each mapped to key * 10 + tag.
+   private TreeMap<Integer, Integer> randomMap( Random random, int count, int bound, int tag ) {
+      TreeMap<Integer, Integer> map = new TreeMap<>();
+      for ( int i = 0; i < count; i++ ) {
+         int key = random.nextInt( bound );
+         map.put( key, key * 10 + tag );
+      }
+      return map;
+   }
+
+   @Test
+   public void testSetAlgebra( ) {
+      Random random = new Random( 25 );
+      for ( int round = 0; round < 64; round++ ) {
+         int bound = round < 60 ? 1 + random.nextInt( 400 ) : 200000; // The last rounds are large enough to fork
+         TreeMap<Integer, Integer> a = randomMap( random, random.nextInt( bound ), bound, 1 );
+         TreeMap<Integer, Integer> b = randomMap( random, random.nextInt( bound ), bound, 2 );
+         AbstractBinarySearchTree<Integer, Integer> other = round % 3 == 0 ? new BinarySearchTree<>() : new RedBlackTree<>();
+         List<Integer> shuffled = new ArrayList<>( b.keySet() );
+         Collections.shuffle( shuffled, random );
+         for ( Integer key : shuffled ) {
+            other.put( key, b.get( key ) );
+         }
+
+         for ( int operation = 0; operation < 3; operation++ ) {
+            RedBlackTree<Integer, Integer> tree = round % 2 == 0 ? new RedBlackTree<>() : new ConcurrentBinarySearchTree<>();
+            tree.putAll( a );
+            TreeMap<Integer, Integer> expected = new TreeMap<>( a );
+            if ( operation == 0 ) {
+               tree.union( other );
+               expected.putAll( b );
+            } else if ( operation == 1 ) {
+               tree.intersection( other );
+               expected.keySet().retainAll( b.keySet() );
+            } else {
+               tree.difference( other );
+               expected.keySet().removeAll( b.keySet() );
+            }
+            checkInvariants( tree );
+            if ( !expected.equals( tree ) || tree.size() != expected.size() || !b.equals( other ) ) {
+               fail( String.format( "Round %d: operation %d of %d and %d keys left %d keys, expected %d.",
+                     round, operation, a.size(), b.size(), tree.size(), expected.size() ) );
+            }
+         }
+
+         RedBlackTree<Integer, Integer> lower = new RedBlackTree<>();
+         lower.putAll( a );
+         RedBlackTree<Integer, Integer> upper = new RedBlackTree<>();
+         int key = random.nextInt( bound );
+         lower.split( key, upper );
+         checkInvariants( lower );
+         checkInvariants( upper );
+         if ( !a.headMap( key ).equals( lower ) || !a.tailMap( key ).equals( upper ) || lower.size() + upper.size() != a.size() ) {
+            fail( String.format( "Round %d: split at %d left %d keys below and %d above.", round, key, lower.size(), upper.size() ) );
+         }
+         lower.join( upper );
+         checkInvariants( lower );
+         if ( !a.equals( lower ) ) {
+            fail( String.format( "Round %d: joining the split halves gave %d keys, expected %d.", round, lower.size(), a.size() ) );
+         }
+         if ( !upper.isEmpty() ) { // upper still holds the keys it had, which lower now holds too
+            try {
+               lower.join( upper );
+               fail( "join accepted keys that are not greater than every key of the tree." );
+            } catch ( IllegalArgumentException expected ) {
+            }
+         }
+      }
+
+      try {
+         new RedBlackTree<Integer, Integer>().union( new RedBlackTree<Integer, Integer>( Comparator.reverseOrder() ) );
+         fail( "union accepted a tree with a different order." );
+      } catch ( IllegalArgumentException expected ) {
+      }
+   }
+}
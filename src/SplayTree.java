@@ -0,0 +1,236 @@
+import java.util.Comparator;
+
+/**
+ * DESCRIPTION: A self-adjusting Binary Search Tree that functions as a Map.
+ * Every get, containsKey, put and remove splays the node it reaches to the
+ * root with zig, zig-zig and zig-zag rotations. Recently used keys therefore
+ * sit near the root, so under skewed traffic the hot keys cost a few
+ * comparisons however large the tree is. Any sequence of m operations takes
+ * O(m log n) time, although a single operation may take O(n).
+ *
+ * Navigation, iteration and the traversals read the tree without splaying.
+ * Splaying rotates the tree but keeps the inorder sequence, so a lookup
+ * during an iteration does not disturb the iterator.
+ */
+public class SplayTree<K extends Comparable<K>, V> extends AbstractBinarySearchTree<K, V> {
+   private boolean searchMetered = false; // Set while put inserts after its own search was counted
+
+   /**
+    * Creates an empty tree ordered by the natural ordering of its keys.
+    */
+   public SplayTree( ) {
+   }
+
+   /**
+    * Creates an empty tree ordered by a comparator.
+    * @param comparator the order of the keys, or null for their natural ordering
+    */
+   public SplayTree( Comparator<? super K> comparator ) {
+      super( comparator );
+   }
+
+   /**
+    * Creates an empty tree whose nodes cache a normalized prefix of their keys.
+    * @param comparator the order of the keys, or null for their natural ordering
+    * @param normalizer maps keys to prefixes that agree with that order
+    */
+   public SplayTree( Comparator<? super K> comparator, KeyNormalizer<? super K> normalizer ) {
+      super( comparator, normalizer );
+   }
+
+   // =======================================================================
+   // SPLAYING
+   // =======================================================================
+
+   // Rotates node up to the root. A zig-zig rotates the grandparent first,
+   // which is what roughly halves the depth of every node on the path.
+   private void splay( Node node ) {
+      while ( node.getParent() != null ) {
+         Node parent = node.getParent();
+         Node grandparent = parent.getParent();
+         boolean leftChild = node == parent.getLeftChild();
+         if ( grandparent == null ) {
+            rotateUp( parent, leftChild );                              // zig
+         } else if ( leftChild == ( parent == grandparent.getLeftChild() ) ) {
+            rotateUp( grandparent, leftChild );                         // zig-zig
+            rotateUp( parent, leftChild );
+         } else {
+            rotateUp( parent, leftChild );                              // zig-zag
+            rotateUp( grandparent, !leftChild );
+         }
+      }
+   }
+
+   // Rotates the left or right child of node into its place.
+   private void rotateUp( Node node, boolean leftChild ) {
+      if ( leftChild ) {
+         rotateRight( node );
+      } else {
+         rotateLeft( node );
+      }
+   }
+
+   // Searches for key and splays the last node reached, whether or not it
+   // holds key. Returns the new root, or null if the tree is empty.
+   private Node access( K key ) {
+      long prefix = keyPrefix( key );
+      Node currentNode = getRoot();
+      Node lastNode = null;
+      int comparisons = 0;
+      while ( currentNode != null ) {
+         lastNode = currentNode;
+         comparisons++;
+         int cmp = compareToNode( key, prefix, currentNode );
+         if ( cmp == 0 ) {
+            break;
+         }
+         currentNode = cmp < 0 ? currentNode.getLeftChild() : currentNode.getRightChild();
+      }
+      meterSearch( comparisons );
+      if ( lastNode != null ) {
+         splay( lastNode );
+      }
+      return lastNode;
+   }
+
+   /**
+    * Finds the node holding the specified key and splays it to the root.
+    * When the key is missing, the last node on the search path is splayed
+    * instead, so repeated misses are cheap as well.
+    * @param key the key to search for, must not be null
+    * @return the node whose key equals key, or null if there is none.
+    */
+   @Override
+   protected Node getNode( Object key ) {
+      K k = (K) key;
+      Node root = access( k );
+      return root != null && compareKeys( k, root.getKey() ) == 0 ? root : null;
+   }
+
+   // =======================================================================
+   // MAP OPERATIONS
+   // =======================================================================
+
+   /**
+    * Associates the specified value with the specified key in this map and
+    * splays the key to the root.
+    *
+    * @param key   key with which the specified value is to be associated
+    * @param value value to be associated with the specified key
+    * @return the previous value associated with <tt>key</tt>, or
+    *      <tt>null</tt> if there was no mapping for <tt>key</tt>.
+    * @throws NullPointerException if the specified key or value is null
+    */
+   @Override
+   public V put ( K key, V value ) {
+      if ( key != null && value != null && getNode( key ) != null ) {
+         // getNode left the node at the root
+         meterPut( true );
+         V oldValue = getRoot().getValue();
+         getRoot().setValue( value );
+         incrementChangeCounter();
+         return oldValue;
+      }
+      // The search left the insertion point next to the root, so this is short.
+      // It was already counted, so the descent in super.put is not metered again.
+      searchMetered = true;
+      try {
+         return super.put( key, value );
+      } finally {
+         searchMetered = false;
+      }
+   }
+
+   /**
+    * Counts a search unless it is the insertion descent of a put whose
+    * search was already counted.
+    * @param comparisons the number of nodes compared with the key
+    */
+   @Override
+   protected void meterSearch( int comparisons ) {
+      if ( !searchMetered ) {
+         super.meterSearch( comparisons );
+      }
+   }
+
+   /**
+    * Splays a newly inserted node to the root.
+    * @param node the node that was just inserted
+    */
+   @Override
+   protected void afterInsert( Node node ) {
+      splay( node );
+   }
+
+   /**
+    * Removes the mapping for a key from this map if it is present. The
+    * node is splayed to the root and unlinked, and the largest key of its
+    * left subtree is splayed up to join the two subtrees.
+    *
+    * @param key key whose mapping is to be removed from the map
+    * @return the previous value associated with <tt>key</tt>, or
+    *      <tt>null</tt> if there was no mapping for <tt>key</tt>.
+    */
+   @Override
+   public V remove ( Object key ) {
+      if ( key == null ) {
+         return null;
+      }
+      Node remover = getNode( key );
+      if ( remover == null ) {
+         meterRemove( false );
+         return null;
+      }
+      V valueRemoved = remover.getValue();
+      Node left = remover.getLeftChild();
+      Node right = remover.getRightChild();
+      if ( left == null ) {
+         setRoot( right );
+      } else {
+         setRoot( left );
+         Node largest = left;
+         while ( largest.hasRightChild() ) {
+            largest = largest.getRightChild();
+         }
+         splay( largest ); // The new root has no right child
+         largest.setRightChild( right );
+         largest.updateSubtreeSize();
+      }
+      recordRemoval( remover );
+      decrementSize();
+      incrementChangeCounter();
+      return valueRemoved;
+   }
+
+   // =======================================================================
+   // TRAVERSALS
+   // =======================================================================
+
+   /**
+    * Iterative Algorithm: Postorder Binary Tree Traversal
+    *    1. Postorder traverse the left subtree.
+    *    2. Postorder traverse the right subtree.
+    *    3. Visit the root.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   @Override
+   public void traversePostorder( Visitor visitor ) {
+      walkPostorder( visitor ); // Iterative along the parent links, safe at any depth
+   }
+
+   /**
+    * Iterative Algorithm: Level order Binary Tree Traversal
+    *    Beginning at the root, visit each node in a level, from left to right
+    *    then proceeding to the next level and repeat until all nodes are visited.
+    *
+    * @param visitor Lambda expression to process the key and value of each node.
+    *                For example: (key, value) -> System.out.println( key )
+    */
+   @Override
+   public void traverseLevelorder( Visitor visitor ) {
+      walkLevelorder( visitor );
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,117 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class SplayTreeTest {
+   // Checks the parent links and subtree sizes without recursing, since a splay tree may be a long chain.
+   private void checkLinks( SplayTree<?, ?> tree ) {
+      if ( tree.getRoot() != null && tree.getRoot().hasParent() ) {
+         fail( "The root has a parent." );
+      }
+      List<AbstractBinarySearchTree<?, ?>.Node> stack = new ArrayList<>(  );
+      if ( tree.getRoot() != null ) {
+         stack.add( tree.getRoot() );
+      }
+      while ( !stack.isEmpty() ) {
+         AbstractBinarySearchTree<?, ?>.Node node = stack.remove( stack.size() - 1 );
+         int expectedSize = 1;
+         for ( int side = 0; side < 2; side++ ) {
+            AbstractBinarySearchTree<?, ?>.Node child = side == 0 ? node.getLeftChild() : node.getRightChild();
+            if ( child != null ) {
+               if ( child.getParent() != node ) {
+                  fail( String.format( "The child %s of %s does not point back to it.", child, node ) );
+               }
+               expectedSize += child.getSubtreeSize();
+               stack.add( child );
+            }
+         }
+         if ( node.getSubtreeSize() != expectedSize ) {
+            fail( String.format( "Node %s has subtree size %d, expected %d.", node, node.getSubtreeSize(), expectedSize ) );
+         }
+      }
+   }
+
+   @Test
+   public void testRandomOperations( ) {
+      SplayTree<Integer, Integer> tree = new SplayTree<>();
+      TreeMap<Integer, Integer> expected = new TreeMap<>();
+      Random random = new Random( 18 );
+      for ( int i = 0; i < 20000; i++ ) {
+         int key = random.nextInt( 500 );
+         Integer a, b;
+         switch ( random.nextInt( 3 ) ) {
+            case 0: a = tree.put( key, i ); b = expected.put( key, i ); break;
+            case 1: a = tree.remove( key ); b = expected.remove( key ); break;
+            default: a = tree.get( key ); b = expected.get( key ); break;
+         }
+         if ( a == null ? b != null : !a.equals( b ) ) {
+            fail( String.format( "At step %d with key %d, the tree returned %s, expected %s.", i, key, a, b ) );
+         }
+         if ( expected.containsKey( key ) && tree.getRoot().getKey() != key ) {
+            fail( String.format( "After accessing key %d, the root is %s.", key, tree.getRoot() ) );
+         }
+         if ( i % 500 == 0 ) {
+            checkLinks( tree );
+         }
+      }
+      checkLinks( tree );
+      if ( tree.size() != expected.size() || !tree.entrySet().equals( expected.entrySet() ) ) {
+         fail( String.format( "After random operations, tree.size() = %d, expected %d.", tree.size(), expected.size() ) );
+      }
+      for ( int i = 0; i < tree.size(); i++ ) {
+         if ( tree.rank( tree.select( i ) ) != i ) {
+            fail( String.format( "After random operations, tree.rank( tree.select( %d ) ) = %d.", i, tree.rank( tree.select( i ) ) ) );
+         }
+      }
+   }
+
+   @Test
+   public void testSequentialKeys( ) {
+      SplayTree<Integer, Integer> tree = new SplayTree<>();
+      int n = 100000;
+      for ( int key = 0; key < n; key++ ) {
+         tree.put( key, key ); // Each insert splays to the root, leaving a left chain
+      }
+      long[] count = new long[1];
+      tree.traversePostorder( (key, value) -> count[0]++ );
+      tree.traverseLevelorder( (key, value) -> count[0]++ );
+      for ( int key = 0; key < n; key++ ) {
+         if ( tree.get( key ) != key ) {
+            fail( String.format( "After sequential puts, tree.get( %d ) = %d.", key, tree.get( key ) ) );
+         }
+      }
+      for ( int key = 0; key < n; key += 2 ) {
+         tree.remove( key );
+      }
+      checkLinks( tree );
+      if ( count[0] != 2L * n || tree.size() != n / 2 || tree.firstKey() != 1 || tree.containsKey( 0 ) ) {
+         fail( String.format( "After sequential operations, tree.size() = %d and the traversals visited %d nodes.", tree.size(), count[0] ) );
+      }
+   }
+
+   @Test
+   public void testTraversals( ) {
+      SplayTree<Integer, Integer> tree = new SplayTree<>();
+      for ( int key : new int[] { 2, 1, 3 } ) {
+         tree.put( key, key * 10 );
+      }
+      // Each insert splays the new key to the root, so 3 ends up above a left chain 2, 1
+      List<Object> list = new ArrayList<>(  );
+      tree.traversePostorder( (key, value) -> list.add( key ) );
+      if ( !list.toString().equals( "[1, 2, 3]" ) ) {
+         fail( String.format( "The postorder traversal is %s.", list ) );
+      }
+      tree.get( 1 );
+      list.clear();
+      tree.traverseLevelorder( (key, value) -> list.add( value ) );
+      if ( !list.toString().equals( "[10, 20, 30]" ) ) { // A zig-zig turns the left chain into a right chain
+         fail( String.format( "After tree.get( 1 ), the level order traversal is %s.", list ) );
+      }
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,191 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * DESCRIPTION: Operation counters of an AbstractBinarySearchTree, created by
+ * setMetricsEnabled( true ) and readable directly or over JMX once registered.
+ *
+ * The counters are LongAdders, so threads reading a ConcurrentBinarySearchTree
+ * at the same time do not contend on them. While metrics are disabled the
+ * tree holds no TreeMetrics, and each operation pays only a null check.
+ */
+public class TreeMetrics implements TreeMetricsMBean {
+   private static final String DOMAIN = "BinarySearchTree";
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private final AbstractBinarySearchTree<?, ?> tree; // Read for the size and height
+   private final LongAdder getHits = new LongAdder( ), getMisses = new LongAdder( );
+   private final LongAdder putHits = new LongAdder( ), putMisses = new LongAdder( );
+   private final LongAdder removeHits = new LongAdder( ), removeMisses = new LongAdder( );
+   private final LongAdder searches = new LongAdder( ), comparisons = new LongAdder( );
+   private final LongAdder traversals = new LongAdder( ), nodesVisited = new LongAdder( );
+   private final LongAdder concurrentModifications = new LongAdder( );
+   private ObjectName name = null; // Set while registered
+
+   TreeMetrics( AbstractBinarySearchTree<?, ?> tree ) {
+      this.tree = tree;
+   }
+
+   // =======================================================================
+   // RECORDING
+   // =======================================================================
+
+   void recordGet( boolean hit ) {
+      ( hit ? getHits : getMisses ).increment();
+   }
+
+   void recordPut( boolean hit ) {
+      ( hit ? putHits : putMisses ).increment();
+   }
+
+   void recordRemove( boolean hit ) {
+      ( hit ? removeHits : removeMisses ).increment();
+   }
+
+   void recordSearch( int comparisons ) {
+      searches.increment();
+      this.comparisons.add( comparisons );
+   }
+
+   void recordConcurrentModification( ) {
+      concurrentModifications.increment();
+   }
+
+   // Counts one traversal and wraps its visitor to count the nodes visited.
+   <K, V> AbstractBinarySearchTree.TreeVisitor<K, V> counting( AbstractBinarySearchTree.TreeVisitor<? super K, ? super V> visitor ) {
+      traversals.increment();
+      return ( key, value ) -> {
+         nodesVisited.increment();
+         return visitor.visit( key, value );
+      };
+   }
+
+   // =======================================================================
+   // ATTRIBUTES
+   // =======================================================================
+
+   @Override
+   public long getGetHits( ) {
+      return getHits.sum();
+   }
+
+   @Override
+   public long getGetMisses( ) {
+      return getMisses.sum();
+   }
+
+   @Override
+   public long getPutHits( ) {
+      return putHits.sum();
+   }
+
+   @Override
+   public long getPutMisses( ) {
+      return putMisses.sum();
+   }
+
+   @Override
+   public long getRemoveHits( ) {
+      return removeHits.sum();
+   }
+
+   @Override
+   public long getRemoveMisses( ) {
+      return removeMisses.sum();
+   }
+
+   @Override
+   public long getSearches( ) {
+      return searches.sum();
+   }
+
+   @Override
+   public long getComparisons( ) {
+      return comparisons.sum();
+   }
+
+   @Override
+   public double getComparisonsPerSearch( ) {
+      long count = searches.sum();
+      return count == 0 ? 0 : (double) comparisons.sum() / count;
+   }
+
+   @Override
+   public long getTraversals( ) {
+      return traversals.sum();
+   }
+
+   @Override
+   public long getNodesVisited( ) {
+      return nodesVisited.sum();
+   }
+
+   @Override
+   public long getConcurrentModifications( ) {
+      return concurrentModifications.sum();
+   }
+
+   @Override
+   public int getSize( ) {
+      return tree.size();
+   }
+
+   @Override
+   public int getHeight( ) {
+      return tree.height();
+   }
+
+   @Override
+   public void reset( ) {
+      for ( LongAdder counter : new LongAdder[] { getHits, getMisses, putHits, putMisses, removeHits, removeMisses,
+                                                  searches, comparisons, traversals, nodesVisited, concurrentModifications } ) {
+         counter.reset();
+      }
+   }
+
+   // =======================================================================
+   // JMX
+   // =======================================================================
+
+   /**
+    * Registers these metrics with the platform MBeanServer as
+    * BinarySearchTree:type=TreeMetrics,name=name.
+    *
+    * @param name names the tree among the registered ones
+    * @return the name the metrics were registered under
+    * @throws JMException if the name is taken or cannot be registered
+    * @throws IllegalStateException if the metrics are already registered
+    */
+   public synchronized ObjectName register( String name ) throws JMException {
+      if ( this.name != null ) {
+         throw new IllegalStateException( "Already registered as " + this.name );
+      }
+      ObjectName objectName = new ObjectName( DOMAIN + ":type=TreeMetrics,name=" + ObjectName.quote( name ) );
+      ManagementFactory.getPlatformMBeanServer().registerMBean( this, objectName );
+      this.name = objectName;
+      return objectName;
+   }
+
+   /**
+    * Unregisters these metrics from the platform MBeanServer, if they are
+    * registered.
+    *
+    * @throws JMException if the MBeanServer fails to unregister them
+    */
+   public synchronized void unregister( ) throws JMException {
+      if ( name != null ) {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         if ( server.isRegistered( name ) ) {
+            server.unregisterMBean( name );
+         }
+         name = null;
+      }
+   }
+}
+// END OF FILE ==============================================================
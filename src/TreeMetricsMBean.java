@@ -0,0 +1,68 @@
+/**
+ * DESCRIPTION: The JMX management interface of TreeMetrics. Every attribute
+ * is read-only; reset is the only operation.
+ *
+ * Only single-key operations are counted. Mappings loaded in bulk, by the
+ * sorted fast path of putAll into an empty tree, by fromSorted, or by union,
+ * intersection, difference, join and split, count as neither puts nor
+ * searches.
+ */
+public interface TreeMetricsMBean {
+   long getGetHits( );
+
+   long getGetMisses( );
+
+   /**
+    * @return the puts that replaced the value of a key already present
+    */
+   long getPutHits( );
+
+   /**
+    * @return the puts that inserted a new key
+    */
+   long getPutMisses( );
+
+   long getRemoveHits( );
+
+   long getRemoveMisses( );
+
+   /**
+    * @return the descents from the root to find a key, by get, put or remove
+    */
+   long getSearches( );
+
+   long getComparisons( );
+
+   /**
+    * @return getComparisons() / getSearches(), or 0 before the first search
+    */
+   double getComparisonsPerSearch( );
+
+   long getTraversals( );
+
+   long getNodesVisited( );
+
+   /**
+    * @return the ConcurrentModificationExceptions thrown by iterators and spliterators
+    */
+   long getConcurrentModifications( );
+
+   int getSize( );
+
+   /**
+    * Only reliable on a ConcurrentBinarySearchTree: other trees are walked
+    * without a lock, so a read racing a writer may see a wrong height. The
+    * height is cached, so polling an unchanged tree costs O(1); the first
+    * read after an insert, remove or rotation walks the tree in O(n), under the
+    * read lock of a ConcurrentBinarySearchTree.
+    *
+    * @return the height of the tree
+    */
+   int getHeight( );
+
+   /**
+    * Sets every counter back to zero.
+    */
+   void reset( );
+}
+// END OF FILE ==============================================================
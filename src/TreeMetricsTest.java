@@ -0,0 +1,125 @@
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+
+public class TreeMetricsTest {
+
+   @Test
+   public void testCounters( ) {
+      BinarySearchTree<Integer, Integer> tree = new BinarySearchTree<>();
+      if ( tree.getMetrics() != null ) {
+         fail( "Metrics are enabled by default." );
+      }
+      tree.setMetricsEnabled( true );
+      TreeMetrics metrics = tree.getMetrics();
+      tree.put( 2, 20 ); // 0 comparisons in the empty tree
+      tree.put( 1, 10 ); // 1
+      tree.put( 3, 30 ); // 1
+      tree.put( 3, 31 ); // 2, a hit
+      tree.get( 3 );     // 2
+      tree.get( 4 );     // 2, a miss
+      tree.containsKey( 1 ); // 2
+      tree.remove( 5 );  // 2, a miss
+      tree.remove( 1 );  // 2
+      long[] counts = { metrics.getPutHits(), metrics.getPutMisses(), metrics.getGetHits(), metrics.getGetMisses(),
+                        metrics.getRemoveHits(), metrics.getRemoveMisses(), metrics.getSearches(), metrics.getComparisons() };
+      long[] expected = { 1, 3, 2, 1, 1, 1, 9, 14 };
+      for ( int i = 0; i < counts.length; i++ ) {
+         if ( counts[i] != expected[i] ) {
+            fail( String.format( "Counter %d of the metrics is %d, expected %d.", i, counts[i], expected[i] ) );
+         }
+      }
+      if ( Math.abs( metrics.getComparisonsPerSearch() - 14.0 / 9 ) > 1e-9 || metrics.getSize() != 2 || metrics.getHeight() != 2 ) {
+         fail( String.format( "The metrics report %.2f comparisons per search, size %d and height %d.",
+                              metrics.getComparisonsPerSearch(), metrics.getSize(), metrics.getHeight() ) );
+      }
+
+      tree.traverseInorder( (key, value) -> { } );
+      tree.visitPreorder( (key, value) -> false ); // Stops at the first node
+      Iterator<Integer> iterator = tree.iterator();
+      tree.put( 4, 40 );
+      try {
+         iterator.next();
+         fail( "The iterator did not throw a ConcurrentModificationException." );
+      } catch ( ConcurrentModificationException e ) {
+         // Expected
+      }
+      if ( metrics.getTraversals() != 2 || metrics.getNodesVisited() != 3 || metrics.getConcurrentModifications() != 1 ) {
+         fail( String.format( "The metrics count %d traversals, %d nodes visited and %d concurrent modifications.",
+                              metrics.getTraversals(), metrics.getNodesVisited(), metrics.getConcurrentModifications() ) );
+      }
+
+      metrics.reset();
+      if ( metrics.getSearches() != 0 || metrics.getPutMisses() != 0 || metrics.getComparisonsPerSearch() != 0 ) {
+         fail( "After reset, the metrics are not zero." );
+      }
+      tree.setMetricsEnabled( false );
+      tree.get( 2 );
+      if ( tree.getMetrics() != null || metrics.getGetHits() != 0 ) {
+         fail( "After disabling metrics, gets are still counted." );
+      }
+   }
+
+   @Test
+   public void testOtherTrees( ) {
+      SplayTree<Integer, Integer> splay = new SplayTree<>();
+      ConcurrentBinarySearchTree<Integer, Integer> concurrent = new ConcurrentBinarySearchTree<>();
+      List<AbstractBinarySearchTree<Integer, Integer>> trees = Arrays.asList( splay, concurrent );
+      for ( AbstractBinarySearchTree<Integer, Integer> tree : trees ) {
+         tree.setMetricsEnabled( true );
+         for ( int key = 0; key < 100; key++ ) {
+            tree.put( key, key );
+         }
+         tree.put( 50, 0 );
+         for ( int key = 0; key < 200; key++ ) {
+            tree.get( key );
+         }
+         for ( int key = 0; key < 150; key += 2 ) {
+            tree.remove( key );
+         }
+         TreeMetrics metrics = tree.getMetrics();
+         if ( metrics.getPutHits() != 1 || metrics.getPutMisses() != 100 || metrics.getGetHits() != 100 || metrics.getGetMisses() != 100
+              || metrics.getRemoveHits() != 50 || metrics.getRemoveMisses() != 25 || metrics.getSearches() != 101 + 200 + 75 ) {
+            fail( String.format( "For %s, the metrics count put %d/%d, get %d/%d, remove %d/%d and %d searches.", tree.getClass().getName(),
+                                 metrics.getPutHits(), metrics.getPutMisses(), metrics.getGetHits(), metrics.getGetMisses(),
+                                 metrics.getRemoveHits(), metrics.getRemoveMisses(), metrics.getSearches() ) );
+         }
+      }
+   }
+
+   @Test
+   public void testJmx( ) throws JMException {
+      RedBlackTree<Integer, Integer> tree = new RedBlackTree<>();
+      tree.setMetricsEnabled( true );
+      for ( int key = 0; key < 1000; key++ ) {
+         tree.put( key, key );
+      }
+      tree.get( 7 );
+      ObjectName name = tree.getMetrics().register( "TreeMetricsTest" );
+      try {
+         Object hits = ManagementFactory.getPlatformMBeanServer().getAttribute( name, "GetHits" );
+         Object size = ManagementFactory.getPlatformMBeanServer().getAttribute( name, "Size" );
+         if ( !Long.valueOf( 1 ).equals( hits ) || !Integer.valueOf( 1000 ).equals( size ) ) {
+            fail( String.format( "Over JMX, GetHits is %s and Size is %s.", hits, size ) );
+         }
+         ManagementFactory.getPlatformMBeanServer().invoke( name, "reset", null, null );
+         if ( tree.getMetrics().getGetHits() != 0 ) {
+            fail( "The reset operation over JMX did not reset the counters." );
+         }
+      } finally {
+         tree.getMetrics().unregister();
+      }
+      if ( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) ) {
+         fail( "After unregister, the metrics are still registered." );
+      }
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+/**
+ * DESCRIPTION: The shape of an AbstractBinarySearchTree at one moment,
+ * computed by shape() in a single level order pass.
+ *
+ * Depths count edges from the root, so the root has depth 0 and a tree of
+ * height h has levels 0 to h - 1. A balanced tree of n nodes has height and
+ * average depth near log2( n ); a tree built from sorted input by
+ * BinarySearchTree has height n and average depth ( n - 1 ) / 2.
+ */
+public class TreeShape {
+   private final int size;
+   private final int height;
+   private final long totalDepth;
+   private final int[] levelCounts;
+   private final int worstImbalance;
+
+   TreeShape( int size, int height, long totalDepth, int[] levelCounts, int worstImbalance ) {
+      this.size = size;
+      this.height = height;
+      this.totalDepth = totalDepth;
+      this.levelCounts = levelCounts;
+      this.worstImbalance = worstImbalance;
+   }
+
+   /**
+    * @return the number of nodes
+    */
+   public int size( ) {
+      return size;
+   }
+
+   /**
+    * @return the number of nodes on the longest path from the root, 0 if empty
+    */
+   public int height( ) {
+      return height;
+   }
+
+   /**
+    * @return the mean depth of the nodes, the expected comparisons of a
+    *         successful search minus one; 0 if empty
+    */
+   public double averageDepth( ) {
+      return size == 0 ? 0 : (double) totalDepth / size;
+   }
+
+   /**
+    * @return the number of nodes at each depth, from the root down
+    */
+   public int[] levelCounts( ) {
+      return levelCounts.clone();
+   }
+
+   /**
+    * @return the largest difference between the heights of the left and
+    *         right subtrees of any node; at most 1 in an AVL tree
+    */
+   public int worstImbalance( ) {
+      return worstImbalance;
+   }
+
+   @Override
+   public String toString( ) {
+      return String.format( "size %d, height %d, average depth %.2f, worst imbalance %d, levels %s",
+                            size, height, averageDepth(), worstImbalance, Arrays.toString( levelCounts ) );
+   }
+}
+// END OF FILE ==============================================================
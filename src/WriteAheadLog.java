@@ -0,0 +1,299 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * DESCRIPTION: The log of a durable AbstractBinarySearchTree. Every put,
+ * remove and clear of the tree is appended as a record of one type byte,
+ * the key and, for a put, the value.
+ *
+ * Records collect in memory and are written with group commit: a batch is
+ * written and forced to disk after syncEveryOps records, or by a background
+ * thread once syncEveryMillis have passed, whichever comes first. A crash
+ * therefore loses at most the records of the last unfinished batch. Each
+ * batch carries its length and a CRC32, so a batch torn by a crash is
+ * recognized and cut off when the log is replayed.
+ *
+ * Trees create their log with openDurable; it is not used directly.
+ */
+public class WriteAheadLog<K extends Comparable<K>, V> implements Closeable {
+   private static final byte PUT = 1, REMOVE = 2, CLEAR = 3;
+   private static final int BATCH_HEADER = 8; // Length and CRC32 of the records that follow
+   private static final int BUFFER_SIZE = 1 << 20;
+
+   // =======================================================================
+   // INSTANCE VARIABLES
+   // =======================================================================
+
+   private final FileChannel channel;
+   private final AbstractBinarySearchTree.Codec<K> keyCodec;
+   private final AbstractBinarySearchTree.Codec<V> valueCodec;
+   private final int syncEveryOps;
+   private final Thread syncer; // Syncs every syncEveryMillis, null if syncing only by count
+   private ByteBuffer batch = ByteBuffer.allocate( BUFFER_SIZE );
+   private int pending = 0; // Records appended since the last sync
+   private IOException failure = null; // Set when a background sync failed
+   private boolean closed = false;
+
+   /**
+    * Opens a log and replays it into tree. Records after a torn batch are
+    * cut off, and new records are appended after the last good batch.
+    *
+    * @param path the log file, created if missing
+    * @param tree the tree to replay into, which must not log yet
+    * @param keyCodec encodes the keys
+    * @param valueCodec encodes the values
+    * @param syncEveryOps the number of records in a group commit, 1 to sync every change
+    * @param syncEveryMillis the longest time a record waits to be synced, or 0 for no limit
+    * @throws IOException if the log cannot be read or opened
+    */
+   WriteAheadLog( Path path, AbstractBinarySearchTree<K, V> tree, AbstractBinarySearchTree.Codec<K> keyCodec,
+                  AbstractBinarySearchTree.Codec<V> valueCodec, int syncEveryOps, long syncEveryMillis ) throws IOException {
+      if ( syncEveryOps < 1 || syncEveryMillis < 0 ) {
+         throw new IllegalArgumentException( "Illegal group commit: " + syncEveryOps + " records, " + syncEveryMillis + " ms" );
+      }
+      this.keyCodec = keyCodec;
+      this.valueCodec = valueCodec;
+      this.syncEveryOps = syncEveryOps;
+      channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+      try {
+         long end = replay( tree );
+         channel.truncate( end );
+         channel.position( end );
+      } catch ( IOException | RuntimeException e ) {
+         channel.close();
+         throw e;
+      }
+      batch.position( BATCH_HEADER );
+      if ( syncEveryMillis > 0 ) {
+         syncer = new Thread( ( ) -> syncPeriodically( syncEveryMillis ), "WriteAheadLog sync" );
+         syncer.setDaemon( true );
+         syncer.start();
+      } else {
+         syncer = null;
+      }
+   }
+
+   AbstractBinarySearchTree.Codec<K> keyCodec( ) {
+      return keyCodec;
+   }
+
+   AbstractBinarySearchTree.Codec<V> valueCodec( ) {
+      return valueCodec;
+   }
+
+   // =======================================================================
+   // APPENDING
+   // =======================================================================
+
+   /**
+    * Appends a put of key to value.
+    */
+   synchronized void put( K key, V value ) {
+      append( PUT, key, value );
+   }
+
+   /**
+    * Appends a removal of key.
+    */
+   synchronized void remove( K key ) {
+      append( REMOVE, key, null );
+   }
+
+   /**
+    * Appends a clear of the whole tree.
+    */
+   synchronized void clear( ) {
+      append( CLEAR, null, null );
+   }
+
+   private void append( byte type, K key, V value ) {
+      if ( closed ) {
+         throw new IllegalStateException( "The log is closed." );
+      }
+      try {
+         if ( failure != null ) {
+            throw failure;
+         }
+         while ( true ) {
+            int start = batch.position();
+            try {
+               batch.put( type );
+               if ( key != null ) {
+                  keyCodec.write( key, batch );
+               }
+               if ( value != null ) {
+                  valueCodec.write( value, batch );
+               }
+               break;
+            } catch ( BufferOverflowException e ) {
+               // Write the records before this one and encode it again, in a larger buffer if it was alone
+               batch.position( start );
+               if ( start > BATCH_HEADER ) {
+                  writeBatch();
+               } else {
+                  batch = ByteBuffer.allocate( batch.capacity() * 2 );
+                  batch.position( BATCH_HEADER );
+               }
+            }
+         }
+         if ( ++pending >= syncEveryOps ) {
+            sync();
+         }
+      } catch ( IOException e ) {
+         throw new UncheckedIOException( "The write-ahead log failed", e );
+      }
+   }
+
+   // Writes the records in the buffer as one batch, without forcing it to disk.
+   private void writeBatch( ) throws IOException {
+      int end = batch.position();
+      if ( end == BATCH_HEADER ) {
+         return;
+      }
+      CRC32 crc = new CRC32();
+      crc.update( batch.array(), BATCH_HEADER, end - BATCH_HEADER );
+      batch.putInt( 0, end - BATCH_HEADER ).putInt( 4, (int) crc.getValue() );
+      batch.flip();
+      while ( batch.hasRemaining() ) {
+         channel.write( batch );
+      }
+      batch.clear();
+      batch.position( BATCH_HEADER );
+   }
+
+   /**
+    * Writes every appended record and forces the log to disk.
+    *
+    * @throws IOException if the log cannot be written
+    */
+   public synchronized void sync( ) throws IOException {
+      if ( pending > 0 ) {
+         writeBatch();
+         channel.force( false );
+         pending = 0;
+      }
+   }
+
+   private void syncPeriodically( long millis ) {
+      while ( true ) {
+         try {
+            Thread.sleep( millis );
+         } catch ( InterruptedException e ) {
+            return; // Interrupted by close
+         }
+         synchronized ( this ) {
+            if ( closed ) {
+               return;
+            }
+            try {
+               sync();
+            } catch ( IOException e ) {
+               failure = e; // Reported by the next append
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * Discards every record, after a checkpoint has written a snapshot that
+    * contains them.
+    *
+    * @throws IOException if the log cannot be truncated
+    */
+   synchronized void truncate( ) throws IOException {
+      batch.clear();
+      batch.position( BATCH_HEADER );
+      pending = 0;
+      channel.truncate( 0 );
+      channel.force( false );
+   }
+
+   /**
+    * Syncs the appended records and closes the log.
+    *
+    * @throws IOException if the log cannot be written
+    */
+   @Override
+   public void close( ) throws IOException {
+      synchronized ( this ) {
+         if ( closed ) {
+            return;
+         }
+         closed = true;
+         try {
+            sync();
+         } finally {
+            channel.close();
+         }
+      }
+      if ( syncer != null ) {
+         syncer.interrupt();
+      }
+   }
+
+   // =======================================================================
+   // REPLAY
+   // =======================================================================
+
+   // Applies every intact batch to tree and returns the offset after the last one.
+   private long replay( AbstractBinarySearchTree<K, V> tree ) throws IOException {
+      long offset = 0;
+      long size = channel.size();
+      ByteBuffer header = ByteBuffer.allocate( BATCH_HEADER );
+      while ( offset + BATCH_HEADER <= size ) {
+         header.clear();
+         readFully( header, offset );
+         int length = header.getInt( 0 );
+         if ( length <= 0 || offset + BATCH_HEADER + length > size ) {
+            break; // Torn while being written
+         }
+         ByteBuffer records = ByteBuffer.allocate( length );
+         readFully( records, offset + BATCH_HEADER );
+         CRC32 crc = new CRC32();
+         crc.update( records.array(), 0, length );
+         if ( (int) crc.getValue() != header.getInt( 4 ) ) {
+            break;
+         }
+         records.flip();
+         try {
+            while ( records.hasRemaining() ) {
+               byte type = records.get();
+               if ( type == PUT ) {
+                  K key = keyCodec.read( records );
+                  tree.put( key, valueCodec.read( records ) );
+               } else if ( type == REMOVE ) {
+                  tree.remove( keyCodec.read( records ) );
+               } else if ( type == CLEAR ) {
+                  tree.clear();
+               } else {
+                  throw new IOException( "Unknown record type " + type + " in the write-ahead log" );
+               }
+            }
+         } catch ( BufferUnderflowException e ) {
+            throw new IOException( "A record overruns its batch in the write-ahead log", e );
+         }
+         offset += BATCH_HEADER + length;
+      }
+      return offset;
+   }
+
+   private void readFully( ByteBuffer buffer, long position ) throws IOException {
+      while ( buffer.hasRemaining() ) {
+         int read = channel.read( buffer, position );
+         if ( read < 0 ) {
+            throw new IOException( "The write-ahead log ended early." );
+         }
+         position += read;
+      }
+   }
+}
+// END OF FILE ==============================================================
@@ -0,0 +1,150 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+   private static final AbstractBinarySearchTree.Codec<String> KEYS = AbstractBinarySearchTree.Codec.STRING;
+   private static final AbstractBinarySearchTree.Codec<Integer> VALUES = AbstractBinarySearchTree.Codec.INTEGER;
+
+   private RedBlackTree<String, Integer> open( Path directory, int syncEveryOps ) throws IOException {
+      RedBlackTree<String, Integer> tree = new RedBlackTree<>();
+      tree.openDurable( directory.resolve( "tree.snapshot" ), directory.resolve( "tree.log" ), KEYS, VALUES, syncEveryOps, 0 );
+      return tree;
+   }
+
+   private void delete( Path directory ) throws IOException {
+      for ( String name : new String[] { "tree.snapshot", "tree.snapshot.tmp", "tree.log" } ) {
+         Files.deleteIfExists( directory.resolve( name ) );
+      }
+      Files.delete( directory );
+   }
+
+   @Test
+   public void testReopen( ) throws IOException {
+      Path directory = Files.createTempDirectory( "WriteAheadLogTest" );
+      try {
+         RedBlackTree<String, Integer> tree = open( directory, 100 );
+         TreeMap<String, Integer> expected = new TreeMap<>();
+         Random random = new Random( 21 );
+         for ( int i = 0; i < 5000; i++ ) {
+            String key = "k" + random.nextInt( 800 );
+            if ( random.nextInt( 4 ) == 0 ) {
+               tree.remove( key );
+               expected.remove( key );
+            } else {
+               tree.put( key, i );
+               expected.put( key, i );
+            }
+            if ( i == 2000 ) {
+               tree.clear();
+               expected.clear();
+            }
+         }
+         tree.pollFirstEntry();
+         expected.pollFirstEntry();
+         tree.tailMap( "k5", true ).entrySet().iterator().next().setValue( -1 );
+         expected.tailMap( "k5", true ).entrySet().iterator().next().setValue( -1 );
+         Map.Entry<String, Integer> removed = tree.entrySet().iterator().next();
+         tree.remove( removed.getKey() );
+         expected.remove( removed.getKey() );
+         removed.setValue( -2 ); // The mapping is gone, so this must not be logged
+         tree.closeDurable();
+         if ( tree.isDurable() ) {
+            fail( "After closeDurable, the tree is still durable." );
+         }
+         tree.put( "unlogged", 0 ); // Not durable any more
+
+         RedBlackTree<String, Integer> reopened = open( directory, 100 );
+         if ( !reopened.entrySet().equals( expected.entrySet() ) ) {
+            fail( String.format( "After reopening, the tree has %d mappings, expected %d.", reopened.size(), expected.size() ) );
+         }
+         reopened.closeDurable();
+      } finally {
+         delete( directory );
+      }
+   }
+
+   @Test
+   public void testCrash( ) throws IOException {
+      Path directory = Files.createTempDirectory( "WriteAheadLogTest" );
+      try {
+         // Syncing every 10 changes and never closing loses only the last 5 changes
+         RedBlackTree<String, Integer> tree = open( directory, 10 );
+         for ( int i = 0; i < 25; i++ ) {
+            tree.put( "k" + i, i );
+         }
+         Files.copy( directory.resolve( "tree.log" ), directory.resolve( "tree.log.copy" ) ); // The log as a crash would leave it
+         RedBlackTree<String, Integer> reopened = new RedBlackTree<>();
+         reopened.openDurable( directory.resolve( "tree.snapshot" ), directory.resolve( "tree.log.copy" ), KEYS, VALUES, 10, 0 );
+         if ( reopened.size() != 20 || !reopened.containsKey( "k19" ) || reopened.containsKey( "k20" ) ) {
+            fail( String.format( "After a crash, the tree has %d mappings, expected 20.", reopened.size() ) );
+         }
+         reopened.closeDurable();
+         Files.delete( directory.resolve( "tree.log.copy" ) );
+         tree.closeDurable();
+
+         // A batch torn by a crash is cut off, and the next batch follows the last good one
+         long size = Files.size( directory.resolve( "tree.log" ) );
+         try ( FileChannel channel = FileChannel.open( directory.resolve( "tree.log" ), StandardOpenOption.WRITE ) ) {
+            channel.truncate( size - 3 );
+         }
+         reopened = open( directory, 1 );
+         if ( reopened.size() != 20 ) {
+            fail( String.format( "After tearing the last batch, the tree has %d mappings, expected 20.", reopened.size() ) );
+         }
+         reopened.put( "new", 1 );
+         reopened.closeDurable();
+         reopened = open( directory, 1 );
+         if ( reopened.size() != 21 || reopened.get( "new" ) != 1 ) {
+            fail( String.format( "After appending to a torn log, the tree has %d mappings, expected 21.", reopened.size() ) );
+         }
+         reopened.closeDurable();
+      } finally {
+         delete( directory );
+      }
+   }
+
+   @Test
+   public void testCheckpoint( ) throws IOException {
+      Path directory = Files.createTempDirectory( "WriteAheadLogTest" );
+      try {
+         ConcurrentBinarySearchTree<String, Integer> tree = new ConcurrentBinarySearchTree<>();
+         tree.openDurable( directory.resolve( "tree.snapshot" ), directory.resolve( "tree.log" ), KEYS, VALUES, 1000, 5 );
+         for ( int i = 0; i < 1000; i++ ) {
+            tree.put( "k" + i, i );
+         }
+         tree.checkpoint();
+         if ( Files.size( directory.resolve( "tree.log" ) ) != 0 || Files.exists( directory.resolve( "tree.snapshot.tmp" ) ) ) {
+            fail( "After a checkpoint, the log is not empty." );
+         }
+         for ( int i = 0; i < 500; i++ ) {
+            tree.remove( "k" + i );
+         }
+         try {
+            tree.openDurable( directory.resolve( "tree.snapshot" ), directory.resolve( "tree.log" ), KEYS, VALUES, 1, 0 );
+            fail( "Opening a durable tree again did not throw an IllegalStateException." );
+         } catch ( IllegalStateException e ) {
+            // Expected
+         }
+         tree.closeDurable();
+
+         RedBlackTree<String, Integer> reopened = open( directory, 1 );
+         if ( reopened.size() != 500 || reopened.containsKey( "k0" ) || reopened.get( "k999" ) != 999 ) {
+            fail( String.format( "After a checkpoint and 500 removals, the tree has %d mappings, expected 500.", reopened.size() ) );
+         }
+         reopened.closeDurable();
+      } finally {
+         delete( directory );
+      }
+   }
+}
+// END OF FILE ==============================================================